@@ -42,6 +42,8 @@ public class ApplicationPreferences {
     private double animationFrameRate = 60.0;
 
     private boolean keepBackupFiles;
+    private boolean fastSceneCompression;
+    private boolean journalScenes = true;
     private boolean useOpenGL = true;
     private boolean useCompoundMeshTool;
     private boolean reverseZooming;
@@ -138,6 +140,8 @@ public class ApplicationPreferences {
         undoLevels = parseIntProperty("undoLevels", undoLevels);
         useOpenGL = parseBooleanProperty("useOpenGL", useOpenGL);
         keepBackupFiles = parseBooleanProperty("keepBackupFiles", keepBackupFiles);
+        fastSceneCompression = parseBooleanProperty("fastSceneCompression", fastSceneCompression);
+        journalScenes = parseBooleanProperty("journalScenes", journalScenes);
         useCompoundMeshTool = parseBooleanProperty("useCompoundMeshTool", useCompoundMeshTool);
         reverseZooming = parseBooleanProperty("reverseZooming", reverseZooming);
 
@@ -402,6 +406,38 @@ public class ApplicationPreferences {
         properties.put("keepBackupFiles", Boolean.toString(keep));
     }
 
+    /**
+     * Get whether to compress scene files with the fastest compression level, rather than the
+     * default one. This makes saving faster, at the cost of larger files.
+     */
+    public final boolean getFastSceneCompression() {
+        return fastSceneCompression;
+    }
+
+    /**
+     * Set whether to compress scene files with the fastest compression level.
+     */
+    public final void setFastSceneCompression(boolean fast) {
+        fastSceneCompression = fast;
+        properties.put("fastSceneCompression", Boolean.toString(fast));
+    }
+
+    /**
+     * Get whether to record unsaved changes to scenes in a journal, so that they can be recovered
+     * if the program exits without saving them.
+     */
+    public final boolean getJournalScenes() {
+        return journalScenes;
+    }
+
+    /**
+     * Set whether to record unsaved changes to scenes in a journal.
+     */
+    public final void setJournalScenes(boolean journal) {
+        journalScenes = journal;
+        properties.put("journalScenes", Boolean.toString(journal));
+    }
+
     /**
      * Get whether to use the compound move/scale/rotate tool as the default for mesh editing.
      */
@@ -29,10 +29,12 @@ import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.AppenderBase;
 import groovy.lang.GroovyShell;
 import java.io.*;
+import java.lang.reflect.InvocationTargetException;
 import java.nio.file.Files;
 
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import java.util.prefs.Preferences;
 import javax.swing.*;
@@ -95,7 +97,8 @@ public class ArtOfIllusion {
     }
 
     public static void main(String[] args) {
-        Translate.setLocale(Locale.getDefault());
+        StartupReport startup = new StartupReport();
+        startup.run("Translations", () -> Translate.setLocale(Locale.getDefault()));
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (ReflectiveOperationException | UnsupportedLookAndFeelException ex) {
@@ -106,6 +109,85 @@ public class ArtOfIllusion {
 
         TitleWindow title = new TitleWindow().show();
 
+        // Keystrokes do not depend on anything else, so they are loaded while the plugins are
+        // being scanned. Themes come from plugins, and preferences select a theme.
+
+        CompletableFuture<Void> keystrokes = startup.runAsync("Keystrokes", KeystrokeManager::loadRecords);
+        List<String> pluginsLoadResults = new ArrayList<>();
+        startup.run("Plugins", () -> pluginsLoadResults.addAll(registerPlugins()));
+        startup.run("Themes", ThemeManager::initThemes);
+        startup.run("Preferences", () -> preferences = new ApplicationPreferences());
+        ViewerCanvas.addViewerControl(new ViewerOrientationControl());
+        ViewerCanvas.addViewerControl(new ViewerPerspectiveControl());
+        ViewerCanvas.addViewerControl(new ViewerScaleControl());
+        ViewerCanvas.addViewerControl(new ViewerNavigationControl());
+        keystrokes.join();
+
+        //TODO: Replace with PluginRegistry.notifyPlugins
+        startup.run("Plugin startup", () -> {
+            for (Plugin plugin : PluginRegistry.getPlugins(Plugin.class)) {
+                try {
+                    plugin.processMessage(Plugin.APPLICATION_STARTING);
+                } catch (Throwable tx) {
+                    log.atError().setCause(tx).log("Plugin starting error: {}", tx.getMessage());
+                    pluginsLoadResults.add(Translate.text("pluginInitError", plugin.getClass().getSimpleName()));
+                }
+            }
+        });
+
+        // Startup scripts may create or change things the scenes and windows depend on, so they
+        // still run before those. Scripts expect to be on the event dispatch thread, since they
+        // are free to create windows.
+
+        try {
+            SwingUtilities.invokeAndWait(() -> startup.run("Startup scripts", ArtOfIllusion::runStartupScripts));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (InvocationTargetException ex) {
+            log.atError().setCause(ex.getCause()).log("Error running startup scripts: {}", ex.getCause().getMessage());
+        }
+
+        startup.run("Scenes", () -> {
+            for (String arg : args) {
+                try {
+                    newWindow(readScene(new File(arg)));
+                } catch (IOException ex) {
+                    log.atError().setCause(ex).log("Error loading scene: {}", ex.getMessage());
+                }
+            }
+        });
+
+        if (numNewWindows == 0) {
+            newWindow();
+        }
+
+        // The script engines are not needed to show the first window, so they are created in the
+        // background once it is visible. The window is shown by an event which newWindow() has
+        // already queued, so this runs after it. Plugins are created when they are first needed,
+        // which for most of them is while that window is being built, so errors creating them
+        // are reported then as well.
+
+        SwingUtilities.invokeLater(() -> {
+            startup.mark("First window shown");
+            new Thread(() -> {
+                startup.run("Script engines", ArtOfIllusion::loadScriptEngines);
+                log.info(startup.getReport());
+            }, "Script engine loader").start();
+            pluginsLoadResults.addAll(PluginRegistry.getLoadErrors());
+            if (!pluginsLoadResults.isEmpty()) {
+                showErrors(pluginsLoadResults);
+            }
+        });
+        title.dispose();
+    }
+
+    /**
+     * Define the standard plugin categories, register the built in plugins, and then scan the
+     * Plugins directory.
+     *
+     * @return a list of errors which occurred while loading plugins
+     */
+    private static List<String> registerPlugins() {
         PluginRegistry.addCategory(Plugin.class);
         PluginRegistry.addCategory(Renderer.class);
         PluginRegistry.addCategory(Translator.class);
@@ -136,42 +218,7 @@ public class ArtOfIllusion {
         PluginRegistry.registerResource("TranslateBundle", "artofillusion", ArtOfIllusion.class.getClassLoader(), "artofillusion");
         PluginRegistry.registerPlugin(new LoggingListener());
 
-        List<String> pluginsLoadResults = PluginRegistry.scanPlugins();
-        ThemeManager.initThemes();
-        preferences = new ApplicationPreferences();
-        KeystrokeManager.loadRecords();
-        ViewerCanvas.addViewerControl(new ViewerOrientationControl());
-        ViewerCanvas.addViewerControl(new ViewerPerspectiveControl());
-        ViewerCanvas.addViewerControl(new ViewerScaleControl());
-        ViewerCanvas.addViewerControl(new ViewerNavigationControl());
-
-        //TODO: Replace with PluginRegistry.notifyPlugins
-        for (Plugin plugin : PluginRegistry.getPlugins(Plugin.class)) {
-            try {
-                plugin.processMessage(Plugin.APPLICATION_STARTING);
-            } catch (Throwable tx) {
-                log.atError().setCause(tx).log("Plugin starting error: {}", tx.getMessage());
-                pluginsLoadResults.add(Translate.text("pluginInitError", plugin.getClass().getSimpleName()));
-            }
-        }
-
-        runStartupScripts();
-
-        for (String arg : args) {
-            try {
-                newWindow(new Scene(new File(arg), true));
-            } catch (IOException ex) {
-                log.atError().setCause(ex).log("Error loading scene: {}", ex.getMessage());
-            }
-        }
-
-        if (numNewWindows == 0) {
-            newWindow();
-        }
-        if (!pluginsLoadResults.isEmpty()) {
-            showErrors(pluginsLoadResults);
-        }
-        title.dispose();
+        return PluginRegistry.scanPlugins();
     }
 
     /**
@@ -341,6 +388,20 @@ public class ArtOfIllusion {
         }
     }
 
+    /**
+     * Create the engines for every scripting language, so the first script the user runs does
+     * not have to wait for them.
+     */
+    private static void loadScriptEngines() {
+        for (String language : ScriptRunner.getLanguageNames()) {
+            try {
+                ScriptRunner.getScriptEngine(language);
+            } catch (ScriptException ex) {
+                log.atError().setCause(ex).log("Unable to create script engine for {} due {}", language, ex.getMessage());
+            }
+        }
+    }
+
     /**
      * Get a class specified by name. This checks both the system classes, and
      * all plugins. It also accounts for classes which changed packages in
@@ -401,6 +462,7 @@ public class ArtOfIllusion {
         try {
             File f = new File(sc.getDirectory(), sc.getName());
             sc.writeToFile(f);
+            updateJournal(sc, f);
 
             for (Plugin plugin : PluginRegistry.getPlugins(Plugin.class)) {
                 try {
@@ -418,6 +480,42 @@ public class ArtOfIllusion {
         return true;
     }
 
+    /**
+     * Start a new journal of unsaved changes for a scene which has just been loaded from or saved
+     * to a file. Any previous journal for the scene is deleted, since the file now contains all
+     * changes.
+     */
+    static void updateJournal(Scene scene, File file) {
+        try {
+            if (scene.getJournal() != null) {
+                scene.getJournal().reset(file);
+            } else if (preferences.getJournalScenes()) {
+                SceneJournal.attach(scene, file);
+            }
+        } catch (IOException ex) {
+            log.atError().setCause(ex).log("Error starting scene journal: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Read a scene from a file. If there is a journal of unsaved changes to it from a previous
+     * session, the user is asked whether to recover them.
+     */
+    private static Scene readScene(File file) throws IOException {
+        if (SceneJournal.getJournalFile(file).isFile() && MessageDialog.create().option(Translate.text("recoverSceneChanges", file.getName())) == 0) {
+            try {
+                Scene scene = SceneJournal.recover(file);
+                if (scene != null) {
+                    return scene;
+                }
+            } catch (IOException ex) {
+                log.atError().setCause(ex).log("Error recovering scene: {}", ex.getMessage());
+                new BStandardDialog("", new String[]{Translate.text("errorRecoveringScene"), ex.getMessage() == null ? "" : ex.getMessage()}, BStandardDialog.ERROR).showMessageDialog(null);
+            }
+        }
+        return new Scene(file, true);
+    }
+
     /**
      * Prompt the user to select a scene file, then open a new window containing
      * it. The BFrame is used for displaying dialogs.
@@ -455,7 +553,7 @@ public class ArtOfIllusion {
 
         try (LoadEventListener el = new LoadEventListener()) {
 
-            Scene scene = new Scene(file, true);
+            Scene scene = readScene(file);
             List<String> errors = scene.getErrors();
             List<String> eventErrors = el.getEventMessages();
 
@@ -275,6 +275,7 @@ public class CameraFilterDialog extends BDialog implements RenderListener {
      */
     @Override
     public void imageComplete(ComplexImage image) {
+        image.setHalfPrecision(true);
         unfilteredImage = image;
         displayImage = image.getImage();
         doneFiltering = false;
@@ -351,8 +351,10 @@ public final class ExternalObjectEditingWindow extends JDialog {
             var root = new DefaultMutableTreeNode("Scene: " + path);
             var model = new DefaultTreeModel(root, true);
 
-            var scene = new Scene(path, true);
-            scene.getObjects().stream().filter(item -> item.getParent() == null).forEach(item -> {
+            // If the scene is indexed, the hierarchy can be shown without loading any objects.
+            var index = SceneIndex.read(path);
+            var items = (index == null ? new Scene(path, true).getObjects().stream().filter(item -> item.getParent() == null).toList() : index.createOutline());
+            items.forEach(item -> {
                 var sNode = new SceneItemNode(item);
                 root.add(sNode);
             });
@@ -151,6 +151,7 @@ public class LayoutWindow extends BFrame implements EditingWindow, PopupMenuMana
     private boolean sceneChangePending;
     private boolean objectListShown;
     private final KeyEventPostProcessor keyEventHandler;
+    private final javax.swing.Timer journalTimer;
 
     private final SceneChangedEvent sceneChangedEvent = new SceneChangedEvent(this);
 
@@ -317,6 +318,16 @@ public class LayoutWindow extends BFrame implements EditingWindow, PopupMenuMana
             }
         };
         KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventPostProcessor(keyEventHandler);
+
+        // Record unsaved changes in a journal, so they can be recovered if the program exits
+        // without saving them. A scene which was recovered from a journal already has one.
+        if (theScene.getJournal() != null) {
+            modified = theScene.getJournal().isRecovered();
+        } else if (theScene.getName() != null && theScene.getDirectory() != null) {
+            ArtOfIllusion.updateJournal(theScene, new File(theScene.getDirectory(), theScene.getName()));
+        }
+        journalTimer = new javax.swing.Timer(SceneJournal.FLUSH_INTERVAL, event -> flushJournal());
+        journalTimer.start();
         this.getComponent().addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
@@ -1081,12 +1092,32 @@ public class LayoutWindow extends BFrame implements EditingWindow, PopupMenuMana
     @Override
     public void setModified() {
         modified = true;
+        if (theScene.getJournal() != null) {
+            theScene.getJournal().sceneModified();
+        }
+        PreviewFrameCache.sceneModified(theScene);
         for (ViewerCanvas view : theView) {
             view.viewChanged(false);
         }
         dispatchSceneChangedEvent();
     }
 
+    /**
+     * Append any unsaved changes to the scene's journal. They are copied here, and written in the
+     * background, which logs any error writing them.
+     */
+    private void flushJournal() {
+        SceneJournal journal = theScene.getJournal();
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.flush();
+        } catch (IOException ex) {
+            log.atError().setCause(ex).log("Error writing scene journal: {}", ex.getMessage());
+        }
+    }
+
     /**
      * Cause a SceneChangedEvent to be dispatched to this window's listeners.
      */
@@ -2593,6 +2624,10 @@ public class LayoutWindow extends BFrame implements EditingWindow, PopupMenuMana
     public void dispose() {
         super.dispose();
         org.greenrobot.eventbus.EventBus.getDefault().unregister(this);
+        journalTimer.stop();
+        if (theScene.getJournal() != null) {
+            theScene.getJournal().close();
+        }
         KeyboardFocusManager.getCurrentKeyboardFocusManager().removeKeyEventPostProcessor(keyEventHandler);
     }
 
@@ -1,6 +1,6 @@
 /* Copyright (C) 1999-2009 by Peter Eastman
    Modifications Copyright (C) Petri Ihalainen 2016
-   Changes copyright (C) 2023-2024 by Maksim Khramov
+   Changes copyright (C) 2023-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -19,7 +19,9 @@ import artofillusion.math.*;
 import buoy.widget.*;
 import lombok.Getter;
 
+import java.awt.*;
 import java.util.*;
+import java.util.List;
 
 /**
  * MeshViewer is an abstract subclass of ViewerCanvas used for displaying Mesh objects.
@@ -37,12 +39,104 @@ public abstract class MeshViewer extends ObjectViewer {
     private int selectedJoint;
     private boolean detachSkeleton;
     private final List<Integer> lockedJoints;
+    private final ScreenGrid[] screenGrids = new ScreenGrid[3];
 
     public MeshViewer(MeshEditController controller, RowContainer p) {
         super(controller, p);
         lockedJoints = new Vector<>();
     }
 
+    /**
+     * Discard the indices used by {@link #findElements(int, Rectangle)}. Subclasses should call
+     * this whenever they recalculate the screen positions of the mesh, and editors should call it
+     * whenever they replace the mesh or change its topology.
+     */
+    public void screenPositionsChanged() {
+        Arrays.fill(screenGrids, null);
+    }
+
+    @Override
+    public void viewChanged(boolean selectionOnly) {
+        if (!selectionOnly) {
+            screenPositionsChanged();
+        }
+        super.viewChanged(selectionOnly);
+    }
+
+    /**
+     * Find the vertices, edges, or faces which may overlap a rectangle on the screen. The index for
+     * each selection mode is built the first time it is needed after the screen positions change.
+     *
+     * @param mode the selection mode (POINT_MODE, EDGE_MODE, or FACE_MODE) defining which elements to find
+     * @param r the rectangle to search
+     * @return the indices of the elements which may overlap it, in increasing order, or null if
+     * this viewer cannot index them
+     */
+    protected int[] findElements(int mode, Rectangle r) {
+        if (screenGrids[mode] == null) {
+            int[] bounds = findElementBounds(mode);
+            if (bounds == null) {
+                return null;
+            }
+            Rectangle size = getBounds();
+            screenGrids[mode] = new ScreenGrid(size.width, size.height, bounds);
+        }
+        return screenGrids[mode].findElements(r);
+    }
+
+    /**
+     * Find the vertices, edges, or faces which may overlap a rectangle on the screen, like
+     * {@link #findElements(int, Rectangle)}. If this viewer cannot index them, every element is
+     * returned. Indices which are not less than the number of elements are left out, since the
+     * index may still describe the mesh from before its last change.
+     *
+     * @param mode the selection mode (POINT_MODE, EDGE_MODE, or FACE_MODE) defining which elements to find
+     * @param r the rectangle to search
+     * @param count the number of elements
+     * @return the indices of the elements which may overlap it, in increasing order
+     */
+    protected int[] findElements(int mode, Rectangle r, int count) {
+        int[] found = findElements(mode, r);
+        if (found == null) {
+            found = new int[count];
+            Arrays.setAll(found, i -> i);
+            return found;
+        }
+        int end = found.length;
+        while (end > 0 && found[end - 1] >= count) {
+            end--;
+        }
+        return (end == found.length ? found : Arrays.copyOf(found, end));
+    }
+
+    /**
+     * Get the screen bounding boxes of the vertices, edges, or faces, in the format used by
+     * {@link ScreenGrid}. Subclasses which support {@link #findElements(int, Rectangle)} should
+     * override this. The default implementation returns null.
+     *
+     * @param mode the selection mode (POINT_MODE, EDGE_MODE, or FACE_MODE) defining which elements to return
+     */
+    protected int[] findElementBounds(int mode) {
+        return null;
+    }
+
+    /**
+     * Set the bounding box of an element in an array of bounds to enclose a set of screen points.
+     */
+    protected static void setElementBounds(int[] bounds, int index, Point... p) {
+        int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE, maxx = Integer.MIN_VALUE, maxy = Integer.MIN_VALUE;
+        for (Point point : p) {
+            minx = Math.min(minx, point.x);
+            miny = Math.min(miny, point.y);
+            maxx = Math.max(maxx, point.x);
+            maxy = Math.max(maxy, point.y);
+        }
+        bounds[4 * index] = minx;
+        bounds[4 * index + 1] = miny;
+        bounds[4 * index + 2] = maxx;
+        bounds[4 * index + 3] = maxy;
+    }
+
     /**
      * Set the selected joint.
      */
@@ -0,0 +1,262 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * A ParallelGZIPOutputStream compresses data in the gzip format using multiple threads. The data
+ * is split into fixed size blocks, each of which is compressed independently and written as a
+ * separate gzip member. The result is a valid multi-member gzip file, which can be read with
+ * {@link GZIPInputStream}.
+ * <p>
+ * Compressing blocks independently costs a little compression, since matches cannot refer back
+ * into the previous block, but with the default block size the difference is very small.
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+
+    /**
+     * The number of uncompressed bytes in each block.
+     */
+    public static final int BLOCK_SIZE = 128 * 1024;
+
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    private static final ExecutorService compressionExecutor = Executors.newFixedThreadPool(THREADS, task -> {
+        Thread thread = new Thread(task, "Parallel gzip compression");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final int level;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final List<Long> memberOffset = new ArrayList<>();
+    private long compressedLength;
+    private int members;
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength;
+    private boolean empty = true;
+    private boolean closed;
+
+    /**
+     * Create a stream which compresses with the default compression level.
+     *
+     * @param out the stream to write the compressed data to
+     */
+    public ParallelGZIPOutputStream(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Create a stream which compresses with a specified compression level.
+     *
+     * @param out the stream to write the compressed data to
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+     *              or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int level) {
+        super(out);
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        this.level = level;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (blockLength == block.length) {
+            submitBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        ensureOpen();
+        while (len > 0) {
+            if (blockLength == block.length) {
+                submitBlock();
+            }
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Compress any buffered data, and write all compressed data to the underlying stream. This
+     * ends the current block, so calling it frequently reduces the compression ratio.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        writeCompleted(0);
+        out.flush();
+    }
+
+    /**
+     * End the current gzip member, so that any data written after this begins a new one. This
+     * makes it possible to decompress that data without reading what comes before it.
+     *
+     * @return the index of the member which the next data written will begin
+     */
+    public int endMember() throws IOException {
+        ensureOpen();
+        if (blockLength > 0) {
+            submitBlock();
+        }
+        return members;
+    }
+
+    /**
+     * Get the number of compressed bytes which precede a gzip member. This can only be called for
+     * members which have already been written to the underlying stream, or for the member after the
+     * last one once {@link #finish()} has been called.
+     *
+     * @param member a value returned by {@link #endMember()}
+     */
+    public long getCompressedOffset(int member) {
+        if (member < memberOffset.size()) {
+            return memberOffset.get(member);
+        }
+        if (member == members && pending.isEmpty()) {
+            return compressedLength;
+        }
+        throw new IllegalStateException("Member " + member + " has not been written");
+    }
+
+    /**
+     * Finish writing compressed data to the underlying stream without closing it.
+     */
+    public void finish() throws IOException {
+        ensureOpen();
+
+        // An empty stream still needs one member to be a valid gzip file.
+
+        if (blockLength > 0 || empty) {
+            submitBlock();
+        }
+        writeCompleted(0);
+    }
+
+    /**
+     * Finish writing compressed data and close the underlying stream. If compression fails, the
+     * underlying stream is left open, so that the caller can discard the partial output.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            finish();
+        } catch (IOException | RuntimeException ex) {
+            closed = true;
+            pending.forEach(task -> task.cancel(true));
+            pending.clear();
+            throw ex;
+        }
+        closed = true;
+        out.close();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Start compressing the current block, and begin a new one. To limit the memory used when
+     * the data is produced faster than it can be compressed, this waits for earlier blocks when
+     * too many are pending.
+     */
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int length = blockLength;
+        pending.add(compressionExecutor.submit(() -> compress(data, length, level)));
+        block = new byte[BLOCK_SIZE];
+        blockLength = 0;
+        members++;
+        empty = false;
+        writeCompleted(2 * THREADS);
+    }
+
+    /**
+     * Write compressed blocks to the underlying stream in order, until no more than a given
+     * number are still pending.
+     */
+    private void writeCompleted(int maxPending) throws IOException {
+        while (pending.size() > maxPending || (!pending.isEmpty() && pending.peek().isDone())) {
+            byte[] compressed;
+            try {
+                compressed = pending.peek().get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException ex) {
+                throw new IOException("Error compressing data", ex.getCause());
+            }
+            pending.remove();
+            out.write(compressed);
+            memberOffset.add(compressedLength);
+            compressedLength += compressed.length;
+        }
+    }
+
+    /**
+     * Compress a block of data into a complete gzip member.
+     */
+    static byte[] compress(byte[] data, int length, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        Deflater deflater = new Deflater(level, true);
+        ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 64);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            result.write(HEADER, 0, HEADER.length);
+            byte[] buffer = new byte[16384];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                result.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeInt(result, (int) crc.getValue());
+        writeInt(result, length);
+        return result.toByteArray();
+    }
+
+    /**
+     * Write an int in little endian order, as used in the gzip trailer.
+     */
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+}
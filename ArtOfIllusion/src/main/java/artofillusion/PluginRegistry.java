@@ -23,6 +23,7 @@ import java.net.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.zip.*;
@@ -34,10 +35,21 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 
+/**
+ * PluginRegistry keeps track of the plugins, categories, resources, and exported methods which
+ * are available to the application.
+ * <p>
+ * The description of every jar in the Plugins directory is saved in an index file, together with
+ * the classes and interfaces each plugin class extends. Jars whose path, size, and modification
+ * time have not changed since the index was written are registered from the index, without
+ * opening them. Plugins from jars are not created until they are first requested.
+ */
 @Slf4j
 public class PluginRegistry {
     private static final XStream xstream = new XStream(new StaxDriver());
 
+    private static final short INDEX_VERSION = 1;
+
     private static final Class<?>[] TYPES = {Extension.class, Category.class, PluginDef.class, ImportDef.class, Export.class, History.class,
             LogRecord.class, Resource.class, External.class, Fileset.class, FilesetItem.class};
 
@@ -48,10 +60,11 @@ public class PluginRegistry {
     }
     private static final ArrayList<ClassLoader> pluginLoaders = new ArrayList<>();
     private static final Set<Class<?>> categories = new HashSet<>();
-    private static final Map<Class<?>, List<Object>> categoryClasses = new HashMap<>();
+    private static final Map<Class<?>, List<PluginEntry>> categoryClasses = new HashMap<>();
     private static final Map<String, Map<String, PluginResource>> resources = new HashMap<>();
     private static final Map<String, ExportInfo> exports = new HashMap<>();
-    private static final Map<String, Object> classMap = new HashMap<>();
+    private static final Map<String, PluginEntry> classMap = new HashMap<>();
+    private static final List<String> loadErrors = Collections.synchronizedList(new ArrayList<>());
 
     static {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -63,9 +76,9 @@ public class PluginRegistry {
     @SuppressWarnings("ThrowableResultIgnored")
     public static Map<String, Throwable> notifyPlugins(int message, Object... args) {
         Map<String, Throwable> errors = new HashMap<>();
-        categoryClasses.getOrDefault(Plugin.class, Collections.emptyList()).forEach(plugin -> {
+        getPlugins(Plugin.class).forEach(plugin -> {
             try {
-                ((Plugin) plugin).processMessage(message, args);
+                plugin.processMessage(message, args);
             } catch (Exception tx) {
                 log.atInfo().setCause(tx).log("Plugin: {} error due: {}", plugin.getClass().getSimpleName(), tx.getMessage());
                 errors.put(plugin.getClass().getSimpleName(), tx);
@@ -79,38 +92,113 @@ public class PluginRegistry {
      * contained in them.
      */
     public static List<String> scanPlugins() {
-        Path pluginsPath = Paths.get(ArtOfIllusion.PLUGIN_DIRECTORY);
+        Path prefs = ApplicationPreferences.getPreferencesFolderPath();
+        return scanPlugins(Paths.get(ArtOfIllusion.PLUGIN_DIRECTORY), prefs == null ? null : prefs.resolve("plugins.index"));
+    }
+
+    /**
+     * Scan all jar files in a directory and record the plugins contained in them.
+     *
+     * @param pluginsPath the directory containing the plugins
+     * @param indexPath the index file describing the jars, or null if none should be used
+     */
+    static List<String> scanPlugins(Path pluginsPath, Path indexPath) {
         if (Files.notExists(pluginsPath)) {
-            return Arrays.asList(Translate.text("cannotLocatePlugins"));
+            return new ArrayList<>(List.of(Translate.text("cannotLocatePlugins")));
         }
 
-        // Scan the plugins directory, and parse the index in every jar file.
-
-        Set<JarInfo> jars = new HashSet<>();
-        List<String> results = new ArrayList<>();
+        // Scan the plugins directory in parallel. Jars which are listed in the index are taken
+        // from it, and the index in every other jar file is parsed.
 
-
-
-        for (File file : pluginsPath.toFile().listFiles(f -> f.isFile() && f.getName().endsWith(".jar"))) {
+        Map<String, JarInfo> index = readIndex(indexPath);
+        List<String> results = Collections.synchronizedList(new ArrayList<>());
+        File[] files = pluginsPath.toFile().listFiles(f -> f.isFile() && f.getName().endsWith(".jar"));
+        List<JarInfo> scanned = Arrays.stream(files).parallel().map(file -> {
+            JarInfo jar = index.get(file.getAbsolutePath());
+            if (jar != null && jar.size == file.length() && jar.modified == file.lastModified()) {
+                return jar;
+            }
             try {
-                jars.add(new JarInfo(file));
+                return new JarInfo(file);
             } catch (IOException ex) {
                 // Not a zip file.
             } catch (Exception ex) {
                 results.add("Error loading plugin file: " + file);
                 log.atError().setCause(ex).log("Error loading file: {} due {}", file, ex.getMessage());
             }
-        }
+            return null;
+        }).filter(Objects::nonNull).toList();
+        Set<JarInfo> jars = new HashSet<>(scanned);
         try {
-            Set<String> blacklist = Files.lines(Paths.get(ArtOfIllusion.PLUGIN_DIRECTORY, "blacklist")).collect(Collectors.toSet());
+            Set<String> blacklist = Files.lines(pluginsPath.resolve("blacklist")).collect(Collectors.toSet());
             jars.removeIf(jar -> blacklist.contains(jar.getName()));
         } catch (IOException e) {
             log.info("No blacklist file found");
         }
         processPlugins(jars, results);
+        if (indexPath != null && (scanned.size() != index.size() || scanned.stream().anyMatch(jar -> !jar.indexed))) {
+            writeIndex(indexPath, scanned);
+        }
         return results;
     }
 
+    /**
+     * Get a string which identifies the version of the application. An index written by a
+     * different version is ignored, since the classes plugins extend may have changed.
+     */
+    private static String getIndexKey() {
+        return ArtOfIllusion.getVersion() + " " + ArtOfIllusion.getBuildInfo();
+    }
+
+    /**
+     * Read the index of plugin jars. This returns a map from the path of each jar to its
+     * description, which is empty if there is no valid index.
+     */
+    private static Map<String, JarInfo> readIndex(Path indexPath) {
+        Map<String, JarInfo> index = new HashMap<>();
+        if (indexPath == null || Files.notExists(indexPath)) {
+            return index;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readShort() != INDEX_VERSION || !in.readUTF().equals(getIndexKey())) {
+                return index;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                JarInfo jar = new JarInfo(in);
+                index.put(jar.file.getAbsolutePath(), jar);
+            }
+        } catch (IOException ex) {
+            log.atInfo().setCause(ex).log("Unable to read plugin index {}: {}", indexPath, ex.getMessage());
+            index.clear();
+        }
+        return index;
+    }
+
+    /**
+     * Write the index of plugin jars. It is written to a temporary file which then replaces the
+     * old index, so other instances of the application never see a partial index.
+     */
+    private static void writeIndex(Path indexPath, List<JarInfo> jars) {
+        try {
+            Path temp = Files.createTempFile(indexPath.getParent(), "plugins", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeShort(INDEX_VERSION);
+                out.writeUTF(getIndexKey());
+                out.writeInt(jars.size());
+                for (JarInfo jar : jars) {
+                    jar.writeIndex(out);
+                }
+            } catch (IOException ex) {
+                Files.delete(temp);
+                throw ex;
+            }
+            Files.move(temp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.atError().setCause(ex).log("Unable to write plugin index {}: {}", indexPath, ex.getMessage());
+        }
+    }
+
     private static void processPlugins(Set<JarInfo> jars, List<String> results) {
         // Build a classloader for each jar, registering plugins, categories, and resources.
         // This needs to be done in the proper order to account for dependencies between plugins.
@@ -187,20 +275,33 @@ public class PluginRegistry {
                 }
             }
             pluginLoaders.add(jar.loader);
-            Map<String, Object> classNameMap = new HashMap<>();
+            Map<String, PluginEntry> classNameMap = new HashMap<>();
             if (jar.getName() != null && !jar.getName().isEmpty()) {
                 nameMap.put(jar.getName(), jar);
             }
             for (String category : jar.getCategories()) {
                 addCategory(jar.loader.loadClass(category));
             }
+
+            // The classes a plugin extends may come from the jars it imports, so they must be
+            // found again if any of those has changed.
+
+            if (jar.getImports().stream().anyMatch(importName -> !nameMap.get(importName).indexed)) {
+                jar.indexed = false;
+                jar.types.clear();
+            }
             for (String pluginName : jar.plugins) {
-                Object plugin = jar.loader.loadClass(pluginName).getDeclaredConstructor().newInstance();
-                registerPlugin(plugin);
-                classNameMap.put(pluginName, plugin);
+                List<String> types = jar.types.get(pluginName);
+                if (types == null) {
+                    types = getTypes(Class.forName(pluginName, false, jar.loader));
+                    jar.types.put(pluginName, types);
+                }
+                PluginEntry entry = new PluginEntry(pluginName, types, jar.loader);
+                registerPlugin(entry);
+                classNameMap.put(pluginName, entry);
             }
             for (ExportInfo info : jar.exports) {
-                info.plugin = classNameMap.get(info.className);
+                info.entry = classNameMap.get(info.className);
                 registerExportedMethod(info);
             }
             jar.getResources().forEach(info -> registerResource(info.getType(), info.getId(), jar.loader, info.getName(), info.getLocale()));
@@ -242,22 +343,62 @@ public class PluginRegistry {
      * added to the list of plugins in that category.
      */
     public static void registerPlugin(Object plugin) {
-        classMap.put(plugin.getClass().getName(), plugin);
+        registerPlugin(new PluginEntry(plugin));
+    }
+
+    private static void registerPlugin(PluginEntry entry) {
+        classMap.put(entry.className, entry);
         for (Class<?> category : categories) {
-            if (category.isInstance(plugin)) {
-                List<Object> instances = categoryClasses.computeIfAbsent(category, k -> new ArrayList<>());
-                instances.add(plugin);
+            if (entry.types.contains(category.getName())) {
+                List<PluginEntry> instances = categoryClasses.computeIfAbsent(category, k -> new ArrayList<>());
+                instances.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Get the names of a class and of all classes and interfaces it extends or implements.
+     */
+    private static List<String> getTypes(Class<?> cls) {
+        Set<String> types = new LinkedHashSet<>();
+        Deque<Class<?>> pending = new ArrayDeque<>();
+        pending.add(cls);
+        while (!pending.isEmpty()) {
+            Class<?> type = pending.poll();
+            if (types.add(type.getName())) {
+                if (type.getSuperclass() != null) {
+                    pending.add(type.getSuperclass());
+                }
+                pending.addAll(Arrays.asList(type.getInterfaces()));
             }
         }
+        return new ArrayList<>(types);
     }
 
     /**
-     * Get all registered plugins in a particular category.
+     * Get all registered plugins in a particular category. Plugins which have not been used yet
+     * are created first.
      */
     public static <T> List<T> getPlugins(Class<T> category) {
-        var plugins = categoryClasses.getOrDefault(category, new ArrayList<>());
-        return new ArrayList<T>((Collection<? extends T>) plugins);
+        List<T> plugins = new ArrayList<>();
+        for (PluginEntry entry : categoryClasses.getOrDefault(category, List.of())) {
+            Object plugin = entry.getPlugin();
+            if (plugin != null) {
+                plugins.add(category.cast(plugin));
+            }
+        }
+        return plugins;
+    }
 
+    /**
+     * Get a message for every plugin which could not be created when it was first needed. Plugins
+     * from jar files are only created then, so these are not among the errors returned by
+     * {@link #scanPlugins()}.
+     */
+    public static List<String> getLoadErrors() {
+        synchronized (loadErrors) {
+            return new ArrayList<>(loadErrors);
+        }
     }
 
     /**
@@ -270,7 +411,8 @@ public class PluginRegistry {
      * @return the plugin object of the specified class, or null if no matching plugin has been registered
      */
     public static Object getPluginObject(String className) {
-        return classMap.get(className);
+        PluginEntry entry = classMap.get(className);
+        return entry == null ? null : entry.getPlugin();
     }
 
     /**
@@ -339,7 +481,7 @@ public class PluginRegistry {
      */
     public static void registerExportedMethod(Object plugin, String method, String id) throws IllegalArgumentException {
         ExportInfo info = new ExportInfo();
-        info.plugin = plugin;
+        info.entry = new PluginEntry(plugin);
         info.method = method;
         info.id = id;
         registerExportedMethod(info);
@@ -375,14 +517,18 @@ public class PluginRegistry {
         if (info == null) {
             throw new NoSuchMethodException("There is no exported method with id=" + id);
         }
+        Object plugin = info.entry.getPlugin();
+        if (plugin == null) {
+            throw new NoSuchMethodException("The plugin which exports id=" + id + " could not be created");
+        }
 
         // Try to find a method to invoke.
-        for (Method method : info.plugin.getClass().getMethods()) {
+        for (Method method : plugin.getClass().getMethods()) {
             if (!method.getName().equals(info.method)) {
                 continue;
             }
             try {
-                return method.invoke(info.plugin, args);
+                return method.invoke(plugin, args);
             } catch (IllegalArgumentException ex) {
                 // Possibly the wrong version of an overloaded method, so keep trying.
             } catch (IllegalAccessException ex) {
@@ -402,10 +548,18 @@ public class PluginRegistry {
         @Getter
         final File file;
 
-        private Extension ext = new Extension();
+        final long size;
+        final long modified;
+
+        /**
+         * Whether this description was read from the index, and is still valid.
+         */
+        boolean indexed;
+
+        private String name;
 
         public String getName() {
-            return ext.getName() == null ? file.getName() : ext.getName();
+            return name == null ? file.getName() : name;
         }
 
         String version;
@@ -423,17 +577,24 @@ public class PluginRegistry {
         @Getter
         final List<String> searchPath = new ArrayList<>();
 
-        public List<Resource> getResources() {
-            return ext.getResources();
-        }
+        @Getter
+        final List<Resource> resources = new ArrayList<>();
 
         final List<ExportInfo> exports = new ArrayList<>();
 
+        /**
+         * Maps the name of each plugin class to the names of the classes and interfaces it
+         * extends or implements, once they are known.
+         */
+        final Map<String, List<String>> types = new HashMap<>();
+
         @Getter
         private ClassLoader loader;
 
         JarInfo(File file) throws IOException {
             this.file = file;
+            size = file.length();
+            modified = file.lastModified();
 
             try (ZipFile zf = new ZipFile(file)) {
                 ZipEntry ze = zf.getEntry("extensions.xml");
@@ -456,6 +617,7 @@ public class PluginRegistry {
 
         private void loadExtensionsFile(InputStream in) throws IOException {
 
+            Extension ext;
             try {
                 ext = (Extension)xstream.fromXML(in);
             } catch (Exception ex) {
@@ -463,6 +625,8 @@ public class PluginRegistry {
                 throw new IOException();
             }
 
+            name = ext.getName();
+            resources.addAll(ext.getResources());
             version = ext.getVersion();
             authors = String.join(", ", ext.getAuthors());
             categories.addAll(ext.getCategoryList().stream().map(Category::getCategory).toList());
@@ -486,6 +650,133 @@ public class PluginRegistry {
 
         }
 
+        /**
+         * Read the description of a jar from the plugin index.
+         */
+        JarInfo(DataInputStream in) throws IOException {
+            file = new File(in.readUTF());
+            size = in.readLong();
+            modified = in.readLong();
+            indexed = true;
+            name = readString(in);
+            version = readString(in);
+            authors = readString(in);
+            readList(in, imports);
+            readList(in, plugins);
+            readList(in, categories);
+            readList(in, searchPath);
+            for (int i = in.readInt(); i > 0; i--) {
+                String type = readString(in), id = readString(in), resourceName = readString(in), locale = readString(in);
+                resources.add(new Resource(type, id, resourceName, locale == null ? null : Locale.forLanguageTag(locale)));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                exports.add(new ExportInfo(readString(in), readString(in), readString(in)));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String pluginName = in.readUTF();
+                types.put(pluginName, readList(in, new ArrayList<>()));
+            }
+        }
+
+        /**
+         * Write the description of this jar to the plugin index.
+         */
+        void writeIndex(DataOutputStream out) throws IOException {
+            out.writeUTF(file.getAbsolutePath());
+            out.writeLong(size);
+            out.writeLong(modified);
+            writeString(out, name);
+            writeString(out, version);
+            writeString(out, authors);
+            writeList(out, imports);
+            writeList(out, plugins);
+            writeList(out, categories);
+            writeList(out, searchPath);
+            out.writeInt(resources.size());
+            for (Resource resource : resources) {
+                writeString(out, resource.getType());
+                writeString(out, resource.getId());
+                writeString(out, resource.getName());
+                writeString(out, resource.getLocale() == null ? null : resource.getLocale().toLanguageTag());
+            }
+            out.writeInt(exports.size());
+            for (ExportInfo export : exports) {
+                writeString(out, export.id);
+                writeString(out, export.method);
+                writeString(out, export.className);
+            }
+            out.writeInt(types.size());
+            for (Map.Entry<String, List<String>> entry : types.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeList(out, entry.getValue());
+            }
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static List<String> readList(DataInputStream in, List<String> list) throws IOException {
+            for (int i = in.readInt(); i > 0; i--) {
+                list.add(in.readUTF());
+            }
+            return list;
+        }
+
+        private static void writeList(DataOutputStream out, List<String> list) throws IOException {
+            out.writeInt(list.size());
+            for (String value : list) {
+                out.writeUTF(value);
+            }
+        }
+    }
+
+    /**
+     * A registered plugin. Plugins from jar files are described by the name of their class and
+     * the ClassLoader for it, and are not created until they are first needed.
+     */
+    private static class PluginEntry {
+        final String className;
+        final List<String> types;
+        private final ClassLoader loader;
+        private Object plugin;
+        private boolean failed;
+
+        PluginEntry(Object plugin) {
+            className = plugin.getClass().getName();
+            types = getTypes(plugin.getClass());
+            loader = null;
+            this.plugin = plugin;
+        }
+
+        PluginEntry(String className, List<String> types, ClassLoader loader) {
+            this.className = className;
+            this.types = types;
+            this.loader = loader;
+        }
+
+        /**
+         * Get the plugin object, creating it if necessary. This returns null if it could not be created.
+         */
+        synchronized Object getPlugin() {
+            if (plugin == null && !failed) {
+                try {
+                    plugin = loader.loadClass(className).getDeclaredConstructor().newInstance();
+                } catch (Error | Exception ex) {
+                    failed = true;
+                    loadErrors.add(Translate.text("pluginLoadError", className.substring(className.lastIndexOf('.') + 1)));
+                    log.atError().setCause(ex).log("Plugin {} initialization error: {}", className, ex.getMessage());
+                }
+            }
+            return plugin;
+        }
     }
 
     /**
@@ -601,7 +892,7 @@ public class PluginRegistry {
         String method;
         String id;
         String className;
-        Object plugin;
+        PluginEntry entry;
 
         ExportInfo() {
         }
@@ -42,7 +42,7 @@ public class PreferencesWindow {
     private ValueField animationFrameRateField;
     private BCheckBox drawActiveFrustumBox, drawCameraFrustumBox, showTravelCuesOnIdleBox, showTravelCuesScrollingBox;
     private BCheckBox showTiltDialBox;
-    private BCheckBox glBox, backupBox, reverseZoomBox, useViewAnimationsBox;
+    private BCheckBox glBox, backupBox, fastCompressionBox, journalBox, reverseZoomBox, useViewAnimationsBox;
 
     private static int lastTab;
     private boolean cameraFrustumState, travelCuesState;
@@ -90,6 +90,8 @@ public class PreferencesWindow {
 
         preferences.setUseOpenGL(glBox.getState());
         preferences.setKeepBackupFiles(backupBox.getState());
+        preferences.setFastSceneCompression(fastCompressionBox.getState());
+        preferences.setJournalScenes(journalBox.getState());
         preferences.setReverseZooming(reverseZoomBox.getState());
         preferences.setUseViewAnimations(useViewAnimationsBox.getState());
         preferences.setMaxAnimationDuration(animationDurationField.getValue());
@@ -147,6 +149,8 @@ public class PreferencesWindow {
         glBox = new BCheckBox(Translate.text("useOpenGL"), prefs.getUseOpenGL());
         glBox.setEnabled(ViewerCanvas.isOpenGLAvailable());
         backupBox = new BCheckBox(Translate.text("keepBackupFiles"), prefs.getKeepBackupFiles());
+        fastCompressionBox = new BCheckBox(Translate.text("fastSceneCompression"), prefs.getFastSceneCompression());
+        journalBox = new BCheckBox(Translate.text("journalScenes"), prefs.getJournalScenes());
         reverseZoomBox = new BCheckBox(Translate.text("reverseScrollWheelZooming"), prefs.getReverseZooming());
 
         useViewAnimationsBox = new BCheckBox(Translate.text("useViewAnimations"), prefs.getUseViewAnimations());
@@ -227,7 +231,7 @@ public class PreferencesWindow {
 
 
         // Layout the panel.
-        FormContainer panel = new FormContainer(3, 20);
+        FormContainer panel = new FormContainer(3, 22);
         LayoutInfo labelLayout = new LayoutInfo(LayoutInfo.EAST, LayoutInfo.NONE, new Insets(2, 5, 2, 5), null);
         LayoutInfo widgetLayout = new LayoutInfo(LayoutInfo.WEST, LayoutInfo.BOTH, new Insets(2, 0, 2, 0), null);
 
@@ -270,6 +274,8 @@ public class PreferencesWindow {
         panel.add(showTravelCuesOnIdleBox, 1, 17, 2, 1, widgetLayout);
         panel.add(showTravelCuesScrollingBox, 1, 18, 2, 1, widgetLayout);
         panel.add(showTiltDialBox, 1, 19, 2, 1, widgetLayout);
+        panel.add(fastCompressionBox, 1, 20, 2, 1, widgetLayout);
+        panel.add(journalBox, 1, 21, 2, 1, widgetLayout);
 
         return panel;
     }
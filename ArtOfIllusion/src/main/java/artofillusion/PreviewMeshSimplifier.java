@@ -0,0 +1,237 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.texture.*;
+import java.util.*;
+
+/**
+ * PreviewMeshSimplifier creates reduced detail versions of the meshes used for interactive
+ * previews, so that objects which only cover a small part of the screen can be drawn quickly.
+ * <p>
+ * Unlike {@link TriMeshSimplifier}, which carefully collapses edges one at a time to produce a
+ * new TriangleMesh, this uses vertex clustering: space is divided into a grid of cubic cells, all
+ * the vertices in each cell are merged into the one closest to their average, and any triangles
+ * or edges which collapse to nothing are discarded. This takes time proportional to the size of
+ * the mesh, and the error it introduces is bounded by the size of a cell, so it is easy to decide
+ * which level to use for a given screen size.
+ */
+public class PreviewMeshSimplifier {
+
+    /**
+     * The number of simplified levels. Level 0 is the original mesh, and each level after that
+     * uses cells twice as large as the one before.
+     */
+    public static final int LEVELS = 4;
+
+    /**
+     * Meshes with fewer triangles or edges than this are never simplified.
+     */
+    public static final int MIN_SIZE = 256;
+
+    private static final int LEVEL_1_CELLS = 64;
+
+    private PreviewMeshSimplifier() {
+    }
+
+    /**
+     * Get the width of the cells which are used to simplify a mesh. No vertex moves by more than
+     * the length of a cell's diagonal, which is sqrt(3) times this.
+     *
+     * @param bounds the bounding box of the mesh
+     * @param level the level of detail, from 1 to {@link #LEVELS}
+     */
+    public static double getCellSize(BoundingBox bounds, int level) {
+        Vec3 size = bounds.getSize();
+        double maxSize = Math.max(Math.max(size.x, size.y), size.z);
+        return maxSize * (1 << (level - 1)) / LEVEL_1_CELLS;
+    }
+
+    /**
+     * Create a simplified version of a rendering mesh. The texture and material mappings are
+     * preserved, and the texture parameters of each remaining triangle are taken from the triangle
+     * it was created from. If the mesh is too small to be worth simplifying, it is returned unchanged.
+     *
+     * @param mesh the mesh to simplify
+     * @param level the level of detail, from 1 to {@link #LEVELS}
+     */
+    public static RenderingMesh simplify(RenderingMesh mesh, int level) {
+        if (mesh.triangle.length < MIN_SIZE) {
+            return mesh;
+        }
+        int[] cluster = findClusters(mesh.vert, level);
+        if (cluster == null) {
+            return mesh;
+        }
+        int[] newIndex = new int[mesh.vert.length];
+        Vec3[] newVert = compact(mesh.vert, cluster, newIndex);
+
+        // Build the new triangles, skipping degenerate and duplicate ones.
+
+        List<RenderingTriangle> newTriangles = new ArrayList<>();
+        List<RenderingTriangle> origTriangles = new ArrayList<>();
+        Set<List<Integer>> found = new HashSet<>();
+        for (RenderingTriangle tri : mesh.triangle) {
+            int v1 = newIndex[tri.v1], v2 = newIndex[tri.v2], v3 = newIndex[tri.v3];
+            if (v1 == v2 || v2 == v3 || v3 == v1) {
+                continue;
+            }
+            int first = Math.min(v1, Math.min(v2, v3));
+            List<Integer> key = (first == v1 ? List.of(v1, v2, v3) : first == v2 ? List.of(v2, v3, v1) : List.of(v3, v1, v2));
+            if (!found.add(key)) {
+                continue;
+            }
+            newTriangles.add(mesh.mapping.mapTriangle(v1, v2, v3, tri.n1, tri.n2, tri.n3, newVert));
+            origTriangles.add(tri);
+        }
+        if (newTriangles.isEmpty()) {
+            return mesh;
+        }
+        RenderingMesh simplified = new RenderingMesh(newVert, mesh.norm.clone(), newTriangles.toArray(RenderingTriangle[]::new), mesh.mapping, mesh.matMapping);
+
+        // Copy the texture parameters from the original triangles.
+
+        if (mesh.param != null) {
+            ParameterValue[] param = mesh.param;
+            double[] val1 = new double[param.length];
+            double[] val2 = new double[param.length];
+            double[] val3 = new double[param.length];
+            for (int i = 0; i < simplified.triangle.length; i++) {
+                RenderingTriangle orig = origTriangles.get(i);
+                for (int j = param.length - 1; j >= 0; j--) {
+                    val1[j] = param[j].getValue(orig.index, orig.v1, orig.v2, orig.v3, 1.0, 0.0, 0.0);
+                    val2[j] = param[j].getValue(orig.index, orig.v1, orig.v2, orig.v3, 0.0, 1.0, 0.0);
+                    val3[j] = param[j].getValue(orig.index, orig.v1, orig.v2, orig.v3, 0.0, 0.0, 1.0);
+                }
+                simplified.mapping.setParameters(simplified.triangle[i], val1, val2, val3, simplified);
+            }
+        }
+        return simplified;
+    }
+
+    /**
+     * Create a simplified version of a wireframe mesh. If the mesh is too small to be worth
+     * simplifying, it is returned unchanged.
+     *
+     * @param mesh the mesh to simplify
+     * @param level the level of detail, from 1 to {@link #LEVELS}
+     */
+    public static WireframeMesh simplify(WireframeMesh mesh, int level) {
+        if (mesh.from().length < MIN_SIZE) {
+            return mesh;
+        }
+        int[] cluster = findClusters(mesh.vert(), level);
+        if (cluster == null) {
+            return mesh;
+        }
+        int[] newIndex = new int[mesh.vert().length];
+        Vec3[] newVert = compact(mesh.vert(), cluster, newIndex);
+        int[] from = new int[mesh.from().length];
+        int[] to = new int[mesh.to().length];
+        Set<Long> found = new HashSet<>();
+        int edges = 0;
+        for (int i = 0; i < from.length; i++) {
+            int v1 = newIndex[mesh.from()[i]], v2 = newIndex[mesh.to()[i]];
+            if (v1 == v2 || !found.add(Math.min(v1, v2) * (long) newVert.length + Math.max(v1, v2))) {
+                continue;
+            }
+            from[edges] = v1;
+            to[edges] = v2;
+            edges++;
+        }
+        return new WireframeMesh(newVert, Arrays.copyOf(from, edges), Arrays.copyOf(to, edges));
+    }
+
+    /**
+     * Divide the vertices into clusters. The returned array gives, for each vertex, the index of
+     * the vertex which represents its cluster. This returns null if the vertices do not occupy any
+     * volume.
+     */
+    private static int[] findClusters(Vec3[] vert, int level) {
+        if (vert.length == 0) {
+            return null;
+        }
+        Vec3 min = new Vec3(vert[0]), max = new Vec3(vert[0]);
+        for (Vec3 v : vert) {
+            min.set(Math.min(min.x, v.x), Math.min(min.y, v.y), Math.min(min.z, v.z));
+            max.set(Math.max(max.x, v.x), Math.max(max.y, v.y), Math.max(max.z, v.z));
+        }
+        double cellSize = getCellSize(new BoundingBox(min, max), level);
+        if (!(cellSize > 0.0)) {
+            return null;
+        }
+
+        // Find which cell each vertex is in, and the average position of the vertices in each cell.
+
+        long cellsX = (long) ((max.x - min.x) / cellSize) + 1, cellsY = (long) ((max.y - min.y) / cellSize) + 1;
+        Map<Long, Integer> cellIndex = new HashMap<>();
+        int[] cell = new int[vert.length];
+        List<Vec3> center = new ArrayList<>();
+        List<Integer> count = new ArrayList<>();
+        for (int i = 0; i < vert.length; i++) {
+            long x = (long) ((vert[i].x - min.x) / cellSize), y = (long) ((vert[i].y - min.y) / cellSize), z = (long) ((vert[i].z - min.z) / cellSize);
+            Integer index = cellIndex.get((z * cellsY + y) * cellsX + x);
+            if (index == null) {
+                index = center.size();
+                cellIndex.put((z * cellsY + y) * cellsX + x, index);
+                center.add(new Vec3());
+                count.add(0);
+            }
+            cell[i] = index;
+            center.get(index).add(vert[i]);
+            count.set(index, count.get(index) + 1);
+        }
+        for (int i = 0; i < center.size(); i++) {
+            center.get(i).scale(1.0 / count.get(i));
+        }
+
+        // Represent each cell by the vertex closest to its center.
+
+        int[] best = new int[center.size()];
+        double[] bestDist = new double[center.size()];
+        Arrays.fill(bestDist, Double.MAX_VALUE);
+        for (int i = 0; i < vert.length; i++) {
+            double dist = vert[i].distance2(center.get(cell[i]));
+            if (dist < bestDist[cell[i]]) {
+                bestDist[cell[i]] = dist;
+                best[cell[i]] = i;
+            }
+        }
+        int[] cluster = new int[vert.length];
+        for (int i = 0; i < vert.length; i++) {
+            cluster[i] = best[cell[i]];
+        }
+        return cluster;
+    }
+
+    /**
+     * Build an array containing only the vertices which represent clusters.
+     *
+     * @param vert the original vertices
+     * @param cluster the representative vertex of each original vertex
+     * @param newIndex on exit, this contains the index in the new array of each original vertex's representative
+     */
+    private static Vec3[] compact(Vec3[] vert, int[] cluster, int[] newIndex) {
+        int[] index = new int[vert.length];
+        Arrays.fill(index, -1);
+        List<Vec3> newVert = new ArrayList<>();
+        for (int i = 0; i < vert.length; i++) {
+            int rep = cluster[i];
+            if (index[rep] == -1) {
+                index[rep] = newVert.size();
+                newVert.add(vert[rep]);
+            }
+            newIndex[i] = index[rep];
+        }
+        return newVert.toArray(Vec3[]::new);
+    }
+}
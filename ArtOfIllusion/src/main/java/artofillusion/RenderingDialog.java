@@ -307,6 +307,11 @@ public class RenderingDialog extends BDialog implements RenderListener {
     @Override
     public void imageComplete(ComplexImage image) {
         cameraForFilters = ((SceneCamera) sceneCamera.getObject()).duplicate();
+
+        // The unfiltered image is kept until the window is closed, along with a filtered copy.
+        // Half precision is enough for both of them.
+
+        image.setHalfPrecision(true);
         originalImage = image;
         previewImage = image.getImage();
         canvas.repaint();
@@ -1,5 +1,5 @@
 /* Copyright (C) 1999-2005 by Peter Eastman
-   Changes copyright (C) 2023-2025 by Maksim Khramov
+   Changes copyright (C) 2023-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -69,6 +69,15 @@ public abstract class RenderingTriangle implements Cloneable {
      */
     public abstract double getDisplacement(double u, double v, double w, double size, double t);
 
+    /**
+     * Given the barycentric coordinates for a point in the triangle, get the 2D texture coordinates
+     * at that point. This returns null unless the triangle's properties are found by evaluating a
+     * Texture2D at coordinates which vary linearly over the triangle.
+     */
+    public Vec2 getTextureCoordinates(double u, double v, double w) {
+        return null;
+    }
+
     /**
      * Set the mesh that this triangle is part of. This is automatically called when the
      * triangle is added to the mesh.
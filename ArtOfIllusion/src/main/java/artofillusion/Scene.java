@@ -21,11 +21,15 @@ import artofillusion.object.*;
 import artofillusion.texture.*;
 import artofillusion.ui.*;
 import artofillusion.util.*;
+import artofillusion.view.TextureBaker;
 import java.beans.*;
 import java.io.*;
 import java.lang.reflect.*;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.zip.*;
 
@@ -58,6 +62,7 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
 
     private final Map<String, Object> metadataMap = new HashMap<>();
     private Map<ObjectInfo, Integer> objectIndexMap;
+    private final SceneBVH objectTree = new SceneBVH();
 
     private RGBColor ambientColor = new RGBColor(0.3f, 0.3f, 0.3f);
     private RGBColor environColor = new RGBColor();
@@ -94,10 +99,24 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
     private String name;
     private String directory;
 
+    /**
+     * The journal which records changes to this scene between saves, or null if there is none.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private SceneJournal journal;
+
     private ParameterValue[] environParamValue;
 
     private final List<String> errors = new ArrayList<>();
 
+    /**
+     * Decodes the bodies of materials, textures, and objects while scenes are loaded. This is a
+     * fork/join pool so that a scene which is loaded while decoding another one, such as the
+     * scene an external object refers to, can wait for its bodies without blocking a worker.
+     */
+    private static final ForkJoinPool loadPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     public List<String> getErrors() {
         return Collections.unmodifiableList(errors);
     }
@@ -552,6 +571,7 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
         geo.sceneChanged(info, this);
         objects.add(index, info);
         objectIndexMap = null;
+        objectTree.invalidate();
 
         if (undo != null) {
             undo.addCommandAtBeginning(UndoRecord.DELETE_OBJECT, index);
@@ -574,6 +594,7 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
         ObjectInfo info = objects.get(which);
         objects.remove(which);
         objectIndexMap = null;
+        objectTree.invalidate();
         if (undo != null) {
             undo.addCommandAtBeginning(UndoRecord.ADD_OBJECT, info, which);
         }
@@ -707,6 +728,7 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
      */
     public void changeTexture(int which) {
         Texture tex = textures.get(which);
+        TextureBaker.invalidate(tex);
 
         for (ObjectInfo obj : objects) {
 
@@ -804,6 +826,31 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
         return true;
     }
 
+    /**
+     * Prepare every image which is used by a visible object or by the environment to be
+     * rendered. The images are prepared in parallel, and this returns once all of them are ready.
+     * Images which are only used by hidden objects are left alone.
+     */
+    public void prefetchImages() {
+        List<ImageMap> used = new ArrayList<>();
+        for (ImageMap image : images) {
+            boolean isUsed = environTexture.usesImage(image);
+            for (int i = 0; i < objects.size() && !isUsed; i++) {
+                ObjectInfo info = objects.get(i);
+                if (!info.isVisible()) {
+                    continue;
+                }
+                Texture tex = info.getObject().getTexture();
+                Material mat = info.getObject().getMaterial();
+                isUsed = (tex != null && tex.usesImage(image)) || (mat != null && mat.usesImage(image));
+            }
+            if (isUsed) {
+                used.add(image);
+            }
+        }
+        loadPool.submit(() -> used.parallelStream().forEach(ImageMap::prefetch)).join();
+    }
+
     /**
      * Replace every instance of one object in the scene with another one. If undo is not
      * null, commands will be added to it to undo this operation.
@@ -828,6 +875,9 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
                     item.clearCachedMeshes();
                     item.setPose(null);
                 });
+        if (journal != null) {
+            journal.geometryChanged(obj);
+        }
     }
 
     /**
@@ -925,6 +975,18 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
         return objectIndexMap.getOrDefault(info, -1);
     }
 
+    /**
+     * Find the objects whose bounding boxes, in world coordinates, pass a test. This uses a
+     * bounding volume hierarchy, so the test is also applied to boxes enclosing groups of objects.
+     * It must therefore be conservative: any box which contains a box that passes must also pass.
+     *
+     * @param test the test to apply to each bounding box
+     * @return the indices of the objects which passed, in increasing order
+     */
+    public int[] findObjects(Predicate<BoundingBox> test) {
+        return objectTree.findObjects(objects, test);
+    }
+
 
 
     /**
@@ -1012,84 +1074,115 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
         // Read the image maps.
         SceneIO.readImages(in, this, version);
 
-        Class<?> cls;
-        Constructor<?> con;
+        // Bodies of materials, textures, and objects are stored as separate blocks of bytes, so
+        // they can be decoded in parallel while the rest of the stream is read. Objects need the
+        // materials and textures, so those are finished first. Tracks are only stored as separate
+        // blocks from version 6 on, so older files are read serially.
+        DecodeQueue queue = (version >= 6 ? new DecodeQueue() : null);
 
         // Read the materials.
         int count = in.readInt();
-
+        List<String> names = new ArrayList<>(count);
+        List<Body> bodies = new ArrayList<>(count);
         for (int i = 0; i < count; i++) {
             try {
                 String classname = in.readUTF();
-                int len = in.readInt();
-                byte[] bytes = new byte[len];
-                in.readFully(bytes);
-                cls = ArtOfIllusion.getClass(classname);
-                try {
-                    if (cls == null) {
-                        throw new IOException("Unknown class: " + classname);
-                    }
-                    con = cls.getConstructor(DataInputStream.class, Scene.class);
-                    materials.add((Material) con.newInstance(new DataInputStream(new ByteArrayInputStream(bytes)), this));
-                } catch (IOException | ReflectiveOperationException | SecurityException ex) {
-                    log.atError().setCause(ex).log("Error loading material: {}", ex.getMessage());
-                    if (ex instanceof ClassNotFoundException) {
-                        errors.add(Translate.text("errorFindingClass", classname));
-                    } else {
-                        errors.add(Translate.text("errorInstantiatingClass", classname));
-                    }
-                    UniformMaterial m = new UniformMaterial();
-                    m.setName("<unreadable>");
-                    materials.add(m);
-                }
+                names.add(classname);
+                bodies.add(readBody(in, classname, ArtOfIllusion.getClass(classname), queue));
             } catch (IOException | ClassNotFoundException ex) {
                 log.atError().setCause(ex).log("Error reading: {}", ex.getMessage());
                 throw new IOException();
             }
         }
+        for (int i = 0; i < count; i++) {
+            String classname = names.get(i);
+            try {
+                materials.add((Material) bodies.get(i).get());
+            } catch (ReflectiveOperationException | SecurityException ex) {
+                log.atError().setCause(ex).log("Error loading material: {}", ex.getMessage());
+                if (ex instanceof ClassNotFoundException) {
+                    errors.add(Translate.text("errorFindingClass", classname));
+                } else {
+                    errors.add(Translate.text("errorInstantiatingClass", classname));
+                }
+                UniformMaterial m = new UniformMaterial();
+                m.setName("<unreadable>");
+                materials.add(m);
+            }
+        }
 
         // Read the textures.
         count = in.readInt();
-
+        names.clear();
+        bodies.clear();
         for (int i = 0; i < count; i++) {
             try {
                 String classname = in.readUTF();
-                int len = in.readInt();
-                byte[] bytes = new byte[len];
-                in.readFully(bytes);
-                cls = ArtOfIllusion.getClass(classname);
-                try {
-                    if (cls == null) {
-                        throw new IOException("Unknown class: " + classname);
-                    }
-                    con = cls.getConstructor(DataInputStream.class, Scene.class);
-                    textures.add((Texture) con.newInstance(new DataInputStream(new ByteArrayInputStream(bytes)), this));
-                } catch (IOException | SecurityException | ReflectiveOperationException ex) {
-                    log.atError().setCause(ex).log("Error loading texture: {}", ex.getMessage());
-                    if (ex instanceof ClassNotFoundException) {
-                        errors.add(Translate.text("errorFindingClass", classname));
-                    } else {
-                        errors.add(Translate.text("errorInstantiatingClass", classname));
-                    }
-                    UniformTexture t = new UniformTexture();
-                    t.setName("<unreadable>");
-                    textures.add(t);
-                }
+                names.add(classname);
+                bodies.add(readBody(in, classname, ArtOfIllusion.getClass(classname), queue));
             } catch (IOException | ClassNotFoundException | IllegalArgumentException ex) {
                 log.atError().setCause(ex).log("Error reading: {}", ex.getMessage());
                 throw new IOException();
             }
         }
+        for (int i = 0; i < count; i++) {
+            String classname = names.get(i);
+            try {
+                textures.add((Texture) bodies.get(i).get());
+            } catch (SecurityException | ReflectiveOperationException ex) {
+                log.atError().setCause(ex).log("Error loading texture: {}", ex.getMessage());
+                if (ex instanceof ClassNotFoundException) {
+                    errors.add(Translate.text("errorFindingClass", classname));
+                } else {
+                    errors.add(Translate.text("errorInstantiatingClass", classname));
+                }
+                UniformTexture t = new UniformTexture();
+                t.setName("<unreadable>");
+                textures.add(t);
+            }
+        }
 
-        // Read the objects.
+        if (!fullScene) {
+            objects.clear();
+            selection = new Vector<>();
+            environTexture = textures.get(0);
+            environMapping = environTexture.getDefaultMapping(new Sphere(1.0, 1.0, 1.0));
+            environParamValue = new ParameterValue[0];
+            environMode = ENVIRON_SOLID;
+            textureListeners.clear();
+            materialListeners.clear();
+            return;
+        }
+
+        // Read the objects. Several objects may share the same geometry, in which case its body
+        // is only stored for the first of them.
         count = in.readInt();
         objects.clear();
         Map<Integer, Object3D> table = new Hashtable<>(count);
-        for (int i = 0; i < count; i++) {
-            var item = readObjectFromFile(in, table, version);
-            objects.add(item);
+        Map<Integer, Body> objectBodies = new HashMap<>(count);
+        if (queue != null) {
+            List<PendingObject> pending = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                pending.add(readPendingObject(in, objectBodies, version, queue));
+                pending.get(i).tracks = SceneIO.readTrackData(in);
+            }
+            for (PendingObject item : pending) {
+                item.resolve(table);
+                SceneIO.createTracks(this, item.info, item.tracks);
+                objects.add(item.info);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                PendingObject item = readPendingObject(in, objectBodies, version, null);
+                item.resolve(table);
+
+                // Read the tracks for this object.
+                SceneIO.readTracks(in, this, item.info, version);
+                objects.add(item.info);
+            }
         }
         objectIndexMap = null;
+        objectTree.invalidate();
         selection = new Vector<>();
 
         // Read the list of children for each object.
@@ -1100,7 +1193,37 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
                 info.addChild(child, j);
             }
         }
+        readEnvironment(in, version);
+
+        textureListeners.clear();
+        materialListeners.clear();
+        setTime(0.0);
+    }
+
+    /**
+     * Replace the objects in a scene which was read without them, and then read the environment
+     * and metadata which follow the objects in a scene file. This is used when recovering a scene
+     * from a {@link SceneJournal}.
+     *
+     * @param list the objects, whose IDs and hierarchy have already been set
+     */
+    void restoreObjects(List<ObjectInfo> list, DataInputStream in, short version) throws IOException {
+        objects.clear();
+        objects.addAll(list);
+        for (ObjectInfo info : list) {
+            nextID = Math.max(nextID, info.getId() + 1);
+        }
+        objectIndexMap = null;
+        objectTree.invalidate();
+        selection = new Vector<>();
+        readEnvironment(in, version);
+        setTime(0.0);
+    }
 
+    /**
+     * Read the environment mapping and metadata.
+     */
+    private void readEnvironment(DataInputStream in, short version) throws IOException {
         // Read in the environment mapping information.
         environMode = in.readShort();
         if (environMode == ENVIRON_SOLID) {
@@ -1125,7 +1248,7 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
                 environTexture = textures.get(texIndex);
                 try {
                     Class<?> mapClass = ArtOfIllusion.getClass(in.readUTF());
-                    con = mapClass.getConstructor(DataInputStream.class, Object3D.class, Texture.class);
+                    Constructor<?> con = mapClass.getConstructor(DataInputStream.class, Object3D.class, Texture.class);
                     environMapping = (TextureMapping) con.newInstance(in, new Sphere(1.0, 1.0, 1.0), environTexture);
                 } catch (IOException | SecurityException | ReflectiveOperationException ex) {
                     throw new IOException();
@@ -1142,37 +1265,132 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
 
         // Read the metadata.
         SceneIO.readSceneMetadata(in, this, metadataMap, version);
+    }
 
-        textureListeners.clear();
-        materialListeners.clear();
-        setTime(0.0);
+    /**
+     * Read the serialized body of a material, texture, or object, and start decoding it. If a
+     * queue is given, it is decoded on a worker thread. Otherwise it is decoded immediately.
+     *
+     * @param cls the class to decode, or null to look it up from the class name while decoding,
+     *            in which case a missing class is reported as an error decoding this body
+     */
+    private Body readBody(DataInputStream in, String classname, Class<?> cls, DecodeQueue queue) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        Body body = new Body(classname, cls, bytes);
+        if (queue != null) {
+            queue.submit(body);
+        } else {
+            body.decode();
+        }
+        return body;
     }
 
-    private ObjectInfo readObjectFromFile(DataInputStream in, Map<Integer, Object3D> table, int version) throws IOException {
-        ObjectInfo info = new ObjectInfo(null, new CoordinateSystem(in), in.readUTF());
-        Class<?> cls;
-        Constructor<?> con;
-        Object3D obj;
+    /**
+     * The bodies which are being decoded on worker threads while a scene is read. The stream is
+     * usually read faster than the bodies can be decoded, so to bound the memory used for a large
+     * file, reading waits for the oldest bodies once too many bytes are waiting to be decoded.
+     */
+    private static final class DecodeQueue {
 
-        info.setId(in.readInt());
-        if (info.getId() >= nextID) {
-            nextID = info.getId() + 1;
+        private static final long MAX_PENDING_BYTES = 64L << 20;
+
+        private final Deque<Body> pending = new ArrayDeque<>();
+        private long pendingBytes;
+
+        void submit(Body body) {
+            while (!pending.isEmpty() && (pending.peek().task.isDone() || pendingBytes + body.size > MAX_PENDING_BYTES)) {
+                Body oldest = pending.poll();
+
+                // Errors are reported when the value is requested.
+                oldest.task.quietlyJoin();
+                pendingBytes -= oldest.size;
+            }
+            body.task = loadPool.submit(body::decode);
+            pending.add(body);
+            pendingBytes += body.size;
         }
+    }
 
-        info.setVisible(in.readBoolean());
-        info.setLocked(version < 5 ? false : in.readBoolean());
-        Integer key = in.readInt();
-        obj = table.get(key);
-        if (obj == null) {
+    /**
+     * A serialized material, texture, or object which is being decoded, possibly on another thread.
+     */
+    private final class Body {
+
+        private final String classname;
+        private Class<?> cls;
+        private final int size;
+        private byte[] bytes;
+        private ForkJoinTask<?> task;
+        private Object value;
+        private Exception error;
+
+        Body(String classname, Class<?> cls, byte[] bytes) {
+            this.classname = classname;
+            this.cls = cls;
+            this.bytes = bytes;
+            size = bytes.length;
+        }
+
+        void decode() {
             try {
-                String classname = in.readUTF();
-                int len = in.readInt();
-                byte[] bytes = new byte[len];
-                in.readFully(bytes);
-                try {
+                if (cls == null) {
                     cls = ArtOfIllusion.getClass(classname);
-                    con = cls.getConstructor(DataInputStream.class, Scene.class);
-                    obj = (Object3D) con.newInstance(new DataInputStream(new ByteArrayInputStream(bytes)), this);
+                }
+                if (cls == null) {
+                    throw new ClassNotFoundException(classname);
+                }
+                Constructor<?> con = cls.getConstructor(DataInputStream.class, Scene.class);
+                value = con.newInstance(new DataInputStream(new ByteArrayInputStream(bytes)), Scene.this);
+            } catch (SecurityException | ReflectiveOperationException ex) {
+                error = ex;
+            } finally {
+                bytes = null;
+            }
+        }
+
+        /**
+         * Wait until the body has been decoded, and return the decoded value.
+         */
+        Object get() throws ReflectiveOperationException {
+            if (task != null) {
+                task.join();
+            }
+            if (error instanceof RuntimeException ex) {
+                throw ex;
+            }
+            if (error != null) {
+                throw (ReflectiveOperationException) error;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * An object which has been read from a stream, but whose geometry may still be being decoded.
+     */
+    private final class PendingObject {
+
+        final ObjectInfo info;
+        final Integer key;
+        final Body body;
+        List<SceneIO.TrackData> tracks;
+
+        PendingObject(ObjectInfo info, Integer key, Body body) {
+            this.info = info;
+            this.key = key;
+            this.body = body;
+        }
+
+        /**
+         * Wait for the geometry to be decoded, and set it as the object. If this is the first
+         * object to use the geometry, it is added to the table of shared geometry.
+         */
+        void resolve(Map<Integer, Object3D> table) {
+            Object3D obj = table.get(key);
+            if (obj == null) {
+                try {
+                    obj = (Object3D) body.get();
                 } catch (SecurityException | ReflectiveOperationException ex) {
                     if (ex instanceof InvocationTargetException) {
                         log.atError().setCause(ex.getCause()).log("Object reading error: {}", ex.getCause().getMessage());
@@ -1180,38 +1398,82 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
                         log.atError().setCause(ex).log("Object reading error: {}", ex.getMessage());
                     }
                     if (ex instanceof ClassNotFoundException) {
-                        errors.add(info.getName() + ": " + Translate.text("errorFindingClass", classname));
+                        errors.add(info.getName() + ": " + Translate.text("errorFindingClass", body.classname));
                     } else {
-                        errors.add(info.getName() + ": " + Translate.text("errorInstantiatingClass", classname));
+                        errors.add(info.getName() + ": " + Translate.text("errorInstantiatingClass", body.classname));
                     }
                     obj = new NullObject();
                     info.setName("<unreadable> " + info.getName());
-
                 }
                 table.put(key, obj);
+            }
+            info.setObject(obj);
+        }
+    }
+
+    /**
+     * Read an object from a stream, and start decoding its geometry if it has not already been
+     * read for another object. The tracks are not read.
+     *
+     * @param bodies the geometry which has already been read, indexed by key
+     */
+    private PendingObject readPendingObject(DataInputStream in, Map<Integer, Body> bodies, int version, DecodeQueue queue) throws IOException {
+        ObjectInfo info = new ObjectInfo(null, new CoordinateSystem(in), in.readUTF());
+
+        info.setId(in.readInt());
+        if (info.getId() >= nextID) {
+            nextID = info.getId() + 1;
+        }
+
+        info.setVisible(in.readBoolean());
+        info.setLocked(version < 5 ? false : in.readBoolean());
+        Integer key = in.readInt();
+        Body body = bodies.get(key);
+        if (body == null) {
+            try {
+                String classname = in.readUTF();
+                body = readBody(in, classname, null, queue);
+                bodies.put(key, body);
             } catch (IOException | IllegalArgumentException ex) {
                 log.atError().setCause(ex).log("Object reading error: {}", ex.getMessage());
                 throw new IOException();
             }
         }
-        info.setObject(obj);
-
-        // Read the tracks for this object.
-        SceneIO.readTracks(in, this, info, version);
+        return new PendingObject(info, key, body);
+    }
 
-        return info;
+    /**
+     * Save the Scene to a file. The data is compressed on multiple threads, and is followed by a
+     * {@link SceneIndex} so that individual objects can be loaded from it. If anything goes wrong
+     * while writing it, the existing file is left unchanged.
+     */
+    public void writeToFile(File f) throws IOException {
+        ApplicationPreferences prefs = ArtOfIllusion.getPreferences();
+        int mode = (prefs.getKeepBackupFiles() ? SafeFileOutputStream.OVERWRITE + SafeFileOutputStream.KEEP_BACKUP : SafeFileOutputStream.OVERWRITE);
+        int level = (prefs.getFastSceneCompression() ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION);
+        writeToFile(f, mode, level);
     }
 
     /**
      * Save the Scene to a file.
+     *
+     * @param mode the mode to open the {@link SafeFileOutputStream} with
+     * @param level the compression level
      */
-    public void writeToFile(File f) throws IOException {
-        int mode = (ArtOfIllusion.getPreferences().getKeepBackupFiles() ? SafeFileOutputStream.OVERWRITE + SafeFileOutputStream.KEEP_BACKUP : SafeFileOutputStream.OVERWRITE);
+    void writeToFile(File f, int mode, int level) throws IOException {
         SafeFileOutputStream safeOut = new SafeFileOutputStream(f, mode);
-        BufferedOutputStream bout = new BufferedOutputStream(safeOut);
-        bout.write(FILE_PREFIX);
-        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bout))) {
-            writeToStream(out);
+        try {
+            BufferedOutputStream bout = new BufferedOutputStream(safeOut);
+            bout.write(FILE_PREFIX);
+            ParallelGZIPOutputStream zip = new ParallelGZIPOutputStream(bout, level);
+            SceneIndex.Builder contents = new SceneIndex.Builder(zip);
+            writeToStream(new DataOutputStream(zip), contents);
+            zip.finish();
+            contents.write(bout, FILE_PREFIX.length);
+            bout.close();
+        } catch (IOException | RuntimeException ex) {
+            safeOut.abort();
+            throw ex;
         }
     }
 
@@ -1219,27 +1481,18 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
      * Write the Scene's representation to an output stream.
      */
     public void writeToStream(DataOutputStream out) throws IOException {
-        short version = 6;
-        out.writeShort(version);
-
-        ambientColor.writeToFile(out);
-        fogColor.writeToFile(out);
-        out.writeBoolean(fog);
-        out.writeDouble(fogDist);
-        out.writeBoolean(showGrid);
-        out.writeBoolean(snapToGrid);
-        out.writeDouble(gridSpacing);
-        out.writeInt(gridSubdivisions);
-        out.writeInt(framesPerSecond);
-
-        // Save the image maps.
-        SceneIO.writeImages(out, this, version);
-
-        // Save the materials.
-        SceneIO.writeMaterials(out, this, version);
+        writeToStream(out, null);
+    }
 
-        // Save the textures.
-        SceneIO.writeTextures(out, this, version);
+    /**
+     * Write the Scene's representation to an output stream, recording the position of each object
+     * in an index.
+     *
+     * @param contents the index to record objects in, or null
+     */
+    private void writeToStream(DataOutputStream out, SceneIndex.Builder contents) throws IOException {
+        short version = 6;
+        writeHeader(out, version);
 
         // Save the objects.
         int index = 0;
@@ -1247,8 +1500,14 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
         out.writeInt(objects.size());
         log.debug("Write scene objects: {}", objects.size());
         for (var object: objects) {
+            if (contents != null) {
+                contents.startObject(object);
+            }
             index = writeObjectToFile(out, object, table, index, version);
         }
+        if (contents != null) {
+            contents.endObjects();
+        }
 
         // Record the children of each object.  The format of this will be changed in the
         // next version.
@@ -1259,6 +1518,47 @@ public final class Scene implements ObjectsContainer, MaterialsContainer, Textur
             }
         }
 
+        writeEnvironment(out);
+    }
+
+    /**
+     * Write the part of the Scene's representation which comes before the objects: the version,
+     * the scene settings, and the image maps, materials, and textures.
+     */
+    void writeHeader(DataOutputStream out, short version) throws IOException {
+        out.writeShort(version);
+        writeSettings(out);
+
+        // Save the image maps.
+        SceneIO.writeImages(out, this, version);
+
+        // Save the materials.
+        SceneIO.writeMaterials(out, this, version);
+
+        // Save the textures.
+        SceneIO.writeTextures(out, this, version);
+    }
+
+    /**
+     * Write the scene settings, such as the ambient light, fog, and grid.
+     */
+    void writeSettings(DataOutputStream out) throws IOException {
+        ambientColor.writeToFile(out);
+        fogColor.writeToFile(out);
+        out.writeBoolean(fog);
+        out.writeDouble(fogDist);
+        out.writeBoolean(showGrid);
+        out.writeBoolean(snapToGrid);
+        out.writeDouble(gridSpacing);
+        out.writeInt(gridSubdivisions);
+        out.writeInt(framesPerSecond);
+    }
+
+    /**
+     * Write the part of the Scene's representation which comes after the objects: the environment
+     * mapping and the metadata.
+     */
+    void writeEnvironment(DataOutputStream out) throws IOException {
         // Save the environment mapping information.
         out.writeShort((short) environMode);
         if (environMode == ENVIRON_SOLID) {
@@ -0,0 +1,212 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * A SceneBVH is a bounding volume hierarchy containing the world space bounding boxes of the objects
+ * in a scene. It allows viewers to quickly find the objects which are visible on screen or under
+ * the mouse, without having to test every object in the scene.
+ * <p>
+ * Objects are moved and reshaped by many different parts of the program, which do not notify the
+ * scene. Before every query, the tree therefore checks {@link ObjectInfo#getChangeCount()}, which
+ * tells it whether any object or coordinate system has changed since the last query. Only if one has
+ * does it compare each object's {@link ObjectInfo#getVersion()} to the one it was last seen with, and
+ * recalculate the bounding boxes of those that differ. The boxes of the tree nodes above them are then
+ * refit, and the whole tree is rebuilt when objects are added or removed, or when enough of them have
+ * moved that the tree may no longer partition them well.
+ */
+final class SceneBVH {
+
+    private static final int LEAF_SIZE = 4;
+
+    private ObjectInfo[] objects = new ObjectInfo[0];
+    private long[] version;
+    private BoundingBox[] worldBounds;
+    private Node[] leaf;
+    private Node root;
+    private boolean valid;
+    private long changeCount;
+    private int changedSinceBuild;
+
+    private static class Node {
+
+        BoundingBox bounds;
+        Node parent, left, right;
+        int[] objects;
+    }
+
+    /**
+     * Mark the tree as needing to be rebuilt. This should be called whenever objects are added to
+     * or removed from the scene.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Find all objects whose bounding boxes pass a test. The test is applied to the boxes of tree
+     * nodes as well as objects, so it must be conservative: it must accept any box which contains
+     * a box that it would accept.
+     *
+     * @param sceneObjects the list of objects in the scene
+     * @param test the test to apply to world space bounding boxes
+     * @return the indices of the objects which passed, in increasing order
+     */
+    int[] findObjects(List<ObjectInfo> sceneObjects, Predicate<BoundingBox> test) {
+        update(sceneObjects);
+        if (root == null) {
+            return new int[0];
+        }
+        int[] result = new int[objects.length];
+        int count = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (!test.test(node.bounds)) {
+                continue;
+            }
+            if (node.objects == null) {
+                stack.push(node.right);
+                stack.push(node.left);
+            } else if (node.objects.length == 1) {
+                result[count++] = node.objects[0];
+            } else {
+                for (int i : node.objects) {
+                    if (test.test(worldBounds[i])) {
+                        result[count++] = i;
+                    }
+                }
+            }
+        }
+        result = Arrays.copyOf(result, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Bring the tree up to date with the current state of the objects.
+     */
+    private void update(List<ObjectInfo> sceneObjects) {
+        if (!valid || sceneObjects.size() != objects.length) {
+            build(sceneObjects);
+            return;
+        }
+        long currentCount = ObjectInfo.getChangeCount();
+        if (currentCount == changeCount) {
+            return;
+        }
+        changeCount = currentCount;
+        List<Node> changed = new ArrayList<>();
+        for (int i = 0; i < objects.length; i++) {
+            ObjectInfo info = objects[i];
+            long currentVersion = info.getVersion();
+            if (currentVersion != version[i]) {
+                version[i] = currentVersion;
+                worldBounds[i] = info.getBounds().transformAndOutset(info.getCoords().fromLocal());
+                changed.add(leaf[i]);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        changedSinceBuild += changed.size();
+        if (changedSinceBuild > objects.length / 2) {
+            build(sceneObjects);
+            return;
+        }
+        for (Node node : changed) {
+            node.bounds = mergeBounds(node.objects);
+            for (Node parent = node.parent; parent != null; parent = parent.parent) {
+                parent.bounds = parent.left.bounds.merge(parent.right.bounds);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the tree from scratch.
+     */
+    private void build(List<ObjectInfo> sceneObjects) {
+        changeCount = ObjectInfo.getChangeCount();
+        objects = sceneObjects.toArray(ObjectInfo[]::new);
+        version = new long[objects.length];
+        worldBounds = new BoundingBox[objects.length];
+        leaf = new Node[objects.length];
+        double[] center = new double[3 * objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            version[i] = objects[i].getVersion();
+            worldBounds[i] = objects[i].getBounds().transformAndOutset(objects[i].getCoords().fromLocal());
+            center[3 * i] = 0.5 * (worldBounds[i].minx + worldBounds[i].maxx);
+            center[3 * i + 1] = 0.5 * (worldBounds[i].miny + worldBounds[i].maxy);
+            center[3 * i + 2] = 0.5 * (worldBounds[i].minz + worldBounds[i].maxz);
+        }
+        Integer[] index = new Integer[objects.length];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = i;
+        }
+        root = (objects.length == 0 ? null : buildNode(index, 0, index.length, center));
+        valid = true;
+        changedSinceBuild = 0;
+    }
+
+    /**
+     * Build the subtree containing a range of objects, by splitting them at the median of the
+     * axis along which their centers are most spread out.
+     */
+    private Node buildNode(Integer[] index, int start, int end, double[] center) {
+        Node node = new Node();
+        if (end - start <= LEAF_SIZE) {
+            node.objects = new int[end - start];
+            for (int i = start; i < end; i++) {
+                node.objects[i - start] = index[i];
+                leaf[index[i]] = node;
+            }
+            node.bounds = mergeBounds(node.objects);
+            return node;
+        }
+        double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        for (int i = start; i < end; i++) {
+            for (int j = 0; j < 3; j++) {
+                min[j] = Math.min(min[j], center[3 * index[i] + j]);
+                max[j] = Math.max(max[j], center[3 * index[i] + j]);
+            }
+        }
+        int axis = 0;
+        for (int j = 1; j < 3; j++) {
+            if (max[j] - min[j] > max[axis] - min[axis]) {
+                axis = j;
+            }
+        }
+        int splitAxis = axis;
+        Arrays.sort(index, start, end, Comparator.comparingDouble(i -> center[3 * i + splitAxis]));
+        int mid = (start + end) / 2;
+        node.left = buildNode(index, start, mid, center);
+        node.right = buildNode(index, mid, end, center);
+        node.left.parent = node;
+        node.right.parent = node;
+        node.bounds = node.left.bounds.merge(node.right.bounds);
+        return node;
+    }
+
+    private BoundingBox mergeBounds(int[] which) {
+        BoundingBox bounds = new BoundingBox(worldBounds[which[0]]);
+        for (int i = 1; i < which.length; i++) {
+            bounds.extend(worldBounds[which[i]]);
+        }
+        return bounds;
+    }
+}
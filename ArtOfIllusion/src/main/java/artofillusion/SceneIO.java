@@ -24,6 +24,7 @@ import org.jetbrains.annotations.NotNull;
 import java.beans.XMLDecoder;
 import java.io.*;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -149,21 +150,44 @@ public final class SceneIO {
 
     }
     private static void readTracksV6(DataInputStream in, Scene scene, ObjectInfo owner, int tracks) throws IOException {
-        String className;
-        int dataSize;
-        byte[] data;
-        Track<?> track;
+        createTracks(scene, owner, readTrackData(in, tracks));
+    }
+
+    /**
+     * The class name and serialized body of a track, which has been read from a stream but not
+     * yet created.
+     */
+    public record TrackData(String className, byte[] data) {
+    }
+
+    /**
+     * Read the tracks for an object from a version 6 scene stream, without creating them. This
+     * lets the caller read the rest of the stream before the object itself has been created.
+     * Pass the result to {@link #createTracks(Scene, ObjectInfo, List)}.
+     */
+    public static List<TrackData> readTrackData(DataInputStream in) throws IOException {
+        return readTrackData(in, in.readInt());
+    }
+
+    private static List<TrackData> readTrackData(DataInputStream in, int tracks) throws IOException {
+        // If IOException is thrown we cannot recover data and aborting
+        List<TrackData> result = new ArrayList<>(tracks);
         for (int i = 0; i < tracks; i++) {
-            // At first read binary data from input. If IOException is thrown we cannot recover data and aborting
-            try {
-                className = SceneIO.readString(in);
-                dataSize = in.readInt();
-                data = new byte[dataSize];
-                in.readFully(data);
+            String className = SceneIO.readString(in);
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            result.add(new TrackData(className, data));
+        }
+        return result;
+    }
 
-            } catch (IOException ex) {
-                throw ex;
-            }
+    /**
+     * Create the tracks read by {@link #readTrackData(DataInputStream)} and add them to an object.
+     */
+    public static void createTracks(Scene scene, ObjectInfo owner, List<TrackData> tracks) {
+        Track<?> track;
+        for (TrackData item : tracks) {
+            String className = item.className();
             //Now try to discover Track class. On exception, we cannot recover track, but can bypass it
             try {
                 var cls = ArtOfIllusion.getClass(className);
@@ -180,7 +204,7 @@ public final class SceneIO {
             }
             //On exception, we cannot recover track, but can bypass it
             try {
-                track.initFromStream(new DataInputStream(new ByteArrayInputStream(data)), scene);
+                track.initFromStream(new DataInputStream(new ByteArrayInputStream(item.data())), scene);
             } catch(IOException ex) {
                 bus.post(new BypassEvent(scene, "Track initialization error: " + ex.getMessage(),ex));
                 continue;
@@ -0,0 +1,418 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import artofillusion.ui.Translate;
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * A SceneIndex is the table of contents of a scene file. It lists the objects in the scene, with
+ * their names, IDs, classes, bounding boxes, and the tree structure, and makes it possible to load
+ * individual objects without reading the rest of the file.
+ * <p>
+ * The index is stored at the end of the file, after the compressed scene data. The header of the
+ * scene (images, materials, and textures) and each object are compressed as separate gzip members,
+ * and the index records where each of them begins. The compressed data is still a valid gzip stream
+ * which contains the whole scene, and {@link java.util.zip.GZIPInputStream} stops reading at the
+ * index, so indexed files can also be loaded as classic scene files.
+ * <p>
+ * Objects are loaded on first access by {@link #getObject(int)}. Each one is decoded against a
+ * scene which only contains the header, returned by {@link #getScene()}.
+ */
+public final class SceneIndex {
+
+    /**
+     * Marks the beginning and end of the index.
+     */
+    private static final byte[] MAGIC = {'A', 'o', 'I', 'I', 'n', 'd', 'e', 'x'};
+    private static final short INDEX_VERSION = 1;
+
+    /**
+     * The length of the data which follows the index: its offset, followed by the magic bytes.
+     */
+    private static final int TRAILER_LENGTH = 8 + MAGIC.length;
+
+    /**
+     * The description of an object in an indexed scene.
+     *
+     * @param name the name of the object
+     * @param id the ID of the object
+     * @param className the class of the object's geometry
+     * @param bounds the bounding box of the object in world coordinates
+     * @param parent the index of the object's parent, or -1 if it has none
+     * @param children the indices of the object's children
+     */
+    public record Entry(String name, int id, String className, BoundingBox bounds, int parent, int[] children) {
+    }
+
+    private final File file;
+    private final short version;
+    private final long headerOffset;
+    private final int headerLength;
+    private final List<Entry> entries;
+    private final long[] offset;
+    private final int[] length;
+    private final int[] geometry;
+    private final ObjectInfo[] loaded;
+    private final Map<Integer, Object3D> geometries = new HashMap<>();
+    private Scene scene;
+
+    private SceneIndex(File file, DataInputStream in) throws IOException {
+        this.file = file;
+        short indexVersion = in.readShort();
+        if (indexVersion != INDEX_VERSION) {
+            throw new InvalidObjectException("Bad scene index version: " + indexVersion);
+        }
+        version = in.readShort();
+        headerOffset = in.readLong();
+        headerLength = in.readInt();
+        int count = in.readInt();
+        offset = new long[count];
+        length = new int[count];
+        geometry = new int[count];
+        loaded = new ObjectInfo[count];
+        String[] name = new String[count];
+        String[] className = new String[count];
+        int[] id = new int[count];
+        BoundingBox[] bounds = new BoundingBox[count];
+        int[][] children = new int[count][];
+        int[] parent = new int[count];
+        Arrays.fill(parent, -1);
+        for (int i = 0; i < count; i++) {
+            name[i] = in.readUTF();
+            id[i] = in.readInt();
+            className[i] = in.readUTF();
+            bounds[i] = new BoundingBox(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+            children[i] = new int[in.readInt()];
+            for (int j = 0; j < children[i].length; j++) {
+                children[i][j] = in.readInt();
+                parent[children[i][j]] = i;
+            }
+            geometry[i] = in.readInt();
+            offset[i] = in.readLong();
+            length[i] = in.readInt();
+        }
+        List<Entry> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new Entry(name[i], id[i], className[i], bounds[i], parent[i], children[i]));
+        }
+        entries = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Read the index of a scene file.
+     *
+     * @return the index, or null if the file does not contain one
+     */
+    public static SceneIndex read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long fileLength = raf.length();
+            if (fileLength < TRAILER_LENGTH + MAGIC.length) {
+                return null;
+            }
+            raf.seek(fileLength - TRAILER_LENGTH);
+            long start = raf.readLong();
+            if (!readMagic(raf) || start < 0 || start > fileLength - TRAILER_LENGTH - MAGIC.length) {
+                return null;
+            }
+            raf.seek(start);
+            if (!readMagic(raf)) {
+                return null;
+            }
+            byte[] data = new byte[(int) (fileLength - TRAILER_LENGTH - start - MAGIC.length)];
+            raf.readFully(data);
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+                return new SceneIndex(file, in);
+            }
+        }
+    }
+
+    private static boolean readMagic(RandomAccessFile raf) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        raf.readFully(magic);
+        return Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * Get the file this index was read from.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Get the descriptions of all objects in the scene, in the order they appear in it.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Find an object by name. If several objects have the name, the one with the specified ID is
+     * preferred. Otherwise the first one is returned.
+     *
+     * @return the index of the object, or -1 if there is no object with the name
+     */
+    public int findObject(String name, int id) {
+        int found = -1;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (!entry.name().equals(name)) {
+                continue;
+            }
+            if (entry.id() == id) {
+                return i;
+            }
+            if (found == -1) {
+                found = i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Create placeholder objects which describe the hierarchy of the scene without loading any
+     * of it. Each one has the name and ID of an object in the scene, and a {@link NullObject} as
+     * its geometry.
+     *
+     * @return the placeholders for the objects which have no parent
+     */
+    public List<ObjectInfo> createOutline() {
+        ObjectInfo[] outline = new ObjectInfo[entries.size()];
+        for (int i = 0; i < outline.length; i++) {
+            outline[i] = new ObjectInfo(new NullObject(), new CoordinateSystem(new Vec3(), Vec3.vz(), Vec3.vy()), entries.get(i).name());
+            outline[i].setId(entries.get(i).id());
+        }
+        List<ObjectInfo> roots = new ArrayList<>();
+        for (int i = 0; i < outline.length; i++) {
+            for (int child : entries.get(i).children()) {
+                outline[i].addChild(outline[child], outline[i].getChildren().length);
+            }
+            if (entries.get(i).parent() == -1) {
+                roots.add(outline[i]);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Get a scene containing the images, materials, and textures of the indexed scene, but no
+     * objects. Objects returned by {@link #getObject(int)} refer to its textures and materials.
+     */
+    public synchronized Scene getScene() throws IOException {
+        if (scene == null) {
+            try (DataInputStream in = openSection(headerOffset, headerLength)) {
+                scene = new Scene(in, false);
+            }
+            scene.setName(file.getName());
+            scene.setDirectory(file.getParent());
+        }
+        return scene;
+    }
+
+    /**
+     * Set the scene which objects are decoded against, instead of the one read from the file. Its
+     * images, materials, and textures must be in the same order as in the file. This must be
+     * called before any objects are loaded.
+     */
+    synchronized void setScene(Scene scene) {
+        this.scene = scene;
+    }
+
+    /**
+     * Get an object from the scene, reading it from the file if it has not already been loaded.
+     * Objects which share geometry in the file also share it when they are loaded. If the parent
+     * or any children of the object have already been loaded, they are linked to it.
+     *
+     * @param index the index of the object in {@link #getEntries()}
+     */
+    public synchronized ObjectInfo getObject(int index) throws IOException {
+        if (loaded[index] != null) {
+            return loaded[index];
+        }
+        Scene header = getScene();
+        ObjectInfo info;
+        try (DataInputStream in = openSection(offset[index], length[index])) {
+            info = new ObjectInfo(null, new CoordinateSystem(in), in.readUTF());
+            info.setId(in.readInt());
+            info.setVisible(in.readBoolean());
+            info.setLocked(in.readBoolean());
+            in.readInt();
+            if (geometry[index] == index) {
+                String classname = in.readUTF();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                geometries.put(index, createGeometry(classname, bytes, header));
+            }
+            info.setObject(getGeometry(index));
+            SceneIO.readTracks(in, header, info, version);
+        }
+        loaded[index] = info;
+        Entry entry = entries.get(index);
+        if (entry.parent() != -1 && loaded[entry.parent()] != null) {
+            ObjectInfo parent = loaded[entry.parent()];
+            parent.addChild(info, countLoadedChildren(entry.parent(), index));
+        }
+        for (int child : entry.children()) {
+            if (loaded[child] != null) {
+                info.addChild(loaded[child], info.getChildren().length);
+            }
+        }
+        return info;
+    }
+
+    /**
+     * Get the geometry for an object, loading it from the object which stores it if necessary.
+     */
+    private Object3D getGeometry(int index) throws IOException {
+        Object3D obj = geometries.get(geometry[index]);
+        if (obj == null) {
+            getObject(geometry[index]);
+            obj = geometries.get(geometry[index]);
+        }
+        return obj;
+    }
+
+    /**
+     * Count how many children of an object which come before a given one have been loaded. This
+     * is the position at which the given child should be added.
+     */
+    private int countLoadedChildren(int parent, int child) {
+        int count = 0;
+        for (int i : entries.get(parent).children()) {
+            if (i == child) {
+                break;
+            }
+            if (loaded[i] != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static Object3D createGeometry(String classname, byte[] bytes, Scene scene) throws IOException {
+        try {
+            Class<?> cls = ArtOfIllusion.getClass(classname);
+            if (cls == null) {
+                throw new ClassNotFoundException(classname);
+            }
+            Constructor<?> con = cls.getConstructor(DataInputStream.class, Scene.class);
+            return (Object3D) con.newInstance(new DataInputStream(new ByteArrayInputStream(bytes)), scene);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException(Translate.text("errorFindingClass", classname), ex);
+        } catch (SecurityException | ReflectiveOperationException ex) {
+            throw new IOException(Translate.text("errorInstantiatingClass", classname), ex);
+        }
+    }
+
+    /**
+     * Open a range of the file containing one or more complete gzip members.
+     */
+    private DataInputStream openSection(long start, int size) throws IOException {
+        byte[] data = new byte[size];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(start);
+            raf.readFully(data);
+        }
+        return new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * Builder records the layout of a scene while it is written to a {@link ParallelGZIPOutputStream},
+     * and then writes the index for it.
+     */
+    static final class Builder {
+
+        private final ParallelGZIPOutputStream zip;
+        private final List<ObjectInfo> objects = new ArrayList<>();
+        private final List<Integer> start = new ArrayList<>();
+        private final List<Integer> geometry = new ArrayList<>();
+        private final Map<Object3D, Integer> geometryOwner = new IdentityHashMap<>();
+        private int end = -1;
+
+        Builder(ParallelGZIPOutputStream zip) {
+            this.zip = zip;
+        }
+
+        /**
+         * This is called before each object is written.
+         */
+        void startObject(ObjectInfo info) throws IOException {
+            start.add(zip.endMember());
+            geometry.add(geometryOwner.computeIfAbsent(info.getGeometry(), key -> objects.size()));
+            objects.add(info);
+        }
+
+        /**
+         * This is called after the last object has been written.
+         */
+        void endObjects() throws IOException {
+            end = zip.endMember();
+        }
+
+        /**
+         * Write the index. This must be called after the compressed stream has been finished.
+         *
+         * @param out the stream to write the index to, which is positioned just after the compressed data
+         * @param dataOffset the offset of the compressed data in the file
+         */
+        void write(OutputStream out, long dataOffset) throws IOException {
+            Map<ObjectInfo, Integer> index = new IdentityHashMap<>();
+            for (int i = 0; i < objects.size(); i++) {
+                index.put(objects.get(i), i);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+                int headerEnd = (objects.isEmpty() ? end : start.get(0));
+                data.writeShort(INDEX_VERSION);
+                data.writeShort(6);
+                data.writeLong(dataOffset);
+                data.writeInt((int) zip.getCompressedOffset(headerEnd));
+                data.writeInt(objects.size());
+                for (int i = 0; i < objects.size(); i++) {
+                    ObjectInfo info = objects.get(i);
+                    BoundingBox bounds = info.getGeometry().getBounds().transformAndOutset(info.getCoords().fromLocal());
+                    data.writeUTF(info.getName());
+                    data.writeInt(info.getId());
+                    data.writeUTF(info.getGeometry().getClass().getName());
+                    data.writeDouble(bounds.minx);
+                    data.writeDouble(bounds.maxx);
+                    data.writeDouble(bounds.miny);
+                    data.writeDouble(bounds.maxy);
+                    data.writeDouble(bounds.minz);
+                    data.writeDouble(bounds.maxz);
+                    ObjectInfo[] children = info.getChildren();
+                    data.writeInt(children.length);
+                    for (ObjectInfo child : children) {
+                        data.writeInt(index.get(child));
+                    }
+                    data.writeInt(geometry.get(i));
+                    long first = zip.getCompressedOffset(start.get(i));
+                    long last = zip.getCompressedOffset(i + 1 < objects.size() ? start.get(i + 1) : end);
+                    data.writeLong(dataOffset + first);
+                    data.writeInt((int) (last - first));
+                }
+            }
+            long indexStart = dataOffset + zip.getCompressedOffset(end);
+            DataOutputStream dout = new DataOutputStream(out);
+            dout.write(MAGIC);
+            bytes.writeTo(dout);
+            dout.writeLong(indexStart);
+            dout.write(MAGIC);
+            dout.flush();
+        }
+    }
+}
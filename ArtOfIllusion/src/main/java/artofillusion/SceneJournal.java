@@ -0,0 +1,889 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.animation.Track;
+import artofillusion.math.CoordinateSystem;
+import artofillusion.object.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+
+/**
+ * A SceneJournal records the changes made to a scene since it was last saved in a journal file
+ * next to the scene file, so that they can be recovered if the program exits without saving them.
+ * <p>
+ * Writing a large scene is slow, so the journal only records what has changed. Changed objects
+ * are found from the {@link UndoRecord}s added for the scene and from {@link Scene#objectModified(Object3D)},
+ * and changes to the textures and materials from the scene's list listeners. Changes which only
+ * mark the scene as modified are found by comparing each object's {@link ObjectInfo#getVersion()}
+ * with the one it had at the previous flush. Changes which do neither are not journaled. Each call to
+ * {@link #flush()} appends the objects and geometry which have changed since the previous one,
+ * followed by the order and hierarchy of all objects, which are cheap to write. Objects which have
+ * not changed are read from the scene file using its {@link SceneIndex} when the journal is
+ * recovered, so the journal for a file without an index starts with a copy of the whole scene.
+ * <p>
+ * The journal is a series of records, each of which has a checksum. The records written by one
+ * flush end with a commit record, and recovery ignores anything after the last complete commit,
+ * so a journal which was being written when the program exited can still be used. Saving the
+ * scene writes all changes into the scene file, after which the journal is deleted.
+ * <p>
+ * A flush only copies what has changed on the thread which modifies the scene. The copies are
+ * serialized and written by a background thread. Since the same objects may be written many times,
+ * the journal is compacted once it has grown to twice its size after the previous compaction: a new
+ * file is started, which holds only the latest version of everything the journal records. It is
+ * written next to the journal and then moved over it, so there is always a complete journal.
+ */
+@Slf4j
+public final class SceneJournal {
+
+    /**
+     * The number of milliseconds between flushes of the journal for an open scene.
+     */
+    public static final int FLUSH_INTERVAL = 30000;
+
+    /**
+     * The journal is never compacted while it is shorter than this. This is only changed by tests.
+     */
+    static long minCompactLength = 8L << 20;
+
+    /**
+     * Serializes and writes the changes copied by {@link #flush()}, one flush at a time.
+     */
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Scene journal writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final byte[] MAGIC = {'A', 'o', 'I', 'J', 'o', 'u', 'r', 'n'};
+    private static final short JOURNAL_VERSION = 1;
+    private static final short SCENE_VERSION = 6;
+
+    // Record types.
+    private static final int HEADER = 1;
+    private static final int GEOMETRY = 2;
+    private static final int OBJECT = 3;
+    private static final int LAYOUT = 4;
+    private static final int COMMIT = 5;
+
+    // Where an object's geometry is stored.
+    private static final int JOURNAL_GEOMETRY = 0;
+    private static final int FILE_GEOMETRY = 1;
+
+    private final Scene scene;
+    private File file;
+    private long baseLength;
+    private long baseModified;
+    private boolean started;
+    private boolean complete;
+    private boolean recovered;
+    private boolean modified;
+    private boolean headerChanged;
+    private byte[] settings;
+    private Object[][] resources;
+    private final Set<ObjectInfo> changedObjects = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Object3D> changedGeometry = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<Integer> storedObjects = new HashSet<>();
+    private final Set<Integer> fileObjects = new HashSet<>();
+    private final Set<Integer> journaledObjects = new HashSet<>();
+    private boolean headerJournaled;
+    private final Map<Object3D, Integer> journalGeometry = new IdentityHashMap<>();
+    private final Map<Object3D, Integer> fileGeometry = new IdentityHashMap<>();
+    private final Map<ObjectInfo, Long> versions = new IdentityHashMap<>();
+    private int nextKey;
+    private CompletableFuture<Void> pendingWrites = CompletableFuture.completedFuture(null);
+
+    // These are written by the writer thread.
+
+    private volatile long journalLength;
+    private volatile long compactedLength;
+    private volatile boolean writeFailed;
+    private boolean broken;
+
+    /**
+     * A copy of the geometry of one or more objects, which is written to the journal.
+     */
+    private record GeometryRecord(int key, Object3D geometry) {
+    }
+
+    /**
+     * A copy of an object, which is written to the journal with a reference to its geometry.
+     */
+    private record ObjectRecord(ObjectInfo info, int source, int key) {
+    }
+
+    /**
+     * Everything written by one flush. The scene only holds copies of the lists of images, materials,
+     * textures, and objects, which the geometry and tracks are written relative to.
+     */
+    private record Snapshot(File journalFile, boolean start, long baseLength, long baseModified, Scene scene,
+            byte[] header, List<GeometryRecord> geometry, List<ObjectRecord> objects, byte[] layout) {
+    }
+
+    private final ListChangeListener listListener = new ListChangeListener() {
+        @Override
+        public void itemAdded(int index, Object obj) {
+            headerChanged();
+        }
+
+        @Override
+        public void itemRemoved(int index, Object obj) {
+            headerChanged();
+        }
+
+        @Override
+        public void itemChanged(int index, Object obj) {
+            headerChanged();
+        }
+    };
+
+    private SceneJournal(Scene scene) {
+        this.scene = scene;
+    }
+
+    /**
+     * Get the journal file for a scene file.
+     */
+    public static File getJournalFile(File file) {
+        return new File(file.getParentFile(), file.getName() + ".journal");
+    }
+
+    /**
+     * Start recording the changes to a scene. The scene must be identical to the one in the file,
+     * which means it has just been loaded from it or saved to it.
+     *
+     * @param scene the scene to record changes to
+     * @param file the file the scene was loaded from or saved to
+     */
+    public static SceneJournal attach(Scene scene, File file) throws IOException {
+        SceneJournal journal = new SceneJournal(scene);
+        journal.setBase(file);
+        journal.register();
+        return journal;
+    }
+
+    /**
+     * Get whether this journal continues one which the scene was recovered from, so that the
+     * scene differs from the one in the file.
+     */
+    public boolean isRecovered() {
+        return recovered;
+    }
+
+    /**
+     * This is called when the scene has been saved. The journal is deleted, and a new one is
+     * started for the file the scene was saved to.
+     */
+    public synchronized void reset(File file) throws IOException {
+        pendingWrites.join();
+        deleteJournalFile();
+        setBase(file);
+    }
+
+    /**
+     * Stop recording changes, and delete the journal.
+     */
+    public synchronized void close() {
+        pendingWrites.join();
+        EventBus.getDefault().unregister(this);
+        scene.removeTextureListener(listListener);
+        scene.removeMaterialListener(listListener);
+        scene.setJournal(null);
+        deleteJournalFile();
+    }
+
+    private void deleteJournalFile() {
+        File journalFile = getJournalFile(file);
+        if (journalFile.exists() && !journalFile.delete()) {
+            log.warn("Could not delete scene journal {}", journalFile);
+        }
+        started = false;
+    }
+
+    private void register() {
+        scene.setJournal(this);
+        scene.addTextureListener(listListener);
+        scene.addMaterialListener(listListener);
+        EventBus.getDefault().register(this);
+    }
+
+    /**
+     * Record the state of the scene file, which the journal records changes to.
+     */
+    private void setBase(File file) throws IOException {
+        this.file = file;
+        baseLength = file.length();
+        baseModified = file.lastModified();
+        changedObjects.clear();
+        changedGeometry.clear();
+        storedObjects.clear();
+        fileObjects.clear();
+        journaledObjects.clear();
+        journalGeometry.clear();
+        fileGeometry.clear();
+        nextKey = 0;
+        recovered = false;
+        modified = false;
+        headerChanged = false;
+        headerJournaled = false;
+        journalLength = 0;
+        compactedLength = 0;
+        SceneIndex index = SceneIndex.read(file);
+        complete = (index != null);
+        if (index != null) {
+            for (SceneIndex.Entry entry : index.getEntries()) {
+                fileObjects.add(entry.id());
+            }
+            storedObjects.addAll(fileObjects);
+            for (ObjectInfo info : scene.objects) {
+                fileGeometry.putIfAbsent(info.getGeometry(), info.getId());
+            }
+        }
+        recordVersions();
+        settings = toBytes(scene::writeSettings);
+        resources = getResources();
+    }
+
+    /**
+     * This is called when anything in the scene has changed.
+     */
+    synchronized void sceneModified() {
+        modified = true;
+    }
+
+    /**
+     * This is called when the scene settings, images, materials, or textures have changed.
+     */
+    synchronized void headerChanged() {
+        headerChanged = true;
+        modified = true;
+    }
+
+    /**
+     * This is called when an object has changed.
+     */
+    synchronized void objectChanged(ObjectInfo info) {
+        changedObjects.add(info);
+        modified = true;
+    }
+
+    /**
+     * This is called when the geometry of one or more objects has changed.
+     */
+    synchronized void geometryChanged(Object3D obj) {
+        changedGeometry.add(obj);
+        modified = true;
+    }
+
+    @Subscribe
+    public void onUndoChangedEvent(UndoChangedEvent event) {
+        UndoRecord record = event.getRecord();
+        if (record != null && record.getView() != null && record.getView().getScene() == scene) {
+            recordChanged(record);
+        }
+    }
+
+    /**
+     * Find what is changed by the commands in an UndoRecord which has been added or executed.
+     */
+    synchronized void recordChanged(UndoRecord record) {
+        List<Integer> commands = record.getCommands();
+        List<Object> targets = record.getTargets();
+        for (int i = 0; i < commands.size(); i++) {
+            Object target = targets.get(i);
+            switch (commands.get(i)) {
+                case UndoRecord.COPY_OBJECT:
+                case UndoRecord.COPY_VERTEX_POSITIONS:
+                    geometryChanged((Object3D) target);
+                    break;
+                case UndoRecord.COPY_SKELETON: {
+                    for (ObjectInfo info : scene.objects) {
+                        if (info.getObject().getSkeleton() == target) {
+                            geometryChanged(info.getObject());
+                        }
+                    }
+                    break;
+                }
+                case UndoRecord.COPY_COORDS: {
+                    for (ObjectInfo info : scene.objects) {
+                        if (info.getCoords() == target) {
+                            objectChanged(info);
+                        }
+                    }
+                    break;
+                }
+                case UndoRecord.COPY_TRACK: {
+                    Object parent = ((Track<?>) target).getParent();
+                    while (parent instanceof Track<?> track) {
+                        parent = track.getParent();
+                    }
+                    if (parent instanceof ObjectInfo info) {
+                        objectChanged(info);
+                    } else {
+                        changedObjects.addAll(scene.objects);
+                    }
+                    break;
+                }
+                case UndoRecord.RENAME_OBJECT: {
+                    int which = (Integer) target;
+                    if (which < scene.objects.size()) {
+                        objectChanged(scene.objects.get(which));
+                    }
+                    break;
+                }
+                case UndoRecord.COPY_OBJECT_INFO:
+                case UndoRecord.SET_OBJECT:
+                case UndoRecord.ADD_OBJECT:
+                case UndoRecord.SET_TRACK:
+                case UndoRecord.SET_TRACK_LIST:
+                    objectChanged((ObjectInfo) target);
+                    break;
+                case UndoRecord.DELETE_OBJECT:
+                case UndoRecord.ADD_TO_GROUP:
+                case UndoRecord.REMOVE_FROM_GROUP:
+                case UndoRecord.SET_GROUP_CONTENTS:
+                case UndoRecord.SET_MESH_SELECTION:
+                case UndoRecord.SET_SCENE_SELECTION:
+                    // These only change the order or hierarchy of objects, which is always written.
+                    break;
+                default:
+                    // There is no way to know what a user defined action changes.
+                    changedObjects.addAll(scene.objects);
+                    for (ObjectInfo info : scene.objects) {
+                        changedGeometry.add(info.getObject());
+                    }
+                    headerChanged = true;
+            }
+        }
+        modified = true;
+    }
+
+    /**
+     * Append the changes since the previous flush to the journal. The objects which have changed are
+     * copied as they are when this is called, so it must be called on the thread which modifies the
+     * scene. They are written to the journal in the background.
+     *
+     * @return a future which completes once the changes have been written, or completes exceptionally
+     * if they could not be
+     */
+    public synchronized CompletableFuture<Void> flush() throws IOException {
+        if (writeFailed) {
+            // The journal may now end with part of a record, so start a new one.
+
+            writeFailed = false;
+            started = false;
+            complete = false;
+        }
+        if (!modified) {
+            return pendingWrites;
+        }
+        findChangedVersions();
+        if (started && journalLength > Math.max(minCompactLength, 2 * compactedLength)) {
+            compact();
+        }
+        boolean all = !complete || !sameResources();
+        byte[] currentSettings = toBytes(scene::writeSettings);
+        byte[] header = null;
+        if (all || headerChanged || !Arrays.equals(settings, currentSettings)) {
+            header = toBytes(data -> scene.writeHeader(data, SCENE_VERSION));
+            headerJournaled = true;
+        }
+
+        // Geometry refers to textures and materials by their position in the scene, so if they
+        // have been added, removed, or reordered, everything needs to be written again.
+        if (all) {
+            journalGeometry.clear();
+            fileGeometry.clear();
+        }
+        List<ObjectInfo> objects = new ArrayList<>(scene.objects);
+        Set<Object3D> written = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<GeometryRecord> geometryRecords = new ArrayList<>();
+        List<ObjectRecord> objectRecords = new ArrayList<>();
+        for (ObjectInfo info : objects) {
+            Object3D geometry = info.getGeometry();
+            boolean geometryChanged = changedGeometry.contains(geometry) || changedGeometry.contains(info.getObject());
+            if (!all && !geometryChanged && !changedObjects.contains(info) && storedObjects.contains(info.getId())) {
+                continue;
+            }
+            if (written.add(geometry) && (geometryChanged || (!journalGeometry.containsKey(geometry) && !fileGeometry.containsKey(geometry)))) {
+                int key = journalGeometry.computeIfAbsent(geometry, obj -> nextKey++);
+                fileGeometry.remove(geometry);
+                geometryRecords.add(new GeometryRecord(key, geometry.duplicate()));
+            }
+            Integer key = journalGeometry.get(geometry);
+            if (key != null) {
+                objectRecords.add(new ObjectRecord(info.duplicate(), JOURNAL_GEOMETRY, key));
+            } else {
+                objectRecords.add(new ObjectRecord(info.duplicate(), FILE_GEOMETRY, fileGeometry.get(geometry)));
+            }
+            storedObjects.add(info.getId());
+            journaledObjects.add(info.getId());
+        }
+        byte[] layout = toBytes(data -> writeLayout(data, objects));
+        Snapshot snapshot = new Snapshot(getJournalFile(file), !started, baseLength, baseModified, copyLists(),
+                header, geometryRecords, objectRecords, layout);
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        pendingWrites = pendingWrites.thenRunAsync(() -> write(snapshot, result), writer);
+        started = true;
+        complete = true;
+        modified = false;
+        headerChanged = false;
+        settings = currentSettings;
+        resources = getResources();
+        changedObjects.clear();
+        changedGeometry.clear();
+        recordVersions();
+        return result;
+    }
+
+    /**
+     * Record the version of every object, so later changes which do not add an undo record can
+     * be found.
+     */
+    private void recordVersions() {
+        versions.clear();
+        for (ObjectInfo info : scene.objects) {
+            versions.put(info, info.getVersion());
+        }
+    }
+
+    /**
+     * Find the objects whose version has changed since the previous flush. The low half of the
+     * version only changes when an object is moved, so its geometry only needs to be written if
+     * the high half has changed.
+     */
+    private void findChangedVersions() {
+        for (ObjectInfo info : scene.objects) {
+            Long previous = versions.get(info);
+            long version = info.getVersion();
+            if (previous == null || previous == version) {
+                continue;
+            }
+            changedObjects.add(info);
+            if ((previous >>> 32) != (version >>> 32)) {
+                changedGeometry.add(info.getObject());
+            }
+        }
+    }
+
+    /**
+     * Start a new journal file with the next flush, which writes the latest version of every object
+     * and header the journal holds. Objects which only appear in the scene file are not written.
+     */
+    private void compact() {
+        started = false;
+        if (headerJournaled) {
+            headerChanged = true;
+            headerJournaled = false;
+        }
+        for (ObjectInfo info : scene.objects) {
+            if (journaledObjects.contains(info.getId())) {
+                changedObjects.add(info);
+            }
+        }
+        journaledObjects.clear();
+        journalGeometry.clear();
+        storedObjects.clear();
+        storedObjects.addAll(fileObjects);
+    }
+
+    /**
+     * Create a scene which only holds copies of the lists of images, materials, textures, and objects
+     * in this one, so the geometry and tracks can be written while the scene continues to be edited.
+     */
+    private Scene copyLists() {
+        Scene copy = new Scene();
+        copy.textures.clear();
+        copy.images.addAll(scene.images);
+        copy.materials.addAll(scene.materials);
+        copy.textures.addAll(scene.textures);
+        copy.objects.addAll(scene.objects);
+        return copy;
+    }
+
+    /**
+     * Serialize the copies made by a flush and append them to the journal. This is run on the writer
+     * thread. If writing fails, later flushes are skipped until one starts a new journal file.
+     */
+    private void write(Snapshot snapshot, CompletableFuture<Void> result) {
+        if (broken && !snapshot.start()) {
+            result.completeExceptionally(new IOException("Scene journal is incomplete"));
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            if (snapshot.start()) {
+                out.write(MAGIC);
+                out.writeShort(JOURNAL_VERSION);
+                out.writeLong(snapshot.baseLength());
+                out.writeLong(snapshot.baseModified());
+            }
+            if (snapshot.header() != null) {
+                writeRecord(out, HEADER, data -> data.write(snapshot.header()));
+            }
+            for (GeometryRecord record : snapshot.geometry()) {
+                writeRecord(out, GEOMETRY, data -> {
+                    data.writeInt(record.key());
+                    SceneIO.writeClass(data, record.geometry());
+                    SceneIO.writeBuffered(data, target -> record.geometry().writeToFile(target, snapshot.scene()));
+                });
+            }
+            for (ObjectRecord record : snapshot.objects()) {
+                writeRecord(out, OBJECT, data -> writeObject(data, record, snapshot.scene()));
+            }
+            writeRecord(out, LAYOUT, data -> data.write(snapshot.layout()));
+            writeRecord(out, COMMIT, data -> {});
+            out.flush();
+            if (snapshot.start()) {
+                replace(snapshot.journalFile(), bytes);
+            } else {
+                try (FileOutputStream fout = new FileOutputStream(snapshot.journalFile(), true)) {
+                    bytes.writeTo(fout);
+                }
+            }
+            if (snapshot.start()) {
+                journalLength = compactedLength = bytes.size();
+            } else {
+                journalLength += bytes.size();
+            }
+            broken = false;
+            result.complete(null);
+        } catch (IOException | RuntimeException ex) {
+            log.atError().setCause(ex).log("Error writing scene journal: {}", ex.getMessage());
+            broken = true;
+            writeFailed = true;
+            result.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Replace the contents of a journal file. They are written to a temporary file which is synced
+     * and then moved over the journal, so a failure part way through leaves the old journal intact.
+     */
+    private static void replace(File journalFile, ByteArrayOutputStream bytes) throws IOException {
+        File temp = new File(journalFile.getParentFile(), journalFile.getName() + ".tmp");
+        try {
+            try (FileOutputStream fout = new FileOutputStream(temp)) {
+                bytes.writeTo(fout);
+                fout.getFD().sync();
+            }
+            try {
+                Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static void writeObject(DataOutputStream out, ObjectRecord record, Scene scene) throws IOException {
+        ObjectInfo info = record.info();
+        out.writeInt(info.getId());
+        info.getCoords().writeToFile(out);
+        out.writeUTF(info.getName());
+        out.writeBoolean(info.isVisible());
+        out.writeBoolean(info.isLocked());
+        out.writeByte(record.source());
+        out.writeInt(record.key());
+        SceneIO.writeTracks(out, scene, info, SCENE_VERSION);
+    }
+
+    private void writeLayout(DataOutputStream out, List<ObjectInfo> objects) throws IOException {
+        Map<ObjectInfo, Integer> index = new IdentityHashMap<>();
+        out.writeInt(objects.size());
+        for (ObjectInfo info : objects) {
+            index.put(info, index.size());
+            out.writeInt(info.getId());
+        }
+        for (ObjectInfo info : objects) {
+            ObjectInfo[] children = info.getChildren();
+            out.writeInt(children.length);
+            for (ObjectInfo child : children) {
+                out.writeInt(index.getOrDefault(child, -1));
+            }
+        }
+        scene.writeEnvironment(out);
+    }
+
+    private static void writeRecord(DataOutputStream out, int type, SceneIO.DataWriteProvider writer) throws IOException {
+        byte[] payload = toBytes(writer);
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static byte[] toBytes(SceneIO.DataWriteProvider writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writer.write(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private Object[][] getResources() {
+        return new Object[][]{scene.images.toArray(), scene.materials.toArray(), scene.textures.toArray()};
+    }
+
+    /**
+     * Get whether the scene has the same images, materials, and textures in the same order as
+     * when the journal was last flushed.
+     */
+    private boolean sameResources() {
+        Object[][] current = getResources();
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].length != resources[i].length) {
+                return false;
+            }
+            for (int j = 0; j < current[i].length; j++) {
+                if (current[i][j] != resources[i][j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The committed contents of a journal file. Only the latest version of each item is kept.
+     */
+    private static final class Contents {
+
+        byte[] header;
+        byte[] layout;
+        final Map<Integer, byte[]> geometry = new HashMap<>();
+        final Map<Integer, byte[]> objects = new HashMap<>();
+    }
+
+    /**
+     * Read the committed records from a journal file.
+     *
+     * @return the contents, or null if there is no journal, or it is not for the current version of the scene file
+     */
+    private static Contents readJournal(File file) throws IOException {
+        File journalFile = getJournalFile(file);
+        if (!journalFile.isFile()) {
+            return null;
+        }
+        long journalLength = journalFile.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readShort() != JOURNAL_VERSION) {
+                throw new InvalidObjectException("Bad scene journal");
+            }
+            if (in.readLong() != file.length() || in.readLong() != file.lastModified()) {
+                return null;
+            }
+            Contents contents = new Contents();
+            List<Map.Entry<Integer, byte[]>> pending = new ArrayList<>();
+            while (true) {
+                int type = in.read();
+                byte[] payload;
+                try {
+                    if (type == -1) {
+                        break;
+                    }
+                    int length = in.readInt();
+                    if (length < 0 || length > journalLength) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(type);
+                    crc.update(payload);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                } catch (EOFException ex) {
+                    // The program exited while this record was being written.
+
+                    break;
+                }
+                if (type != COMMIT) {
+                    pending.add(Map.entry(type, payload));
+                    continue;
+                }
+                for (Map.Entry<Integer, byte[]> entry : pending) {
+                    byte[] data = entry.getValue();
+                    switch (entry.getKey()) {
+                        case HEADER -> contents.header = data;
+                        case GEOMETRY -> contents.geometry.put(readKey(data), data);
+                        case OBJECT -> contents.objects.put(readKey(data), data);
+                        case LAYOUT -> contents.layout = data;
+                        default -> throw new InvalidObjectException("Bad scene journal record: " + entry.getKey());
+                    }
+                }
+                pending.clear();
+            }
+            return contents;
+        }
+    }
+
+    private static int readKey(byte[] data) throws IOException {
+        return new DataInputStream(new ByteArrayInputStream(data)).readInt();
+    }
+
+    /**
+     * Recover a scene from a scene file and its journal. The returned scene has a journal which
+     * continues the existing one, so the changes can still be recovered until the scene is saved.
+     *
+     * @param file the scene file
+     * @return the recovered scene, or null if there is no journal, it contains no changes, or it was
+     *         written for a different version of the file
+     */
+    public static Scene recover(File file) throws IOException {
+        Contents contents = readJournal(file);
+        if (contents == null || contents.layout == null) {
+            return null;
+        }
+        SceneIndex index = SceneIndex.read(file);
+        Scene scene;
+        if (contents.header != null) {
+            scene = new Scene(new DataInputStream(new ByteArrayInputStream(contents.header)), false);
+            if (index != null) {
+                index.setScene(scene);
+            }
+        } else if (index != null) {
+            scene = index.getScene();
+        } else {
+            throw new InvalidObjectException("Scene journal is incomplete");
+        }
+        scene.setName(file.getName());
+        scene.setDirectory(file.getParent());
+        SceneJournal journal = new SceneJournal(scene);
+
+        // Read the objects in their current order.
+        DataInputStream layout = new DataInputStream(new ByteArrayInputStream(contents.layout));
+        int count = layout.readInt();
+        List<ObjectInfo> objects = new ArrayList<>(count);
+        Map<Integer, Object3D> geometry = new HashMap<>();
+        Map<Integer, Integer> entries = new HashMap<>();
+        if (index != null) {
+            for (int i = 0; i < index.getEntries().size(); i++) {
+                entries.put(index.getEntries().get(i).id(), i);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int id = layout.readInt();
+            byte[] data = contents.objects.get(id);
+            ObjectInfo info;
+            if (data != null) {
+                info = journal.readObject(data, contents, geometry, index, entries);
+            } else {
+                info = getFileObject(id, index, entries);
+                journal.fileGeometry.putIfAbsent(info.getGeometry(), id);
+            }
+            objects.add(info);
+        }
+
+        // Objects loaded from the scene file may have been linked to others by the index, so
+        // clear the hierarchy before setting it from the journal.
+        for (ObjectInfo info : objects) {
+            info.setChildren();
+        }
+        for (ObjectInfo info : objects) {
+            info.setParent(null);
+        }
+        for (ObjectInfo info : objects) {
+            List<ObjectInfo> children = new ArrayList<>();
+            for (int j = layout.readInt(); j > 0; j--) {
+                int child = layout.readInt();
+                if (child >= 0) {
+                    children.add(objects.get(child));
+                }
+            }
+            info.setChildren(children.toArray(ObjectInfo[]::new));
+        }
+        scene.restoreObjects(objects, layout, SCENE_VERSION);
+
+        // Continue the existing journal.
+        journal.file = file;
+        journal.baseLength = file.length();
+        journal.baseModified = file.lastModified();
+        journal.started = true;
+        journal.complete = true;
+        journal.recovered = true;
+        journal.fileObjects.addAll(entries.keySet());
+        journal.journaledObjects.addAll(contents.objects.keySet());
+        journal.storedObjects.addAll(journal.fileObjects);
+        journal.storedObjects.addAll(journal.journaledObjects);
+        journal.headerJournaled = (contents.header != null);
+        journal.journalLength = getJournalFile(file).length();
+        journal.nextKey = contents.geometry.keySet().stream().mapToInt(key -> key + 1).max().orElse(0);
+        journal.recordVersions();
+        journal.settings = toBytes(scene::writeSettings);
+        journal.resources = journal.getResources();
+        journal.register();
+        return scene;
+    }
+
+    /**
+     * Decode an object record from the journal.
+     */
+    private ObjectInfo readObject(byte[] data, Contents contents, Map<Integer, Object3D> geometry, SceneIndex index, Map<Integer, Integer> entries) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int id = in.readInt();
+        ObjectInfo info = new ObjectInfo(null, new CoordinateSystem(in), in.readUTF());
+        info.setId(id);
+        info.setVisible(in.readBoolean());
+        info.setLocked(in.readBoolean());
+        int source = in.readByte();
+        int key = in.readInt();
+        Object3D obj;
+        if (source == JOURNAL_GEOMETRY) {
+            obj = geometry.get(key);
+            if (obj == null) {
+                byte[] body = contents.geometry.get(key);
+                if (body == null) {
+                    throw new InvalidObjectException("Missing geometry in scene journal: " + key);
+                }
+                DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+                bodyIn.readInt();
+                String classname = bodyIn.readUTF();
+                byte[] bytes = new byte[bodyIn.readInt()];
+                bodyIn.readFully(bytes);
+                obj = SceneIndex.createGeometry(classname, bytes, scene);
+                geometry.put(key, obj);
+                journalGeometry.put(obj, key);
+            }
+        } else {
+            obj = getFileObject(key, index, entries).getObject();
+            fileGeometry.putIfAbsent(obj, key);
+        }
+        info.setObject(obj);
+        SceneIO.readTracks(in, scene, info, SCENE_VERSION);
+        return info;
+    }
+
+    /**
+     * Load an object which has not changed from the scene file.
+     */
+    private static ObjectInfo getFileObject(int id, SceneIndex index, Map<Integer, Integer> entries) throws IOException {
+        Integer entry = entries.get(id);
+        if (entry == null) {
+            throw new InvalidObjectException("Missing object in scene journal: " + id);
+        }
+        return index.getObject(entry);
+    }
+}
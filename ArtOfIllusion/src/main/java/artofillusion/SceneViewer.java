@@ -29,6 +29,22 @@ import java.util.List;
  */
 public class SceneViewer extends ViewerCanvas {
 
+    /**
+     * The largest distance (in pixels) by which a simplified preview mesh may differ from the full one.
+     */
+    private static final double MAX_PREVIEW_ERROR = 1.5;
+
+    /**
+     * If more than this fraction of the view has changed, it is faster to redraw all of it.
+     */
+    private static final double MAX_UPDATE_FRACTION = 0.5;
+
+    /**
+     * How far (in pixels) the region being redrawn extends beyond the screen bounds of the objects
+     * which changed, to allow for rounding.
+     */
+    private static final int UPDATE_MARGIN = 2;
+
     final Scene theScene;
     final EditingWindow parentFrame;
     private final List<ObjectInfo> cameras;
@@ -36,6 +52,16 @@ public class SceneViewer extends ViewerCanvas {
     Point clickPoint, dragPoint;
     ObjectInfo clickedObject;
     int deselect;
+    private final UpdateRegionTracker updateTracker = new UpdateRegionTracker();
+
+    /**
+     * Everything other than the objects themselves which affects how they are drawn. If any of it
+     * changes, the whole view must be redrawn.
+     */
+    private record ViewState(Mat4 viewToWorld, Mat4 viewToScreen, Rectangle bounds, int renderMode, boolean hideBackfaces,
+            boolean showGrid, double gridSpacing, boolean showTemplate, Image template, ObjectInfo boundCamera,
+            double time, Color background, Color line, boolean animating) {
+    }
 
     public SceneViewer(Scene s, RowContainer p, EditingWindow fr) {
         this(s, p, fr, false);
@@ -103,7 +129,7 @@ public class SceneViewer extends ViewerCanvas {
         super.setOrientation(which);
         if (which > 5 && which < 6 + cameras.size()) {
             ObjectInfo nextCamera = cameras.get(which - 6);
-            CoordinateSystem nextCoords = nextCamera.coords.duplicate();
+            CoordinateSystem nextCoords = nextCamera.getCoords().duplicate();
             double workingDepth, projectionDist, nextScale;
             Vec3 nextCenter;
 
@@ -235,6 +261,117 @@ public class SceneViewer extends ViewerCanvas {
         }
     }
 
+    @Override
+    public boolean isBackgroundTessellationAllowed() {
+        return true;
+    }
+
+    /**
+     * Choose the simplest preview mesh for which no vertex moves by more than
+     * {@link #MAX_PREVIEW_ERROR} pixels on screen.
+     */
+    @Override
+    public int getPreviewLevel(ObjectInfo obj) {
+        BoundingBox bounds = obj.getPreviewBounds();
+        Mat4 toView = theCamera.getObjectToView();
+        double depth = Double.MAX_VALUE;
+        for (Vec3 corner : bounds.getCorners()) {
+            depth = Math.min(depth, toView.timesZ(corner));
+        }
+        if (isPerspective() && depth <= theCamera.getClipDistance()) {
+            return 0;
+        }
+
+        // Find how many pixels a unit length covers at the closest point of the object.
+
+        Mat4 toScreen = theCamera.getViewToScreen();
+        double pixelsPerUnit = toScreen.timesXY(new Vec3(1.0, 0.0, depth)).distance(toScreen.timesXY(new Vec3(0.0, 0.0, depth)));
+        for (int level = PreviewMeshSimplifier.LEVELS; level > 0; level--) {
+            if (Math.sqrt(3.0) * PreviewMeshSimplifier.getCellSize(bounds, level) * pixelsPerUnit <= MAX_PREVIEW_ERROR) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Find the part of the view which must be redrawn because objects have been added, removed,
+     * moved, reshaped, shown, or hidden since it was last drawn. This returns null if the view
+     * itself has changed, or if the region would cover so much of the view that it is simpler to
+     * redraw everything.
+     */
+    @Override
+    public Rectangle findUpdateRegion() {
+        if (renderMode == RENDER_RENDERED || renderMode == RENDER_TRANSPARENT) {
+            return null;
+        }
+        Rectangle bounds = getBounds();
+        Rectangle region = updateTracker.findUpdateRegion(getViewState(), theScene.getObjects(), this::isShown, this::findScreenArea);
+        if (region == null || region.isEmpty()) {
+            return region;
+        }
+        region.grow(UPDATE_MARGIN, UPDATE_MARGIN);
+        region = region.intersection(new Rectangle(0, 0, bounds.width, bounds.height));
+        if (region.width * (double) region.height > MAX_UPDATE_FRACTION * bounds.width * bounds.height) {
+            return null;
+        }
+        return region;
+    }
+
+    /**
+     * Get everything other than the objects themselves which affects how they are drawn.
+     */
+    private ViewState getViewState() {
+        return new ViewState(theCamera.getViewToWorld(), theCamera.getViewToScreen(), getBounds(), renderMode, hideBackfaces,
+                showGrid, gridSpacing, showTemplate, getTemplateImage(), boundCamera, theScene.getTime(),
+                backgroundColor, lineColor, animation.animatingMove() || animation.changingPerspective());
+    }
+
+    /**
+     * Determine whether an object is drawn in this view.
+     */
+    private boolean isShown(ObjectInfo info) {
+        return (info.isVisible() && info != boundCamera);
+    }
+
+    /**
+     * Find the part of the view covered by a bounding box (in world coordinates). This returns an
+     * empty rectangle if it is not in view, or null if it crosses the front clipping plane, so its
+     * screen bounds are only approximate.
+     */
+    private Rectangle findScreenArea(BoundingBox box) {
+        Mat4 toView = theCamera.getWorldToView();
+        Mat4 toScreen = theCamera.getWorldToScreen();
+        double clip = theCamera.getClipDistance();
+        double minx = Double.MAX_VALUE, miny = Double.MAX_VALUE, maxx = -Double.MAX_VALUE, maxy = -Double.MAX_VALUE;
+        boolean inFront = false, behind = false;
+        for (Vec3 corner : box.getCorners()) {
+            if (isPerspective() && toView.timesZ(corner) <= clip) {
+                behind = true;
+                continue;
+            }
+            inFront = true;
+            Vec2 p = toScreen.timesXY(corner);
+            minx = Math.min(minx, p.x);
+            miny = Math.min(miny, p.y);
+            maxx = Math.max(maxx, p.x);
+            maxy = Math.max(maxy, p.y);
+        }
+        if (inFront && behind) {
+            return null;
+        }
+        Rectangle bounds = getBounds();
+        minx = Math.max(minx, 0.0);
+        miny = Math.max(miny, 0.0);
+        maxx = Math.min(maxx, bounds.width);
+        maxy = Math.min(maxy, bounds.height);
+        if (!inFront || minx >= maxx || miny >= maxy) {
+            return new Rectangle();
+        }
+        int x = (int) Math.floor(minx), y = (int) Math.floor(miny);
+        return new Rectangle(x, y, (int) Math.ceil(maxx) - x, (int) Math.ceil(maxy) - y);
+    }
+
     @Override
     public synchronized void updateImage() {
         if (renderMode == RENDER_RENDERED) {
@@ -246,15 +383,20 @@ public class SceneViewer extends ViewerCanvas {
         } else {
             super.updateImage();
 
-            // Draw the objects.
+            // Draw the objects. If only part of the view is being redrawn, skip the ones outside it.
             Vec3 viewdir = theCamera.getViewToWorld().timesDirection(Vec3.vz());
-            for (ObjectInfo obj : theScene.getObjects()) {
+            Rectangle region = drawer.getUpdateRegion();
+            theCamera.setObjectTransform(Mat4.identity());
+            for (int index : theScene.findObjects(region == null ? this::isPossiblyVisible : box -> isOnScreen(box, region))) {
+                ObjectInfo obj = theScene.getObject(index);
                 if (obj == boundCamera || !obj.isVisible()) {
                     continue;
                 }
                 theCamera.setObjectTransform(obj.getCoords().fromLocal());
                 obj.getObject().renderObject(obj, this, viewdir);
             }
+            drawer.sceneComplete();
+            updateTracker.drawn(getViewState(), theScene.getObjects(), this::isShown);
         }
 
         // Hilight the selection.
@@ -453,14 +595,16 @@ public class SceneViewer extends ViewerCanvas {
         minarea = Integer.MAX_VALUE;
         Vec3 cameraPosition = theCamera.getCameraCoordinates().getOrigin();
         Vec3 cameraAxis = theCamera.getCameraCoordinates().getZDirection();
-        for (i = 0; i < theScene.getNumObjects(); i++) {
-            info = theScene.getObject(i);
+        Rectangle clickRect = new Rectangle(p.x, p.y, 1, 1);
+        theCamera.setObjectTransform(Mat4.identity());
+        for (int index : theScene.findObjects(box -> isOnScreen(box, clickRect))) {
+            info = theScene.getObject(index);
             if (info.isVisible() && !info.isLocked() && inFront(info, cameraPosition, cameraAxis)) {
                 theCamera.setObjectTransform(info.getCoords().fromLocal());
                 bounds = theCamera.findScreenBounds(info.getBounds());
                 if (bounds != null && pointInRectangle(p, bounds)) {
                     if (bounds.width * bounds.height < minarea) {
-                        j = i;
+                        j = index;
                         minarea = bounds.width * bounds.height;
                     }
                 }
@@ -509,6 +653,48 @@ public class SceneViewer extends ViewerCanvas {
         return (r.x - 1 <= p.x && r.y - 1 <= p.y && r.x + r.width + 1 >= p.x && r.y + r.height + 1 >= p.y);
     }
 
+    /**
+     * Determine whether any part of a bounding box (in world coordinates) might be visible. This is
+     * used to cull groups of objects as well as single ones, so it must never reject a box that
+     * contains a visible one. The camera's object transform must be set to the identity.
+     */
+    private boolean isPossiblyVisible(BoundingBox box) {
+        return (theCamera.visibility(box) != Camera.NOT_VISIBLE || crossesClipPlane(box));
+    }
+
+    /**
+     * Determine whether a bounding box (in world coordinates) may overlap a rectangle on the screen.
+     * The camera's object transform must be set to the identity.
+     */
+    private boolean isOnScreen(BoundingBox box, Rectangle rect) {
+        if (crossesClipPlane(box)) {
+            return true;
+        }
+        Rectangle b = theCamera.findScreenBounds(box);
+        return (b != null && b.x <= rect.x + rect.width && b.y <= rect.y + rect.height && rect.x <= b.x + b.width && rect.y <= b.y + b.height);
+    }
+
+    /**
+     * Determine whether a bounding box (in world coordinates) lies partly in front of and partly
+     * behind the front clipping plane. The screen bounds of such a box are only approximate.
+     */
+    private boolean crossesClipPlane(BoundingBox box) {
+        if (!isPerspective()) {
+            return false;
+        }
+        Mat4 toView = theCamera.getObjectToView();
+        double clip = theCamera.getClipDistance();
+        boolean inFront = false, behind = false;
+        for (Vec3 corner : box.getCorners()) {
+            if (toView.timesZ(corner) > clip) {
+                inFront = true;
+            } else {
+                behind = true;
+            }
+        }
+        return (inFront && behind);
+    }
+
     /**
      * Check if an object can be selected in perspective mode. An object, whose origin is on the "camera plane"
      * or behind it, should not be selected, when the view is set to perspective.
@@ -603,7 +789,9 @@ public class SceneViewer extends ViewerCanvas {
             }
             Vec3 cameraPosition = theCamera.getCameraCoordinates().getOrigin();
             Vec3 cameraAxis = theCamera.getCameraCoordinates().getZDirection();
-            for (int i = 0; i < theScene.getNumObjects(); i++) {
+            Rectangle selectRect = r;
+            theCamera.setObjectTransform(Mat4.identity());
+            for (int i : theScene.findObjects(box -> isOnScreen(box, selectRect))) {
                 info = theScene.getObject(i);
                 if (info.isVisible() && !info.isLocked() && inFront(info, cameraPosition, cameraAxis)) {
                     theCamera.setObjectTransform(info.getCoords().fromLocal());
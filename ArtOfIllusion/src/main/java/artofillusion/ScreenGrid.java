@@ -0,0 +1,154 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import java.awt.*;
+import java.util.*;
+
+/**
+ * A ScreenGrid is a spatial index of the screen space bounding boxes of a set of elements, such
+ * as the vertices, edges, or faces of a mesh. It divides the screen into a uniform grid of cells,
+ * and records which elements overlap each cell. This lets a viewer find the elements near the
+ * mouse, or inside a selection box, without testing every element.
+ * <p>
+ * Elements which lie partly or completely outside the screen are assigned to the cells along its
+ * edges, so queries with rectangles that extend past the edges of the screen still find them.
+ */
+public class ScreenGrid {
+
+    /**
+     * Elements which cover more than this many cells are not added to the cells. They are
+     * returned by every query instead.
+     */
+    private static final int MAX_CELLS_PER_ELEMENT = 64;
+
+    private static final int MIN_CELL_SIZE = 4;
+
+    private final int cellSize, columns, rows;
+    private final int[] cellStart, cellElements, large;
+    private final int[] mark;
+    private int stamp;
+
+    /**
+     * Create a grid.
+     *
+     * @param width the width of the screen
+     * @param height the height of the screen
+     * @param bounds the bounding boxes of the elements. Element i covers the pixels from
+     *               (bounds[4*i], bounds[4*i+1]) to (bounds[4*i+2], bounds[4*i+3]) inclusive.
+     *               An element whose minimum x is greater than its maximum x is never returned.
+     */
+    public ScreenGrid(int width, int height, int[] bounds) {
+        int count = bounds.length / 4;
+        width = Math.max(width, 1);
+        height = Math.max(height, 1);
+        cellSize = Math.max(MIN_CELL_SIZE, (int) Math.ceil(Math.sqrt(width * (double) height / Math.max(count, 1))));
+        columns = (width + cellSize - 1) / cellSize;
+        rows = (height + cellSize - 1) / cellSize;
+        mark = new int[count];
+
+        // Count the elements in each cell, then fill them in.
+
+        cellStart = new int[columns * rows + 1];
+        int[] range = new int[4];
+        int numLarge = 0;
+        for (int i = 0; i < count; i++) {
+            if (!findCells(bounds, i, range)) {
+                continue;
+            }
+            if ((range[2] - range[0] + 1) * (range[3] - range[1] + 1) > MAX_CELLS_PER_ELEMENT) {
+                numLarge++;
+                continue;
+            }
+            for (int y = range[1]; y <= range[3]; y++) {
+                for (int x = range[0]; x <= range[2]; x++) {
+                    cellStart[y * columns + x + 1]++;
+                }
+            }
+        }
+        for (int i = 1; i < cellStart.length; i++) {
+            cellStart[i] += cellStart[i - 1];
+        }
+        cellElements = new int[cellStart[cellStart.length - 1]];
+        large = new int[numLarge];
+        int[] next = Arrays.copyOf(cellStart, cellStart.length - 1);
+        numLarge = 0;
+        for (int i = 0; i < count; i++) {
+            if (!findCells(bounds, i, range)) {
+                continue;
+            }
+            if ((range[2] - range[0] + 1) * (range[3] - range[1] + 1) > MAX_CELLS_PER_ELEMENT) {
+                large[numLarge++] = i;
+                continue;
+            }
+            for (int y = range[1]; y <= range[3]; y++) {
+                for (int x = range[0]; x <= range[2]; x++) {
+                    cellElements[next[y * columns + x]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the range of cells covered by an element. This returns false if the element is empty.
+     */
+    private boolean findCells(int[] bounds, int i, int[] range) {
+        if (bounds[4 * i] > bounds[4 * i + 2] || bounds[4 * i + 1] > bounds[4 * i + 3]) {
+            return false;
+        }
+        range[0] = column(bounds[4 * i]);
+        range[1] = row(bounds[4 * i + 1]);
+        range[2] = column(bounds[4 * i + 2]);
+        range[3] = row(bounds[4 * i + 3]);
+        return true;
+    }
+
+    private int column(int x) {
+        return (x < 0 ? 0 : Math.min(x / cellSize, columns - 1));
+    }
+
+    private int row(int y) {
+        return (y < 0 ? 0 : Math.min(y / cellSize, rows - 1));
+    }
+
+    /**
+     * Find the elements which may overlap a rectangle. Every element whose bounding box intersects
+     * the rectangle (including its right and bottom edges) is returned, along with a few others
+     * which are near it, so callers must still test each element themselves.
+     *
+     * @return the indices of the elements, in increasing order
+     */
+    public int[] findElements(Rectangle r) {
+        int x1 = column(r.x), y1 = row(r.y), x2 = column(r.x + r.width), y2 = row(r.y + r.height);
+        stamp++;
+        int[] result = new int[16];
+        int count = 0;
+        for (int y = y1; y <= y2; y++) {
+            for (int x = x1; x <= x2; x++) {
+                int cell = y * columns + x;
+                for (int j = cellStart[cell]; j < cellStart[cell + 1]; j++) {
+                    int i = cellElements[j];
+                    if (mark[i] != stamp) {
+                        mark[i] = stamp;
+                        if (count == result.length) {
+                            result = Arrays.copyOf(result, 2 * count);
+                        }
+                        result[count++] = i;
+                    }
+                }
+            }
+        }
+        result = Arrays.copyOf(result, count + large.length);
+        System.arraycopy(large, 0, result, count, large.length);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -132,7 +132,7 @@ public class SplineMeshViewer extends MeshViewer {
             } else if (renderMode == RENDER_SMOOTH) {
                 shader = new SmoothVertexShader(mesh, surfaceRGB, viewDir);
             } else {
-                shader = new TexturedVertexShader(mesh, objInfo.getObject(), 0.0, viewDir).optimize();
+                shader = new TexturedVertexShader(mesh, objInfo.getObject(), 0.0, viewDir, TextureBaker.chooseResolution(getBounds())).optimize();
             }
             renderMesh(mesh, shader, theCamera, objInfo.getObject().isClosed(), null);
         }
@@ -0,0 +1,87 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * StartupReport records when each phase of application startup begins and ends, and which thread
+ * it runs on. Phases may run in parallel, so the report lists them by the time they started.
+ */
+final class StartupReport {
+
+    private record Phase(String name, String thread, long start, long end) {
+    }
+
+    private final long origin = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * Run one phase of startup on the current thread.
+     */
+    void run(String name, Runnable task) {
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            add(new Phase(name, Thread.currentThread().getName(), start, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Run one phase of startup on a background thread. The returned future completes when it
+     * is finished, so phases which depend on it can wait for it.
+     */
+    CompletableFuture<Void> runAsync(String name, Runnable task) {
+        return CompletableFuture.runAsync(() -> run(name, task));
+    }
+
+    /**
+     * Record the moment at which something happened, such as the first window becoming visible.
+     */
+    void mark(String name) {
+        long time = System.nanoTime();
+        add(new Phase(name, Thread.currentThread().getName(), time, time));
+    }
+
+    private void add(Phase phase) {
+        synchronized (phases) {
+            phases.add(phase);
+        }
+    }
+
+    /**
+     * Get a table of all the phases which have been recorded. Times are in milliseconds since
+     * this object was created.
+     */
+    String getReport() {
+        List<Phase> sorted;
+        synchronized (phases) {
+            sorted = new ArrayList<>(phases);
+        }
+        sorted.sort(Comparator.comparingLong(Phase::start));
+        StringBuilder report = new StringBuilder("Startup timing (ms):");
+        report.append(String.format("%n  %-24s %8s %8s %8s  %s", "Phase", "Start", "End", "Time", "Thread"));
+        long last = origin;
+        for (Phase phase : sorted) {
+            report.append(String.format("%n  %-24s %8d %8d %8d  %s", phase.name(), toMillis(phase.start() - origin),
+                    toMillis(phase.end() - origin), toMillis(phase.end() - phase.start()), phase.thread()));
+            last = Math.max(last, phase.end());
+        }
+        report.append(String.format("%n  %-24s %17d", "Total", toMillis(last - origin)));
+        return report.toString();
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -22,6 +22,7 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.image.BufferedImage;
 import java.io.*;
 import java.lang.ref.*;
 import java.util.*;
@@ -38,6 +39,8 @@ public class TexturesAndMaterialsDialog extends BDialog {
 
     private static final File assetsFolder = new File(ArtOfIllusion.APP_DIRECTORY, "Textures and Materials");
 
+    private static final int THUMBNAIL_SIZE = 24;
+
 
     private final Scene theScene;
     private final EditingWindow parentFrame;
@@ -116,6 +119,8 @@ public class TexturesAndMaterialsDialog extends BDialog {
         libraryList.getComponent().setDropMode(DropMode.ON);
         libraryList.getComponent().setTransferHandler(new DragHandler());
         libraryList.setRootNodeShown(false);
+        libraryList.getComponent().setRowHeight(0);
+        libraryList.getComponent().setCellRenderer(new ThumbnailCellRenderer());
 
         BScrollPane listWrapper = new BScrollPane(libraryList, BScrollPane.SCROLLBAR_AS_NEEDED, BScrollPane.SCROLLBAR_AS_NEEDED);
         listWrapper.setBackground(libraryList.getBackground());
@@ -625,10 +630,19 @@ public class TexturesAndMaterialsDialog extends BDialog {
 
         final int index;
         String name;
+        Icon thumbnail;
 
         TextureTreeNode(SceneTreeNode scene, int index) throws IOException {
             this.index = index;
-            name = scene.getScene().getTexture(index).getName();
+            Scene sc = scene.getScene();
+            name = sc.getTexture(index).getName();
+            Image image = ThumbnailService.getThumbnail(sc.getTexture(index), sc, THUMBNAIL_SIZE, this::thumbnailReady);
+            thumbnail = (image == null ? null : new ImageIcon(image));
+        }
+
+        private void thumbnailReady(Image image) {
+            thumbnail = new ImageIcon(image);
+            libraryList.repaint();
         }
 
         @Override
@@ -641,10 +655,19 @@ public class TexturesAndMaterialsDialog extends BDialog {
 
         final int index;
         String name;
+        Icon thumbnail;
 
         MaterialTreeNode(SceneTreeNode scene, int index) throws IOException {
             this.index = index;
-            name = scene.getScene().getMaterial(index).getName();
+            Scene sc = scene.getScene();
+            name = sc.getMaterial(index).getName();
+            Image image = ThumbnailService.getThumbnail(sc.getMaterial(index), sc, THUMBNAIL_SIZE, this::thumbnailReady);
+            thumbnail = (image == null ? null : new ImageIcon(image));
+        }
+
+        private void thumbnailReady(Image image) {
+            thumbnail = new ImageIcon(image);
+            libraryList.repaint();
         }
 
         @Override
@@ -653,6 +676,30 @@ public class TexturesAndMaterialsDialog extends BDialog {
         }
     }
 
+    /**
+     * Displays the thumbnails of textures and materials next to their names. Until a thumbnail is
+     * ready, an empty space of the same size is shown so rows do not change height.
+     */
+    private static class ThumbnailCellRenderer extends DefaultTreeCellRenderer {
+
+        private static final Icon placeholder = new ImageIcon(new BufferedImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE, BufferedImage.TYPE_INT_ARGB));
+
+        @Override
+        public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected, boolean expanded, boolean leaf, int row, boolean hasFocus) {
+            super.getTreeCellRendererComponent(tree, value, selected, expanded, leaf, row, hasFocus);
+            Icon thumbnail;
+            if (value instanceof TextureTreeNode node) {
+                thumbnail = node.thumbnail;
+            } else if (value instanceof MaterialTreeNode node) {
+                thumbnail = node.thumbnail;
+            } else {
+                return this;
+            }
+            setIcon(thumbnail == null ? placeholder : thumbnail);
+            return this;
+        }
+    }
+
     private class SceneTreeNode {
 
         List<TextureTreeNode> textures;
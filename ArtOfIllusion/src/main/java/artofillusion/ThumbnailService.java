@@ -0,0 +1,443 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.image.*;
+import artofillusion.material.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import artofillusion.texture.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.imageio.ImageIO;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ThumbnailService generates small preview images of textures and materials, for use in lists
+ * where there may be hundreds of them. Thumbnails are rendered in parallel on a bounded pool of
+ * background threads, with a simple built in renderer which shows a sphere lit by a single light
+ * in front of a checkered background.
+ * <p>
+ * Thumbnails are identified by a hash of the texture or material definition, as written by its
+ * writeToFile() method, so a texture which has not changed is only rendered once. They are kept
+ * in memory, and also saved in the preferences folder so they can be reused in later sessions.
+ * In memory, the images a texture uses are identified by their {@link ImageMap#getID()}. On disk
+ * they are identified by a hash of their saved data, which is found on a background thread since
+ * it may need the whole image to be loaded.
+ * Thumbnails on disk are touched whenever they are used, and once they take more than
+ * {@link #MAX_DISK_SIZE} bytes, the ones which have gone unused the longest are deleted.
+ */
+@Slf4j
+public final class ThumbnailService {
+
+    /**
+     * Change this whenever the appearance of thumbnails changes, so old ones saved on disk are not used.
+     */
+    private static final int VERSION = 1;
+
+    private static final int MAX_CACHED_THUMBNAILS = 2000;
+    private static final long MAX_DISK_SIZE = 32L << 20;
+    private static final int PRUNE_INTERVAL = 100;
+    private static final long TEMP_FILE_AGE = TimeUnit.DAYS.toMillis(1);
+    private static final double SPHERE_MARGIN = 1.1;
+    private static final Vec3 LIGHT_DIR = new Vec3(0.5, 0.4, 1.0).times(1.0 / Math.sqrt(1.41));
+    private static final double LIGHT_INTENSITY = 0.8, AMBIENT = 0.2;
+    private static final int MATERIAL_STEPS = 8;
+
+    private static final Map<String, Image> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > MAX_CACHED_THUMBNAILS;
+        }
+    };
+    private static final Map<String, List<Consumer<Image>>> pending = new HashMap<>();
+    private static final AtomicInteger savedThumbnails = new AtomicInteger();
+
+    private static final ExecutorService thumbnailExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), task -> {
+        Thread thread = new Thread(task, "Thumbnail rendering");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private ThumbnailService() {
+    }
+
+    /**
+     * Get a thumbnail of a texture. If it is not already available, this starts generating it in
+     * the background and returns null. When it is ready, it is passed to the callback on the
+     * event dispatch thread.
+     *
+     * @param tex the texture to show
+     * @param scene the scene containing the texture
+     * @param size the width and height of the thumbnail
+     * @param callback invoked with the thumbnail when it becomes available
+     * @return the thumbnail, or null if it is not yet available
+     */
+    public static Image getThumbnail(Texture tex, Scene scene, int size, Consumer<Image> callback) {
+        Description description = describe(tex.getClass().getName(), out -> tex.writeToFile(out, scene), scene, size,
+                image -> tex.usesImage(image));
+        if (description == null) {
+            return null;
+        }
+        Texture copy = tex.duplicate();
+        return getThumbnail(description, () -> renderTexture(copy, size), callback);
+    }
+
+    /**
+     * Get a thumbnail of a material. If it is not already available, this starts generating it
+     * in the background and returns null. When it is ready, it is passed to the callback on the
+     * event dispatch thread.
+     *
+     * @param mat the material to show
+     * @param scene the scene containing the material
+     * @param size the width and height of the thumbnail
+     * @param callback invoked with the thumbnail when it becomes available
+     * @return the thumbnail, or null if it is not yet available
+     */
+    public static Image getThumbnail(Material mat, Scene scene, int size, Consumer<Image> callback) {
+        Description description = describe(mat.getClass().getName(), out -> mat.writeToFile(out, scene), scene, size,
+                image -> mat.usesImage(image));
+        if (description == null) {
+            return null;
+        }
+        Material copy = mat.duplicate();
+        return getThumbnail(description, () -> renderMaterial(copy, size), callback);
+    }
+
+    private static Image getThumbnail(Description description, Callable<BufferedImage> renderer, Consumer<Image> callback) {
+        String key = description.key();
+        synchronized (cache) {
+            Image image = cache.get(key);
+            if (image != null) {
+                return image;
+            }
+            List<Consumer<Image>> callbacks = pending.get(key);
+            if (callbacks != null) {
+                callbacks.add(callback);
+                return null;
+            }
+            callbacks = new ArrayList<>();
+            callbacks.add(callback);
+            pending.put(key, callbacks);
+        }
+        thumbnailExecutor.submit(() -> {
+            Image image = null;
+            try {
+                image = loadOrRender(findFileKey(description), renderer);
+            } catch (Exception ex) {
+                log.atError().setCause(ex).log("Error creating thumbnail: {}", ex.getMessage());
+            }
+            List<Consumer<Image>> callbacks;
+            synchronized (cache) {
+                if (image != null) {
+                    cache.put(key, image);
+                }
+                callbacks = pending.remove(key);
+            }
+            if (image != null) {
+                final Image result = image;
+                EventQueue.invokeLater(() -> callbacks.forEach(cb -> cb.accept(result)));
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Load a thumbnail from the disk cache, or render it and add it to the cache.
+     */
+    private static BufferedImage loadOrRender(String key, Callable<BufferedImage> renderer) throws Exception {
+        Path folder = ApplicationPreferences.getPreferencesFolderPath().resolve("thumbnails");
+        Path file = folder.resolve(key + ".png");
+        if (Files.isRegularFile(file)) {
+            try {
+                BufferedImage image = ImageIO.read(file.toFile());
+                if (image != null) {
+                    file.toFile().setLastModified(System.currentTimeMillis());
+                    return image;
+                }
+            } catch (IOException ex) {
+                log.atError().setCause(ex).log("Error reading thumbnail: {}", ex.getMessage());
+            }
+        }
+        BufferedImage image = renderer.call();
+        try {
+            Files.createDirectories(folder);
+            Path temp = Files.createTempFile(folder, key, ".tmp");
+            ImageIO.write(image, "png", temp.toFile());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            log.atError().setCause(ex).log("Error saving thumbnail: {}", ex.getMessage());
+        }
+
+        // Listing the folder is slow when it holds many thumbnails, so it is only checked for the
+        // first thumbnail saved in each session, and then after every PRUNE_INTERVAL more.
+
+        if (savedThumbnails.getAndIncrement() % PRUNE_INTERVAL == 0) {
+            prune(folder, MAX_DISK_SIZE);
+        }
+        return image;
+    }
+
+    /**
+     * Delete the least recently used thumbnails in a folder if they take more than a maximum
+     * size, leaving them at three quarters of it. Temporary files left by an interrupted save
+     * are also deleted.
+     *
+     * @param folder the folder containing the thumbnails
+     * @param maxSize the maximum number of bytes the thumbnails may take
+     */
+    static synchronized void prune(Path folder, long maxSize) {
+        record Entry(Path file, long size, long modified) {
+        }
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (name.endsWith(".tmp") && now - modified > TEMP_FILE_AGE) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(".png")) {
+                    Entry entry = new Entry(file, Files.size(file), modified);
+                    entries.add(entry);
+                    total += entry.size();
+                }
+            }
+            if (total <= maxSize) {
+                return;
+            }
+            entries.sort(Comparator.comparingLong(Entry::modified));
+            long target = maxSize / 4 * 3;
+            for (int i = 0; i < entries.size() && total > target; i++) {
+                Files.deleteIfExists(entries.get(i).file());
+                total -= entries.get(i).size();
+            }
+        } catch (IOException ex) {
+            log.atError().setCause(ex).log("Error pruning thumbnails: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes a texture or material definition to a stream.
+     */
+    private interface Writer {
+
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * A texture or material whose thumbnail is needed. The key identifies the thumbnail in memory.
+     *
+     * @param definition the definition of the texture or material, along with the size of the thumbnail
+     * @param images the images it uses
+     */
+    private record Description(String key, byte[] definition, List<ImageMap> images) {
+    }
+
+    /**
+     * Describe a texture or material. The key is a hash of its definition, along with the ID of
+     * any images it uses, since the definition only refers to them by their index in the scene.
+     * This does not need the contents of the images, so it is fast enough for the event dispatch thread.
+     *
+     * @return the description, or null if the definition could not be written
+     */
+    private static Description describe(String className, Writer writer, Scene scene, int size, Predicate<ImageMap> usesImage) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeUTF(className);
+            writer.write(out);
+            List<ImageMap> images = new ArrayList<>();
+            for (int i = 0; i < scene.getNumImages(); i++) {
+                ImageMap image = scene.getImage(i);
+                if (usesImage.test(image)) {
+                    out.writeInt(i);
+                    images.add(image);
+                }
+            }
+            out.flush();
+            byte[] definition = bytes.toByteArray();
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(definition);
+            DataOutputStream ids = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+            for (ImageMap image : images) {
+                ids.writeInt(image.getID());
+                ids.writeLong(getFileModified(image));
+            }
+            ids.flush();
+            return new Description(HexFormat.of().formatHex(digest.digest()), definition, images);
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException ex) {
+            log.atError().setCause(ex).log("Error computing thumbnail key: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Compute the key identifying a thumbnail on disk. It is a hash of the definition of the texture
+     * or material, along with the saved data of any images it uses, so it is the same in every session.
+     */
+    private static String findFileKey(Description description) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(description.definition());
+        DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+        for (ImageMap image : description.images()) {
+            out.writeUTF(image.getClass().getName());
+            image.writeToStream(out, null);
+            out.writeLong(getFileModified(image));
+        }
+        out.flush();
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Get when the file an image is linked to was last modified, so a thumbnail is rendered again
+     * if it changes. This returns 0 for images which are stored in the scene.
+     */
+    private static long getFileModified(ImageMap image) {
+        File file = image.getFile();
+        return (file == null ? 0L : file.lastModified());
+    }
+
+    /**
+     * Get the color of the checkered background at a pixel.
+     */
+    private static void getBackground(RGBColor color, int x, int y, int size) {
+        int square = Math.max(size / 6, 2);
+        float value = (((x / square) + (y / square)) % 2 == 0 ? 0.8f : 0.55f);
+        color.setRGB(value, value, value);
+    }
+
+    /**
+     * Find the point on the front of the unit sphere which is seen at a pixel.
+     *
+     * @return the point, or null if the pixel does not show the sphere
+     */
+    private static Vec3 findSpherePoint(int x, int y, int size) {
+        double px = SPHERE_MARGIN * (2.0 * (x + 0.5) / size - 1.0);
+        double py = -SPHERE_MARGIN * (2.0 * (y + 0.5) / size - 1.0);
+        double r2 = px * px + py * py;
+        if (r2 >= 1.0) {
+            return null;
+        }
+        return new Vec3(px, py, Math.sqrt(1.0 - r2));
+    }
+
+    /**
+     * Find the values of the texture parameters at a point.
+     */
+    private static void findParameters(TextureParameter[] params, double[] values, Vec3 pos) {
+        for (int i = 0; i < params.length; i++) {
+            values[i] = switch (params[i].type) {
+                case TextureParameter.X_COORDINATE -> pos.x;
+                case TextureParameter.Y_COORDINATE -> pos.y;
+                case TextureParameter.Z_COORDINATE -> pos.z;
+                default -> params[i].defaultVal;
+            };
+        }
+    }
+
+    /**
+     * Render a thumbnail of a texture applied to a sphere.
+     */
+    static BufferedImage renderTexture(Texture tex, int size) {
+        Sphere sphere = new Sphere(1.0, 1.0, 1.0);
+        TextureMapping map = tex.getDefaultMapping(sphere);
+        TextureParameter[] params = map.getParameters();
+        double[] values = new double[params.length];
+        double pixelSize = 2.0 * SPHERE_MARGIN / size;
+        TextureSpec spec = new TextureSpec();
+        RGBColor color = new RGBColor(), background = new RGBColor();
+        Vec3 half = LIGHT_DIR.plus(Vec3.vz());
+        half.normalize();
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                getBackground(background, x, y, size);
+                Vec3 pos = findSpherePoint(x, y, size);
+                if (pos == null) {
+                    image.setRGB(x, y, background.getARGB());
+                    continue;
+                }
+                findParameters(params, values, pos);
+                map.getTextureSpec(pos, spec, pos.z, pixelSize, 0.0, values);
+                double diffuse = AMBIENT + LIGHT_INTENSITY * Math.max(0.0, pos.dot(LIGHT_DIR));
+                double exponent = Math.pow(2.0, 8.0 * (1.0 - spec.roughness));
+                double hilight = LIGHT_INTENSITY * Math.pow(Math.max(0.0, pos.dot(half)), exponent);
+                color.copy(spec.diffuse);
+                color.scale(diffuse);
+                spec.hilight.scale(hilight);
+                color.add(spec.hilight);
+                color.add(spec.emissive);
+                color.multiply(1.0f - spec.transparent.getRed(), 1.0f - spec.transparent.getGreen(), 1.0f - spec.transparent.getBlue());
+                background.multiply(spec.transparent);
+                color.add(background);
+                color.clip();
+                image.setRGB(x, y, color.getARGB());
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Render a thumbnail of a material applied to a sphere. As in the raster renderer, each step
+     * along the path through the sphere attenuates the light behind it and blends in the
+     * material's color.
+     */
+    static BufferedImage renderMaterial(Material mat, int size) {
+        Sphere sphere = new Sphere(1.0, 1.0, 1.0);
+        MaterialMapping map = mat.getDefaultMapping(sphere);
+        MaterialSpec spec = new MaterialSpec();
+        RGBColor color = new RGBColor(), background = new RGBColor(), transmitted = new RGBColor();
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                getBackground(background, x, y, size);
+                Vec3 front = findSpherePoint(x, y, size);
+                if (front == null) {
+                    image.setRGB(x, y, background.getARGB());
+                    continue;
+                }
+                double step = 2.0 * front.z / MATERIAL_STEPS;
+                transmitted.setRGB(1.0f, 1.0f, 1.0f);
+                color.setRGB(0.0f, 0.0f, 0.0f);
+                for (int i = 0; i < MATERIAL_STEPS; i++) {
+                    Vec3 pos = new Vec3(front.x, front.y, front.z - (i + 0.5) * step);
+                    map.getMaterialSpec(pos, spec, step, 0.0);
+                    float tr = (float) Math.pow(spec.transparency.getRed(), step);
+                    float tg = (float) Math.pow(spec.transparency.getGreen(), step);
+                    float tb = (float) Math.pow(spec.transparency.getBlue(), step);
+                    color.add(transmitted.getRed() * (1.0f - tr) * spec.color.getRed(),
+                            transmitted.getGreen() * (1.0f - tg) * spec.color.getGreen(),
+                            transmitted.getBlue() * (1.0f - tb) * spec.color.getBlue());
+                    transmitted.multiply(tr, tg, tb);
+                }
+                background.multiply(transmitted);
+                color.add(background);
+                color.clip();
+                image.setRGB(x, y, color.getARGB());
+            }
+        }
+        return image;
+    }
+}
@@ -291,6 +291,7 @@ public class TriMeshEditorWindow extends MeshEditorWindow implements EditingWind
         this.mesh = obj;
         hideVert = new boolean[mesh.getVertices().length];
         for (var viewerCanvas : theView) {
+            ((TriMeshViewer) viewerCanvas).screenPositionsChanged();
             if (getSelectionMode() == POINT_MODE && selected.length != obj.getVertices().length) {
                 selected = new boolean[obj.getVertices().length];
                 ((TriMeshViewer) viewerCanvas).visible = new boolean[obj.getVertices().length];
@@ -1,6 +1,6 @@
 /* Copyright (C) 1999-2009 by Peter Eastman
    Modifications copyright (C) 2017-2020 Petri Ihalainen
-   Changes copyright (C) 2020-2025 by Maksim Khramov
+   Changes copyright (C) 2020-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -68,9 +68,39 @@ public class TriMeshViewer extends MeshViewer {
             screenZ[i] = theCamera.getObjectToView().timesZ(pos);
             visible[i] = (!hideVert[i] && screenZ[i] > clipDist);
         }
+        screenPositionsChanged();
         super.updateImage();
     }
 
+    @Override
+    protected int[] findElementBounds(int mode) {
+        TriangleMesh mesh = (TriangleMesh) getController().getObject().getObject();
+        if (screenVert == null || screenVert.length != mesh.getVertices().length) {
+            // The mesh has changed since the screen positions were calculated.
+            return null;
+        }
+        int[] bounds;
+        if (mode == MeshEditController.POINT_MODE) {
+            bounds = new int[4 * screenVert.length];
+            for (int i = 0; i < screenVert.length; i++) {
+                setElementBounds(bounds, i, screenVert[i]);
+            }
+        } else if (mode == MeshEditController.EDGE_MODE) {
+            Edge[] ed = mesh.getEdges();
+            bounds = new int[4 * ed.length];
+            for (int i = 0; i < ed.length; i++) {
+                setElementBounds(bounds, i, screenVert[ed[i].v1], screenVert[ed[i].v2]);
+            }
+        } else {
+            Face[] fc = mesh.getFaces();
+            bounds = new int[4 * fc.length];
+            for (int i = 0; i < fc.length; i++) {
+                setElementBounds(bounds, i, screenVert[fc[i].v1], screenVert[fc[i].v2], screenVert[fc[i].v3]);
+            }
+        }
+        return bounds;
+    }
+
     @Override
     protected void drawObject() {
         TriangleMesh mesh = (TriangleMesh) getController().getObject().getObject();
@@ -159,7 +189,7 @@ public class TriMeshViewer extends MeshViewer {
             } else if (renderMode == RENDER_SMOOTH) {
                 shader = new SmoothVertexShader(mesh, surfaceRGBColor, viewDir);
             } else {
-                shader = new TexturedVertexShader(mesh, objInfo.getObject(), 0.0, viewDir).optimize();
+                shader = new TexturedVertexShader(mesh, objInfo.getObject(), 0.0, viewDir, TextureBaker.chooseResolution(getBounds())).optimize();
             }
             if (faceIndex != null && controller.getSelectionMode() == MeshEditController.FACE_MODE) {
                 shader = new SelectionVertexShader(new RGBColor(1.0, 0.4, 1.0), shader, faceIndex, controller.getSelection());
@@ -420,21 +450,22 @@ public class TriMeshViewer extends MeshViewer {
         boolean tolerant = (controller instanceof TriMeshEditorWindow tmew ? tmew.tolerant : false);
         if (selectBounds != null) {
             boolean newsel = !e.isControlDown();
+            int[] candidates = findElements(controller.getSelectionMode(), selectBounds.getBounds(), selected.length);
             if (controller.getSelectionMode() == MeshEditController.POINT_MODE) {
-                for (int i = 0; i < selected.length; i++) {
+                for (int i : candidates) {
                     if (!hideVert[i] && selectionRegionContains(screenVert[i])) {
                         selected[i] = newsel;
                     }
                 }
             } else if (controller.getSelectionMode() == MeshEditController.EDGE_MODE) {
                 if (tolerant) {
-                    for (int i = 0; i < selected.length; i++) {
+                    for (int i : candidates) {
                         if (!hideEdge[i] && (selectionRegionIntersects(screenVert[ed[i].v1], screenVert[ed[i].v2]))) {
                             selected[i] = newsel;
                         }
                     }
                 } else {
-                    for (int i = 0; i < selected.length; i++) {
+                    for (int i : candidates) {
                         if (!hideEdge[i] && (selectionRegionContains(screenVert[ed[i].v1]) && selectionRegionContains(screenVert[ed[i].v2]))) {
                             selected[i] = newsel;
                         }
@@ -442,7 +473,7 @@ public class TriMeshViewer extends MeshViewer {
                 }
             } else {
                 if (tolerant) {
-                    for (int i = 0; i < selected.length; i++) {
+                    for (int i : candidates) {
                         if (hideFace == null || !hideFace[i]) {
                             if (selectionRegionIntersects(screenVert[fc[i].v1], screenVert[fc[i].v2])
                                     || selectionRegionIntersects(screenVert[fc[i].v2], screenVert[fc[i].v3])
@@ -452,7 +483,7 @@ public class TriMeshViewer extends MeshViewer {
                         }
                     }
                 } else {
-                    for (int i = 0; i < selected.length; i++) {
+                    for (int i : candidates) {
                         if (hideFace == null || !hideFace[i]) {
                             if (selectionRegionContains(screenVert[fc[i].v1]) && selectionRegionContains(screenVert[fc[i].v2]) && selectionRegionContains(screenVert[fc[i].v3])) {
                                 selected[i] = newsel;
@@ -513,10 +544,11 @@ public class TriMeshViewer extends MeshViewer {
 
         boolean[] selected = controller.getSelection();
         boolean priorityToSelected = (getRenderMode() == RENDER_WIREFRAME || getRenderMode() == RENDER_TRANSPARENT);
+        Rectangle clickRegion = new Rectangle(pos.x - HANDLE_SIZE / 2, pos.y - HANDLE_SIZE / 2, 2 * (HANDLE_SIZE / 2), 2 * (HANDLE_SIZE / 2));
         if (controller.getSelectionMode() == MeshEditController.POINT_MODE) {
             TriangleMesh mesh = (TriangleMesh) getController().getObject().getObject();
             Vertex[] vt = (Vertex[]) mesh.getVertices();
-            for (int i = 0; i < vt.length; i++) {
+            for (int i : findElements(MeshEditController.POINT_MODE, clickRegion, vt.length)) {
                 if (!visible[i]) {
                     continue;
                 }
@@ -549,7 +581,10 @@ public class TriMeshViewer extends MeshViewer {
             vt = (Vertex[]) mesh.getVertices();
             ed = mesh.getEdges();
             boolean[] hideEdge = (controller instanceof TriMeshEditorWindow tmew ? tmew.hideEdge : new boolean[ed.length]);
-            for (int i = 0; i < ed.length; i++) {
+            int[] candidates = (projectedEdge == null ? findElements(MeshEditController.EDGE_MODE, clickRegion, ed.length) : null);
+            int count = (candidates == null ? ed.length : candidates.length);
+            for (int k = 0; k < count; k++) {
+                int i = (candidates == null ? k : candidates[k]);
                 Point v1, v2;
                 if (projectedEdge == null) {
                     if (!visible[ed[i].v1] || !visible[ed[i].v2]) {
@@ -643,7 +678,10 @@ public class TriMeshViewer extends MeshViewer {
                 }
                 hideFace = win.hideFace;
             }
-            for (int i = 0; i < fc.length; i++) {
+            int[] candidates = (mesh == getController().getObject().getObject() ? findElements(MeshEditController.FACE_MODE, clickRegion, fc.length) : null);
+            int count = (candidates == null ? fc.length : candidates.length);
+            for (int k = 0; k < count; k++) {
+                int i = (candidates == null ? k : candidates[k]);
                 int index = (param == null ? i : (int) param[i]);
                 if (hideFace != null && hideFace[index]) {
                     continue;
@@ -46,7 +46,7 @@ public class TubeViewer extends CurveViewer {
                 } else if (renderMode == RENDER_SMOOTH) {
                     shader = new SmoothVertexShader(mesh, surfaceRGBColor, viewDir);
                 } else {
-                    shader = new TexturedVertexShader(mesh, objInfo.getObject(), 0.0, viewDir).optimize();
+                    shader = new TexturedVertexShader(mesh, objInfo.getObject(), 0.0, viewDir, TextureBaker.chooseResolution(getBounds())).optimize();
                 }
                 renderMesh(mesh, shader, theCamera, objInfo.getObject().isClosed(), null);
             }
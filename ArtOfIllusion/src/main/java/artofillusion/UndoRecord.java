@@ -122,6 +122,14 @@ public class UndoRecord {
         return records.stream().map(Map.Entry::getKey).collect(Collectors.toList());
     }
 
+    /**
+     * Get the first argument of each command in this record's script, in the same order as
+     * {@link #getCommands()}. For most commands this is the object the command changes.
+     */
+    List<Object> getTargets() {
+        return records.stream().map(entry -> entry.getValue().length == 0 ? null : entry.getValue()[0]).collect(Collectors.toList());
+    }
+
     /**
      * Add a command to the end of this record's script.
      *
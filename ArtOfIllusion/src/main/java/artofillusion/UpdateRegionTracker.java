@@ -0,0 +1,152 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.awt.Rectangle;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * UpdateRegionTracker remembers how every object in a scene looked when a view was last drawn,
+ * so the view can find which part of it must be redrawn. Objects are compared by
+ * {@link ObjectInfo#getVersion()}, which changes whenever they are moved, reshaped, shown, or hidden.
+ * <p>
+ * Finding the region does not change anything. The view calls {@link #drawn} once it has actually
+ * been drawn, so asking twice, or asking without drawing, gives the same answer.
+ */
+final class UpdateRegionTracker {
+
+    /**
+     * Finds the part of the screen covered by a box in world coordinates.
+     */
+    interface Projection {
+
+        /**
+         * Find the part of the screen covered by a box in world coordinates. This returns an empty
+         * rectangle if the box is not on screen, or null if its area cannot be determined exactly enough.
+         */
+        Rectangle project(BoundingBox box);
+    }
+
+    /**
+     * The state of an object when the view was last drawn.
+     */
+    private static class DrawnObject {
+
+        long version;
+        boolean shown;
+        BoundingBox bounds;
+        Mat4 transform;
+        int frame;
+    }
+
+    private final Map<ObjectInfo, DrawnObject> drawnObjects = new IdentityHashMap<>();
+    private Object drawnView;
+    private int frameCount;
+
+    /**
+     * Find the part of the view which must be redrawn because objects have been added, removed, moved,
+     * reshaped, shown, or hidden since it was last drawn.
+     *
+     * @param view everything other than the objects which affects how they are drawn. If it is not equal
+     * to the one passed to {@link #drawn}, the whole view must be redrawn.
+     * @param objects the objects in the scene
+     * @param shown selects the objects which are drawn in the view
+     * @param projection finds the screen area covered by an object
+     * @return the region to redraw, which is empty if nothing has changed, or null if the whole view
+     * must be redrawn
+     */
+    Rectangle findUpdateRegion(Object view, List<ObjectInfo> objects, Predicate<ObjectInfo> shown, Projection projection) {
+        if (!view.equals(drawnView)) {
+            return null;
+        }
+        Rectangle region = new Rectangle();
+        int found = 0;
+        for (ObjectInfo info : objects) {
+            DrawnObject drawn = drawnObjects.get(info);
+            boolean show = shown.test(info);
+            if (drawn != null) {
+                found++;
+                if (drawn.version == info.getVersion() && drawn.shown == show) {
+                    continue;
+                }
+                if (drawn.shown && !addToRegion(drawn.bounds.transformAndOutset(drawn.transform), region, projection)) {
+                    return null;
+                }
+            }
+            if (show && !addToRegion(info.getPreviewBounds().transformAndOutset(info.getCoords().fromLocal()), region, projection)) {
+                return null;
+            }
+        }
+
+        // Every object which was drawn but is no longer in the scene must be erased.
+
+        if (found < drawnObjects.size()) {
+            Set<ObjectInfo> current = Collections.newSetFromMap(new IdentityHashMap<>());
+            current.addAll(objects);
+            for (Map.Entry<ObjectInfo, DrawnObject> entry : drawnObjects.entrySet()) {
+                DrawnObject drawn = entry.getValue();
+                if (!current.contains(entry.getKey()) && drawn.shown && !addToRegion(drawn.bounds.transformAndOutset(drawn.transform), region, projection)) {
+                    return null;
+                }
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Add the screen area covered by a box to a region. This returns false if the area cannot be
+     * determined exactly enough.
+     */
+    private static boolean addToRegion(BoundingBox box, Rectangle region, Projection projection) {
+        Rectangle screen = projection.project(box);
+        if (screen == null) {
+            return false;
+        }
+        if (!screen.isEmpty()) {
+            if (region.isEmpty()) {
+                region.setBounds(screen);
+            } else {
+                region.add(screen);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record the state of the view and every object in it, after it has been drawn.
+     *
+     * @param view everything other than the objects which affects how they are drawn
+     * @param objects the objects in the scene
+     * @param shown selects the objects which were drawn in the view
+     */
+    void drawn(Object view, List<ObjectInfo> objects, Predicate<ObjectInfo> shown) {
+        drawnView = view;
+        frameCount++;
+        for (ObjectInfo info : objects) {
+            long version = info.getVersion();
+            boolean show = shown.test(info);
+            DrawnObject drawn = drawnObjects.computeIfAbsent(info, key -> new DrawnObject());
+            if (drawn.bounds == null || drawn.version != version || drawn.shown != show) {
+                drawn.version = version;
+                drawn.shown = show;
+                drawn.bounds = info.getPreviewBounds();
+                drawn.transform = info.getCoords().fromLocal();
+            }
+            drawn.frame = frameCount;
+        }
+        if (drawnObjects.size() > objects.size()) {
+            drawnObjects.values().removeIf(drawn -> drawn.frame != frameCount);
+        }
+    }
+}
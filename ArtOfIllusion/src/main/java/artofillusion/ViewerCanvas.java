@@ -1159,6 +1159,17 @@ public abstract class ViewerCanvas extends CustomWidget {
         return nextDir;
     }
 
+    /**
+     * This is called by the CanvasDrawer just before rendering an image, after the camera has been
+     * prepared, to find what part of the image has changed since the previous frame. Subclasses
+     * which can redraw only the objects overlapping a region should override this, and then call
+     * {@link CanvasDrawer#sceneComplete()} once the objects have been drawn. The default
+     * implementation returns null, meaning that the whole image must be redrawn.
+     */
+    public Rectangle findUpdateRegion() {
+        return null;
+    }
+
     /**
      * This should be called by the CanvasDrawer just before rendering an image. It sets up the camera correctly.
      */
@@ -1210,8 +1221,9 @@ public abstract class ViewerCanvas extends CustomWidget {
             return;
         }
 
-        // Draw the grid, if necessary.
-        if (showGrid && !animation.animatingMove() && !animation.changingPerspective()) {
+        // Draw the grid, if necessary. When only part of the image is being redrawn, the drawer
+        // has already restored the background.
+        if (showGrid && !animation.animatingMove() && !animation.changingPerspective() && drawer.getUpdateRegion() == null) {
             float scale1 = 0.75f / 255.0f;
             float scale2 = 0.25f / 255.0f;
             Color majorColor = new Color(lineColor.getRed() * scale1 + backgroundColor.getRed() * scale2,
@@ -1305,6 +1317,7 @@ public abstract class ViewerCanvas extends CustomWidget {
                 }
             }
         }
+        drawer.backgroundComplete();
     }
 
     /**
@@ -1512,6 +1525,26 @@ public abstract class ViewerCanvas extends CustomWidget {
         drawer.renderLine(p1, zf1, p2, zf2, cam, color);
     }
 
+    /**
+     * Get the level of detail at which an object's preview mesh should be drawn. This is passed to
+     * {@link ObjectInfo#getPreviewMesh(int)} and {@link ObjectInfo#getWireframePreview(int)}. It is
+     * called while the camera's object transform is set for the object. The default implementation
+     * always returns 0 (full detail).
+     */
+    public int getPreviewLevel(ObjectInfo obj) {
+        return 0;
+    }
+
+    /**
+     * Get whether this canvas allows slow preview meshes to be built on a background thread. If
+     * so, objects are drawn with their previous meshes (see {@link ObjectInfo#getPreviewMesh(int, Runnable)})
+     * until the new ones are ready, and the canvas is then repainted. The default implementation
+     * returns false.
+     */
+    public boolean isBackgroundTessellationAllowed() {
+        return false;
+    }
+
     /**
      * Render a wireframe object.
      */
@@ -1,5 +1,5 @@
 /* Copyright (C) 2001-2012 by Peter Eastman
-   Changes copyright (C) 2016-2024 by Maksim Khramov
+   Changes copyright (C) 2016-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -19,19 +19,15 @@ import buoy.event.*;
 import buoy.widget.*;
 import java.awt.*;
 import java.awt.image.*;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.text.*;
 import java.util.List;
-import javax.imageio.ImageIO;
-import lombok.extern.slf4j.Slf4j;
 
 /**
- * This class generates a wireframe preview of an animation.
+ * This class generates a wireframe preview of an animation. Rendered frames are stored in a
+ * {@link PreviewFrameCache}, so the animation plays back in real time once every frame has been
+ * rendered, and the user can pause it and drag a slider to any frame.
  */
-@Slf4j
 public class AnimationPreviewer implements Runnable {
 
     private double originalTime;
@@ -41,8 +37,14 @@ public class AnimationPreviewer implements Runnable {
     private SceneViewer canvas;
     private Thread previewThread;
     private BDialog display;
-    private byte[][] imageData;
+    private BSlider frameSlider;
+    private BButton playButton;
+    private PreviewFrameCache cache;
     private NumberFormat format;
+    private int totalFrames;
+    private volatile boolean playing = true;
+    private int requestedFrame = -1;
+    private boolean updatingSlider;
 
     static int currentCamera = 0, width = 320, height = 240, fps = 15, mode = 2;
     static double startTime = 0.0, endTime = 1.0;
@@ -99,6 +101,8 @@ public class AnimationPreviewer implements Runnable {
         endTime = endField.getValue();
         fps = (int) fpsField.getValue();
         originalTime = theScene.getTime();
+        totalFrames = Math.max(1, (int) Math.ceil((endTime - startTime) * fps));
+        cache = PreviewFrameCache.getCache(theScene, new PreviewFrameCache.Settings(sceneCamera.getId(), mode, width, height, fps, startTime), totalFrames);
 
         // Display a dialog to show the preview.
         display = new BDialog(parent, Translate.text("Preview"), true);
@@ -121,6 +125,15 @@ public class AnimationPreviewer implements Runnable {
                 return false;
             }
         });
+        RowContainer controls = new RowContainer();
+        playButton = new BButton(ThemeManager.getIcon("stop"));
+        playButton.getComponent().addActionListener(event -> togglePlaying());
+        frameSlider = new BSlider(0, 0, totalFrames - 1, BSlider.HORIZONTAL);
+        frameSlider.getComponent().addChangeListener(event -> frameSliderChanged());
+        frameSlider.getComponent().setPreferredSize(new Dimension(Math.max(AnimationPreviewer.width - 60, 100), frameSlider.getPreferredSize().height));
+        controls.add(playButton);
+        controls.add(frameSlider);
+        content.add(controls);
         content.add(Translate.button("close", event -> doClose()), new LayoutInfo());
         display.pack();
         UIUtilities.centerDialog(display, parent);
@@ -132,89 +145,116 @@ public class AnimationPreviewer implements Runnable {
     }
 
     /**
-     * Generate and display all of the frames in a loop.
+     * Generate and display all of the frames in a loop. Each frame is rendered the first time it
+     * is needed, and then retrieved from the cache. If the user pauses the preview or drags the
+     * frame slider, this waits until a new frame is requested.
      */
     @Override
     public void run() {
-        int totalFrames = (int) Math.ceil((endTime - startTime) * fps);
-        if (totalFrames <= 0) {
-            totalFrames = 1;
-        }
-        imageData = new byte[totalFrames][];
         Camera cam = canvas.getCamera();
         long lastUpdate = 0L, ms, delay = 1000 / fps;
-
-        // In the first loop, we render all of the images.
-        try {
-            for (int i = 0; i < totalFrames; i++) {
-                final double time = startTime + i / (double) fps;
-                theScene.setTime(time);
-                SceneCamera sc = (SceneCamera) sceneCamera.getObject();
-                cam.setCameraCoordinates(sceneCamera.getCoords().duplicate());
-                cam.setScreenTransform(sc.getScreenTransform(width, height), width, height);
-                final int frame = i;
+        int frame = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            synchronized (this) {
                 try {
-                    EventQueue.invokeAndWait(new Runnable() {
-                        @Override
-                        public void run() {
-                            setLabels(time, frame);
-                            SoftwareCanvasDrawer drawer = (SoftwareCanvasDrawer) canvas.getCanvasDrawer();
-                            Graphics2D canvasGraphics = (Graphics2D) canvas.getComponent().getGraphics();
-                            drawer.paint(new RepaintEvent(canvas, canvasGraphics));
-                            canvasGraphics.dispose();
-                            imageData[frame] = recordImage(drawer.getImage());
-                        }
-                    });
-                } catch (InterruptedException | InvocationTargetException ex) {
+                    while (!playing && requestedFrame < 0) {
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
                     return;
                 }
-                if (Thread.currentThread().isInterrupted()) {
-                    return;
+                if (requestedFrame >= 0) {
+                    frame = requestedFrame;
+                    requestedFrame = -1;
                 }
-                ms = System.currentTimeMillis();
-                if (ms < lastUpdate + delay) {
-                    try {
-                        Thread.sleep(lastUpdate + delay - ms);
-                    } catch (InterruptedException ex) {
-                        return;
-                    }
+            }
+            if (!showFrame(frame, cam)) {
+                return;
+            }
+            if (!playing) {
+                continue;
+            }
+            ms = System.currentTimeMillis();
+            if (ms < lastUpdate + delay) {
+                try {
+                    Thread.sleep(lastUpdate + delay - ms);
+                } catch (InterruptedException ex) {
+                    return;
                 }
-                lastUpdate = System.currentTimeMillis();
             }
+            lastUpdate = System.currentTimeMillis();
+            frame = (frame + 1) % totalFrames;
+        }
+    }
 
-            // In later loops, we simply retrieve the data from the array.
-            while (!Thread.currentThread().isInterrupted()) {
-                for (int i = 0; i < totalFrames; i++) {
-                    final double time = startTime + i / (double) fps;
-                    final int frame = i;
-                    final Image image = retrieveImage(imageData[i]);
-                    try {
-                        EventQueue.invokeAndWait(new Runnable() {
-                            @Override
-                            public void run() {
-                                setLabels(time, frame);
-                                Graphics2D canvasGraphics = (Graphics2D) canvas.getComponent().getGraphics();
-                                canvasGraphics.drawImage(image, 0, 0, null);
-                                canvasGraphics.dispose();
-                            }
-                        });
-                    } catch (InterruptedException | InvocationTargetException ex) {
-                        return;
-                    }
-                    ms = System.currentTimeMillis();
-                    if (ms < lastUpdate + delay) {
-                        try {
-                            Thread.sleep(lastUpdate + delay - ms);
-                        } catch (InterruptedException ex) {
-                            return;
-                        }
-                    }
-                    lastUpdate = System.currentTimeMillis();
-                }
+    /**
+     * Display a frame, rendering it if it is not in the cache.
+     *
+     * @return false if the thread was interrupted
+     */
+    private boolean showFrame(final int frame, Camera cam) {
+        final double time = startTime + frame / (double) fps;
+        final BufferedImage cached = cache.get(frame);
+        try {
+            if (cached != null) {
+                EventQueue.invokeAndWait(() -> {
+                    showPosition(time, frame);
+                    Graphics2D canvasGraphics = (Graphics2D) canvas.getComponent().getGraphics();
+                    canvasGraphics.drawImage(cached, 0, 0, null);
+                    canvasGraphics.dispose();
+                });
+                return true;
             }
-        } catch (IOException ex) {
-            log.atError().setCause(ex).log("IO Error: {}", ex.getMessage());
+            int generation = cache.getGeneration();
+            theScene.setTime(time);
+            SceneCamera sc = (SceneCamera) sceneCamera.getObject();
+            cam.setCameraCoordinates(sceneCamera.getCoords().duplicate());
+            cam.setScreenTransform(sc.getScreenTransform(width, height), width, height);
+            final BufferedImage[] rendered = new BufferedImage[1];
+            EventQueue.invokeAndWait(() -> {
+                showPosition(time, frame);
+                SoftwareCanvasDrawer drawer = (SoftwareCanvasDrawer) canvas.getCanvasDrawer();
+                Graphics2D canvasGraphics = (Graphics2D) canvas.getComponent().getGraphics();
+                drawer.paintAndWait(new RepaintEvent(canvas, canvasGraphics));
+                canvasGraphics.dispose();
+
+                // The drawer reuses its image for every frame, including ones started by repaints
+                // on the event dispatch thread, so it is copied before another frame can be drawn.
+
+                BufferedImage image = drawer.getImage();
+                rendered[0] = new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+            });
+            cache.put(frame, rendered[0], generation);
+        } catch (InterruptedException | InvocationTargetException ex) {
+            return false;
+        }
+        return !Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Pause or resume playback.
+     */
+    private void togglePlaying() {
+        synchronized (this) {
+            playing = !playing;
+            notifyAll();
+        }
+        playButton.setIcon(ThemeManager.getIcon(playing ? "stop" : "play"));
+    }
+
+    /**
+     * Pause playback and show the frame the user selected with the slider.
+     */
+    private void frameSliderChanged() {
+        if (updatingSlider) {
+            return;
         }
+        synchronized (this) {
+            playing = false;
+            requestedFrame = frameSlider.getValue();
+            notifyAll();
+        }
+        playButton.setIcon(ThemeManager.getIcon("play"));
     }
 
     /**
@@ -227,33 +267,25 @@ public class AnimationPreviewer implements Runnable {
         } catch (InterruptedException ex) {
         }
         theScene.setTime(originalTime);
+        cache.recordSceneState();
         display.dispose();
     }
 
     /**
-     * Set the labels for the current time and frame.
+     * Update the labels and the frame slider to show the current time and frame.
      */
-    private void setLabels(double time, int frame) {
-        timeLabel.setText(Translate.text("Time") + ": " + format.format(time));
-        frameLabel.setText(Translate.text("Frame") + ": " + (frame + 1));
+    private void showPosition(double time, int frame) {
+        setLabels(time, frame);
+        updatingSlider = true;
+        frameSlider.setValue(frame);
+        updatingSlider = false;
     }
 
     /**
-     * Record the bitmap for an image.
-     */
-    private byte[] recordImage(BufferedImage image) {
-        try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "png", stream);
-            return stream.toByteArray();
-        } catch (IOException ex) {
-            return null;
-        }
-    }
-
-    /**
-     * Copy a bitmap into the image.
+     * Set the labels for the current time and frame.
      */
-    private Image retrieveImage(byte[] bytes) throws IOException {
-        return ImageIO.read(new ByteArrayInputStream(bytes));
+    private void setLabels(double time, int frame) {
+        timeLabel.setText(Translate.text("Time") + ": " + format.format(time));
+        frameLabel.setText(Translate.text("Frame") + ": " + (frame + 1));
     }
 }
@@ -0,0 +1,295 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.animation;
+
+import artofillusion.*;
+import artofillusion.object.*;
+import java.awt.image.*;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.zip.*;
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+
+/**
+ * PreviewFrameCache stores the frames rendered by an {@link AnimationPreviewer}, so that they can
+ * be played back and scrubbed through without rendering them again. Frames are compressed, and
+ * are kept in a ring buffer: when an animation has more frames than will fit, each frame replaces
+ * the one which was stored a full buffer length before it.
+ * <p>
+ * The cache for the most recent preview is kept after the preview window is closed, so previewing
+ * the same animation again with the same settings reuses it. It is cleared whenever the scene is
+ * modified, or one of its textures or materials is edited. Changes which were not reported that way
+ * are caught when the preview is opened again, by comparing the objects of the scene and their versions
+ * to those recorded when the last preview was closed.
+ */
+public final class PreviewFrameCache implements ListChangeListener {
+
+    /**
+     * The maximum total number of pixels in all the frames a cache can hold.
+     */
+    static final long MAX_CACHE_PIXELS = 32L * 1024 * 1024;
+
+    private static PreviewFrameCache current;
+
+    private final WeakReference<Scene> scene;
+    private final Settings settings;
+    private final Frame[] data;
+    private final int[] frameIndex;
+    private int generation;
+    private long sceneState;
+
+    /**
+     * The options a preview was generated with. Frames generated with different settings cannot
+     * be shared.
+     */
+    record Settings(int camera, int mode, int width, int height, int fps, double startTime) {
+    }
+
+    /**
+     * A compressed frame.
+     */
+    private record Frame(int width, int height, byte[] data) {
+    }
+
+    PreviewFrameCache(Scene scene, Settings settings, int totalFrames) {
+        this.scene = new WeakReference<>(scene);
+        this.settings = settings;
+        int capacity = findCapacity(settings, totalFrames);
+        data = new Frame[capacity];
+        frameIndex = new int[capacity];
+        Arrays.fill(frameIndex, -1);
+    }
+
+    /**
+     * Get the cache to use for a preview. If the previous preview was of the same scene with the
+     * same settings, its cache is returned. Otherwise, a new one is created.
+     */
+    static synchronized PreviewFrameCache getCache(Scene scene, Settings settings, int totalFrames) {
+        if (current != null && current.scene.get() == scene && current.settings.equals(settings)
+                && current.getCapacity() >= findCapacity(settings, totalFrames)) {
+            if (current.sceneState != findSceneState(scene)) {
+                current.invalidate();
+            }
+            return current;
+        }
+        if (current != null) {
+            current.dispose();
+        }
+        current = new PreviewFrameCache(scene, settings, totalFrames);
+        scene.addTextureListener(current);
+        scene.addMaterialListener(current);
+        EventBus.getDefault().register(current);
+        return current;
+    }
+
+    /**
+     * Discard the frames cached for a scene. This is called whenever the scene is marked as modified.
+     */
+    public static synchronized void sceneModified(Scene scene) {
+        if (current != null && current.scene.get() == scene) {
+            current.invalidate();
+        }
+    }
+
+    /**
+     * Find a value which changes whenever an object is added to or removed from a scene, or anything
+     * which affects how one of its objects is displayed changes.
+     */
+    static long findSceneState(Scene scene) {
+        long state = scene.getNumObjects();
+        for (ObjectInfo info : scene.getObjects()) {
+            state = 31 * state + System.identityHashCode(info);
+            state = 31 * state + info.getVersion();
+        }
+        return state;
+    }
+
+    /**
+     * Record the state of the scene, once the preview has finished and the scene is back at the time
+     * it had before. The cache is invalidated if the scene differs from this the next time it is used.
+     */
+    synchronized void recordSceneState() {
+        Scene sc = scene.get();
+        if (sc != null) {
+            sceneState = findSceneState(sc);
+        }
+    }
+
+    /**
+     * Stop listening for changes to the scene, and discard all frames.
+     */
+    private void dispose() {
+        Scene sc = scene.get();
+        if (sc != null) {
+            sc.removeTextureListener(this);
+            sc.removeMaterialListener(this);
+        }
+        EventBus.getDefault().unregister(this);
+        invalidate();
+    }
+
+    /**
+     * Get the number of frames this cache can hold at once.
+     */
+    int getCapacity() {
+        return data.length;
+    }
+
+    /**
+     * Find how many frames a cache should hold for a preview.
+     */
+    private static int findCapacity(Settings settings, int totalFrames) {
+        return (int) Math.max(1, Math.min(totalFrames, MAX_CACHE_PIXELS / ((long) settings.width * settings.height)));
+    }
+
+    /**
+     * Get the current generation of the cache. This changes every time it is invalidated, so a
+     * frame which was started before that can be recognized and discarded.
+     */
+    synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Discard all frames.
+     */
+    synchronized void invalidate() {
+        generation++;
+        Arrays.fill(data, null);
+        Arrays.fill(frameIndex, -1);
+    }
+
+    /**
+     * Determine whether a frame is in the cache.
+     */
+    synchronized boolean contains(int frame) {
+        int slot = frame % data.length;
+        return frameIndex[slot] == frame;
+    }
+
+    /**
+     * Add a frame to the cache.
+     *
+     * @param frame the index of the frame
+     * @param image the rendered frame
+     * @param generation the value returned by {@link #getGeneration()} before the frame was rendered.
+     *                   If the cache has been invalidated since then, the frame is discarded.
+     */
+    void put(int frame, BufferedImage image, int generation) {
+        Frame compressed = compress(image);
+        synchronized (this) {
+            if (generation != this.generation) {
+                return;
+            }
+            int slot = frame % data.length;
+            data[slot] = compressed;
+            frameIndex[slot] = frame;
+        }
+    }
+
+    /**
+     * Get a frame from the cache.
+     *
+     * @return the frame, or null if it is not in the cache
+     */
+    BufferedImage get(int frame) {
+        Frame compressed;
+        synchronized (this) {
+            int slot = frame % data.length;
+            if (frameIndex[slot] != frame) {
+                return null;
+            }
+            compressed = data[slot];
+        }
+        return decompress(compressed);
+    }
+
+    /**
+     * Compress the RGB components of an image.
+     */
+    private static Frame compress(BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixel = image.getRGB(0, 0, width, height, null, 0, width);
+        byte[] rgb = new byte[3 * pixel.length];
+        for (int i = 0, j = 0; i < pixel.length; i++) {
+            rgb[j++] = (byte) (pixel[i] >> 16);
+            rgb[j++] = (byte) (pixel[i] >> 8);
+            rgb[j++] = (byte) pixel[i];
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(rgb);
+        deflater.finish();
+        byte[] buffer = new byte[Math.max(1024, rgb.length / 8)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        deflater.end();
+        return new Frame(width, height, Arrays.copyOf(buffer, length));
+    }
+
+    /**
+     * Rebuild an image from the data created by {@link #compress(BufferedImage)}.
+     */
+    private static BufferedImage decompress(Frame frame) {
+        int[] pixel = new int[frame.width * frame.height];
+        byte[] rgb = new byte[3 * pixel.length];
+        Inflater inflater = new Inflater();
+        inflater.setInput(frame.data);
+        try {
+            int length = 0;
+            while (length < rgb.length && !inflater.finished()) {
+                length += inflater.inflate(rgb, length, rgb.length - length);
+            }
+        } catch (DataFormatException ex) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+        for (int i = 0, j = 0; i < pixel.length; i++, j += 3) {
+            pixel[i] = 0xFF000000 | (rgb[j] & 0xFF) << 16 | (rgb[j + 1] & 0xFF) << 8 | (rgb[j + 2] & 0xFF);
+        }
+        BufferedImage image = new BufferedImage(frame.width, frame.height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, frame.width, frame.height, pixel, 0, frame.width);
+        return image;
+    }
+
+    @Subscribe
+    public void onUndoChangedEvent(UndoChangedEvent event) {
+        UndoRecord rec = event.getRecord();
+        if (rec.getView() == null || rec.getView().getScene() != scene.get()) {
+            return;
+        }
+        if (rec.getCommands().stream().allMatch(command -> command == UndoRecord.SET_SCENE_SELECTION)) {
+            return;
+        }
+        invalidate();
+    }
+
+    @Override
+    public void itemAdded(int index, Object obj) {
+        invalidate();
+    }
+
+    @Override
+    public void itemRemoved(int index, Object obj) {
+        invalidate();
+    }
+
+    @Override
+    public void itemChanged(int index, Object obj) {
+        invalidate();
+    }
+}
@@ -1,5 +1,5 @@
 /* Copyright (C) 2003-2005 by Peter Eastman
-   Changes copyright (C) 2023 by Maksim Khramov
+   Changes copyright (C) 2023-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -11,6 +11,7 @@
 
 package artofillusion.image;
 
+import artofillusion.math.HalfFloat;
 import java.awt.*;
 import java.awt.image.*;
 
@@ -21,12 +22,17 @@ import lombok.extern.slf4j.Slf4j;
  * This class stores an image, with optional additional floating point values for each pixel.
  * It is intended to be extensible, so that as features are added to the renderers, the amount
  * of information available for each pixel can grow.
+ * <p>
+ * The color, alpha, and noise components can be stored in half precision, which uses half as
+ * much memory. This is plenty for any image which will be displayed or saved. The depth and
+ * object components are always stored in full precision.
  */
 @Slf4j
 public class ComplexImage {
 
     private Image img;
     private final float[][] pixelData;
+    private final short[][] halfData;
     private int[] intImage;
     /**
      * -- GETTER --
@@ -40,6 +46,12 @@ public class ComplexImage {
      */
     @Getter
     private final int height;
+    /**
+     * -- GETTER --
+     *  Determine whether components are stored in half precision when possible.
+     */
+    @Getter
+    private boolean halfPrecision;
 
     public static final int BLUE = 1;
     public static final int GREEN = 2;
@@ -49,6 +61,11 @@ public class ComplexImage {
     public static final int OBJECT = 32;
     public static final int NOISE = 64;
 
+    /**
+     * The components which may be stored in half precision.
+     */
+    private static final int HALF_PRECISION_COMPONENTS = RED | GREEN | BLUE | ALPHA | NOISE;
+
     /**
      * Construct a ComplexImage which wraps an Image object.
      */
@@ -57,14 +74,40 @@ public class ComplexImage {
         width = image.getWidth(null);
         height = image.getHeight(null);
         pixelData = new float[7][];
+        halfData = new short[7][];
     }
 
     /**
      * Set the floating point values of a particular component for each pixel. The length of the value array
      * should be equal to the number of pixels in the image, and the values should be ordered by rows.
+     * If the image uses half precision, the values are converted and the array is not kept.
      */
     public void setComponentValues(int component, float[] values) {
-        pixelData[getComponentIndex(component)] = values;
+        int index = getComponentIndex(component);
+        if (halfPrecision && values != null && (component & HALF_PRECISION_COMPONENTS) != 0) {
+            halfData[index] = toHalfPrecision(values);
+            pixelData[index] = null;
+        } else {
+            pixelData[index] = values;
+            halfData[index] = null;
+        }
+    }
+
+    /**
+     * Set whether to store the color, alpha, and noise components in half precision. Any values
+     * which have already been set are converted.
+     */
+    public void setHalfPrecision(boolean half) {
+        halfPrecision = half;
+        for (int i = 0; i < pixelData.length; i++) {
+            if (half && pixelData[i] != null && ((1 << i) & HALF_PRECISION_COMPONENTS) != 0) {
+                halfData[i] = toHalfPrecision(pixelData[i]);
+                pixelData[i] = null;
+            } else if (!half && halfData[i] != null) {
+                pixelData[i] = HalfFloat.toFloat(halfData[i]);
+                halfData[i] = null;
+            }
+        }
     }
 
     /**
@@ -78,7 +121,8 @@ public class ComplexImage {
      * Determine whether floating point data is available for a particular component.
      */
     public boolean hasFloatData(int component) {
-        return (pixelData[getComponentIndex(component)] != null);
+        int index = getComponentIndex(component);
+        return (pixelData[index] != null || halfData[index] != null);
     }
 
     /**
@@ -89,6 +133,9 @@ public class ComplexImage {
         if (pixelData[index] != null) {
             return pixelData[index][x + y * width];
         }
+        if (halfData[index] != null) {
+            return HalfFloat.toFloat(halfData[index][x + y * width]);
+        }
         if (intImage == null) {
             try {
                 PixelGrabber pg = new PixelGrabber(img, 0, 0, -1, -1, true);
@@ -108,11 +155,15 @@ public class ComplexImage {
     public ComplexImage duplicate() {
         ComplexImage ci = new ComplexImage(img.getScaledInstance(img.getWidth(null), -1, Image.SCALE_REPLICATE));
         ci.intImage = intImage;
+        ci.halfPrecision = halfPrecision;
         for (int i = 0; i < pixelData.length; i++) {
             if (pixelData[i] != null) {
                 ci.pixelData[i] = new float[pixelData[i].length];
                 System.arraycopy(pixelData[i], 0, ci.pixelData[i], 0, pixelData[i].length);
             }
+            if (halfData[i] != null) {
+                ci.halfData[i] = halfData[i].clone();
+            }
         }
         return ci;
     }
@@ -137,6 +188,19 @@ public class ComplexImage {
         img = Toolkit.getDefaultToolkit().createImage(imageSource);
     }
 
+    /**
+     * Convert an array of values to half precision. Values which are too large are clamped to the
+     * largest finite value rather than becoming infinite, so that filters which average pixels
+     * do not spread infinite values across the image.
+     */
+    private static short[] toHalfPrecision(float[] values) {
+        short[] result = new short[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = HalfFloat.fromFloat(Math.max(-HalfFloat.MAX_VALUE, Math.min(HalfFloat.MAX_VALUE, values[i])));
+        }
+        return result;
+    }
+
     /**
      * Given one of the constants for a component, determine the corresponding array index.
      */
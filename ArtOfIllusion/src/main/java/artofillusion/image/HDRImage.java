@@ -1,6 +1,6 @@
 /* Copyright (C) 2001-2009 by Peter Eastman
    Modifications copyright (C) 2017 by Petri Ihalainen
-   Changes copyright (C) 2020-2023 by Maksim Khramov
+   Changes copyright (C) 2020-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -19,18 +19,23 @@ import java.awt.image.*;
 import java.io.*;
 import java.util.Date;
 import java.lang.ref.SoftReference;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * HDRImage is an ImageMap subclass. It represents a high dynamic range image stored in
  * Greg Ward's RGBE format, as described in "Graphics Gems IV", edited by James Arvo,
  * Academic Press, 1994.
+ * <p>
+ * Very large images keep their mipmaps in a {@link TileStore} instead of on the heap.
  */
+@Slf4j
 public class HDRImage extends ImageMap {
 
     private int[] width;
     private int[] height;
     private int previewSize = 0;
     private byte[][][] maps;
+    private TileStore tiles;
     private float[] average;
     private float aspectRatio;
     private double[] xscale, yscale, scale, scaleMult;
@@ -41,7 +46,6 @@ public class HDRImage extends ImageMap {
      */
     public HDRImage(byte[] r, byte[] g, byte[] b, byte[] e, int xres, int yres) {
         buildMipMaps(r, g, b, e, xres, yres);
-        findAverage();
         preview = new SoftReference<>(null);
     }
 
@@ -90,12 +94,26 @@ public class HDRImage extends ImageMap {
         width[0] = w;
         height[0] = h;
         scale[0] = 1.0 / Math.min(w, h);
-
-        // Construct the first reduced map.
         if (num > 1) {
             width[1] = w1;
             height[1] = h1;
             scale[1] = 1.0 / Math.min(w1, h1);
+        }
+        for (i = 2; i < num; i++) {
+            width[i] = width[i - 1] / 2;
+            height[i] = height[i - 1] / 2;
+            scale[i] = 2.0 * scale[i - 1];
+        }
+        if (TileStore.isTiled(w, h)) {
+            try {
+                tiles = new TileStore(4, width, height);
+            } catch (IOException ex) {
+                log.atError().setCause(ex).log("Cannot create tile cache for image {}: {}", imageName, ex.getMessage());
+            }
+        }
+
+        // Construct the first reduced map.
+        if (num > 1) {
             maps[1] = new byte[4][w1 * h1];
             float widthScale = w / (float) w1;
             float heightScale = h / (float) h1;
@@ -111,15 +129,15 @@ public class HDRImage extends ImageMap {
                     }
                 }
             }
+            storeLevel(0);
         }
 
         // Now construct the remaining mipmaps.
         RGBColor avg = new RGBColor();
         RGBColor tempColor = new RGBColor();
         for (i = 2; i < num; i++) {
-            w = width[i] = width[i - 1] / 2;
-            h = height[i] = height[i - 1] / 2;
-            scale[i] = 2.0 * scale[i - 1];
+            w = width[i];
+            h = height[i];
             maps[i] = new byte[4][w * h];
             for (k = 0; k < w; k++) {
                 for (m = 0; m < h; m++) {
@@ -143,7 +161,10 @@ public class HDRImage extends ImageMap {
                     maps[i][3][k + w * m] = (byte) ((ergb >> 24) & 0xFF);
                 }
             }
+            storeLevel(i - 1);
         }
+        findAverage();
+        storeLevel(num - 1);
 
         // Precompute multipliers used for doing the mipmapping.
         for (i = 0; i < num - 1; i++) {
@@ -157,6 +178,16 @@ public class HDRImage extends ImageMap {
         }
     }
 
+    /**
+     * If the image is stored in tiles, move one of the mipmaps from the heap into the TileStore.
+     */
+    private void storeLevel(int level) {
+        if (tiles != null) {
+            tiles.putLevel(level, maps[level]);
+            maps[level] = null;
+        }
+    }
+
     /**
      * This method calculates the average value for each component over the entire image.
      */
@@ -191,9 +222,20 @@ public class HDRImage extends ImageMap {
         float xstep = width[0] / (float) w;
         float ystep = height[0] / (float) h;
         byte[][] map0 = maps[0];
+        if (tiles != null) {
+            map0 = new byte[4][width[0]];
+        }
         RGBColor tempColor = new RGBColor();
         for (int i = 0; i < h; i++) {
             float pos = (int) (i * ystep) * width[0];
+            if (tiles != null) {
+                // Only copy the row which is needed from the TileStore.
+
+                for (int c = 0; c < 4; c++) {
+                    tiles.readRow(0, c, (int) (i * ystep), map0[c]);
+                }
+                pos = 0;
+            }
             int base = i * w;
             for (int j = 0; j < w; j++) {
                 int ipos = (int) pos;
@@ -297,7 +339,7 @@ public class HDRImage extends ImageMap {
         int ind1, ind2, ind3, ind4;
         int w = width[which], h = height[which];
         float frac1, frac2, w1, w2, w3, w4;
-        byte[][] map = maps[which];
+        byte[][] map;
 
         // Determine which elements to interpolate between.
         frac1 = (float) (x * xscale[which]);
@@ -318,10 +360,20 @@ public class HDRImage extends ImageMap {
         } else {
             j2 = j1 + 1;
         }
-        ind1 = i1 + j1 * w;
-        ind2 = i1 + j2 * w;
-        ind3 = i2 + j1 * w;
-        ind4 = i2 + j2 * w;
+        if (tiles == null) {
+            map = maps[which];
+            ind1 = i1 + j1 * w;
+            ind2 = i1 + j2 * w;
+            ind3 = i2 + j1 * w;
+            ind4 = i2 + j2 * w;
+        } else {
+            int[] ind = new int[4];
+            map = tiles.getPixels(which, i1, j1, i2, j2, ind);
+            ind1 = ind[0];
+            ind2 = ind[1];
+            ind3 = ind[2];
+            ind4 = ind[3];
+        }
 
         // Find the interpolation coefficients.
         w1 = (1.0f - frac1) * (1.0f - frac2);
@@ -398,7 +450,7 @@ public class HDRImage extends ImageMap {
         int ind1, ind2, ind3, ind4;
         int w = width[which], h = height[which];
         float frac1, frac2, w1, w2, w3, w4;
-        byte[][] map = maps[which];
+        byte[][] map;
 
         // Determine which elements to interpolate between.
         frac1 = (float) (x * xscale[which]);
@@ -419,10 +471,20 @@ public class HDRImage extends ImageMap {
         } else {
             j2 = j1 + 1;
         }
-        ind1 = i1 + j1 * w;
-        ind2 = i1 + j2 * w;
-        ind3 = i2 + j1 * w;
-        ind4 = i2 + j2 * w;
+        if (tiles == null) {
+            map = maps[which];
+            ind1 = i1 + j1 * w;
+            ind2 = i1 + j2 * w;
+            ind3 = i2 + j1 * w;
+            ind4 = i2 + j2 * w;
+        } else {
+            int[] ind = new int[4];
+            map = tiles.getPixels(which, i1, j1, i2, j2, ind);
+            ind1 = ind[0];
+            ind2 = ind[1];
+            ind3 = ind[2];
+            ind4 = ind[3];
+        }
 
         // Find the interpolation coefficients.
         w1 = (1.0f - frac1) * (1.0f - frac2);
@@ -497,7 +559,7 @@ public class HDRImage extends ImageMap {
         int ind1, ind2, ind3, ind4;
         int w = width[which], h = height[which];
         double frac1, frac2, v1, v2, v3, v4;
-        byte[][] map = maps[which];
+        byte[][] map;
 
         // Determine which elements to interpolate between.
         frac1 = x * xscale[which];
@@ -518,10 +580,20 @@ public class HDRImage extends ImageMap {
         } else {
             j2 = j1 + 1;
         }
-        ind1 = i1 + j1 * w;
-        ind2 = i1 + j2 * w;
-        ind3 = i2 + j1 * w;
-        ind4 = i2 + j2 * w;
+        if (tiles == null) {
+            map = maps[which];
+            ind1 = i1 + j1 * w;
+            ind2 = i1 + j2 * w;
+            ind3 = i2 + j1 * w;
+            ind4 = i2 + j2 * w;
+        } else {
+            int[] ind = new int[4];
+            map = tiles.getPixels(which, i1, j1, i2, j2, ind);
+            ind1 = ind[0];
+            ind2 = ind[1];
+            ind3 = ind[2];
+            ind4 = ind[3];
+        }
 
         // Find the values at the four points.
         v1 = (map[component][ind1] & 0xFF) * RGBColor.ERGB_EXP_SCALE[map[3][ind1] & 0xFF];
@@ -562,7 +634,7 @@ public class HDRImage extends ImageMap {
      * Get the RGBE bytes that contain th eimage information
      */
     public byte[][] getBytes() {
-        return maps[0];
+        return (tiles == null ? maps[0] : tiles.readLevel(0));
     }
 
     /**
@@ -582,7 +654,6 @@ public class HDRImage extends ImageMap {
                 in.readFully(map[i]);
             }
             buildMipMaps(map[0], map[1], map[2], map[3], w, h);
-            findAverage();
         } else // 1 for newer than AoI 3.0.3
         {
             int w = in.readInt();
@@ -607,7 +678,6 @@ public class HDRImage extends ImageMap {
             }
 
             buildMipMaps(map[0], map[1], map[2], map[3], w, h);
-            findAverage();
             preview = new SoftReference<>(null);
         }
     }
@@ -620,8 +690,18 @@ public class HDRImage extends ImageMap {
         out.writeShort(1); // version number
         out.writeInt(width[0]);
         out.writeInt(height[0]);
-        for (int i = 0; i < 4; i++) {
-            out.write(maps[0][i]);
+        if (tiles == null) {
+            for (int i = 0; i < 4; i++) {
+                out.write(maps[0][i]);
+            }
+        } else {
+            byte[] row = new byte[width[0]];
+            for (int i = 0; i < 4; i++) {
+                for (int j = 0; j < height[0]; j++) {
+                    tiles.readRow(0, i, j, row);
+                    out.write(row);
+                }
+            }
         }
         out.writeUTF(imageName);
         out.writeUTF(userCreated);
@@ -1,6 +1,6 @@
 /* Copyright (C) 2001-2002 by Peter Eastman
    Modifications copyright (C) 2017 by Petri Ihalainen
-   Changes copyright (C) 2020-2023 by Maksim Khramov
+   Changes copyright (C) 2020-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -17,6 +17,7 @@ import artofillusion.math.*;
 import java.awt.*;
 import java.io.*;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -89,10 +90,10 @@ public abstract class ImageMap {
     public static final String IMAGE_TYPE_HDR = "HDR";
 
     private final int id;
-    private static int nextID;
+    private static final AtomicInteger nextID = new AtomicInteger();
 
     public ImageMap() {
-        id = nextID++;
+        id = nextID.getAndIncrement();
     }
 
     /**
@@ -187,6 +188,15 @@ public abstract class ImageMap {
      */
     public abstract Image getPreview(int size);
 
+    /**
+     * Prepare the image to be sampled. Subclasses which decode their data or build
+     * their mipmaps only when they are first used should do it here, so that a renderer can
+     * prepare the images it will use in parallel before it starts. The default implementation
+     * does nothing.
+     */
+    public void prefetch() {
+    }
+
     /**
      * Get an ID number which is unique (within this session) for this image.
      */
@@ -18,15 +18,28 @@ import java.awt.*;
 import java.awt.image.*;
 import java.io.*;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
 import javax.swing.*;
 import static java.lang.Math.*;
 import java.lang.ref.SoftReference;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * MIPMappedImage is an ImageMap subclass. It stores 8 bits per color component,
  * and uses MIP mapping to eliminate aliasing.
+ * <p>
+ * Images which are read from a scene file keep their compressed data, and are only decoded the
+ * first time their pixels are needed. Each reduced map is likewise only built the first time it
+ * is used. Renderers can call {@link #prefetch()} to decode images ahead of time.
+ * <p>
+ * Very large images keep all of their mipmaps in a {@link TileStore} instead of on the heap.
+ * They are built all at once when the image is first used, one image at a time, since the full
+ * size map of a single one may take a large part of the heap.
  */
+@Slf4j
 public class MIPMappedImage extends ImageMap {
 
     private int[] width;
@@ -34,8 +47,11 @@ public class MIPMappedImage extends ImageMap {
     private int components;
     private int lastPreviewSize = -1;
     private int lastMapNumber = -1;
-    private byte[][][] maps;
-    private float[] average;
+    private AtomicReferenceArray<byte[][]> maps;
+    private byte[] encoded;
+    private boolean tiled;
+    private volatile TileStore tiles;
+    private volatile float[] average;
     private float aspectRatio;
     private double[] xScale;
     private double[] yScale;
@@ -47,6 +63,12 @@ public class MIPMappedImage extends ImageMap {
     private SoftReference<BufferedImage> mapImage;
     private static final float SCALE = 1.0f / 255.0f;
 
+    /**
+     * Held while the mipmaps of a tiled image are built, so images which are prefetched in parallel
+     * do not all have their full size maps on the heap at once.
+     */
+    private static final Object tileBuildLock = new Object();
+
     /**
      * Construct a MIPMappedImage from an Image object.
      */
@@ -67,22 +89,22 @@ public class MIPMappedImage extends ImageMap {
      * Initialize a newly created MIPMappedImage.
      */
     private void init(Image im) throws InterruptedException {
-        buildMipMaps(im);
-        findAverage();
+        byte[][] map0 = findComponentMaps(im);
+        initMaps(im.getWidth(null), im.getHeight(null));
+        setFirstMap(map0);
         preview = new SoftReference<>(null);
         mapImage = new SoftReference<>(null);
     }
 
     /**
-     * Given an Image object, this method builds the full set of mipmaps for it.
+     * Given the size of the image, this method determines the sizes and scales of all the mipmaps
+     * for it. The maps themselves are built when they are first needed.
      */
-    private void buildMipMaps(Image im) throws InterruptedException {
-        byte[][] map0 = findComponentMaps(im);
-        int w = im.getWidth(null), h = im.getHeight(null);
+    private void initMaps(int w, int h) {
+        tiled = TileStore.isTiled(w, h);
         aspectRatio = (float) w / (float) h;
-        int w1, h1, num, i, j, k, m;
+        int w1, h1, num, i;
         float wratio, hratio;
-        Image im1;
 
         // Determine the size for the first reduced map.  Its width and height must both be
         // powers of 2.
@@ -107,7 +129,7 @@ public class MIPMappedImage extends ImageMap {
         if (w == 1 || h == 1) {
             num = 1;
         }
-        maps = new byte[num][][];
+        maps = new AtomicReferenceArray<>(num);
         width = new int[num];
         height = new int[num];
         scale = new double[num];
@@ -116,34 +138,18 @@ public class MIPMappedImage extends ImageMap {
         gradXScale = new double[num];
         gradYScale = new double[num];
         scaleMult = new double[num - 1];
-        maps[0] = map0;
         width[0] = w;
         height[0] = h;
         scale[0] = 1.0 / Math.min(w, h);
-
-        // Construct the first reduced map.
         if (num > 1) {
             width[1] = w1;
             height[1] = h1;
             scale[1] = 1.0 / Math.min(w1, h1);
-            im1 = im.getScaledInstance(w1, h1, Image.SCALE_DEFAULT);
-            maps[1] = findComponentMaps(im1);
         }
-
-        // Now construct the remaining mipmaps.
         for (i = 2; i < num; i++) {
-            w = width[i] = width[i - 1] / 2;
-            h = height[i] = height[i - 1] / 2;
+            width[i] = width[i - 1] / 2;
+            height[i] = height[i - 1] / 2;
             scale[i] = 2.0 * scale[i - 1];
-            maps[i] = new byte[components][w * h];
-            for (j = 0; j < components; j++) {
-                for (k = 0; k < w; k++) {
-                    for (m = 0; m < h; m++) {
-                        maps[i][j][k + w * m] = (byte) ((((int) maps[i - 1][j][2 * k + 4 * w * m] & 0xFF) + ((int) maps[i - 1][j][2 * k + 1 + 4 * w * m] & 0xFF)
-                                + ((int) maps[i - 1][j][2 * k + 2 * w * (2 * m + 1)] & 0xFF) + ((int) maps[i - 1][j][2 * k + 1 + 2 * w * (2 * m + 1)] & 0xFF)) >> 2);
-                    }
-                }
-            }
         }
 
         // Precompute multipliers used for doing the mipmapping.
@@ -160,18 +166,181 @@ public class MIPMappedImage extends ImageMap {
         }
     }
 
+    /**
+     * Get one of the mipmaps, building it if it has not been built yet.
+     */
+    private byte[][] getMap(int which) {
+        byte[][] map = maps.get(which);
+        if (map == null) {
+            map = buildMap(which);
+        }
+        return map;
+    }
+
+    /**
+     * Build one of the mipmaps. The full size map is decoded from the compressed image data. The
+     * first reduced map is sampled from it the same way Image.getScaledInstance() does, and every
+     * later map averages 2x2 blocks of the one before it.
+     */
+    private synchronized byte[][] buildMap(int which) {
+        byte[][] map = maps.get(which);
+        if (map != null) {
+            return map;
+        }
+        map = (which == 0 ? decode() : reduceMap(getMap(which - 1), which));
+        maps.set(which, map);
+        return map;
+    }
+
+    /**
+     * Build one of the reduced mipmaps from the one before it.
+     */
+    private byte[][] reduceMap(byte[][] prev, int which) {
+        if (which == 1) {
+            return sampleMap(prev, width[0], height[0], width[1], height[1]);
+        }
+        int w = width[which], h = height[which];
+        byte[][] map = new byte[prev.length][w * h];
+        for (int j = 0; j < prev.length; j++) {
+            for (int k = 0; k < w; k++) {
+                for (int m = 0; m < h; m++) {
+                    map[j][k + w * m] = (byte) ((((int) prev[j][2 * k + 4 * w * m] & 0xFF) + ((int) prev[j][2 * k + 1 + 4 * w * m] & 0xFF)
+                            + ((int) prev[j][2 * k + 2 * w * (2 * m + 1)] & 0xFF) + ((int) prev[j][2 * k + 1 + 2 * w * (2 * m + 1)] & 0xFF)) >> 2);
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Record the full size map of an image which has just been created.
+     */
+    private void setFirstMap(byte[][] map0) {
+        if (tiled) {
+            buildTiles(map0);
+        }
+        if (!tiled) {
+            maps.set(0, map0);
+        }
+    }
+
+    /**
+     * Get the TileStore which holds the mipmaps, building it if necessary. This returns null if
+     * the image is stored on the heap.
+     */
+    private TileStore getTiles() {
+        TileStore store = tiles;
+        if (store == null && tiled) {
+            store = buildTiles(null);
+        }
+        return store;
+    }
+
+    /**
+     * Build every mipmap and write them into a TileStore. The full size map is decoded if it is
+     * not given. Only two maps are on the heap at any time while this is done. If the TileStore
+     * cannot be created, the image is stored on the heap instead.
+     */
+    private synchronized TileStore buildTiles(byte[][] map0) {
+        if (tiles != null || !tiled) {
+            return tiles;
+        }
+        synchronized (tileBuildLock) {
+            byte[][] map = (map0 == null ? decode() : map0);
+            TileStore store;
+            try {
+                store = new TileStore(map.length, width, height);
+            } catch (IOException ex) {
+                log.atError().setCause(ex).log("Cannot create tile cache for image {}: {}", imageName, ex.getMessage());
+                tiled = false;
+                maps.set(0, map);
+                return null;
+            }
+            store.putLevel(0, map);
+            for (int i = 1; i < maps.length(); i++) {
+                map = reduceMap(map, i);
+                store.putLevel(i, map);
+            }
+            average = findAverage(map);
+            tiles = store;
+            return store;
+        }
+    }
+
+    /**
+     * Decode the compressed image data into the full size map. If the data cannot be decoded,
+     * the image is treated as being black.
+     */
+    private byte[][] decode() {
+        int w = width[0], h = height[0];
+        try {
+            BufferedImage im = ImageIO.read(new ByteArrayInputStream(encoded));
+            if (im != null && im.getWidth() == w && im.getHeight() == h) {
+                return findComponentMaps(im.getRGB(0, 0, w, h, null, 0, w));
+            }
+            log.atError().log("Image {} could not be decoded", imageName);
+        } catch (IOException ex) {
+            log.atError().setCause(ex).log("Image {} could not be decoded: {}", imageName, ex.getMessage());
+        }
+        components = 1;
+        return new byte[1][w * h];
+    }
+
+    /**
+     * Create a reduced copy of a map by picking the nearest pixel, exactly as the
+     * ReplicateScaleFilter used by Image.getScaledInstance(w, h, Image.SCALE_DEFAULT) does.
+     */
+    private static byte[][] sampleMap(byte[][] src, int srcWidth, int srcHeight, int w, int h) {
+        int[] cols = new int[w];
+        int[] rows = new int[h];
+        for (int x = 0; x < w; x++) {
+            cols[x] = (int) ((2L * x * srcWidth + srcWidth) / (2L * w));
+        }
+        for (int y = 0; y < h; y++) {
+            rows[y] = (int) ((2L * y * srcHeight + srcHeight) / (2L * h));
+        }
+        byte[][] map = new byte[src.length][w * h];
+        for (int j = 0; j < src.length; j++) {
+            for (int y = 0; y < h; y++) {
+                int offset = rows[y] * srcWidth;
+                for (int x = 0; x < w; x++) {
+                    map[j][x + y * w] = src[j][offset + cols[x]];
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Build every mipmap and find the average color, so that later calls to getColor() and
+     * the other methods for sampling the image do not need to wait while it is decoded.
+     */
+    @Override
+    public void prefetch() {
+        if (getTiles() == null) {
+            getAverage();
+        }
+    }
+
     /**
      * This method constructs a set of byte arrays containing the image data for each
      * component of the Image object.
      */
     private byte[][] findComponentMaps(Image im) throws InterruptedException {
         PixelGrabber pg = new PixelGrabber(im, 0, 0, -1, -1, true);
+
+        pg.grabPixels();
+        return findComponentMaps((int[]) pg.getPixels());
+    }
+
+    /**
+     * This method constructs a set of byte arrays containing the image data for each
+     * component of an array of pixels in the default RGB color model.
+     */
+    private byte[][] findComponentMaps(int[] data) {
         int i;
-        int[] data;
         byte[][] map;
 
-        pg.grabPixels();
-        data = (int[]) pg.getPixels();
         if (components == 0) {
             countComponents(data);
         }
@@ -210,22 +379,36 @@ public class MIPMappedImage extends ImageMap {
     }
 
     /**
-     * This method calculates the average value for each component over the entire image.
+     * Get the average value for each component over the entire image, calculating it the
+     * first time this is called.
      */
-    private void findAverage() {
-        byte[][] map = maps[maps.length - 1];
-        long[] av = new long[components];
+    private float[] getAverage() {
+        float[] av = average;
+        if (av == null) {
+            av = (getTiles() == null ? findAverage(getMap(maps.length() - 1)) : average);
+            average = av;
+        }
+        return av;
+    }
+
+    /**
+     * This method calculates the average value for each component over the entire image, given
+     * the smallest mipmap.
+     */
+    private static float[] findAverage(byte[][] map) {
+        long[] av = new long[map.length];
         int i, j, len = map[0].length;
 
         for (i = 0; i < len; i++) {
-            for (j = 0; j < components; j++) {
+            for (j = 0; j < map.length; j++) {
                 av[j] += (map[j][i] & 0xFF);
             }
         }
-        average = new float[components];
-        for (i = 0; i < components; i++) {
-            average[i] = (av[i] / len) * SCALE;
+        float[] result = new float[map.length];
+        for (i = 0; i < map.length; i++) {
+            result[i] = (av[i] / len) * SCALE;
         }
+        return result;
     }
 
     /**
@@ -246,6 +429,7 @@ public class MIPMappedImage extends ImageMap {
 
     @Override
     public String getType() {
+        int components = getComponentCount();
         if (components == 1) {
             return "GRAY";
         }
@@ -268,6 +452,9 @@ public class MIPMappedImage extends ImageMap {
      */
     @Override
     public int getComponentCount() {
+        if (getTiles() == null) {
+            getMap(0);
+        }
         return components;
     }
 
@@ -303,8 +490,8 @@ public class MIPMappedImage extends ImageMap {
         if (size <= scale[0]) {
             return getMapComponent(component, 0, wrapx, wrapy, x, y);
         }
-        if (size >= scale[maps.length - 1]) {
-            return maps[maps.length - 1][component][0] * SCALE;
+        if (size >= scale[maps.length() - 1]) {
+            return getMapComponent(component, maps.length() - 1, false, false, 0.0, 0.0);
         }
 
         // Determine which mipmaps to use.
@@ -322,7 +509,7 @@ public class MIPMappedImage extends ImageMap {
         int ind1, ind2, ind3, ind4;
         int w = width[which], h = height[which];
         float frac1, frac2, w1, w2, w3, w4;
-        byte[] map = maps[which][component];
+        byte[] map;
 
         // Determine which elements to interpolate between.
         frac1 = (float) (x * xScale[which]);
@@ -343,10 +530,21 @@ public class MIPMappedImage extends ImageMap {
         } else {
             j2 = j1 + 1;
         }
-        ind1 = i1 + j1 * w;
-        ind2 = i1 + j2 * w;
-        ind3 = i2 + j1 * w;
-        ind4 = i2 + j2 * w;
+        TileStore store = getTiles();
+        if (store == null) {
+            map = getMap(which)[component];
+            ind1 = i1 + j1 * w;
+            ind2 = i1 + j2 * w;
+            ind3 = i2 + j1 * w;
+            ind4 = i2 + j2 * w;
+        } else {
+            int[] ind = new int[4];
+            map = store.getPixels(which, i1, j1, i2, j2, ind)[component];
+            ind1 = ind[0];
+            ind2 = ind[1];
+            ind3 = ind[2];
+            ind4 = ind[3];
+        }
 
         // Find the interpolation coefficients.
         w1 = (1.0f - frac1) * (1.0f - frac2);
@@ -364,11 +562,13 @@ public class MIPMappedImage extends ImageMap {
      */
     @Override
     public float getAverageComponent(int component) {
+        float[] average = getAverage();
+
         // Grayscale images need three components or the average appears red
-        if (components == 1 && component < 3) {
+        if (average.length == 1 && component < 3) {
             return average[0];
         }
-        if (component >= components) {
+        if (component >= average.length) {
             return 0.0f;
         }
         return average[component];
@@ -399,8 +599,8 @@ public class MIPMappedImage extends ImageMap {
             getMapColor(theColor, 0, wrapx, wrapy, x, y);
             return;
         }
-        if (size >= scale[maps.length - 1]) {
-            getMapColor(theColor, maps.length - 1, wrapx, wrapy, x, y);
+        if (size >= scale[maps.length() - 1]) {
+            getMapColor(theColor, maps.length() - 1, wrapx, wrapy, x, y);
             return;
         }
 
@@ -424,7 +624,7 @@ public class MIPMappedImage extends ImageMap {
         int ind1, ind2, ind3, ind4;
         int w = width[which], h = height[which];
         float frac1, frac2, w1, w2, w3, w4, red, green, blue;
-        byte[][] map = maps[which];
+        byte[][] map;
 
         // Determine which elements to interpolate between.
         frac1 = (float) (x * xScale[which]);
@@ -445,10 +645,21 @@ public class MIPMappedImage extends ImageMap {
         } else {
             j2 = j1 + 1;
         }
-        ind1 = i1 + j1 * w;
-        ind2 = i1 + j2 * w;
-        ind3 = i2 + j1 * w;
-        ind4 = i2 + j2 * w;
+        TileStore store = getTiles();
+        if (store == null) {
+            map = getMap(which);
+            ind1 = i1 + j1 * w;
+            ind2 = i1 + j2 * w;
+            ind3 = i2 + j1 * w;
+            ind4 = i2 + j2 * w;
+        } else {
+            int[] ind = new int[4];
+            map = store.getPixels(which, i1, j1, i2, j2, ind);
+            ind1 = ind[0];
+            ind2 = ind[1];
+            ind3 = ind[2];
+            ind4 = ind[3];
+        }
 
         // Find the interpolation coefficients.
         w1 = (1.0f - frac1) * (1.0f - frac2);
@@ -459,7 +670,7 @@ public class MIPMappedImage extends ImageMap {
         // Calculate the final value for each component.
         red = ((((int) map[0][ind1]) & 0xFF) * w1 + (((int) map[0][ind2]) & 0xFF) * w2
                 + (((int) map[0][ind3]) & 0xFF) * w3 + (((int) map[0][ind4]) & 0xFF) * w4) * SCALE;
-        if (components == 1) {
+        if (map.length == 1) {
             green = blue = red;
         } else {
             green = ((((int) map[1][ind1]) & 0xFF) * w1 + (((int) map[1][ind2]) & 0xFF) * w2
@@ -497,7 +708,7 @@ public class MIPMappedImage extends ImageMap {
             grad.y = -grad.y;
             return;
         }
-        if (size >= scale[maps.length - 1]) {
+        if (size >= scale[maps.length() - 1]) {
             grad.set(0.0, 0.0);
             return;
         }
@@ -523,7 +734,7 @@ public class MIPMappedImage extends ImageMap {
         int ind1, ind2, ind3, ind4;
         int w = width[which], h = height[which];
         double frac1, frac2, v1, v2, v3, v4;
-        byte[] map = maps[which][component];
+        byte[] map;
 
         // Determine which elements to interpolate between.
         frac1 = x * xScale[which];
@@ -544,10 +755,21 @@ public class MIPMappedImage extends ImageMap {
         } else {
             j2 = j1 + 1;
         }
-        ind1 = i1 + j1 * w;
-        ind2 = i1 + j2 * w;
-        ind3 = i2 + j1 * w;
-        ind4 = i2 + j2 * w;
+        TileStore store = getTiles();
+        if (store == null) {
+            map = getMap(which)[component];
+            ind1 = i1 + j1 * w;
+            ind2 = i1 + j2 * w;
+            ind3 = i2 + j1 * w;
+            ind4 = i2 + j2 * w;
+        } else {
+            int[] ind = new int[4];
+            map = store.getPixels(which, i1, j1, i2, j2, ind)[component];
+            ind1 = ind[0];
+            ind2 = ind[1];
+            ind3 = ind[2];
+            ind4 = ind[3];
+        }
 
         // Find the values at the four points.
         v1 = (double) (((int) map[ind1]) & 0xFF);
@@ -598,7 +820,7 @@ public class MIPMappedImage extends ImageMap {
         int n, pw, ph;
         pw = max(min(size, round(size * aspectRatio)), 1);
         ph = max(min(size, round(size / aspectRatio)), 1);
-        for (n = 0; ((n + 1 < maps.length) && (width[n + 1] >= pw) && (height[n + 1] >= ph)); n++);
+        for (n = 0; ((n + 1 < maps.length()) && (width[n + 1] >= pw) && (height[n + 1] >= ph)); n++);
 
         return n;
     }
@@ -637,20 +859,22 @@ public class MIPMappedImage extends ImageMap {
         }
 
         BufferedImage bi;
-        if (getComponentCount() == 1) {
+        TileStore store = getTiles();
+        byte[][] map = (store == null ? getMap(n) : store.readLevel(n));
+        if (map.length == 1) {
             bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
             for (int i = 0; i < w; i++) {
                 for (int j = 0; j < h; j++) {
                     int index = i + j * w;
-                    bi.setRGB(i, j, 0xFF000000 + (maps[n][0][index] & 0xFF) * 0x010101);
+                    bi.setRGB(i, j, 0xFF000000 + (map[0][index] & 0xFF) * 0x010101);
                 }
             }
-        } else if (getComponentCount() == 3) {
+        } else if (map.length == 3) {
             bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
             for (int i = 0; i < w; i++) {
                 for (int j = 0; j < h; j++) {
                     int index = i + j * w;
-                    bi.setRGB(i, j, 0xFF000000 + ((maps[n][0][index] & 0xFF) << 16) + ((maps[n][1][index] & 0xFF) << 8) + (maps[n][2][index] & 0xFF));
+                    bi.setRGB(i, j, 0xFF000000 + ((map[0][index] & 0xFF) << 16) + ((map[1][index] & 0xFF) << 8) + (map[2][index] & 0xFF));
                 }
             }
         } else {
@@ -658,7 +882,7 @@ public class MIPMappedImage extends ImageMap {
             for (int i = 0; i < w; i++) {
                 for (int j = 0; j < h; j++) {
                     int index = i + j * w;
-                    bi.setRGB(i, j, ((255 - (maps[n][3][index] & 0xFF)) << 24) + ((maps[n][0][index] & 0xFF) << 16) + ((maps[n][1][index] & 0xFF) << 8) + (maps[n][2][index] & 0xFF));
+                    bi.setRGB(i, j, ((255 - (map[3][index] & 0xFF)) << 24) + ((map[0][index] & 0xFF) << 16) + ((map[1][index] & 0xFF) << 8) + (map[2][index] & 0xFF));
                 }
             }
         }
@@ -681,9 +905,10 @@ public class MIPMappedImage extends ImageMap {
         if (version < 0 || version > 2) {
             throw new InvalidObjectException("Illegal version for MIPMappedImage");
         }
-        int w, h;
-        Image im;
+        preview = new SoftReference<>(null);
+        mapImage = new SoftReference<>(null);
         if (version == 0) {
+            int w, h;
             w = in.readInt();
             h = in.readInt();
             components = in.readInt();
@@ -708,15 +933,13 @@ public class MIPMappedImage extends ImageMap {
                     data[i] = ((map[3][i] << 24) & 0xFF000000) + ((map[0][i] << 16) & 0xFF0000) + ((map[1][i] << 8) & 0xFF00) + (map[2][i] & 0xFF);
                 }
             }
-            MemoryImageSource src = new MemoryImageSource(w, h, data, 0, w);
-            im = Toolkit.getDefaultToolkit().createImage(src);
-        } else if (version == 1) { // Up to AoI 3.0.3
-            byte[] imageData = new byte[in.readInt()];
-            in.readFully(imageData);
-            im = ImageIO.read(new ByteArrayInputStream(imageData));
-        } else {
-            byte[] imageData = new byte[in.readInt()];
-            in.readFully(imageData);
+            initMaps(w, h);
+            setFirstMap(findComponentMaps(data));
+            return;
+        }
+        encoded = new byte[in.readInt()];
+        in.readFully(encoded);
+        if (version == 2) {
             imageName = in.readUTF();
             userCreated = in.readUTF();
             long milliC = in.readLong();
@@ -730,23 +953,22 @@ public class MIPMappedImage extends ImageMap {
             if (milliE > Long.MIN_VALUE) {
                 dateEdited = new Date(milliE);
             }
-
-            im = ImageIO.read(new ByteArrayInputStream(imageData));
         }
-        w = im.getWidth(null);
-        h = im.getHeight(null);
-        preview = new SoftReference<>(null);
-        mapImage = new SoftReference<>(null);
 
-        // Construct the mipmaps, preview image, etc.
-        try {
-            Frame fr = new Frame();
-            buildMipMaps(im);
-            fr.dispose();
-        } catch (InterruptedException ex) {
-            throw (new IOException());
+        // Only read the size of the image now. It is decoded when its pixels are first needed.
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(encoded))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new InvalidObjectException("Unsupported image format for MIPMappedImage");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                initMaps(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
         }
-        findAverage();
     }
 
     /**
@@ -754,13 +976,17 @@ public class MIPMappedImage extends ImageMap {
      */
     @Override
     public void writeToStream(DataOutputStream out, Scene scene) throws IOException {
-        BufferedImage bi = getImage(0);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(bi, "png", baos);
+        // If the image was read from a file, write the same data back rather than encoding it again.
+        byte[] data = encoded;
+        if (data == null) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ImageIO.write(getImage(0), "png", baos);
+            data = baos.toByteArray();
+        }
 
         out.writeShort(2); // version reference
-        out.writeInt(baos.size());
-        out.write(baos.toByteArray());
+        out.writeInt(data.length);
+        out.write(data);
 
         out.writeUTF(imageName);
         out.writeUTF(userCreated);
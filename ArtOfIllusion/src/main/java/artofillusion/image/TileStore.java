@@ -0,0 +1,318 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.image;
+
+import java.io.*;
+import java.lang.ref.Cleaner;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TileStore keeps the mipmaps of a large image outside the Java heap. Every map is split into
+ * square tiles, which are written to a memory mapped cache file. When a tile is used it is
+ * copied onto the heap, and a bounded number of tiles are kept there in a cache which is shared
+ * by all images. This lets a renderer use more image data than fits in the heap. The cache only
+ * identifies a store by number, so a store which is no longer used can be garbage collected, and
+ * its tiles are then removed from the cache.
+ * <p>
+ * Each map has one byte per pixel for each component, laid out in a tile the same way as in a
+ * map which is stored on the heap: component c of pixel (x, y) is at tile[c][x + y * TILE_SIZE].
+ */
+final class TileStore {
+
+    /**
+     * The width and height of a tile, in pixels.
+     */
+    static final int TILE_SIZE = 64;
+
+    /**
+     * The maximum total size of the tiles which are kept on the heap.
+     */
+    static final long MAX_RESIDENT_SIZE = Runtime.getRuntime().maxMemory() / 8;
+
+    /**
+     * Images with at least this many pixels are stored in tiles. This is only changed by tests.
+     */
+    static int minPixels = 4096 * 4096;
+
+    /**
+     * The maximum size of a single mapping of the cache file.
+     */
+    private static final long MAX_MAPPING_SIZE = 1L << 30;
+
+    private static final Map<Key, Tile> resident = new ConcurrentHashMap<>();
+    private static final Deque<Key> clock = new ArrayDeque<>();
+    private static long residentSize;
+    private static final AtomicInteger nextID = new AtomicInteger();
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private final int id = nextID.getAndIncrement();
+    private final Cleaner.Cleanable cleanable;
+    private final int components;
+    private final int tileBytes;
+    private final int[] width;
+    private final int[] height;
+    private final int[] tilesX;
+    private final int[] firstTile;
+    private final int tilesPerBuffer;
+    private final MappedByteBuffer[] buffers;
+
+    /**
+     * Identifies a tile of a particular store. This must not refer to the store itself, or the
+     * cache would keep it from being garbage collected.
+     */
+    private record Key(int store, int tile) {
+    }
+
+    /**
+     * A tile which has been copied onto the heap. Tiles which have been used since the last time
+     * the cache was trimmed are given a second chance before they are discarded.
+     */
+    private static final class Tile {
+
+        final byte[][] data;
+        final int size;
+        volatile boolean used;
+
+        Tile(byte[][] data, int size) {
+            this.data = data;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Decide whether an image of the given size should be stored in tiles.
+     */
+    static boolean isTiled(int w, int h) {
+        return (long) w * h >= minPixels;
+    }
+
+    /**
+     * Create a TileStore for an image with the given number of components, and a set of mipmaps
+     * of the given sizes. The maps must then be added with {@link #putLevel(int, byte[][])}.
+     */
+    TileStore(int components, int[] width, int[] height) throws IOException {
+        this.components = components;
+        this.width = width.clone();
+        this.height = height.clone();
+        tileBytes = components * TILE_SIZE * TILE_SIZE;
+        tilesX = new int[width.length];
+        firstTile = new int[width.length + 1];
+        for (int i = 0; i < width.length; i++) {
+            tilesX[i] = (width[i] + TILE_SIZE - 1) / TILE_SIZE;
+            firstTile[i + 1] = firstTile[i] + tilesX[i] * ((height[i] + TILE_SIZE - 1) / TILE_SIZE);
+        }
+        tilesPerBuffer = (int) (MAX_MAPPING_SIZE / tileBytes);
+        int totalTiles = firstTile[width.length];
+        buffers = new MappedByteBuffer[(totalTiles + tilesPerBuffer - 1) / tilesPerBuffer];
+        File file = File.createTempFile("aoi", ".tiles");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength((long) totalTiles * tileBytes);
+            FileChannel channel = raf.getChannel();
+            for (int i = 0; i < buffers.length; i++) {
+                long start = (long) i * tilesPerBuffer * tileBytes;
+                long size = Math.min((long) tilesPerBuffer * tileBytes, (long) totalTiles * tileBytes - start);
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+            }
+        } finally {
+            // The mappings stay valid after the file is deleted. Where that is not allowed, the
+            // file is deleted when the program exits.
+
+            file.delete();
+        }
+        int store = id;
+        cleanable = cleaner.register(this, () -> release(store));
+    }
+
+    /**
+     * Remove all of this store's tiles from the heap. They are read from the cache file again if
+     * the store is used after this. It is called automatically once the store is garbage collected.
+     */
+    void release() {
+        cleanable.clean();
+    }
+
+    private static void release(int store) {
+        synchronized (clock) {
+            Iterator<Key> keys = clock.iterator();
+            while (keys.hasNext()) {
+                Key key = keys.next();
+                if (key.store() == store) {
+                    keys.remove();
+                    Tile tile = resident.remove(key);
+                    if (tile != null) {
+                        residentSize -= tile.size;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the total size of the tiles which are currently on the heap.
+     */
+    static long getResidentSize() {
+        synchronized (clock) {
+            return residentSize;
+        }
+    }
+
+    /**
+     * Get the number of components in each pixel.
+     */
+    int getComponentCount() {
+        return components;
+    }
+
+    /**
+     * Write one of the mipmaps into the cache file.
+     */
+    void putLevel(int level, byte[][] map) {
+        int w = width[level], h = height[level];
+        for (int tile = firstTile[level]; tile < firstTile[level + 1]; tile++) {
+            int index = tile - firstTile[level];
+            int x0 = (index % tilesX[level]) * TILE_SIZE, y0 = (index / tilesX[level]) * TILE_SIZE;
+            int cols = Math.min(TILE_SIZE, w - x0), rows = Math.min(TILE_SIZE, h - y0);
+            MappedByteBuffer buffer = buffers[tile / tilesPerBuffer];
+            int offset = (tile % tilesPerBuffer) * tileBytes;
+            for (int c = 0; c < components; c++) {
+                for (int row = 0; row < rows; row++) {
+                    buffer.put(offset + (c * TILE_SIZE + row) * TILE_SIZE, map[c], x0 + (y0 + row) * w, cols);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the values of every component at the four pixels which are interpolated between to
+     * sample a map. The returned array is indexed like a map stored on the heap, and the index of
+     * each pixel is stored into ind: (i1, j1), (i1, j2), (i2, j1), and (i2, j2) in that order.
+     */
+    byte[][] getPixels(int level, int i1, int j1, int i2, int j2, int[] ind) {
+        int tx = i1 / TILE_SIZE, ty = j1 / TILE_SIZE;
+        if (i2 / TILE_SIZE == tx && j2 / TILE_SIZE == ty) {
+            // All four pixels are in the same tile, which is almost always the case.
+
+            int x1 = i1 - tx * TILE_SIZE, x2 = i2 - tx * TILE_SIZE;
+            int y1 = (j1 - ty * TILE_SIZE) * TILE_SIZE, y2 = (j2 - ty * TILE_SIZE) * TILE_SIZE;
+            ind[0] = x1 + y1;
+            ind[1] = x1 + y2;
+            ind[2] = x2 + y1;
+            ind[3] = x2 + y2;
+            return getTile(level, tx, ty);
+        }
+        byte[][] pixels = new byte[components][4];
+        copyPixel(level, i1, j1, pixels, 0);
+        copyPixel(level, i1, j2, pixels, 1);
+        copyPixel(level, i2, j1, pixels, 2);
+        copyPixel(level, i2, j2, pixels, 3);
+        ind[0] = 0;
+        ind[1] = 1;
+        ind[2] = 2;
+        ind[3] = 3;
+        return pixels;
+    }
+
+    private void copyPixel(int level, int x, int y, byte[][] pixels, int index) {
+        byte[][] tile = getTile(level, x / TILE_SIZE, y / TILE_SIZE);
+        int offset = (x % TILE_SIZE) + (y % TILE_SIZE) * TILE_SIZE;
+        for (int c = 0; c < components; c++) {
+            pixels[c][index] = tile[c][offset];
+        }
+    }
+
+    /**
+     * Copy one row of a single component of a map into an array.
+     */
+    void readRow(int level, int component, int y, byte[] row) {
+        int w = width[level];
+        int offset = (y % TILE_SIZE) * TILE_SIZE;
+        for (int tx = 0; tx < tilesX[level]; tx++) {
+            byte[][] tile = getTile(level, tx, y / TILE_SIZE);
+            int x0 = tx * TILE_SIZE;
+            System.arraycopy(tile[component], offset, row, x0, Math.min(TILE_SIZE, w - x0));
+        }
+    }
+
+    /**
+     * Copy a complete map onto the heap.
+     */
+    byte[][] readLevel(int level) {
+        int w = width[level], h = height[level];
+        byte[][] map = new byte[components][w * h];
+        byte[] row = new byte[w];
+        for (int c = 0; c < components; c++) {
+            for (int y = 0; y < h; y++) {
+                readRow(level, c, y, row);
+                System.arraycopy(row, 0, map[c], y * w, w);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Get a tile, copying it from the cache file if it is not already on the heap.
+     */
+    private byte[][] getTile(int level, int tx, int ty) {
+        Key key = new Key(id, firstTile[level] + ty * tilesX[level] + tx);
+        Tile tile = resident.get(key);
+        if (tile != null) {
+            if (!tile.used) {
+                tile.used = true;
+            }
+            return tile.data;
+        }
+        byte[][] data = new byte[components][TILE_SIZE * TILE_SIZE];
+        MappedByteBuffer buffer = buffers[key.tile() / tilesPerBuffer];
+        int offset = (key.tile() % tilesPerBuffer) * tileBytes;
+        for (int c = 0; c < components; c++) {
+            buffer.get(offset + c * TILE_SIZE * TILE_SIZE, data[c]);
+        }
+        tile = new Tile(data, tileBytes);
+
+        // The tile is added to the map and the clock under the same lock, so that release() can
+        // never find it in one but not the other.
+
+        synchronized (clock) {
+            Tile existing = resident.putIfAbsent(key, tile);
+            if (existing != null) {
+                return existing.data;
+            }
+            clock.addLast(key);
+            residentSize += tileBytes;
+            trim();
+        }
+        return data;
+    }
+
+    /**
+     * Discard tiles until the total size of the ones on the heap is within the limit. Tiles are
+     * considered in the order they were loaded, and ones which have been used since they were
+     * last considered are kept for another round.
+     */
+    private static void trim() {
+        while (residentSize > MAX_RESIDENT_SIZE && !clock.isEmpty()) {
+            Key key = clock.pollFirst();
+            Tile tile = resident.get(key);
+            if (tile.used) {
+                tile.used = false;
+                clock.addLast(key);
+            } else {
+                resident.remove(key);
+                residentSize -= tile.size;
+            }
+        }
+    }
+}
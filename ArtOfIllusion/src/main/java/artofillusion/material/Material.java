@@ -1,5 +1,5 @@
 /* Copyright (C) 1999-2007 by Peter Eastman
-   Changes copyright (C) 2023-2025 by Maksim Khramov
+   Changes copyright (C) 2023-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -16,6 +16,7 @@ import artofillusion.object.*;
 
 import buoy.widget.*;
 import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A Material represents a description of the bulk physical properties of an object:
@@ -26,9 +27,9 @@ public abstract class Material implements ImageReference {
 
     protected String name;
     protected double refraction = 1.0;
-    protected int id = nextID++;
+    protected int id = nextID.getAndIncrement();
 
-    private static int nextID;
+    private static final AtomicInteger nextID = new AtomicInteger();
 
     /**
      * Get the name of this type of material. Subclasses should override this method to return
@@ -94,7 +95,7 @@ public abstract class Material implements ImageReference {
      * Assign a new ID number to this material, to reflect the fact that it has changed.
      */
     public void assignNewID() {
-        id = nextID++;
+        id = nextID.getAndIncrement();
     }
 
     /**
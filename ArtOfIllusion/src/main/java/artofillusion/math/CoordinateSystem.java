@@ -1,5 +1,5 @@
 /* Copyright (C) 1999-2003 by Peter Eastman
-   Changes copyright (C) 2024-2025 by Maksim Khramov
+   Changes copyright (C) 2024-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -12,6 +12,7 @@
 package artofillusion.math;
 
 import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The CoordinateSystem class describes the position and orientation of one coordinate
@@ -27,6 +28,9 @@ public class CoordinateSystem {
     Vec3 orig, zdir, updir;
     Mat4 transformTo, transformFrom;
     double xrot, yrot, zrot;
+    private int version;
+
+    private static final AtomicInteger changeCount = new AtomicInteger();
 
     /**
      * Create a new CoordinateSystem which represents an identity transformation (i.e. no
@@ -104,6 +108,7 @@ public class CoordinateSystem {
     public final void setOrigin(Vec3 orig) {
         this.orig = orig;
         transformTo = transformFrom = null;
+        changed();
     }
 
     /**
@@ -120,6 +125,7 @@ public class CoordinateSystem {
         updir.normalize();
         findRotationAngles();
         transformTo = transformFrom = null;
+        changed();
     }
 
     /**
@@ -139,6 +145,7 @@ public class CoordinateSystem {
         zdir = m.times(Vec3.vz());
         updir = m.times(Vec3.vy());
         transformTo = transformFrom = null;
+        changed();
     }
 
     /**
@@ -177,6 +184,7 @@ public class CoordinateSystem {
         updir = m.timesDirection(updir);
         findRotationAngles();
         transformTo = transformFrom = null;
+        changed();
     }
 
     /**
@@ -185,6 +193,7 @@ public class CoordinateSystem {
     public final void transformOrigin(Mat4 m) {
         orig = m.times(orig);
         transformTo = transformFrom = null;
+        changed();
     }
 
     /**
@@ -197,6 +206,28 @@ public class CoordinateSystem {
         updir = m.timesDirection(updir);
         findRotationAngles();
         transformTo = transformFrom = null;
+        changed();
+    }
+
+    /**
+     * Get a number which changes every time this CoordinateSystem is modified. Comparing it to a
+     * value saved earlier is a cheap way to tell whether it has moved in the meantime.
+     */
+    public final int getVersion() {
+        return version;
+    }
+
+    /**
+     * Get a number which changes every time any CoordinateSystem is modified. If it is the same as a
+     * value saved earlier, no CoordinateSystem has moved in the meantime.
+     */
+    public static int getChangeCount() {
+        return changeCount.get();
+    }
+
+    private void changed() {
+        version++;
+        changeCount.incrementAndGet();
     }
 
     /**
@@ -0,0 +1,97 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.math;
+
+/**
+ * This class converts between float values and IEEE 754 half precision values, which are
+ * stored in a short. A half precision value has an 11 bit significand and a range of about
+ * 6e-8 to 65504, which is plenty for colors but uses half the memory of a float.
+ */
+public final class HalfFloat {
+
+    /**
+     * The largest finite half precision value.
+     */
+    public static final float MAX_VALUE = 65504.0f;
+
+    private HalfFloat() {
+    }
+
+    /**
+     * Convert a float to the nearest half precision value. Values too large to represent become
+     * infinite, and ties are rounded to even, as in the IEEE standard.
+     */
+    public static short fromFloat(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7FFFFFFF;
+        if (abs >= 0x7F800000) {
+            // Infinity or NaN.
+
+            return (short) (sign | 0x7C00 | (abs > 0x7F800000 ? 0x200 : 0));
+        }
+        if (abs >= 0x477FF000) {
+            // 65520 and above round to infinity.
+
+            return (short) (sign | 0x7C00);
+        }
+        int result, remainder, half;
+        if (abs < 0x38800000) {
+            // The result is a subnormal number or zero.
+
+            if (abs < 0x33000000) {
+                return (short) sign;
+            }
+            int exponent = abs >>> 23;
+            int significand = (abs & 0x7FFFFF) | 0x800000;
+            int shift = 126 - exponent;
+            result = significand >> shift;
+            remainder = significand & ((1 << shift) - 1);
+            half = 1 << (shift - 1);
+        } else {
+            result = (abs - 0x38000000) >> 13;
+            remainder = abs & 0x1FFF;
+            half = 0x1000;
+        }
+        if (remainder > half || (remainder == half && (result & 1) != 0)) {
+            result++;
+        }
+        return (short) (sign | result);
+    }
+
+    /**
+     * Convert a half precision value to a float. This is exact.
+     */
+    public static float toFloat(short h) {
+        int sign = (h & 0x8000) << 16;
+        int exponent = (h >> 10) & 0x1F;
+        int significand = h & 0x3FF;
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (significand << 13));
+        }
+        if (exponent == 0) {
+            float f = significand * 0x1p-24f;
+            return (sign == 0 ? f : -f);
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (significand << 13));
+    }
+
+    /**
+     * Convert an array of half precision values to floats.
+     */
+    public static float[] toFloat(short[] values) {
+        float[] result = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = toFloat(values[i]);
+        }
+        return result;
+    }
+}
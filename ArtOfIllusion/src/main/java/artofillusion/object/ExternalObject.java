@@ -1,5 +1,5 @@
 /* Copyright (C) 2004-2007 by Peter Eastman
-   Changes copyright (C) 2017-2025 by Maksim Khramov
+   Changes copyright (C) 2017-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -14,8 +14,10 @@ package artofillusion.object;
 import artofillusion.*;
 import artofillusion.animation.*;
 import artofillusion.math.*;
+import artofillusion.texture.*;
 import artofillusion.ui.*;
 import java.io.*;
+import java.lang.ref.Cleaner;
 import java.util.*;
 import javax.swing.SwingUtilities;
 import lombok.Getter;
@@ -23,6 +25,9 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * ExternalObject is an Object3D that is stored in a separate file.
+ * <p>
+ * The wrapped object is shared with the cached scene it was loaded from, and with every copy of
+ * this ExternalObject. It is only copied when one of the methods which change it is called.
  */
 @Slf4j
 public class ExternalObject extends ObjectWrapper {
@@ -40,6 +45,18 @@ public class ExternalObject extends ObjectWrapper {
 
     private boolean includeChildren;
 
+    /**
+     * Releases the cached scenes used by ExternalObjects once they have been garbage collected.
+     */
+    private static final Cleaner cleaner = Cleaner.create();
+
+    private SceneReference sceneReference;
+
+    /**
+     * Whether the wrapped object is shared, so it must be copied before it is changed.
+     */
+    private boolean sharedObject;
+
     /**
      * Create an ExternalObject from a file.
      *
@@ -121,28 +138,45 @@ public class ExternalObject extends ObjectWrapper {
      */
     public void reloadObject() {
         theObject = new NullObject();
+        sharedObject = false;
         loadingError = null;
         try {
             if (!externalFile.isFile()) {
                 loadingError = Translate.text("externalObject.sceneNotFound", externalFile.getAbsolutePath());
+                setSceneReference(null);
                 return;
             }
-            Scene scene = new Scene(externalFile, true);
             ObjectInfo foundObject = null;
-            for (ObjectInfo info : scene.getObjects()) {
-                if (!info.getName().equals(objectName)) {
-                    continue;
-                }
-                if (info.getId() == objectId) {
-                    foundObject = info;
-                    break;
+            setSceneReference(ExternalSceneCache.acquire(externalFile));
+            ExternalSceneCache.Contents contents = sceneReference.get().getContents();
+            SceneIndex index = contents.index();
+            if (index != null) {
+                // Only load the object (and its children) rather than the whole scene.
+
+                int found = index.findObject(objectName, objectId);
+                if (found != -1) {
+                    foundObject = index.getObject(found);
+                    if (includeChildren) {
+                        loadChildren(index, found);
+                    }
                 }
-                if (foundObject == null) {
-                    foundObject = info; // Right name but wrong ID.  Tentatively accept it, but keep looking.
+            } else {
+                for (ObjectInfo info : contents.scene().getObjects()) {
+                    if (!info.getName().equals(objectName)) {
+                        continue;
+                    }
+                    if (info.getId() == objectId) {
+                        foundObject = info;
+                        break;
+                    }
+                    if (foundObject == null) {
+                        foundObject = info; // Right name but wrong ID.  Tentatively accept it, but keep looking.
+                    }
                 }
             }
             if (foundObject == null) {
                 loadingError = Translate.text("externalObject.objectNotFound", externalFile.getAbsolutePath(), objectName);
+                setSceneReference(null);
             } else {
                 if (includeChildren && foundObject.getChildren().length > 0) {
                     // Create an ObjectCollection containing the object and all its children.
@@ -153,21 +187,36 @@ public class ExternalObject extends ObjectWrapper {
                 } else {
                     theObject = foundObject.getObject();
                 }
+                sharedObject = true;
             }
         } catch (IOException ex) {
             // If anything goes wrong, use a null object and return an error message.
             loadingError = ex.getMessage();
+            setSceneReference(null);
             log.atError().setCause(ex).log("Error loading external object: {}", loadingError);
 
         }
     }
 
     /**
-     * Add an object and all its children to a list.
+     * Load all descendants of an object from an indexed scene.
+     */
+    private static void loadChildren(SceneIndex index, int parent) throws IOException {
+        for (int child : index.getEntries().get(parent).children()) {
+            index.getObject(child);
+            loadChildren(index, child);
+        }
+    }
+
+    /**
+     * Add copies of an object and all its children to a list. The originals are shared with other
+     * ExternalObjects which use the same scene, so they must not be modified. The copies still
+     * share their geometry with them.
      */
     private void addObjectsToList(ObjectInfo obj, List<ObjectInfo> allObjects, Mat4 transform) {
-        obj.getCoords().transformCoordinates(transform);
-        allObjects.add(obj);
+        ObjectInfo copy = obj.duplicate();
+        copy.getCoords().transformCoordinates(transform);
+        allObjects.add(copy);
         for (ObjectInfo child : obj.getChildren()) {
             addObjectsToList(child, allObjects, transform);
         }
@@ -180,7 +229,9 @@ public class ExternalObject extends ObjectWrapper {
     public ExternalObject duplicate() {
         ExternalObject obj = new ExternalObject(externalFile, objectName);
         obj.theObject = theObject;
+        obj.sharedObject = sharedObject = true;
         obj.includeChildren = includeChildren;
+        obj.shareScene(this);
         return obj;
     }
 
@@ -194,7 +245,67 @@ public class ExternalObject extends ObjectWrapper {
         externalFile = eo.externalFile;
         objectName = eo.objectName;
         theObject = eo.theObject;
+        sharedObject = eo.sharedObject = true;
         includeChildren = eo.includeChildren;
+        shareScene(eo);
+    }
+
+    /**
+     * Get the wrapped object so it can be changed, first copying it if it is shared.
+     */
+    private Object3D getOwnObject() {
+        if (sharedObject) {
+            theObject = theObject.duplicate();
+            sharedObject = false;
+        }
+        return theObject;
+    }
+
+    @Override
+    public void setParameters(TextureParameter[] param) {
+        getOwnObject().setParameters(param);
+    }
+
+    @Override
+    public void setParameterValues(ParameterValue[] val) {
+        getOwnObject().setParameterValues(val);
+    }
+
+    @Override
+    public void setParameterValue(TextureParameter param, ParameterValue val) {
+        getOwnObject().setParameterValue(param, val);
+    }
+
+    @Override
+    public void applyPoseKeyframe(Keyframe k) {
+        getOwnObject().applyPoseKeyframe(k);
+    }
+
+    @Override
+    public void editGesture(EditingWindow parent, ObjectInfo info, Runnable cb, ObjectInfo realObject) {
+        getOwnObject().editGesture(parent, info, cb, realObject);
+    }
+
+    /**
+     * Set the cached scene this object was loaded from, releasing the previous one.
+     */
+    private void setSceneReference(ExternalSceneCache.Reference reference) {
+        if (sceneReference == null) {
+            if (reference == null) {
+                return;
+            }
+            sceneReference = new SceneReference();
+            cleaner.register(this, sceneReference);
+        }
+        sceneReference.set(reference);
+    }
+
+    /**
+     * Hold a reference to the same cached scene as another object.
+     */
+    private void shareScene(ExternalObject obj) {
+        ExternalSceneCache.Reference reference = (obj.sceneReference == null ? null : obj.sceneReference.get());
+        setSceneReference(reference == null ? null : reference.retain());
     }
 
     /**
@@ -350,4 +461,29 @@ public class ExternalObject extends ObjectWrapper {
         public void applyPoseKeyframe(Keyframe k) {
         }
     }
+
+    /**
+     * Holds the reference to the cached scene an ExternalObject was loaded from. This is separate
+     * from the ExternalObject, so that it can release the scene after the object is garbage collected.
+     */
+    private static final class SceneReference implements Runnable {
+
+        private ExternalSceneCache.Reference reference;
+
+        synchronized ExternalSceneCache.Reference get() {
+            return reference;
+        }
+
+        synchronized void set(ExternalSceneCache.Reference newReference) {
+            if (reference != null) {
+                reference.release();
+            }
+            reference = newReference;
+        }
+
+        @Override
+        public void run() {
+            set(null);
+        }
+    }
 }
@@ -0,0 +1,225 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.object;
+
+import artofillusion.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ExternalSceneCache shares the scene files loaded by {@link ExternalObject}s, so that a file
+ * which is referenced by many of them is only read once. Files are identified by their canonical
+ * path, modification time, and size, so a file is read again after it changes on disk.
+ * <p>
+ * Each ExternalObject holds a counted {@link Reference} to the scene it uses. Scenes which are
+ * still referenced are always kept. Scenes which are no longer referenced are kept until their
+ * total size exceeds a limit, so that reloading an object or opening another scene which uses
+ * the same files does not need to read them again.
+ */
+final class ExternalSceneCache {
+
+    /**
+     * The maximum total size of scene files which are kept after they are no longer used. The
+     * size of a file on disk is only a rough estimate of its size in memory.
+     */
+    static final long MAX_UNUSED_SIZE = Runtime.getRuntime().maxMemory() / 4;
+
+    private static final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static long unusedSize;
+
+    /**
+     * Identifies a particular version of a file.
+     */
+    private record Key(File file, long modified, long length) {
+
+        boolean isCurrent() {
+            return file.lastModified() == modified && file.length() == length;
+        }
+    }
+
+    /**
+     * The contents of a scene file. If the file has an index, only the index is read, and objects
+     * are loaded from it on demand. Otherwise, the whole scene is loaded.
+     *
+     * @param index the index of the file, or null if it has none
+     * @param scene the scene in the file, or null if it has an index
+     */
+    record Contents(SceneIndex index, Scene scene) {
+    }
+
+    private static final class Entry {
+
+        final Key key;
+        final CompletableFuture<Contents> contents = new CompletableFuture<>();
+        Thread loader;
+        int references;
+
+        Entry(Key key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A counted reference to a cached scene. It must be released once it is no longer needed.
+     */
+    static final class Reference {
+
+        private final Entry entry;
+        private boolean released;
+
+        private Reference(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Get the contents of the scene file.
+         */
+        Contents getContents() {
+            return entry.contents.join();
+        }
+
+        /**
+         * Create another reference to the same scene.
+         */
+        Reference retain() {
+            synchronized (ExternalSceneCache.class) {
+                use(entry);
+            }
+            return new Reference(entry);
+        }
+
+        /**
+         * Release this reference. Calling this more than once has no effect.
+         */
+        void release() {
+            synchronized (ExternalSceneCache.class) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                entry.references--;
+                if (entry.references == 0 && entries.get(entry.key) == entry) {
+                    unusedSize += entry.key.length();
+                    trim();
+                }
+            }
+        }
+    }
+
+    private ExternalSceneCache() {
+    }
+
+    /**
+     * Get a reference to the contents of a scene file, loading it if it is not already cached.
+     */
+    static Reference acquire(File file) throws IOException {
+        File canonical = file.getCanonicalFile();
+        Key key = new Key(canonical, canonical.lastModified(), canonical.length());
+        Entry entry;
+        boolean load = false;
+        synchronized (ExternalSceneCache.class) {
+            entry = entries.get(key);
+            if (entry != null && entry.loader == Thread.currentThread()) {
+                // This thread is already loading the file further up the stack. Waiting for it
+                // would never finish, so load a separate copy which is not cached.
+
+                entry = null;
+            } else if (entry == null) {
+                entry = new Entry(key);
+                entry.loader = Thread.currentThread();
+                entries.put(key, entry);
+                load = true;
+            }
+            if (entry != null) {
+                use(entry);
+            }
+        }
+        if (entry == null) {
+            Entry separate = new Entry(key);
+            separate.references = 1;
+            load(separate);
+            return new Reference(separate);
+        }
+        if (load) {
+            try {
+                load(entry);
+            } catch (IOException | RuntimeException ex) {
+                synchronized (ExternalSceneCache.class) {
+                    entries.remove(key, entry);
+                }
+                throw ex;
+            } finally {
+                synchronized (ExternalSceneCache.class) {
+                    entry.loader = null;
+                    trim();
+                }
+            }
+        }
+        try {
+            entry.contents.join();
+        } catch (CompletionException | CancellationException ex) {
+            synchronized (ExternalSceneCache.class) {
+                entry.references--;
+            }
+            if (ex.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IOException(ex.getCause());
+        }
+        return new Reference(entry);
+    }
+
+    /**
+     * Read a scene file into an entry.
+     */
+    private static void load(Entry entry) throws IOException {
+        try {
+            SceneIndex index = SceneIndex.read(entry.key.file());
+            if (index != null) {
+                entry.contents.complete(new Contents(index, null));
+            } else {
+                entry.contents.complete(new Contents(null, new Scene(entry.key.file(), true)));
+            }
+        } catch (IOException | RuntimeException ex) {
+            entry.contents.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Record that an entry has a new reference.
+     */
+    private static void use(Entry entry) {
+        if (entry.references == 0 && entries.get(entry.key) == entry && entry.contents.isDone()) {
+            unusedSize -= entry.key.length();
+        }
+        entry.references++;
+    }
+
+    /**
+     * Discard unused entries for files which have changed, and then the least recently used
+     * entries until the total size of unused ones is within the limit.
+     */
+    private static void trim() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.references > 0 || !entry.contents.isDone()) {
+                continue;
+            }
+            if (unusedSize > MAX_UNUSED_SIZE || !entry.key.isCurrent()) {
+                iterator.remove();
+                unusedSize -= entry.key.length();
+            }
+        }
+    }
+}
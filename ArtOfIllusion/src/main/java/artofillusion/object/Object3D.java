@@ -1,5 +1,5 @@
 /* Copyright (C) 1999-2012 by Peter Eastman
-   Changes copyright (C) 2020-2025 by Maksim Khramov
+   Changes copyright (C) 2020-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -373,15 +373,23 @@ public abstract class Object3D {
             return;
         }
         Camera theCamera = canvas.getCamera();
-        if (theCamera.visibility(obj.getBounds()) == Camera.NOT_VISIBLE) {
+        if (theCamera.visibility(obj.getPreviewBounds()) == Camera.NOT_VISIBLE) {
             return;
         }
         int renderMode = canvas.getRenderMode();
+        int level = canvas.getPreviewLevel(obj);
         if (renderMode == ViewerCanvas.RENDER_WIREFRAME) {
-            canvas.renderWireframe(obj.getWireframePreview(), theCamera, ViewerCanvas.lineColor);
+            canvas.renderWireframe(obj.getWireframePreview(level), theCamera, ViewerCanvas.lineColor);
+            return;
+        }
+        boolean background = canvas.isBackgroundTessellationAllowed();
+        RenderingMesh mesh = obj.getPreviewMesh(level, background ? canvas::repaint : null);
+        if (mesh == null && background) {
+            // The mesh is being built in the background, so just show the bounding box for now.
+
+            canvas.renderWireframe(getBoxWireframe(obj.getPreviewBounds()), theCamera, ViewerCanvas.lineColor);
             return;
         }
-        RenderingMesh mesh = obj.getPreviewMesh();
         if (mesh != null) {
             if (parametersChanged) {
                 TexturedVertexShader.clearCachedShaders(mesh);
@@ -401,15 +409,25 @@ public abstract class Object3D {
                 } else if (renderMode == ViewerCanvas.RENDER_SMOOTH) {
                     shader = new SmoothVertexShader(mesh, obj.getObject(), time, obj.getCoords().toLocal().timesDirection(viewDir));
                 } else {
-                    shader = new TexturedVertexShader(mesh, obj.getObject(), time, obj.getCoords().toLocal().timesDirection(viewDir)).optimize();
+                    shader = new TexturedVertexShader(mesh, obj.getObject(), time, obj.getCoords().toLocal().timesDirection(viewDir), TextureBaker.chooseResolution(canvas.getBounds())).optimize();
                 }
                 canvas.renderMesh(mesh, shader, theCamera, obj.getObject().isClosed(), null);
             }
         } else {
-            canvas.renderWireframe(obj.getWireframePreview(), theCamera, ViewerCanvas.lineColor);
+            canvas.renderWireframe(obj.getWireframePreview(level), theCamera, ViewerCanvas.lineColor);
         }
     }
 
+    /**
+     * Create a wireframe mesh showing the edges of a bounding box.
+     */
+    private static WireframeMesh getBoxWireframe(BoundingBox bounds) {
+        Vec3[] corners = bounds.getCorners();
+        int[] from = {0, 2, 4, 6, 0, 1, 4, 5, 0, 1, 2, 3};
+        int[] to = {1, 3, 5, 7, 2, 3, 6, 7, 4, 5, 6, 7};
+        return new WireframeMesh(corners, from, to);
+    }
+
     /**
      * The following method writes the object's data to an output stream. Subclasses should
      * override this method, but also call super.writeToFile() to save information about
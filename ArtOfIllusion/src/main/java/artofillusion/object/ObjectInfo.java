@@ -19,8 +19,12 @@ import artofillusion.math.*;
 import artofillusion.texture.*;
 import java.lang.ref.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * ObjectInfo represents information about an object within a Scene: its position,
@@ -30,8 +34,28 @@ import lombok.Setter;
  * There may be several ObjectInfos in a scene which all reference
  * the same Object3D. In that case, they are live duplicates of each other.
  */
+@Slf4j
 public class ObjectInfo {
 
+    /**
+     * Preview meshes which take longer than this (in nanoseconds) to build may be built in the
+     * background. See {@link #getPreviewMesh(int, Runnable)}.
+     */
+    private static final long BACKGROUND_TESSELLATION_TIME = 20_000_000L;
+
+    private static final ExecutorService tessellationExecutor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), task -> {
+        Thread thread = new Thread(task, "Preview tessellation");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    /**
+     * A simplified preview mesh is only used if it has at most this fraction of the triangles (or edges)
+     * of the next finer level.
+     */
+    private static final double MIN_LEVEL_REDUCTION = 0.75;
+
     /**
      * -- GETTER --
      *  Get the Object3D defining the geometry for this ObjectInfo.
@@ -41,11 +65,9 @@ public class ObjectInfo {
     /**
      * -- GETTER --
      * Get the CoordinateSystem for this object.
-     * -- SETTER --
-     * @param coords Set the CoordinateSystem for this object.
      */
-    @Getter @Setter
-    public CoordinateSystem coords;
+    @Getter
+    private CoordinateSystem coords;
 
     public CoordinateSystem getCoordinateSystem() { return coords; }
     /**
@@ -97,9 +119,23 @@ public class ObjectInfo {
     private Distortion distortion, prevDistortion;
     private SoftReference<RenderingMesh> cachedMesh;
     private SoftReference<WireframeMesh> cachedWire;
+    private SoftReference<RenderingMesh[]> cachedMeshLevels;
+    private SoftReference<WireframeMesh[]> cachedWireLevels;
     private BoundingBox cachedBounds;
     private boolean lastPreviewWasWireframe;
 
+    // These are written on the event dispatch thread, but may be read by renderers.
+
+    private volatile SoftReference<RenderingMesh> staleMesh;
+    private volatile SoftReference<RenderingMesh[]> staleMeshLevels;
+    private volatile BoundingBox staleBounds;
+    private volatile long tessellationTime;
+    private volatile boolean backgroundTessellation;
+    private Future<?> pendingMesh;
+    private int meshVersion, pendingVersion, version;
+
+    private static final AtomicInteger changeCount = new AtomicInteger();
+
     /**
      * Create a new ObjectInfo.
      */
@@ -183,7 +219,10 @@ public class ObjectInfo {
         setId(source.id);
         cachedMesh = source.cachedMesh;
         cachedWire = source.cachedWire;
+        cachedMeshLevels = source.cachedMeshLevels;
+        cachedWireLevels = source.cachedWireLevels;
         cachedBounds = source.cachedBounds;
+        changed();
         tracks.clear();
         source.tracks.forEach(track -> tracks.add(track.duplicate(this)));
 
@@ -354,7 +393,9 @@ public class ObjectInfo {
             }
             double tol = ArtOfIllusion.getPreferences().getInteractiveSurfaceError();
             Object3D obj = getDistortedObject(tol);
+            long start = System.nanoTime();
             cached = obj.getRenderingMesh(tol, true, this);
+            tessellationTime = System.nanoTime() - start;
             cachedMesh = new SoftReference<>(cached);
             if (cachedBounds == null) {
                 cachedBounds = obj.getBounds();
@@ -389,6 +430,184 @@ public class ObjectInfo {
         return cached;
     }
 
+    /**
+     * Get a rendering mesh for interactive previews, simplified to a given level of detail. This is
+     * used to draw objects which cover only a small part of the screen.
+     *
+     * @param level the level of detail. 0 returns the same mesh as {@link #getPreviewMesh()}, and
+     * higher levels (up to {@link PreviewMeshSimplifier#LEVELS}) return progressively simpler meshes.
+     */
+    public RenderingMesh getPreviewMesh(int level) {
+        return getPreviewMesh(level, null);
+    }
+
+    /**
+     * Get a rendering mesh for interactive previews, simplified to a given level of detail, without
+     * waiting for it to be built if that is slow. If the object has changed since its preview mesh
+     * was last built, and building it took a long time, a new mesh is built on a background thread.
+     * Until it is ready, this returns the previous mesh instead (or null if there is none), and
+     * {@link #getPreviewBounds()} returns the previous bounds. Requests made while an earlier one is still
+     * being built replace it, so during a drag the display keeps up with the object as well as it can.
+     *
+     * @param level the level of detail, as for {@link #getPreviewMesh(int)}
+     * @param onReady if this is not null, the mesh may be built in the background, and this is run
+     * on the event dispatch thread when it is ready. If it is null, this method always returns an
+     * up to date mesh.
+     */
+    public RenderingMesh getPreviewMesh(int level, Runnable onReady) {
+        RenderingMesh mesh = null;
+        if (onReady != null) {
+            backgroundTessellation = true;
+            checkDistortionChanged();
+            if (cachedMesh != null) {
+                mesh = cachedMesh.get();
+            }
+            if (mesh == null && tessellationTime > BACKGROUND_TESSELLATION_TIME) {
+                startBackgroundTessellation(onReady);
+                SoftReference<RenderingMesh> stale = staleMesh;
+                mesh = (stale == null ? null : stale.get());
+                if (level <= 0 || mesh == null) {
+                    return mesh;
+                }
+                RenderingMesh[] levels = (staleMeshLevels == null ? null : staleMeshLevels.get());
+                if (levels == null) {
+                    levels = new RenderingMesh[PreviewMeshSimplifier.LEVELS];
+                    staleMeshLevels = new SoftReference<>(levels);
+                }
+                return getLevel(mesh, levels, Math.min(level, PreviewMeshSimplifier.LEVELS));
+            }
+        }
+        if (mesh == null) {
+            mesh = getPreviewMesh();
+        }
+        if (level <= 0 || mesh == null) {
+            return mesh;
+        }
+        RenderingMesh[] levels = null;
+        if (cachedMeshLevels != null) {
+            levels = cachedMeshLevels.get();
+        }
+        if (levels == null) {
+            levels = new RenderingMesh[PreviewMeshSimplifier.LEVELS];
+            cachedMeshLevels = new SoftReference<>(levels);
+        }
+        return getLevel(mesh, levels, Math.min(level, PreviewMeshSimplifier.LEVELS));
+    }
+
+    /**
+     * Get a simplified version of a preview mesh, building it and any finer levels it needs if they
+     * are not already in the array of levels.
+     */
+    private static RenderingMesh getLevel(RenderingMesh mesh, RenderingMesh[] levels, int level) {
+        if (level <= 0) {
+            return mesh;
+        }
+        if (levels[level - 1] == null) {
+            // If simplifying does not remove enough triangles to be worthwhile, just use the next finer level.
+
+            RenderingMesh finer = getLevel(mesh, levels, level - 1);
+            RenderingMesh simplified = PreviewMeshSimplifier.simplify(mesh, level);
+            levels[level - 1] = (simplified.triangle.length > MIN_LEVEL_REDUCTION * finer.triangle.length ? finer : simplified);
+        }
+        return levels[level - 1];
+    }
+
+    /**
+     * Start building a new preview mesh on a background thread, unless one is already being built
+     * for the current state of the object. The pose and distortion are applied on this thread, and
+     * a copy of the object and its ObjectInfo are tessellated, so the object can continue to be
+     * edited in the meantime.
+     */
+    private void startBackgroundTessellation(Runnable onReady) {
+        if (pendingMesh != null) {
+            if (pendingVersion == meshVersion) {
+                return;
+            }
+            pendingMesh.cancel(false);
+        }
+        if (getPose() != null && !getPose().equals(getObject().getPoseKeyframe())) {
+            getObject().applyPoseKeyframe(getPose());
+        }
+        double tol = ArtOfIllusion.getPreferences().getInteractiveSurfaceError();
+        Object3D obj = getDistortedObject(tol).duplicate();
+        ObjectInfo snapshot = new ObjectInfo(obj, getCoords().duplicate(), getName());
+        snapshot.setId(id);
+        int version = meshVersion;
+        pendingVersion = version;
+        pendingMesh = tessellationExecutor.submit(() -> {
+            try {
+                long start = System.nanoTime();
+                RenderingMesh mesh = obj.getRenderingMesh(tol, true, snapshot);
+                BoundingBox bounds = obj.getBounds();
+                long time = System.nanoTime() - start;
+                SwingUtilities.invokeLater(() -> backgroundTessellationFinished(version, mesh, bounds, time, onReady));
+            } catch (RuntimeException ex) {
+                log.atError().setCause(ex).log("Error building preview mesh: {}", ex.getMessage());
+
+                // Build the next mesh on the event thread, so any error is reported normally.
+
+                SwingUtilities.invokeLater(() -> backgroundTessellationFinished(version, null, null, 0L, onReady));
+            }
+        });
+    }
+
+    /**
+     * This is called on the event dispatch thread when a background tessellation finishes. If the
+     * object has changed since it was started, the mesh is still more recent than the previous one,
+     * so it is displayed until the next one is ready.
+     */
+    private void backgroundTessellationFinished(int version, RenderingMesh mesh, BoundingBox bounds, long time, Runnable onReady) {
+        if (version == pendingVersion) {
+            pendingMesh = null;
+        }
+        tessellationTime = time;
+        if (mesh != null) {
+            changed();
+            if (version == meshVersion) {
+                cachedMesh = new SoftReference<>(mesh);
+                if (cachedBounds == null) {
+                    cachedBounds = bounds;
+                }
+                staleMesh = null;
+                staleMeshLevels = null;
+                staleBounds = null;
+            } else {
+                staleMesh = new SoftReference<>(mesh);
+                staleMeshLevels = null;
+                staleBounds = bounds;
+            }
+        }
+        onReady.run();
+    }
+
+    /**
+     * Get a wireframe mesh for interactive previews, simplified to a given level of detail.
+     *
+     * @param level the level of detail. 0 returns the same mesh as {@link #getWireframePreview()}, and
+     * higher levels (up to {@link PreviewMeshSimplifier#LEVELS}) return progressively simpler meshes.
+     */
+    public WireframeMesh getWireframePreview(int level) {
+        WireframeMesh mesh = getWireframePreview();
+        if (level <= 0 || mesh == null) {
+            return mesh;
+        }
+        level = Math.min(level, PreviewMeshSimplifier.LEVELS);
+        WireframeMesh[] levels = null;
+        if (cachedWireLevels != null) {
+            levels = cachedWireLevels.get();
+        }
+        if (levels == null) {
+            levels = new WireframeMesh[PreviewMeshSimplifier.LEVELS];
+            cachedWireLevels = new SoftReference<>(levels);
+        }
+        if (levels[level - 1] == null) {
+            WireframeMesh finer = getWireframePreview(level - 1);
+            WireframeMesh simplified = PreviewMeshSimplifier.simplify(mesh, level);
+            levels[level - 1] = (simplified.from().length > MIN_LEVEL_REDUCTION * finer.from().length ? finer : simplified);
+        }
+        return levels[level - 1];
+    }
+
     /**
      * Get a bounding box for the object. The bounding box is defined in the object's local coordinate system.
      */
@@ -405,7 +624,10 @@ public class ObjectInfo {
             while (realObject instanceof ObjectWrapper) {
                 realObject = ((ObjectWrapper) realObject).getWrappedObject();
             }
-            if (!(realObject instanceof ObjectCollection)) {
+            // Also build the preview mesh, since it will probably be needed soon, unless it is slow
+            // to build and will be built in the background.
+
+            if (!(realObject instanceof ObjectCollection) && !isPreviewMeshDeferred()) {
                 if (lastPreviewWasWireframe && cachedWire == null) {
                     cachedWire = new SoftReference<>(obj.getWireframeMesh());
                 } else if (!lastPreviewWasWireframe && cachedMesh == null) {
@@ -416,12 +638,49 @@ public class ObjectInfo {
         return cachedBounds;
     }
 
+    /**
+     * Get the bounding box of the preview mesh which is currently displayed. This is the same as
+     * {@link #getBounds()}, except while a new preview mesh is being built in the background (see
+     * {@link #getPreviewMesh(int, Runnable)}). Then it is the bounds of the previous mesh, which is
+     * displayed until the new one is ready. This should only be used for drawing previews.
+     */
+    public BoundingBox getPreviewBounds() {
+        BoundingBox stale = staleBounds;
+        if (stale != null && isPreviewMeshDeferred()) {
+            SoftReference<RenderingMesh> current = cachedMesh;
+            if (current == null || current.get() == null) {
+                return stale;
+            }
+        }
+        return getBounds();
+    }
+
+    /**
+     * Get whether a new preview mesh for this object will be built in the background, rather than
+     * when it is requested.
+     */
+    private boolean isPreviewMeshDeferred() {
+        return backgroundTessellation && tessellationTime > BACKGROUND_TESSELLATION_TIME;
+    }
+
     /**
      * Clear the cached preview meshes. This should be called whenever the object is changed.
      */
     public void clearCachedMeshes() {
+        RenderingMesh previous = (cachedMesh == null ? null : cachedMesh.get());
+        if (previous != null) {
+            staleMesh = new SoftReference<>(previous);
+            staleMeshLevels = cachedMeshLevels;
+        }
+        if (cachedBounds != null) {
+            staleBounds = cachedBounds;
+        }
+        meshVersion++;
+        changed();
         cachedMesh = null;
         cachedWire = null;
+        cachedMeshLevels = null;
+        cachedWireLevels = null;
         cachedBounds = null;
     }
 
@@ -437,6 +696,39 @@ public class ObjectInfo {
      */
     public void setObject(Object3D object) {
         this.object = object;
+        changed();
+    }
+
+    /**
+     * Set the CoordinateSystem for this object.
+     */
+    public void setCoords(CoordinateSystem coords) {
+        this.coords = coords;
+        changed();
+    }
+
+    /**
+     * Get a number which changes whenever anything that affects how this object is displayed
+     * changes: the object itself (as reported by {@link #clearCachedMeshes()}), its position, its
+     * visibility, or which preview mesh is shown for it. Views compare it to the value from when
+     * they last drew the object, to decide whether it must be redrawn.
+     */
+    public long getVersion() {
+        return ((long) version << 32) | (getCoords().getVersion() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get a number which changes whenever the version of any ObjectInfo or CoordinateSystem changes.
+     * If it is the same as a value saved earlier, {@link #getVersion()} will still return the value it
+     * had then for every object.
+     */
+    public static long getChangeCount() {
+        return ((long) changeCount.get() << 32) | (CoordinateSystem.getChangeCount() & 0xFFFFFFFFL);
+    }
+
+    private void changed() {
+        version++;
+        changeCount.incrementAndGet();
     }
 
     /**
@@ -451,6 +743,7 @@ public class ObjectInfo {
      */
     public void setVisible(boolean visible) {
         this.visible = visible;
+        changed();
     }
 
     /**
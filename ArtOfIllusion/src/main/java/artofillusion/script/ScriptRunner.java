@@ -63,9 +63,12 @@ public class ScriptRunner {
     }
 
     /**
-     * Get the ScriptEngine for running scripts written in a particular language.
+     * Get the ScriptEngine for running scripts written in a particular language. Engines are
+     * created on first use, which may happen on a background thread during startup. An engine
+     * is not thread safe, so anything which uses it should synchronize on it, as the methods of
+     * this class do.
      */
-    public static ScriptEngine getScriptEngine(String language) throws ScriptException {
+    public static synchronized ScriptEngine getScriptEngine(String language) throws ScriptException {
         if (engines.containsKey(language)) {
             return engines.get(language);
         }
@@ -96,6 +99,9 @@ public class ScriptRunner {
         } catch (Exception e) {
             throw new ScriptException("Could not import the required packages (" + IMPORTS.toString() + ")", -1, e);
         }
+        // The output window itself is only created on the event dispatch thread, once a script
+        // writes to it.
+
         output = new PrintStream(new ScriptOutputWindow());
         engine.setOutput(output);
         return engines.get(language);
@@ -106,7 +112,10 @@ public class ScriptRunner {
      */
     public static void executeScript(String language, String script, Map<String, Object> variables) {
         try {
-            getScriptEngine(language).executeScript(script, variables);
+            ScriptEngine engine = getScriptEngine(language);
+            synchronized (engine) {
+                engine.executeScript(script, variables);
+            }
         } catch (ScriptException ex) {
             log.atError().setCause(ex).log("Error in line {}: {}", ex.getLineNumber(), ex.getMessage());
         }
@@ -116,11 +125,7 @@ public class ScriptRunner {
      * Execute a script.
      */
     public static void executeScript(String language, String script) {
-        try {
-            getScriptEngine(language).executeScript(script, Map.of());
-        } catch (ScriptException ex) {
-            log.atError().setCause(ex).log("Error in line {}: {}", ex.getLineNumber(), ex.getMessage());
-        }
+        executeScript(language, script, Map.of());
     }
 
 
@@ -128,14 +133,20 @@ public class ScriptRunner {
      * Parse a Tool script.
      */
     public static ToolScript parseToolScript(String language, String script) throws Exception {
-        return getScriptEngine(language).createToolScript(script);
+        ScriptEngine engine = getScriptEngine(language);
+        synchronized (engine) {
+            return engine.createToolScript(script);
+        }
     }
 
     /**
      * Parse an Object script.
      */
     public static ObjectScript parseObjectScript(String language, String script) throws Exception {
-        return getScriptEngine(language).createObjectScript(script);
+        ScriptEngine engine = getScriptEngine(language);
+        synchronized (engine) {
+            return engine.createObjectScript(script);
+        }
     }
 
     /**
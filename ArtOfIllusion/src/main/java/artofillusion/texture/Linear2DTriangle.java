@@ -1,4 +1,5 @@
 /* Copyright (C) 2000-2007 by Peter Eastman
+   Changes copyright (C) 2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -94,6 +95,11 @@ public class Linear2DTriangle extends RenderingTriangle {
         }
     }
 
+    @Override
+    public Vec2 getTextureCoordinates(double u, double v, double w) {
+        return new Vec2(x1 * u + x2 * v + x3 * w, y1 * u + y2 * v + y3 * w);
+    }
+
     @Override
     public void getTransparency(RGBColor trans, double angle, double u, double v, double w, double size, double time) {
         if (!map.appliesToFace(angle > 0.0)) {
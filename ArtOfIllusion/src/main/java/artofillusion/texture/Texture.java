@@ -1,5 +1,5 @@
 /* Copyright (C) 1999-2004 by Peter Eastman
-   Changes copyright (C) 2023-2024 by Maksim Khramov
+   Changes copyright (C) 2023-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -15,6 +15,7 @@ import artofillusion.*;
 import artofillusion.object.*;
 import buoy.widget.*;
 import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A Texture represents a description of the surface properties of an object: color,
@@ -24,9 +25,9 @@ import java.io.*;
 public abstract class Texture implements ImageReference {
 
     protected String name;
-    protected int id = nextID++;
+    protected int id = nextID.getAndIncrement();
 
-    private static int nextID;
+    private static final AtomicInteger nextID = new AtomicInteger();
 
     public static final int DIFFUSE_COLOR_COMPONENT = 0;
     public static final int SPECULAR_COLOR_COMPONENT = 1;
@@ -83,7 +84,7 @@ public abstract class Texture implements ImageReference {
      * Assign a new ID number to this texture, to reflect the fact that it has changed.
      */
     public void assignNewID() {
-        id = nextID++;
+        id = nextID.getAndIncrement();
     }
 
     /**
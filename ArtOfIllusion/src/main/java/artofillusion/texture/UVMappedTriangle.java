@@ -1,4 +1,5 @@
 /* Copyright (C) 2002-2005 by Peter Eastman
+   Changes copyright (C) 2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -108,6 +109,11 @@ public class UVMappedTriangle extends RenderingTriangle {
         }
     }
 
+    @Override
+    public Vec2 getTextureCoordinates(double u, double v, double w) {
+        return new Vec2(s1 * u + s2 * v + s3 * w, t1 * u + t2 * v + t3 * w);
+    }
+
     @Override
     public void getTransparency(RGBColor trans, double angle, double u, double v, double w, double size, double time) {
         if (!map.appliesToFace(angle > 0.0)) {
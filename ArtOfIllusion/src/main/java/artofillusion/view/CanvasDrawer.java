@@ -1,4 +1,5 @@
 /* Copyright (C) 2005-2009 by Peter Eastman
+Changes copyright (C) 2026 by Maksim Khramov
 
 This program is free software; you can redistribute it and/or modify it under the
 terms of the GNU General Public License as published by the Free Software
@@ -36,6 +37,29 @@ public interface CanvasDrawer {
      */
     void drawDraggedShape(Shape shape);
 
+    /**
+     * Get the region of the image which is being redrawn in the current frame. Everything outside it
+     * still shows the objects as they were drawn in the previous frame, so only objects which overlap
+     * it need to be drawn. A null value means the whole image is being redrawn.
+     */
+    default Rectangle getUpdateRegion() {
+        return null;
+    }
+
+    /**
+     * This is called once the background and grid have been drawn, and before any objects are drawn.
+     */
+    default void backgroundComplete() {
+    }
+
+    /**
+     * This is called once all of the objects in the scene have been drawn, and before the selection
+     * handles and any other overlays are drawn. Drawers may save the image at this point so that
+     * the next frame can redraw only the part of it returned by {@link artofillusion.ViewerCanvas#findUpdateRegion()}.
+     */
+    default void sceneComplete() {
+    }
+
     /**
      * Draw a border around the rendered image.
      */
@@ -101,17 +125,20 @@ public interface CanvasDrawer {
     void renderLine(Vec2 p1, double zf1, Vec2 p2, double zf2, Camera cam, Color color);
 
     /**
-     * Render a wireframe object.
+     * Render a wireframe object. The mesh may be drawn after this returns, so it must not be
+     * modified afterward.
      */
     void renderWireframe(WireframeMesh mesh, Camera cam, Color color);
 
     /**
-     * Render an object with flat shading in subtractive (transparent) mode.
+     * Render an object with flat shading in subtractive (transparent) mode. The mesh and shader may
+     * be used after this returns, so they must not be modified afterward.
      */
     void renderMeshTransparent(RenderingMesh mesh, VertexShader shader, Camera cam, Vec3 viewDir, boolean[] hideFace);
 
     /**
-     * Render a mesh to the canvas.
+     * Render a mesh to the canvas. The mesh and shader may be used after this returns, so they must
+     * not be modified afterward.
      */
     void renderMesh(RenderingMesh mesh, VertexShader shader, Camera cam, boolean closed, boolean[] hideFace);
 
@@ -63,7 +63,7 @@ public class ClickedPointFinder {
         Vec2[] corner2D = new Vec2[3];
 
 
-        for (ObjectInfo info: renderableObjects(view)) {
+        for (ObjectInfo info: renderableObjects(view, point)) {
 
             RenderingMesh surface = info.getPreviewMesh();
             if (view instanceof ObjectViewer viewer && (!viewer.getSceneVisible() || info == viewer.thisObjectInScene)) {
@@ -133,11 +133,25 @@ public class ClickedPointFinder {
     }
 
 
-    private List<ObjectInfo> renderableObjects(ViewerCanvas view) {
+    private List<ObjectInfo> renderableObjects(ViewerCanvas view, Point point) {
         List<ObjectInfo> renderable = new ArrayList<>();
 
 
-        if (view instanceof SceneViewer || (view instanceof ObjectViewer viewer1 && viewer1.getSceneVisible())) {
+        if (view instanceof SceneViewer) {
+            // Only consider objects whose bounding boxes are crossed by the line of sight through the point.
+
+            Scene scene = view.getScene();
+            Camera cam = view.getCamera();
+            Vec3 orig = cam.convertScreenToWorld(point, 1.0, false);
+            Vec3 dir = cam.convertScreenToWorld(point, 2.0, false).minus(orig);
+            double smin = (perspective ? -1.0 : -Double.MAX_VALUE);
+            for (int index : scene.findObjects(box -> lineHitsBox(orig, dir, smin, box))) {
+                ObjectInfo oi = scene.getObject(index);
+                if (oi.isVisible() && oi.getObject().canSetTexture()) {
+                    renderable.add(oi);
+                }
+            }
+        } else if (view instanceof ObjectViewer viewer1 && viewer1.getSceneVisible()) {
             Scene scene = view.getScene();
             scene.getObjects().forEach((ObjectInfo oi) -> {
                 if (oi.isVisible() && oi.getObject().canSetTexture()) {
@@ -153,6 +167,31 @@ public class ClickedPointFinder {
         return renderable;
     }
 
+    /**
+     * Determine whether the line orig+s*dir, for s greater than smin, passes through a box.
+     */
+    private static boolean lineHitsBox(Vec3 orig, Vec3 dir, double smin, BoundingBox box) {
+        double tol = 1e-6 * (box.maxx - box.minx + box.maxy - box.miny + box.maxz - box.minz);
+        double[] o = {orig.x, orig.y, orig.z}, d = {dir.x, dir.y, dir.z};
+        double[] min = {box.minx - tol, box.miny - tol, box.minz - tol}, max = {box.maxx + tol, box.maxy + tol, box.maxz + tol};
+        double smax = Double.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            if (d[i] == 0.0) {
+                if (o[i] < min[i] || o[i] > max[i]) {
+                    return false;
+                }
+                continue;
+            }
+            double s1 = (min[i] - o[i]) / d[i], s2 = (max[i] - o[i]) / d[i];
+            smin = Math.max(smin, Math.min(s1, s2));
+            smax = Math.min(smax, Math.max(s1, s2));
+            if (smin > smax) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private Mat4 contextTransform(ViewerCanvas view, ObjectInfo info) {
         Mat4 t;
 
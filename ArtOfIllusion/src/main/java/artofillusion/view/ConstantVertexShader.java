@@ -1,4 +1,5 @@
 /* Copyright (C) 2005 by Peter Eastman
+Changes copyright (C) 2026 by Maksim Khramov
 
 This program is free software; you can redistribute it and/or modify it under the
 terms of the GNU General Public License as published by the Free Software
@@ -27,7 +28,7 @@ public class ConstantVertexShader implements VertexShader {
      * @param color the color in which to draw the surface
      */
     public ConstantVertexShader(RGBColor color) {
-        meshColor = color;
+        meshColor = color.duplicate();
     }
 
     /**
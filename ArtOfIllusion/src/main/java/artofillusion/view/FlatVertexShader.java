@@ -1,4 +1,5 @@
 /* Copyright (C) 2004 by Peter Eastman
+   Changes copyright (C) 2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -34,7 +35,7 @@ public class FlatVertexShader implements VertexShader {
      */
     public FlatVertexShader(RenderingMesh mesh, Object3D object, double time, Vec3 viewDir) {
         this.mesh = mesh;
-        this.viewDir = viewDir;
+        this.viewDir = new Vec3(viewDir);
         TextureSpec spec = new TextureSpec();
         object.getTexture().getAverageSpec(spec, time, object.getAverageParameterValues());
         meshColor = new RGBColor(spec.diffuse.getRed() + 0.5 * spec.specular.getRed(),
@@ -53,7 +54,7 @@ public class FlatVertexShader implements VertexShader {
     public FlatVertexShader(RenderingMesh mesh, RGBColor color, Vec3 viewDir) {
         this.mesh = mesh;
         meshColor = color;
-        this.viewDir = viewDir;
+        this.viewDir = new Vec3(viewDir);
     }
 
     /**
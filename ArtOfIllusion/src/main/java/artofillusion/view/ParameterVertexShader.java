@@ -52,7 +52,7 @@ public class ParameterVertexShader implements VertexShader {
         this.highColor = highColor;
         this.minValue = minValue;
         this.maxValue = maxValue;
-        this.viewDir = viewDir;
+        this.viewDir = new Vec3(viewDir);
         light = new float[mesh.norm.length];
         rprimehigh = Math.pow(highColor.getRed(), 1.0 / 0.45);
         gprimehigh = Math.pow(highColor.getGreen(), 1.0 / 0.45);
@@ -1,4 +1,5 @@
 /* Copyright (C) 2005 by Peter Eastman
+Changes copyright (C) 2026 by Maksim Khramov
 
 This program is free software; you can redistribute it and/or modify it under the
 terms of the GNU General Public License as published by the Free Software
@@ -30,13 +31,14 @@ public class SelectionVertexShader implements VertexShader {
      * @param selectionColor the color to use for selected faces
      * @param shader the shader to use for unselected faces
      * @param faceIndex the index of the control mesh face for each face of the rendering mesh
-     * @param selected specifies which faces of the control mesh are selected
+     * @param selected specifies which faces of the control mesh are selected. It is copied, so the
+     *        shader is not affected if the selection changes before it is used.
      */
     public SelectionVertexShader(RGBColor selectionColor, VertexShader shader, int[] faceIndex, boolean[] selected) {
         this.selectionColor = selectionColor;
         this.shader = shader;
         this.faceIndex = faceIndex;
-        this.selected = selected;
+        this.selected = selected.clone();
     }
 
     /**
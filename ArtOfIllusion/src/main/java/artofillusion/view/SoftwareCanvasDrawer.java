@@ -15,15 +15,22 @@ package artofillusion.view;
 import artofillusion.*;
 import artofillusion.math.*;
 import artofillusion.texture.*;
+import artofillusion.view.TriangleRasterizer.TriangleBatch;
 import buoy.event.*;
 import java.awt.*;
+import java.awt.geom.Path2D;
 import java.awt.image.*;
 import java.lang.ref.*;
 import java.util.*;
+import java.util.concurrent.*;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * This is a CanvasDrawer which implements a software renderer for generating the contents of a ViewerCanvas.
+ * <p>
+ * The event dispatch thread only records what needs to be drawn. Each frame is then drawn on a worker
+ * thread, with batches of triangles filled by several threads in parallel. While a frame is being
+ * drawn, the canvas shows the last frame which was finished.
  */
 @Slf4j
 public class SoftwareCanvasDrawer implements CanvasDrawer {
@@ -37,23 +44,62 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
     protected int[] templatePixel;
     protected Rectangle bounds;
 
-    private static Vec2[] reuseVec2;
+    private final Vec2[] reuseVec2;
     private static final WeakHashMap<Image, SoftReference<ImageRecord>> imageMap = new WeakHashMap<>();
     private static final WeakHashMap<Image, SoftReference<RenderingMesh>> imageMeshMap = new WeakHashMap<>();
 
-    private static final int MODE_COPY = 0;
-    private static final int MODE_ADD = 1;
-    private static final int MODE_SUBTRACT = 2;
+    /**
+     * Triangles are rasterized once this many have accumulated, or when something else needs to be
+     * drawn into the image.
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    private static final ExecutorService frameExecutor = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "Canvas drawer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ExecutorService rasterExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+        Thread thread = new Thread(task, "Canvas rasterizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The steps needed to draw the frame which is being recorded. They are run in order by
+     * {@link #frameExecutor} once the frame is complete.
+     */
+    private java.util.List<Runnable> steps = new ArrayList<>();
+    private CompletableFuture<Void> frame = CompletableFuture.completedFuture(null);
+    private boolean repaintPending;
+
+    private final TriangleBatch batch = new TriangleBatch();
+    private TriangleRasterizer rasterizer;
+
+    /**
+     * The last frame which was finished. It is only accessed while holding its lock, since it is
+     * written by the thread which draws the frames, and shown on the event dispatch thread.
+     */
+    private final Object presentedLock = new Object();
+    private BufferedImage presentedImage;
+
+    /**
+     * Copies of the image and depth buffer as they were after the background was drawn, and after
+     * the objects in the scene were drawn. They let views which support it redraw only the part
+     * of the image that has changed since the previous frame.
+     */
+    private int[] backgroundPixel, backgroundZ, scenePixel, sceneZ;
+    private boolean backgroundSaved, sceneSaved, layered;
+    private Rectangle updateRegion;
 
     public SoftwareCanvasDrawer(ViewerCanvas view) {
         this.view = view;
         hideBackfaces = true;
         view.addEventLink(RepaintEvent.class, this, "paint");
-        if (reuseVec2 == null) {
-            reuseVec2 = new Vec2[10000];
-            for (int i = 0; i < reuseVec2.length; i++) {
-                reuseVec2[i] = new Vec2();
-            }
+        reuseVec2 = new Vec2[10000];
+        for (int i = 0; i < reuseVec2.length; i++) {
+            reuseVec2[i] = new Vec2();
         }
     }
 
@@ -80,32 +126,166 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
     @Override
     public void drawDraggedShape(Shape shape) {
         Graphics2D g = (Graphics2D) view.getComponent().getGraphics();
-        g.drawImage(theImage, 0, 0, null);
+        present(g);
         g.setColor(ViewerCanvas.lineColor);
         g.draw(shape);
         g.dispose();
     }
 
     /**
-     * Get the most recent rendered image.
+     * Get the most recent rendered image. This waits for the frame which is being drawn to be
+     * finished.
      */
     public BufferedImage getImage() {
+        waitForFrame();
         return theImage;
     }
 
     public void paint(RepaintEvent ev) {
+        if (!frame.isDone()) {
+            // The previous frame is still being drawn. Show the last one which was finished, and
+            // draw a new one once it is done.
+
+            repaintPending = true;
+            present(ev.getGraphics());
+            return;
+        }
+        drawFrame();
+        present(ev.getGraphics());
+    }
+
+    /**
+     * Draw a new frame, and wait until it is finished. Unlike {@link #paint(RepaintEvent)}, this
+     * does not return until the image is complete, so it can be used when every frame is needed.
+     */
+    public void paintAndWait(RepaintEvent ev) {
+        waitForFrame();
+        drawFrame();
+        waitForFrame();
+        present(ev.getGraphics());
+    }
+
+    /**
+     * Record the contents of the canvas, and start drawing them.
+     */
+    private void drawFrame() {
         bounds = view.getBounds();
+        steps = new ArrayList<>();
         prepareToRender();
         view.updateImage();
         view.getCurrentTool().drawOverlay(view);
-        ev.getGraphics().drawImage(theImage, 0, 0, null);
+        if (bounds.height <= 0 || bounds.width <= 0) {
+            return;
+        }
+        final java.util.List<Runnable> frameSteps = steps;
+        steps = new ArrayList<>();
+        frame = CompletableFuture.runAsync(() -> {
+            for (Runnable step : frameSteps) {
+                step.run();
+            }
+            fillTriangles();
+            synchronized (presentedLock) {
+                if (presentedImage == null || presentedImage.getWidth() != theImage.getWidth() || presentedImage.getHeight() != theImage.getHeight()) {
+                    presentedImage = new BufferedImage(theImage.getWidth(), theImage.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+                }
+                int[] presentedPixel = ((DataBufferInt) presentedImage.getRaster().getDataBuffer()).getData();
+                System.arraycopy(pixel, 0, presentedPixel, 0, pixel.length);
+            }
+        }, frameExecutor);
+        frame.whenComplete((result, ex) -> EventQueue.invokeLater(() -> frameFinished(ex)));
+    }
+
+    /**
+     * This is called on the event dispatch thread once a frame has been drawn.
+     */
+    private void frameFinished(Throwable error) {
+        if (error != null) {
+            log.atError().setCause(error.getCause()).log("Error drawing canvas: {}", error.getCause().getMessage());
+
+            // The saved layers may not be complete.
+
+            backgroundSaved = sceneSaved = false;
+        }
+        if (repaintPending) {
+            repaintPending = false;
+            view.repaint();
+            return;
+        }
+        Graphics g = view.getComponent().getGraphics();
+        if (g != null) {
+            present(g);
+            g.dispose();
+        }
+    }
+
+    /**
+     * Wait until the frame which is being drawn is finished.
+     */
+    private void waitForFrame() {
+        try {
+            frame.join();
+        } catch (CompletionException ex) {
+            // This is reported once the frame is finished.
+        }
+    }
+
+    /**
+     * Draw the last finished frame onto the canvas.
+     */
+    private void present(Graphics g) {
+        synchronized (presentedLock) {
+            if (presentedImage != null) {
+                g.drawImage(presentedImage, 0, 0, null);
+            }
+        }
+    }
+
+    /**
+     * Add a step to the frame which is being recorded. Any triangles which have been added to the
+     * image are filled before it runs.
+     */
+    private void record(Runnable step) {
+        steps.add(() -> {
+            fillTriangles();
+            step.run();
+        });
+    }
+
+    /**
+     * Add a step which adds triangles to the batch, to the frame which is being recorded.
+     */
+    private void recordTriangles(Runnable step) {
+        steps.add(() -> {
+            step.run();
+            if (batch.size >= BATCH_SIZE) {
+                fillTriangles();
+            }
+        });
     }
 
     /**
-     * Subclasses should override this to draw the contents of the canvas, but should begin
-     * by calling super.updateImage() to make sure the Image exists and is the right size.
+     * Fill the triangles in the batch, and wait until they have been drawn. This is called on
+     * the thread which draws the frame.
+     */
+    private void fillTriangles() {
+        if (batch.size == 0) {
+            return;
+        }
+
+        // Rows outside the update region will be restored afterward, so there is no need to draw them.
+
+        int top = (updateRegion == null ? 0 : updateRegion.y);
+        int bottom = (updateRegion == null ? bounds.height : updateRegion.y + updateRegion.height);
+        rasterizer.fill(batch, top, bottom, rasterExecutor).join();
+        batch.clear();
+    }
+
+    /**
+     * Create the image if necessary, and record the steps which clear it before the rest of the
+     * frame is drawn.
      */
     private void prepareToRender() {
+        updateRegion = null;
         if (bounds.height <= 0) {
             return;
         }
@@ -114,29 +294,127 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
             if (bounds.width < 0 || bounds.height < 0) {
                 bounds.width = bounds.height = 0;
             }
+            if (bounds.width == 0) {
+                return;
+            }
             theImage = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
             pixel = ((DataBufferInt) theImage.getRaster().getDataBuffer()).getData();
             zbuffer = new int[bounds.width * bounds.height];
+            rasterizer = new TriangleRasterizer(pixel, zbuffer, bounds.width);
             if (imageGraphics != null) {
                 imageGraphics.dispose();
             }
             imageGraphics = theImage.createGraphics();
             imageGraphics.setFont(view.getComponent().getFont());
+            backgroundSaved = sceneSaved = false;
         }
-        int rgb = ViewerCanvas.backgroundColor.getRGB();
-        for (int i = 0; i < pixel.length; i++) {
-            pixel[i] = rgb;
-            zbuffer[i] = Integer.MAX_VALUE;
+
+        // If the view only needs part of the image redrawn, start from the previous frame's
+        // objects, with the background restored inside the region being redrawn.
+        Rectangle region = view.findUpdateRegion();
+        if (region != null && backgroundSaved && sceneSaved) {
+            updateRegion = region.intersection(new Rectangle(0, 0, bounds.width, bounds.height));
+            if (updateRegion.isEmpty()) {
+                updateRegion = new Rectangle();
+            }
+            final Rectangle r = updateRegion;
+            record(() -> {
+                System.arraycopy(scenePixel, 0, pixel, 0, pixel.length);
+                System.arraycopy(sceneZ, 0, zbuffer, 0, zbuffer.length);
+                copyRegion(backgroundPixel, backgroundZ, pixel, zbuffer, r);
+            });
+            sceneSaved = false;
+            return;
+        }
+        backgroundSaved = sceneSaved = false;
+        final int rgb = ViewerCanvas.backgroundColor.getRGB();
+        final Image template = (view.getTemplateShown() ? view.getTemplateImage() : null);
+        final int[] templateData = templatePixel;
+        record(() -> {
+            Arrays.fill(pixel, rgb);
+            Arrays.fill(zbuffer, Integer.MAX_VALUE);
+
+            // Draw the template image, if necessary.
+            if (template != null) {
+                int width = template.getWidth(null), height = template.getHeight(null);
+                int maxi = (height < bounds.height ? height : bounds.height);
+                int maxj = (width < bounds.width ? width : bounds.width);
+                for (int i = 0; i < maxi; i++) {
+                    System.arraycopy(templateData, width * i, pixel, bounds.width * i, maxj);
+                }
+            }
+        });
+    }
+
+    @Override
+    public Rectangle getUpdateRegion() {
+        return updateRegion;
+    }
+
+    @Override
+    public void backgroundComplete() {
+        if (!layered || updateRegion != null) {
+            return;
         }
+        backgroundSaved = true;
+        record(() -> {
+            backgroundPixel = saveCopy(pixel, backgroundPixel);
+            backgroundZ = saveCopy(zbuffer, backgroundZ);
+        });
+    }
+
+    @Override
+    public void sceneComplete() {
+        layered = true;
+        sceneSaved = true;
+        final Rectangle r = updateRegion;
+        record(() -> {
+            if (r == null) {
+                scenePixel = saveCopy(pixel, scenePixel);
+                sceneZ = saveCopy(zbuffer, sceneZ);
+                return;
+            }
 
-        // Draw the template image, if necessary.
-        if (view.getTemplateShown()) {
-            int width = view.getTemplateImage().getWidth(null), height = view.getTemplateImage().getHeight(null);
-            int maxi = (height < bounds.height ? height : bounds.height);
-            int maxj = (width < bounds.width ? width : bounds.width);
-            for (int i = 0; i < maxi; i++) {
-                System.arraycopy(templatePixel, width * i, pixel, bounds.width * i, maxj);
+            // Objects which overlap the region may also have been drawn outside it. The image was
+            // already correct there, so restore it before saving the region.
+
+            int width = bounds.width;
+            System.arraycopy(scenePixel, 0, pixel, 0, r.y * width);
+            System.arraycopy(sceneZ, 0, zbuffer, 0, r.y * width);
+            int end = (r.y + r.height) * width;
+            System.arraycopy(scenePixel, end, pixel, end, pixel.length - end);
+            System.arraycopy(sceneZ, end, zbuffer, end, zbuffer.length - end);
+            for (int i = r.y, row = r.y * width; i < r.y + r.height; i++, row += width) {
+                System.arraycopy(scenePixel, row, pixel, row, r.x);
+                System.arraycopy(sceneZ, row, zbuffer, row, r.x);
+                int right = row + r.x + r.width;
+                System.arraycopy(scenePixel, right, pixel, right, row + width - right);
+                System.arraycopy(sceneZ, right, zbuffer, right, row + width - right);
             }
+            copyRegion(pixel, zbuffer, scenePixel, sceneZ, r);
+        });
+    }
+
+    /**
+     * Copy an array into another one, allocating a new array if the existing one is missing or
+     * the wrong size.
+     */
+    private static int[] saveCopy(int[] from, int[] to) {
+        if (to == null || to.length != from.length) {
+            to = new int[from.length];
+        }
+        System.arraycopy(from, 0, to, 0, from.length);
+        return to;
+    }
+
+    /**
+     * Copy the pixels and depths inside a rectangle from one pair of buffers to another.
+     */
+    private void copyRegion(int[] fromPixel, int[] fromZ, int[] toPixel, int[] toZ, Rectangle r) {
+        int width = bounds.width;
+        for (int i = r.y, start = r.y * width + r.x; i < r.y + r.height; i++, start += width) {
+            System.arraycopy(fromPixel, start, toPixel, start, r.width);
+            System.arraycopy(fromZ, start, toZ, start, r.width);
         }
     }
 
@@ -145,29 +423,31 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void drawBorder() {
-        boolean drawFocus = view.getDrawFocus();
-        int i, index1, index2;
-
-        index1 = 0;
-        index2 = bounds.width - 1;
-        int black = 0xFF000000;
-        int line = ViewerCanvas.lineColor.getRGB();
-
-        for (i = 0; i < bounds.height; i++, index1 += bounds.width, index2 += bounds.width) {
-            pixel[index1] = pixel[index2] = black;
-            if (drawFocus) {
-                //pixel[index1+1] = pixel[index2-1] = line;
-                pixel[index1 + 1] = pixel[index2 - 1] = Color.GRAY.getRGB();
+        final boolean drawFocus = view.getDrawFocus();
+        record(() -> {
+            int i, index1, index2;
+
+            index1 = 0;
+            index2 = bounds.width - 1;
+            int black = 0xFF000000;
+            int line = ViewerCanvas.lineColor.getRGB();
+
+            for (i = 0; i < bounds.height; i++, index1 += bounds.width, index2 += bounds.width) {
+                pixel[index1] = pixel[index2] = black;
+                if (drawFocus) {
+                    //pixel[index1+1] = pixel[index2-1] = line;
+                    pixel[index1 + 1] = pixel[index2 - 1] = Color.GRAY.getRGB();
+                }
             }
-        }
-        index1 = bounds.width * (bounds.height - 1);
-        for (i = 1; i < bounds.width - 1; i++) {
-            pixel[i] = pixel[index1 + i] = black;
-            if (drawFocus) {
-                //pixel[i+bounds.width] = pixel[index1+i-bounds.width] = line;
-                pixel[i + bounds.width] = pixel[index1 + i - bounds.width] = Color.GRAY.getRGB();
+            index1 = bounds.width * (bounds.height - 1);
+            for (i = 1; i < bounds.width - 1; i++) {
+                pixel[i] = pixel[index1 + i] = black;
+                if (drawFocus) {
+                    //pixel[i+bounds.width] = pixel[index1+i-bounds.width] = line;
+                    pixel[i + bounds.width] = pixel[index1 + i - bounds.width] = Color.GRAY.getRGB();
+                }
             }
-        }
+        });
     }
 
     /**
@@ -176,11 +456,13 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void drawHRule(int y, Color color) {
-        int index = y * bounds.width;
-        int col = color.getRGB();
-        for (int i = 0; i < bounds.width; i++, index++) {
-            pixel[index] = col;
-        }
+        record(() -> {
+            int index = y * bounds.width;
+            int col = color.getRGB();
+            for (int i = 0; i < bounds.width; i++, index++) {
+                pixel[index] = col;
+            }
+        });
     }
 
     /**
@@ -189,11 +471,13 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void drawVRule(int x, Color color) {
-        int index = x;
-        int col = color.getRGB();
-        for (int i = 0; i < bounds.height; i++, index += bounds.width) {
-            pixel[index] = col;
-        }
+        record(() -> {
+            int index = x;
+            int col = color.getRGB();
+            for (int i = 0; i < bounds.height; i++, index += bounds.width) {
+                pixel[index] = col;
+            }
+        });
     }
 
     /**
@@ -201,6 +485,13 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void drawBox(int x, int y, int width, int height, Color color) {
+        record(() -> fillBox(x, y, width, height, color));
+    }
+
+    /**
+     * Fill a box in the rendered image, on the thread which draws the frame.
+     */
+    private void fillBox(int x, int y, int width, int height, Color color) {
         int col = color.getRGB();
         int maxx = x + width;
         int maxy = y + height;
@@ -237,6 +528,13 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void renderBox(int x, int y, int width, int height, double depth, Color color) {
+        record(() -> fillBox(x, y, width, height, depth, color));
+    }
+
+    /**
+     * Fill a box at a specified depth in the rendered image, on the thread which draws the frame.
+     */
+    private void fillBox(int x, int y, int width, int height, double depth, Color color) {
         int i, j, index, maxx, maxy, col, z;
 
         col = color.getRGB();
@@ -282,14 +580,17 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void drawLine(Point p1, Point p2, Color color) {
-        int x1, y1, x2, y2, col;
+        final int x1 = p1.x, y1 = p1.y, x2 = p2.x, y2 = p2.y;
+        record(() -> drawLine(x1, y1, x2, y2, color));
+    }
+
+    /**
+     * Draw a line into the rendered image, on the thread which draws the frame.
+     */
+    private void drawLine(int x1, int y1, int x2, int y2, Color color) {
+        int col = color.getRGB();
         int x, y, dx, dy, end, index, edge;
 
-        col = color.getRGB();
-        x1 = p1.x;
-        y1 = p1.y;
-        x2 = p2.x;
-        y2 = p2.y;
         if (x1 < 0 && x2 < 0) {
             return;
         }
@@ -384,10 +685,20 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void renderLine(Vec3 p1, Vec3 p2, Camera cam, Color color) {
-        if (cam.isPerspective()) {
-            double z1 = cam.getObjectToView().timesZ(p1);
-            double z2 = cam.getObjectToView().timesZ(p2);
-            double clip = cam.getClipDistance();
+        final Mat4 toView = cam.getObjectToView(), toScreen = cam.getObjectToScreen();
+        final double clip = cam.getClipDistance();
+        final boolean perspective = cam.isPerspective(), wireframe = (view.getRenderMode() == ViewerCanvas.RENDER_WIREFRAME);
+        final Vec3 from = new Vec3(p1), to = new Vec3(p2);
+        record(() -> renderLine(from, to, toView, toScreen, clip, perspective, wireframe, color));
+    }
+
+    /**
+     * Render a line into the image, on the thread which draws the frame.
+     */
+    private void renderLine(Vec3 p1, Vec3 p2, Mat4 toView, Mat4 toScreen, double clip, boolean perspective, boolean wireframe, Color color) {
+        if (perspective) {
+            double z1 = toView.timesZ(p1);
+            double z2 = toView.timesZ(p2);
             if (z1 < clip) {
                 if (z2 < clip) {
                     return;
@@ -399,9 +710,8 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
                 p2 = new Vec3(p2.x + f * (p1.x - p2.x), p2.y + f * (p1.y - p2.y), p2.z + f * (p1.z - p2.z));
             }
         }
-        renderLine(cam.getObjectToScreen().timesXY(p1), cam.getObjectToView().timesZ(p1),
-                cam.getObjectToScreen().timesXY(p2), cam.getObjectToView().timesZ(p2),
-                cam, color);
+        renderLine(toScreen.timesXY(p1), toView.timesZ(p1), toScreen.timesXY(p2), toView.timesZ(p2),
+                (int) (perspective ? clip * 65535.0 : Integer.MIN_VALUE), wireframe, color);
     }
 
     /**
@@ -416,9 +726,18 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void renderLine(Vec2 p1, double zf1, Vec2 p2, double zf2, Camera cam, Color color) {
+        final Vec2 from = new Vec2(p1), to = new Vec2(p2);
+        final int clip = (int) (cam.isPerspective() ? cam.getClipDistance() * 65535.0 : Integer.MIN_VALUE);
+        final boolean wireframe = (view.getRenderMode() == ViewerCanvas.RENDER_WIREFRAME);
+        record(() -> renderLine(from, zf1, to, zf2, clip, wireframe, color));
+    }
+
+    /**
+     * Render a line into the image, on the thread which draws the frame.
+     */
+    private void renderLine(Vec2 p1, double zf1, Vec2 p2, double zf2, int clip, boolean wireframe, Color color) {
         int x1, y1, z1, x2, y2, z2;
         int x, y, z, dx, dy, dz, end, index, edge;
-        int clip = (int) (cam.isPerspective() ? cam.getClipDistance() * 65535.0 : Integer.MIN_VALUE);
         int rgb = color.getRGB();
 
         x1 = (int) p1.x;
@@ -442,8 +761,8 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
         if (z1 < clip && z2 < clip) {
             return;
         }
-        if (view.getRenderMode() == ViewerCanvas.RENDER_WIREFRAME) {
-            drawLine(new Point(x1, y1), new Point(x2, y2), color);
+        if (wireframe) {
+            drawLine(x1, y1, x2, y2, color);
             return;
         }
         dx = x2 - x1;
@@ -534,9 +853,7 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
     /**
      * Clip a triangle to the region in front of the z clipping plane.
      */
-    private Vec2[] clipTriangle(Vec3 v1, Vec3 v2, Vec3 v3, double z1, double z2, double z3, Camera cam, double[] newz) {
-        double clip = cam.getClipDistance();
-        Mat4 toScreen = cam.getObjectToScreen();
+    private Vec2[] clipTriangle(Vec3 v1, Vec3 v2, Vec3 v3, double z1, double z2, double z3, double clip, Mat4 toScreen, double[] newz) {
         boolean c1 = z1 < clip, c2 = z2 < clip, c3 = z3 < clip;
         Vec3 u1, u2, u3, u4;
         int clipCount = 0;
@@ -629,32 +946,50 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
     }
 
     /**
-     * Render a wireframe object.
+     * Render a wireframe object. The lines are drawn on the thread which draws the frame, so
+     * the mesh must not be modified afterward.
      */
     @Override
     public void renderWireframe(WireframeMesh mesh, Camera cam, Color color) {
-        Vec3[] vert = mesh.vert();
-        int[] from = mesh.from();
-        int[] to = mesh.to();
-        for (int i = 0; i < from.length; i++) {
-            renderLine(vert[from[i]], vert[to[i]], cam, color);
-        }
+        final Mat4 toView = cam.getObjectToView(), toScreen = cam.getObjectToScreen();
+        final double clip = cam.getClipDistance();
+        final boolean perspective = cam.isPerspective(), wireframe = (view.getRenderMode() == ViewerCanvas.RENDER_WIREFRAME);
+        record(() -> {
+            Vec3[] vert = mesh.vert();
+            int[] from = mesh.from();
+            int[] to = mesh.to();
+            for (int i = 0; i < from.length; i++) {
+                renderLine(vert[from[i]], vert[to[i]], toView, toScreen, clip, perspective, wireframe, color);
+            }
+        });
     }
 
     /**
-     * Render an object with flat shading in subtractive (transparent) mode.
+     * Render an object with flat shading in subtractive (transparent) mode. As with
+     * {@link #renderMesh}, the triangles may be drawn after this returns, so the mesh and
+     * shader must not be modified afterward.
      */
     @Override
     public void renderMeshTransparent(RenderingMesh mesh, VertexShader shader, Camera cam, Vec3 viewDir, boolean[] hideFace) {
+        final Mat4 toView = cam.getObjectToView(), toScreen = cam.getObjectToScreen();
+        final double clip = cam.getClipDistance();
+        final boolean[] hidden = (hideFace == null ? null : hideFace.clone());
+        final Vec3 dir = new Vec3(viewDir);
+        recordTriangles(() -> shadeMeshTransparent(mesh, shader, toView, toScreen, clip, dir, hidden));
+    }
+
+    /**
+     * Shade the triangles of a transparent mesh and add them to the batch, on the thread which
+     * draws the frame.
+     */
+    private void shadeMeshTransparent(RenderingMesh mesh, VertexShader shader, Mat4 toView, Mat4 toScreen, double clip, Vec3 viewDir, boolean[] hideFace) {
         Vec3[] vert = mesh.vert;
         Vec2[] pos = new Vec2[vert.length];
         double[] z = new double[vert.length];
-        double clip = cam.getClipDistance();
         double[] clipz = new double[4];
-        Mat4 toView = cam.getObjectToView(), toScreen = cam.getObjectToScreen();
         float dot;
         RGBColor faceColor = new RGBColor(0.0f, 0.0f, 0.0f);
-        int mode = (ViewerCanvas.backgroundColor.getGreen() > 127 ? MODE_SUBTRACT : MODE_ADD);
+        int mode = (ViewerCanvas.backgroundColor.getGreen() > 127 ? TriangleRasterizer.MODE_SUBTRACT : TriangleRasterizer.MODE_ADD);
         RenderingTriangle tri;
         int i, v1, v2, v3;
 
@@ -680,14 +1015,14 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
             }
             dot = (float) viewDir.dot(mesh.faceNorm[i]);
             shader.getColor(i, 0, faceColor);
-            if (mode == MODE_SUBTRACT) {
+            if (mode == TriangleRasterizer.MODE_SUBTRACT) {
                 faceColor.setRGB(1.0f - faceColor.getRed(), 1.0f - faceColor.getGreen(), 1.0f - faceColor.getBlue());
             } else {
                 faceColor.setRGB(faceColor.getRed(), faceColor.getGreen(), faceColor.getBlue());
             }
             faceColor.scale(1.0f - 0.8f * Math.abs(dot));
             if (z[v1] < clip || z[v2] < clip || z[v3] < clip) {
-                Vec2[] clipPos = clipTriangle(vert[v1], vert[v2], vert[v3], z[v1], z[v2], z[v3], cam, clipz);
+                Vec2[] clipPos = clipTriangle(vert[v1], vert[v2], vert[v3], z[v1], z[v2], z[v3], clip, toScreen, clipz);
                 boolean inside = true;
                 for (Vec2 clipPo : clipPos) {
                     if (clipPo.x < -32767.0 || clipPo.x > 32767.0 || clipPo.y < -32767.0 || clipPo.y > 32767.0) {
@@ -698,25 +1033,42 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
                     continue;
                 }
                 for (int j = 0; j < clipPos.length - 2; j++) {
-                    renderFlatTriangle(clipPos[j], clipz[j], clipPos[j + 1], clipz[j + 1], clipPos[j + 2], clipz[j + 2], bounds.width, bounds.height, clip, mode, faceColor);
+                    batch.addFlat(clipPos[j], clipz[j], clipPos[j + 1], clipz[j + 1], clipPos[j + 2], clipz[j + 2], clip, mode, faceColor);
                 }
             } else {
-                renderFlatTriangle(pos[v1], z[v1], pos[v2], z[v2], pos[v3], z[v3], bounds.width, bounds.height, clip, mode, faceColor);
+                batch.addFlat(pos[v1], z[v1], pos[v2], z[v2], pos[v3], z[v3], clip, mode, faceColor);
             }
         }
     }
 
     /**
-     * Render a mesh to the canvas.
+     * Render a mesh to the canvas. The mesh is shaded and drawn on the thread which draws the
+     * frame, so the mesh and shader must not be modified afterward.
      */
     @Override
     public void renderMesh(RenderingMesh mesh, VertexShader shader, Camera cam, boolean closed, boolean[] hideFace) {
-        Vec3[] vert = mesh.vert;
+        recordMesh(mesh, mesh.vert, shader, cam, closed, hideFace);
+    }
+
+    /**
+     * Record a step which shades the triangles of a mesh and adds them to the batch.
+     *
+     * @param vert the vertex positions to use instead of those of the mesh
+     */
+    private void recordMesh(RenderingMesh mesh, Vec3[] vert, VertexShader shader, Camera cam, boolean closed, boolean[] hideFace) {
+        final Mat4 toView = cam.getObjectToView(), toScreen = cam.getObjectToScreen();
+        final double clip = cam.getClipDistance();
+        final boolean[] hidden = (hideFace == null ? null : hideFace.clone());
+        recordTriangles(() -> shadeMesh(mesh, vert, shader, toView, toScreen, clip, closed, hidden));
+    }
+
+    /**
+     * Shade the triangles of a mesh and add them to the batch, on the thread which draws the frame.
+     */
+    private void shadeMesh(RenderingMesh mesh, Vec3[] vert, VertexShader shader, Mat4 toView, Mat4 toScreen, double clip, boolean closed, boolean[] hideFace) {
         Vec2[] pos = new Vec2[vert.length];
         double[] z = new double[vert.length];
-        double clip = cam.getClipDistance();
         double[] clipz = new double[4];
-        Mat4 toView = cam.getObjectToView(), toScreen = cam.getObjectToScreen();
         RGBColor color1 = new RGBColor(), color2 = new RGBColor(), color3 = new RGBColor();
         RGBColor color4 = new RGBColor(), color5 = new RGBColor(), color6 = new RGBColor(), color7 = new RGBColor();
         RenderingTriangle tri;
@@ -756,7 +1108,7 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
                 // This triangle is solid colored, so use the faster rendering method.
 
                 if (needClipping) {
-                    Vec2[] clipPos = clipTriangle(vert[v1], vert[v2], vert[v3], z[v1], z[v2], z[v3], cam, clipz);
+                    Vec2[] clipPos = clipTriangle(vert[v1], vert[v2], vert[v3], z[v1], z[v2], z[v3], clip, toScreen, clipz);
                     boolean inside = true;
                     for (Vec2 clipPo : clipPos) {
                         if (clipPo.x < -32767.0 || clipPo.x > 32767.0 || clipPo.y < -32767.0 || clipPo.y > 32767.0) {
@@ -767,17 +1119,17 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
                         continue;
                     }
                     for (int j = 0; j < clipPos.length - 2; j++) {
-                        renderFlatTriangle(clipPos[j], clipz[j], clipPos[j + 1], clipz[j + 1], clipPos[j + 2], clipz[j + 2], bounds.width, bounds.height, clip, MODE_COPY, color1);
+                        batch.addFlat(clipPos[j], clipz[j], clipPos[j + 1], clipz[j + 1], clipPos[j + 2], clipz[j + 2], clip, TriangleRasterizer.MODE_COPY, color1);
                     }
                 } else {
-                    renderFlatTriangle(pos[v1], z[v1], pos[v2], z[v2], pos[v3], z[v3], bounds.width, bounds.height, clip, MODE_COPY, color1);
+                    batch.addFlat(pos[v1], z[v1], pos[v2], z[v2], pos[v3], z[v3], clip, TriangleRasterizer.MODE_COPY, color1);
                 }
                 continue;
             }
             shader.getColor(i, 1, color2);
             shader.getColor(i, 2, color3);
             if (needClipping) {
-                Vec2[] clipPos = clipSmoothTriangle(vert[v1], vert[v2], vert[v3], z[v1], z[v2], z[v3], cam, color1, color2, color3, color4, color5, color6, color7, clipz);
+                Vec2[] clipPos = clipSmoothTriangle(vert[v1], vert[v2], vert[v3], z[v1], z[v2], z[v3], clip, toScreen, color1, color2, color3, color4, color5, color6, color7, clipz);
                 boolean inside = true;
                 for (Vec2 clipPo : clipPos) {
                     if (clipPo.x < -32767.0 || clipPo.x > 32767.0 || clipPo.y < -32767.0 || clipPo.y > 32767.0) {
@@ -787,12 +1139,12 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
                 if (!inside) {
                     continue;
                 }
-                renderSmoothTriangle(clipPos[0], clipz[0], clipPos[1], clipz[1], clipPos[2], clipz[2], bounds.width, bounds.height, clip, color4, color5, color6);
+                batch.addSmooth(clipPos[0], clipz[0], clipPos[1], clipz[1], clipPos[2], clipz[2], clip, color4, color5, color6);
                 if (clipPos.length == 4) {
-                    renderSmoothTriangle(clipPos[1], clipz[1], clipPos[2], clipz[2], clipPos[3], clipz[3], bounds.width, bounds.height, clip, color5, color6, color7);
+                    batch.addSmooth(clipPos[1], clipz[1], clipPos[2], clipz[2], clipPos[3], clipz[3], clip, color5, color6, color7);
                 }
             } else {
-                renderSmoothTriangle(pos[v1], z[v1], pos[v2], z[v2], pos[v3], z[v3], bounds.width, bounds.height, clip, color1, color2, color3);
+                batch.addSmooth(pos[v1], z[v1], pos[v2], z[v2], pos[v3], z[v3], clip, color1, color2, color3);
             }
         }
     }
@@ -800,9 +1152,7 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
     /**
      * Clip a smooth shaded triangle to the region in front of the z clipping plane.
      */
-    private Vec2[] clipSmoothTriangle(Vec3 v1, Vec3 v2, Vec3 v3, double z1, double z2, double z3, Camera cam, RGBColor col1, RGBColor col2, RGBColor col3, RGBColor newc1, RGBColor newc2, RGBColor newc3, RGBColor newc4, double[] newz) {
-        double clip = cam.getClipDistance();
-        Mat4 toScreen = cam.getObjectToScreen();
+    private Vec2[] clipSmoothTriangle(Vec3 v1, Vec3 v2, Vec3 v3, double z1, double z2, double z3, double clip, Mat4 toScreen, RGBColor col1, RGBColor col2, RGBColor col3, RGBColor newc1, RGBColor newc2, RGBColor newc3, RGBColor newc4, double[] newz) {
         boolean c1 = z1 < clip, c2 = z2 < clip, c3 = z3 < clip;
         Vec3 u1, u2, u3, u4;
         int clipCount = 0;
@@ -915,630 +1265,15 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
         return new Vec2[]{toScreen.timesXY(u1), toScreen.timesXY(u2), toScreen.timesXY(u3), toScreen.timesXY(u4)};
     }
 
-    /**
-     * Render a solid colored triangle.
-     */
-    private void renderFlatTriangle(Vec2 pos1, double zf1, Vec2 pos2, double zf2, Vec2 pos3, double zf3, int width, int height, double clip, int mode, RGBColor color) {
-        int x1, y1, z1, x2, y2, z2, x3, y3, z3;
-        int dx1, dx2, dy1, dy2, dz1, dz2, mx1, mx2, mz1, mz2;
-        int xstart, xend, yend, zstart, zend, y, z, dz, left, right, i, index;
-        int clipDist = (int) (clip * 65535.0), r, g, b, red, green, blue, col;
-
-        if (mode == MODE_COPY) {
-            col = color.getARGB();
-            red = green = blue = 0;
-        } else {
-            col = 0;
-            red = (int) (color.getRed() * 255.0f);
-            green = (int) (color.getGreen() * 255.0f);
-            blue = (int) (color.getBlue() * 255.0f);
-        }
-        if (pos1.y <= pos2.y && pos1.y <= pos3.y) {
-            x1 = ((int) pos1.x) << 16;
-            y1 = ((int) pos1.y);
-            z1 = (int) (zf1 * 65535.0);
-            if (pos2.y < pos3.y) {
-                x2 = ((int) pos2.x) << 16;
-                y2 = ((int) pos2.y);
-                z2 = (int) (zf2 * 65535.0);
-                x3 = ((int) pos3.x) << 16;
-                y3 = ((int) pos3.y);
-                z3 = (int) (zf3 * 65535.0);
-            } else {
-                x2 = ((int) pos3.x) << 16;
-                y2 = ((int) pos3.y);
-                z2 = (int) (zf3 * 65535.0);
-                x3 = ((int) pos2.x) << 16;
-                y3 = ((int) pos2.y);
-                z3 = (int) (zf2 * 65535.0);
-            }
-        } else if (pos2.y <= pos1.y && pos2.y <= pos3.y) {
-            x1 = ((int) pos2.x) << 16;
-            y1 = ((int) pos2.y);
-            z1 = (int) (zf2 * 65535.0);
-            if (pos1.y < pos3.y) {
-                x2 = ((int) pos1.x) << 16;
-                y2 = ((int) pos1.y);
-                z2 = (int) (zf1 * 65535.0);
-                x3 = ((int) pos3.x) << 16;
-                y3 = ((int) pos3.y);
-                z3 = (int) (zf3 * 65535.0);
-            } else {
-                x2 = ((int) pos3.x) << 16;
-                y2 = ((int) pos3.y);
-                z2 = (int) (zf3 * 65535.0);
-                x3 = ((int) pos1.x) << 16;
-                y3 = ((int) pos1.y);
-                z3 = (int) (zf1 * 65535.0);
-            }
-        } else {
-            x1 = ((int) pos3.x) << 16;
-            y1 = ((int) pos3.y);
-            z1 = (int) (zf3 * 65535.0);
-            if (pos1.y < pos2.y) {
-                x2 = ((int) pos1.x) << 16;
-                y2 = ((int) pos1.y);
-                z2 = (int) (zf1 * 65535.0);
-                x3 = ((int) pos2.x) << 16;
-                y3 = ((int) pos2.y);
-                z3 = (int) (zf2 * 65535.0);
-            } else {
-                x2 = ((int) pos2.x) << 16;
-                y2 = ((int) pos2.y);
-                z2 = (int) (zf2 * 65535.0);
-                x3 = ((int) pos1.x) << 16;
-                y3 = ((int) pos1.y);
-                z3 = (int) (zf1 * 65535.0);
-            }
-        }
-        dx1 = x3 - x1;
-        dy1 = y3 - y1;
-        dz1 = z3 - z1;
-        if (dy1 == 0) {
-            return;
-        }
-        dx2 = x2 - x1;
-        dy2 = y2 - y1;
-        dz2 = z2 - z1;
-        mx1 = dx1 / dy1;
-        mz1 = dz1 / dy1;
-        xstart = xend = x1;
-        zstart = zend = z1;
-        y = y1;
-        if (dy2 != 0) {
-            mx2 = dx2 / dy2;
-            mz2 = dz2 / dy2;
-            if (y2 < 0) {
-                xstart += mx1 * dy2;
-                xend += mx2 * dy2;
-                zstart += mz1 * dy2;
-                zend += mz2 * dy2;
-                y = y2;
-            } else if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                y = 0;
-            }
-            yend = (y2 < height ? y2 : height);
-            index = y * width;
-            while (y < yend) {
-                if (xstart < xend) {
-                    left = xstart >> 16;
-                    right = xend >> 16;
-                    z = zstart;
-                    dz = zend - zstart;
-                } else {
-                    left = xend >> 16;
-                    right = xstart >> 16;
-                    z = zend;
-                    dz = zstart - zend;
-                }
-                if (left != right) {
-                    dz /= (right - left);
-                    if (left < 0) {
-                        z -= left * dz;
-                        left = 0;
-                    }
-                    if (right > width) {
-                        right = width;
-                    }
-                    if (mode == MODE_COPY) {
-                        for (i = left; i < right; i++) {
-                            if (z < zbuffer[index + i] && z > clipDist) {
-                                pixel[index + i] = col;
-                                zbuffer[index + i] = z;
-                            }
-                            z += dz;
-                        }
-                    } else if (mode == MODE_ADD) {
-                        for (i = left; i < right; i++) {
-                            if (z > clipDist) {
-                                r = ((pixel[index + i] & 0xFF0000) >> 16) + red;
-                                g = ((pixel[index + i] & 0xFF00) >> 8) + green;
-                                b = (pixel[index + i] & 0xFF) + blue;
-                                if (r > 255) {
-                                    r = 255;
-                                }
-                                if (g > 255) {
-                                    g = 255;
-                                }
-                                if (b > 255) {
-                                    b = 255;
-                                }
-                                pixel[index + i] = 0xFF000000 + (r << 16) + (g << 8) + b;
-                            }
-                            z += dz;
-                        }
-                    } else {
-                        for (i = left; i < right; i++) {
-                            if (z > clipDist) {
-                                r = ((pixel[index + i] & 0xFF0000) >> 16) - red;
-                                g = ((pixel[index + i] & 0xFF00) >> 8) - green;
-                                b = (pixel[index + i] & 0xFF) - blue;
-                                if (r < 0) {
-                                    r = 0;
-                                }
-                                if (g < 0) {
-                                    g = 0;
-                                }
-                                if (b < 0) {
-                                    b = 0;
-                                }
-                                pixel[index + i] = 0xFF000000 + (r << 16) + (g << 8) + b;
-                            }
-                            z += dz;
-                        }
-                    }
-                }
-                xstart += mx1;
-                zstart += mz1;
-                xend += mx2;
-                zend += mz2;
-                index += width;
-                y++;
-            }
-        }
-        dx2 = x3 - x2;
-        dy2 = y3 - y2;
-        dz2 = z3 - z2;
-        if (dy2 != 0) {
-            mx2 = dx2 / dy2;
-            mz2 = dz2 / dy2;
-            xend = x2;
-            zend = z2;
-            if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                y = 0;
-            }
-            yend = (y3 < height ? y3 : height);
-            index = y * width;
-            while (y < yend) {
-                if (xstart < xend) {
-                    left = xstart >> 16;
-                    right = xend >> 16;
-                    z = zstart;
-                    dz = zend - zstart;
-                } else {
-                    left = xend >> 16;
-                    right = xstart >> 16;
-                    z = zend;
-                    dz = zstart - zend;
-                }
-                if (left != right) {
-                    dz /= (right - left);
-                    if (left < 0) {
-                        z -= left * dz;
-                        left = 0;
-                    }
-                    if (right > width) {
-                        right = width;
-                    }
-                    if (mode == MODE_COPY) {
-                        for (i = left; i < right; i++) {
-                            if (z < zbuffer[index + i] && z > clipDist) {
-                                pixel[index + i] = col;
-                                zbuffer[index + i] = z;
-                            }
-                            z += dz;
-                        }
-                    } else if (mode == MODE_ADD) {
-                        for (i = left; i < right; i++) {
-                            if (z > clipDist) {
-                                r = ((pixel[index + i] & 0xFF0000) >> 16) + red;
-                                g = ((pixel[index + i] & 0xFF00) >> 8) + green;
-                                b = (pixel[index + i] & 0xFF) + blue;
-                                if (r > 255) {
-                                    r = 255;
-                                }
-                                if (g > 255) {
-                                    g = 255;
-                                }
-                                if (b > 255) {
-                                    b = 255;
-                                }
-                                pixel[index + i] = 0xFF000000 + (r << 16) + (g << 8) + b;
-                            }
-                            z += dz;
-                        }
-                    } else {
-                        for (i = left; i < right; i++) {
-                            if (z > clipDist) {
-                                r = ((pixel[index + i] & 0xFF0000) >> 16) - red;
-                                g = ((pixel[index + i] & 0xFF00) >> 8) - green;
-                                b = (pixel[index + i] & 0xFF) - blue;
-                                if (r < 0) {
-                                    r = 0;
-                                }
-                                if (g < 0) {
-                                    g = 0;
-                                }
-                                if (b < 0) {
-                                    b = 0;
-                                }
-                                pixel[index + i] = 0xFF000000 + (r << 16) + (g << 8) + b;
-                            }
-                            z += dz;
-                        }
-                    }
-                }
-                xstart += mx1;
-                zstart += mz1;
-                xend += mx2;
-                zend += mz2;
-                index += width;
-                y++;
-            }
-        }
-    }
-
-    /**
-     * Render a triangle with smooth (interpolated) shading.
-     */
-    private void renderSmoothTriangle(Vec2 pos1, double zf1, Vec2 pos2, double zf2, Vec2 pos3, double zf3, int width, int height, double clip, RGBColor color1, RGBColor color2, RGBColor color3) {
-        int x1, y1, z1, x2, y2, z2, x3, y3, z3;
-        int dx1, dx2, dy1, dy2, dz1, dz2, mx1, mx2, mz1, mz2;
-        int xstart, xend, yend, zstart, zend, y, z, dz, left, right, i, index;
-        int red1, green1, blue1, red2, green2, blue2, red3, green3, blue3;
-        int dred1, dred2, dgreen1, dgreen2, dblue1, dblue2, mred1, mred2, mgreen1, mgreen2, mblue1, mblue2;
-        int redstart, redend, greenstart, greenend, bluestart, blueend, red, green, blue, dred, dgreen, dblue;
-        int clipDist = (int) (clip * 65535.0);
-
-        if (pos1.y <= pos2.y && pos1.y <= pos3.y) {
-            x1 = ((int) pos1.x) << 16;
-            y1 = ((int) pos1.y);
-            z1 = (int) (zf1 * 65535.0);
-            red1 = (int) (color1.getRed() * 65535.0f);
-            green1 = (int) (color1.getGreen() * 65535.0f);
-            blue1 = (int) (color1.getBlue() * 65535.0f);
-            if (pos2.y < pos3.y) {
-                x2 = ((int) pos2.x) << 16;
-                y2 = ((int) pos2.y);
-                z2 = (int) (zf2 * 65535.0);
-                red2 = (int) (color2.getRed() * 65535.0f);
-                green2 = (int) (color2.getGreen() * 65535.0f);
-                blue2 = (int) (color2.getBlue() * 65535.0f);
-                x3 = ((int) pos3.x) << 16;
-                y3 = ((int) pos3.y);
-                z3 = (int) (zf3 * 65535.0);
-                red3 = (int) (color3.getRed() * 65535.0f);
-                green3 = (int) (color3.getGreen() * 65535.0f);
-                blue3 = (int) (color3.getBlue() * 65535.0f);
-            } else {
-                x2 = ((int) pos3.x) << 16;
-                y2 = ((int) pos3.y);
-                z2 = (int) (zf3 * 65535.0);
-                red2 = (int) (color3.getRed() * 65535.0f);
-                green2 = (int) (color3.getGreen() * 65535.0f);
-                blue2 = (int) (color3.getBlue() * 65535.0f);
-                x3 = ((int) pos2.x) << 16;
-                y3 = ((int) pos2.y);
-                z3 = (int) (zf2 * 65535.0);
-                red3 = (int) (color2.getRed() * 65535.0f);
-                green3 = (int) (color2.getGreen() * 65535.0f);
-                blue3 = (int) (color2.getBlue() * 65535.0f);
-            }
-        } else if (pos2.y <= pos1.y && pos2.y <= pos3.y) {
-            x1 = ((int) pos2.x) << 16;
-            y1 = ((int) pos2.y);
-            z1 = (int) (zf2 * 65535.0);
-            red1 = (int) (color2.getRed() * 65535.0f);
-            green1 = (int) (color2.getGreen() * 65535.0f);
-            blue1 = (int) (color2.getBlue() * 65535.0f);
-            if (pos1.y < pos3.y) {
-                x2 = ((int) pos1.x) << 16;
-                y2 = ((int) pos1.y);
-                z2 = (int) (zf1 * 65535.0);
-                red2 = (int) (color1.getRed() * 65535.0f);
-                green2 = (int) (color1.getGreen() * 65535.0f);
-                blue2 = (int) (color1.getBlue() * 65535.0f);
-                x3 = ((int) pos3.x) << 16;
-                y3 = ((int) pos3.y);
-                z3 = (int) (zf3 * 65535.0);
-                red3 = (int) (color3.getRed() * 65535.0f);
-                green3 = (int) (color3.getGreen() * 65535.0f);
-                blue3 = (int) (color3.getBlue() * 65535.0f);
-            } else {
-                x2 = ((int) pos3.x) << 16;
-                y2 = ((int) pos3.y);
-                z2 = (int) (zf3 * 65535.0);
-                red2 = (int) (color3.getRed() * 65535.0f);
-                green2 = (int) (color3.getGreen() * 65535.0f);
-                blue2 = (int) (color3.getBlue() * 65535.0f);
-                x3 = ((int) pos1.x) << 16;
-                y3 = ((int) pos1.y);
-                z3 = (int) (zf1 * 65535.0);
-                red3 = (int) (color1.getRed() * 65535.0f);
-                green3 = (int) (color1.getGreen() * 65535.0f);
-                blue3 = (int) (color1.getBlue() * 65535.0f);
-            }
-        } else {
-            x1 = ((int) pos3.x) << 16;
-            y1 = ((int) pos3.y);
-            z1 = (int) (zf3 * 65535.0);
-            red1 = (int) (color3.getRed() * 65535.0f);
-            green1 = (int) (color3.getGreen() * 65535.0f);
-            blue1 = (int) (color3.getBlue() * 65535.0f);
-            if (pos1.y < pos2.y) {
-                x2 = ((int) pos1.x) << 16;
-                y2 = ((int) pos1.y);
-                z2 = (int) (zf1 * 65535.0);
-                red2 = (int) (color1.getRed() * 65535.0f);
-                green2 = (int) (color1.getGreen() * 65535.0f);
-                blue2 = (int) (color1.getBlue() * 65535.0f);
-                x3 = ((int) pos2.x) << 16;
-                y3 = ((int) pos2.y);
-                z3 = (int) (zf2 * 65535.0);
-                red3 = (int) (color2.getRed() * 65535.0f);
-                green3 = (int) (color2.getGreen() * 65535.0f);
-                blue3 = (int) (color2.getBlue() * 65535.0f);
-            } else {
-                x2 = ((int) pos2.x) << 16;
-                y2 = ((int) pos2.y);
-                z2 = (int) (zf2 * 65535.0);
-                red2 = (int) (color2.getRed() * 65535.0f);
-                green2 = (int) (color2.getGreen() * 65535.0f);
-                blue2 = (int) (color2.getBlue() * 65535.0f);
-                x3 = ((int) pos1.x) << 16;
-                y3 = ((int) pos1.y);
-                z3 = (int) (zf1 * 65535.0);
-                red3 = (int) (color1.getRed() * 65535.0f);
-                green3 = (int) (color1.getGreen() * 65535.0f);
-                blue3 = (int) (color1.getBlue() * 65535.0f);
-            }
-        }
-        dx1 = x3 - x1;
-        dy1 = y3 - y1;
-        dz1 = z3 - z1;
-        if (dy1 == 0) {
-            return;
-        }
-        dred1 = red3 - red1;
-        dgreen1 = green3 - green1;
-        dblue1 = blue3 - blue1;
-        dx2 = x2 - x1;
-        dy2 = y2 - y1;
-        dz2 = z2 - z1;
-        dred2 = red2 - red1;
-        dgreen2 = green2 - green1;
-        dblue2 = blue2 - blue1;
-        mx1 = dx1 / dy1;
-        mz1 = dz1 / dy1;
-        mred1 = dred1 / dy1;
-        mgreen1 = dgreen1 / dy1;
-        mblue1 = dblue1 / dy1;
-        xstart = xend = x1;
-        zstart = zend = z1;
-        redstart = redend = red1;
-        greenstart = greenend = green1;
-        bluestart = blueend = blue1;
-        y = y1;
-        if (dy2 != 0) {
-            mx2 = dx2 / dy2;
-            mz2 = dz2 / dy2;
-            mred2 = dred2 / dy2;
-            mgreen2 = dgreen2 / dy2;
-            mblue2 = dblue2 / dy2;
-            if (y2 < 0) {
-                xstart += mx1 * dy2;
-                xend += mx2 * dy2;
-                zstart += mz1 * dy2;
-                zend += mz2 * dy2;
-                redstart += mred1 * dy2;
-                redend += mred2 * dy2;
-                greenstart += mgreen1 * dy2;
-                greenend += mgreen2 * dy2;
-                bluestart += mblue1 * dy2;
-                blueend += mblue2 * dy2;
-                y = y2;
-            } else if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                redstart -= mred1 * y;
-                redend -= mred2 * y;
-                greenstart -= mgreen1 * y;
-                greenend -= mgreen2 * y;
-                bluestart -= mblue1 * y;
-                blueend -= mblue2 * y;
-                y = 0;
-            }
-            yend = (y2 < height ? y2 : height);
-            index = y * width;
-            while (y < yend) {
-                if (xstart < xend) {
-                    left = xstart >> 16;
-                    right = xend >> 16;
-                    z = zstart;
-                    dz = zend - zstart;
-                    red = redstart;
-                    dred = redend - redstart;
-                    green = greenstart;
-                    dgreen = greenend - greenstart;
-                    blue = bluestart;
-                    dblue = blueend - bluestart;
-                } else {
-                    left = xend >> 16;
-                    right = xstart >> 16;
-                    z = zend;
-                    dz = zstart - zend;
-                    red = redend;
-                    dred = redstart - redend;
-                    green = greenend;
-                    dgreen = greenstart - greenend;
-                    blue = blueend;
-                    dblue = bluestart - blueend;
-                }
-                if (left != right) {
-                    dz /= (right - left);
-                    dred /= (right - left);
-                    dgreen /= (right - left);
-                    dblue /= (right - left);
-                    if (left < 0) {
-                        z -= left * dz;
-                        red -= left * dred;
-                        green -= left * dgreen;
-                        blue -= left * dblue;
-                        left = 0;
-                    }
-                    if (right > width) {
-                        right = width;
-                    }
-                    for (i = left; i < right; i++) {
-                        if (z < zbuffer[index + i] && z > clipDist) {
-                            pixel[index + i] = 0xFF000000 + ((red & 0xFF00) << 8) + (green & 0xFF00) + (blue >> 8);
-                            zbuffer[index + i] = z;
-                        }
-                        z += dz;
-                        red += dred;
-                        green += dgreen;
-                        blue += dblue;
-                    }
-                }
-                xstart += mx1;
-                zstart += mz1;
-                redstart += mred1;
-                greenstart += mgreen1;
-                bluestart += mblue1;
-                xend += mx2;
-                zend += mz2;
-                redend += mred2;
-                greenend += mgreen2;
-                blueend += mblue2;
-                index += width;
-                y++;
-            }
-        }
-        dx2 = x3 - x2;
-        dy2 = y3 - y2;
-        dz2 = z3 - z2;
-        dred2 = red3 - red2;
-        dgreen2 = green3 - green2;
-        dblue2 = blue3 - blue2;
-        if (dy2 != 0) {
-            mx2 = dx2 / dy2;
-            mz2 = dz2 / dy2;
-            mred2 = dred2 / dy2;
-            mgreen2 = dgreen2 / dy2;
-            mblue2 = dblue2 / dy2;
-            xend = x2;
-            zend = z2;
-            redend = red2;
-            greenend = green2;
-            blueend = blue2;
-            if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                redstart -= mred1 * y;
-                redend -= mred2 * y;
-                greenstart -= mgreen1 * y;
-                greenend -= mgreen2 * y;
-                bluestart -= mblue1 * y;
-                blueend -= mblue2 * y;
-                y = 0;
-            }
-            yend = (y3 < height ? y3 : height);
-            index = y * width;
-            while (y < yend) {
-                if (xstart < xend) {
-                    left = xstart >> 16;
-                    right = xend >> 16;
-                    z = zstart;
-                    dz = zend - zstart;
-                    red = redstart;
-                    dred = redend - redstart;
-                    green = greenstart;
-                    dgreen = greenend - greenstart;
-                    blue = bluestart;
-                    dblue = blueend - bluestart;
-                } else {
-                    left = xend >> 16;
-                    right = xstart >> 16;
-                    z = zend;
-                    dz = zstart - zend;
-                    red = redend;
-                    dred = redstart - redend;
-                    green = greenend;
-                    dgreen = greenstart - greenend;
-                    blue = blueend;
-                    dblue = bluestart - blueend;
-                }
-                if (left != right) {
-                    dz /= (right - left);
-                    dred /= (right - left);
-                    dgreen /= (right - left);
-                    dblue /= (right - left);
-                    if (left < 0) {
-                        z -= left * dz;
-                        red -= left * dred;
-                        green -= left * dgreen;
-                        blue -= left * dblue;
-                        left = 0;
-                    }
-                    if (right > width) {
-                        right = width;
-                    }
-                    for (i = left; i < right; i++) {
-                        if (z < zbuffer[index + i] && z > clipDist) {
-                            pixel[index + i] = 0xFF000000 + ((red & 0xFF00) << 8) + (green & 0xFF00) + (blue >> 8);
-                            zbuffer[index + i] = z;
-                        }
-                        z += dz;
-                        red += dred;
-                        green += dgreen;
-                        blue += dblue;
-                    }
-                }
-                xstart += mx1;
-                zstart += mz1;
-                redstart += mred1;
-                greenstart += mgreen1;
-                bluestart += mblue1;
-                xend += mx2;
-                zend += mz2;
-                redend += mred2;
-                greenend += mgreen2;
-                blueend += mblue2;
-                index += width;
-                y++;
-            }
-        }
-    }
-
     /**
      * Draw a piece of text onto the canvas.
      */
     @Override
     public void drawString(String text, int x, int y, Color color) {
-        imageGraphics.setColor(color);
-        imageGraphics.drawString(text, x, y);
+        record(() -> {
+            imageGraphics.setColor(color);
+            imageGraphics.drawString(text, x, y);
+        });
     }
 
     /**
@@ -1546,8 +1281,11 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void drawShape(Shape shape, Color color) {
-        imageGraphics.setColor(color);
-        imageGraphics.draw(shape);
+        final Shape copy = new Path2D.Double(shape);
+        record(() -> {
+            imageGraphics.setColor(color);
+            imageGraphics.draw(copy);
+        });
     }
 
     /**
@@ -1555,8 +1293,11 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
      */
     @Override
     public void fillShape(Shape shape, Color color) {
-        imageGraphics.setColor(color);
-        imageGraphics.fill(shape);
+        final Shape copy = new Path2D.Double(shape);
+        record(() -> {
+            imageGraphics.setColor(color);
+            imageGraphics.fill(copy);
+        });
     }
 
     /**
@@ -1570,22 +1311,24 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
         }
 
         // Draw the image onto the canvas.
-        int[] imagePixel = record.pixel;
-        int width = record.width, height = record.height;
-        int starti = Math.max(0, -x);
-        int startj = Math.max(0, -y);
-        int endi = Math.min(width, bounds.width - x);
-        int endj = Math.min(height, bounds.height - y);
-        for (int j = startj; j < endj; j++) {
-            int srcOffset = j * width;
-            int dstOffset = (j + y) * bounds.width + x;
-            for (int i = starti; i < endi; i++) {
-                int pix = imagePixel[srcOffset + i];
-                if ((pix & 0xFF000000) != 0) {
-                    pixel[dstOffset + i] = pix;
+        record(() -> {
+            int[] imagePixel = record.pixel;
+            int width = record.width, height = record.height;
+            int starti = Math.max(0, -x);
+            int startj = Math.max(0, -y);
+            int endi = Math.min(width, bounds.width - x);
+            int endj = Math.min(height, bounds.height - y);
+            for (int j = startj; j < endj; j++) {
+                int srcOffset = j * width;
+                int dstOffset = (j + y) * bounds.width + x;
+                for (int i = starti; i < endi; i++) {
+                    int pix = imagePixel[srcOffset + i];
+                    if ((pix & 0xFF000000) != 0) {
+                        pixel[dstOffset + i] = pix;
+                    }
                 }
             }
-        }
+        });
     }
 
     /**
@@ -1652,8 +1395,9 @@ public class SoftwareCanvasDrawer implements CanvasDrawer {
             }
         }
 
-        // Render the image.
-        renderMesh(mesh, new VertexShader() {
+        // Render the image. The vertices of the cached mesh are replaced the next time it is
+        // drawn, so the frame needs its own copy of them.
+        recordMesh(mesh, mesh.vert.clone(), new VertexShader() {
             @Override
             public void getColor(int face, int vertex, RGBColor color) {
                 color.setARGB(record.pixel[face / 2]);
@@ -0,0 +1,250 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.view;
+
+import artofillusion.*;
+import artofillusion.image.*;
+import artofillusion.math.*;
+import artofillusion.texture.*;
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * TextureBaker samples procedural 2D textures into images, so that textured previews can look up
+ * surface properties instead of evaluating the texture at every vertex. This matters most when a
+ * mesh is being edited, since a new RenderingMesh (and a new TexturedVertexShader) is created for
+ * every change.
+ * <p>
+ * Each baked texture covers a square region of texture coordinates, and is stored as a single
+ * {@link MIPMappedImage} atlas divided into four tiles holding the diffuse, emissive, and hilight
+ * colors and the roughness. Baking happens on a background thread: until it finishes, callers
+ * should evaluate the texture directly. Baked textures are kept in a cache of bounded size. Their
+ * keys include the texture ID, which changes whenever the texture is edited, so edited textures
+ * are baked again.
+ */
+@Slf4j
+public final class TextureBaker {
+
+    /**
+     * The smallest and largest number of samples along each side of a baked texture.
+     */
+    public static final int MIN_RESOLUTION = 64, MAX_RESOLUTION = 512;
+
+    /**
+     * The maximum total number of pixels in all cached atlases.
+     */
+    private static final long MAX_CACHE_PIXELS = 16L * 1024 * 1024;
+
+    private static final Map<Key, BakedTexture> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Set<Key> pending = new HashSet<>();
+    private static long cachePixels;
+
+    private static final ExecutorService bakeExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "Texture baking");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    private record Key(int textureID, List<Double> param, double time, double minS, double minT, double size, int resolution) {
+    }
+
+    private TextureBaker() {
+    }
+
+    /**
+     * Choose the resolution to bake textures at for a view of a given size.
+     */
+    public static int chooseResolution(Rectangle bounds) {
+        int size = Math.max(bounds.width, bounds.height) / 2;
+        int resolution = MIN_RESOLUTION;
+        while (resolution < size && resolution < MAX_RESOLUTION) {
+            resolution *= 2;
+        }
+        return resolution;
+    }
+
+    /**
+     * Get a baked version of the texture applied to a mesh. If it has not been baked yet, this
+     * starts baking it in the background and returns null.
+     *
+     * @param mesh the mesh being rendered
+     * @param time the current time
+     * @param resolution the number of samples along each side of the baked texture
+     * @return the baked texture, or null if it is not available or the mesh's texture cannot be baked
+     */
+    public static BakedTexture getBakedTexture(RenderingMesh mesh, double time, int resolution) {
+        Key key = findKey(mesh, time, resolution);
+        if (key == null) {
+            return null;
+        }
+        Texture2D texture = (Texture2D) mesh.mapping.getTexture();
+        synchronized (cache) {
+            BakedTexture baked = cache.get(key);
+            if (baked != null || !pending.add(key)) {
+                return baked;
+            }
+        }
+        bakeExecutor.submit(() -> {
+            try {
+                BakedTexture baked = bake(texture, key);
+                synchronized (cache) {
+                    cache.put(key, baked);
+                    cachePixels += 4L * key.resolution * key.resolution;
+                    Iterator<BakedTexture> it = cache.values().iterator();
+                    while (cachePixels > MAX_CACHE_PIXELS && it.hasNext()) {
+                        BakedTexture oldest = it.next();
+                        cachePixels -= 4L * oldest.resolution * oldest.resolution;
+                        it.remove();
+                    }
+                }
+            } catch (InterruptedException | RuntimeException ex) {
+                log.atError().setCause(ex).log("Error baking texture: {}", ex.getMessage());
+            } finally {
+                synchronized (cache) {
+                    pending.remove(key);
+                }
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Discard all baked versions of a texture. This should be called whenever it is edited.
+     */
+    public static void invalidate(Texture texture) {
+        synchronized (cache) {
+            Iterator<Map.Entry<Key, BakedTexture>> it = cache.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, BakedTexture> entry = it.next();
+                if (entry.getKey().textureID == texture.getID()) {
+                    cachePixels -= 4L * entry.getValue().resolution * entry.getValue().resolution;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine whether a mesh's texture can be baked, and if so, find the key identifying the
+     * baked texture it should use. Only procedural 2D textures which are mapped linearly onto both
+     * sides of every triangle, and whose parameters are constant, can be baked.
+     */
+    private static Key findKey(RenderingMesh mesh, double time, int resolution) {
+        if (!(mesh.mapping instanceof Mapping2D) || !(mesh.mapping.getTexture() instanceof ProceduralTexture2D)
+                || mesh.mapping.appliesTo() != TextureMapping.FRONT_AND_BACK || mesh.triangle.length == 0) {
+            return null;
+        }
+        List<Double> param = new ArrayList<>();
+        if (mesh.param != null) {
+            for (ParameterValue value : mesh.param) {
+                if (!(value instanceof ConstantParameterValue)) {
+                    return null;
+                }
+                param.add(((ConstantParameterValue) value).getValue());
+            }
+        }
+
+        // Find the range of texture coordinates, and round it outward so that small changes to
+        // the mesh do not require the texture to be baked again.
+        double minS = Double.MAX_VALUE, minT = Double.MAX_VALUE, maxS = -Double.MAX_VALUE, maxT = -Double.MAX_VALUE;
+        for (RenderingTriangle tri : mesh.triangle) {
+            for (int i = 0; i < 3; i++) {
+                Vec2 coords = tri.getTextureCoordinates(i == 0 ? 1.0 : 0.0, i == 1 ? 1.0 : 0.0, i == 2 ? 1.0 : 0.0);
+                if (coords == null) {
+                    return null;
+                }
+                minS = Math.min(minS, coords.x);
+                minT = Math.min(minT, coords.y);
+                maxS = Math.max(maxS, coords.x);
+                maxT = Math.max(maxT, coords.y);
+            }
+        }
+        double extent = Math.max(maxS - minS, maxT - minT);
+        if (!(extent > 0.0) || Double.isInfinite(extent)) {
+            return null;
+        }
+        double size = Math.pow(2.0, Math.ceil(Math.log(extent) / Math.log(2.0)));
+        double s = Math.floor(minS / size) * size, t = Math.floor(minT / size) * size;
+        return new Key(mesh.mapping.getTexture().getID(), param, time, s, t, 2.0 * size, resolution);
+    }
+
+    /**
+     * Sample a texture over the region described by a key.
+     */
+    private static BakedTexture bake(Texture2D texture, Key key) throws InterruptedException {
+        int res = key.resolution;
+        int width = 2 * res;
+        int[] pixel = new int[width * width];
+        double cell = key.size / (res - 1);
+        double[] param = key.param.stream().mapToDouble(Double::doubleValue).toArray();
+        TextureSpec spec = new TextureSpec();
+        RGBColor roughness = new RGBColor();
+        for (int i = 0; i < res; i++) {
+            for (int j = 0; j < res; j++) {
+                double s = key.minS + i * cell;
+                double t = key.minT + key.size - j * cell;
+                texture.getTextureSpec(spec, s, t, cell, cell, 1.0, key.time, param);
+                roughness.setRGB(spec.roughness, spec.roughness, spec.roughness);
+                pixel[i + j * width] = spec.diffuse.getARGB();
+                pixel[i + res + j * width] = spec.emissive.getARGB();
+                pixel[i + (j + res) * width] = spec.hilight.getARGB();
+                pixel[i + res + (j + res) * width] = roughness.getARGB();
+            }
+        }
+        BufferedImage image = new BufferedImage(width, width, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, width, pixel, 0, width);
+        return new BakedTexture(new MIPMappedImage(image), key.minS, key.minT, key.size, res);
+    }
+
+    /**
+     * A texture which has been sampled over a square region of texture coordinates.
+     */
+    public static final class BakedTexture {
+
+        private final MIPMappedImage atlas;
+        private final double minS, minT, size;
+        private final int resolution;
+
+        private BakedTexture(MIPMappedImage atlas, double minS, double minT, double size, int resolution) {
+            this.atlas = atlas;
+            this.minS = minS;
+            this.minT = minT;
+            this.size = size;
+            this.resolution = resolution;
+        }
+
+        /**
+         * Look up the surface properties at a point. Only the diffuse, emissive, and hilight
+         * colors and the roughness are set. Points outside the baked region are clamped to its edge.
+         *
+         * @param spec the surface properties are returned in this object
+         * @param s the first texture coordinate
+         * @param t the second texture coordinate
+         */
+        public void getTextureSpec(TextureSpec spec, double s, double t) {
+            double scale = (resolution - 1) / size;
+            double x = Math.max(0.0, Math.min(resolution - 1.0, (s - minS) * scale));
+            double y = Math.max(0.0, Math.min(resolution - 1.0, (minT + size - t) * scale));
+            double width = 2.0 * resolution;
+            double x1 = x / width, x2 = (x + resolution) / width;
+            double y1 = 1.0 - y / width, y2 = 1.0 - (y + resolution) / width;
+            atlas.getColor(spec.diffuse, false, false, x1, y1, 0.0, 0.0);
+            atlas.getColor(spec.emissive, false, false, x2, y1, 0.0, 0.0);
+            atlas.getColor(spec.hilight, false, false, x1, y2, 0.0, 0.0);
+            spec.roughness = atlas.getComponent(0, false, false, x2, y2, 0.0, 0.0);
+        }
+    }
+}
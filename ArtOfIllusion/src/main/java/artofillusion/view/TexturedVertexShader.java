@@ -1,5 +1,5 @@
 /* Copyright (C) 2004-2017 by Peter Eastman
-   Changes copyright (C) 2024 by Maksim Khramov
+   Changes copyright (C) 2024-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -21,20 +21,24 @@ import java.lang.ref.*;
 
 /**
  * This is a VertexShader which renders a textured mesh with smooth shading.
+ * <p>
+ * The colors found for a mesh are kept, and shared with the shaders which {@link #optimize()} returns for
+ * the same mesh later. Those shaders may be used by several threads at once, so each one has its own view
+ * direction and only the colors are shared.
  */
 public class TexturedVertexShader implements VertexShader {
 
     private final TextureSpec spec;
     private final RenderingMesh mesh;
-    private Vec3 viewDir;
+    private final Vec3 viewDir;
     private final RGBColor diffuse;
     private final RGBColor emissive;
     private final RGBColor hilight;
     private final double time;
-    private double[] roughnessCache;
-    private float[] diffuseCache, emissiveCache, hilightCache;
+    private final Colors colors;
     private boolean cachePerFace;
     private final int textureID;
+    private final int bakeResolution;
 
     private static final WeakHashMap<RenderingMesh, SoftReference<TexturedVertexShader>> cachedShaderMap = new WeakHashMap<>();
 
@@ -47,14 +51,31 @@ public class TexturedVertexShader implements VertexShader {
      * @param viewDir the direction from which it is being viewed
      */
     public TexturedVertexShader(RenderingMesh mesh, Object3D object, double time, Vec3 viewDir) {
+        this(mesh, object, time, viewDir, 0);
+    }
+
+    /**
+     * Create a TexturedVertexShader for a mesh. If the texture can be baked by {@link TextureBaker}
+     * and a baked version is already available, colors are looked up in it instead of evaluating
+     * the texture at every vertex.
+     *
+     * @param mesh the mesh to render
+     * @param object the object to which the mesh corresponds
+     * @param time the current time
+     * @param viewDir the direction from which it is being viewed
+     * @param bakeResolution the resolution at which to bake the texture, or 0 to always evaluate it directly
+     */
+    public TexturedVertexShader(RenderingMesh mesh, Object3D object, double time, Vec3 viewDir, int bakeResolution) {
         this.mesh = mesh;
         this.time = time;
-        this.viewDir = viewDir;
+        this.viewDir = new Vec3(viewDir);
+        this.bakeResolution = bakeResolution;
         spec = new TextureSpec();
         diffuse = new RGBColor();
         emissive = new RGBColor();
         hilight = new RGBColor();
         textureID = mesh.mapping.getTexture().getID();
+        colors = new Colors();
 
         // Determine whether we can cache the color components for each vertex.
         ParameterValue[] value = object.getParameterValues();
@@ -67,6 +88,24 @@ public class TexturedVertexShader implements VertexShader {
         }
     }
 
+    /**
+     * Create a TexturedVertexShader which shares the colors found by another one, but views the mesh from
+     * a different direction.
+     */
+    private TexturedVertexShader(TexturedVertexShader shader, Vec3 viewDir) {
+        mesh = shader.mesh;
+        time = shader.time;
+        this.viewDir = new Vec3(viewDir);
+        bakeResolution = shader.bakeResolution;
+        spec = new TextureSpec();
+        diffuse = new RGBColor();
+        emissive = new RGBColor();
+        hilight = new RGBColor();
+        textureID = shader.textureID;
+        colors = shader.colors;
+        cachePerFace = shader.cachePerFace;
+    }
+
     /**
      * In some cases, a texture can be represented by a simpler shader. In addition, it is
      * sometimes possible to reuse shaders, thus avoiding having to repeat texture calculations.
@@ -91,8 +130,7 @@ public class TexturedVertexShader implements VertexShader {
         if (ref != null) {
             TexturedVertexShader shader = ref.get();
             if (shader != null && shader.textureID == textureID) {
-                shader.viewDir = viewDir;
-                return shader;
+                return new TexturedVertexShader(shader, viewDir);
             }
         }
         cachedShaderMap.put(mesh, new SoftReference<>(this));
@@ -108,59 +146,71 @@ public class TexturedVertexShader implements VertexShader {
      */
     @Override
     public void getColor(int face, int vertex, RGBColor color) {
+        synchronized (colors) {
+            findColor(face, vertex, color);
+        }
+    }
+
+    /**
+     * Select the color for a vertex. This must be called while holding the lock on the colors.
+     */
+    private void findColor(int face, int vertex, RGBColor color) {
         double dot, roughness;
         if (cachePerFace) {
-            if (diffuseCache == null) {
-                diffuseCache = new float[9 * mesh.triangle.length];
-                emissiveCache = new float[9 * mesh.triangle.length];
-                hilightCache = new float[9 * mesh.triangle.length];
-                roughnessCache = new double[9 * mesh.triangle.length];
-                Arrays.fill(roughnessCache, -1.0);
+            if (colors.diffuse == null) {
+                colors.diffuse = new float[9 * mesh.triangle.length];
+                colors.emissive = new float[9 * mesh.triangle.length];
+                colors.hilight = new float[9 * mesh.triangle.length];
+                colors.roughness = new double[9 * mesh.triangle.length];
+                Arrays.fill(colors.roughness, -1.0);
             }
             RenderingTriangle tri = mesh.triangle[face];
             switch (vertex) {
                 case 0:
                     dot = viewDir.dot(mesh.norm[tri.n1]);
-                    if (roughnessCache[3 * face] == -1.0) {
+                    if (colors.roughness[3 * face] == -1.0) {
                         tri.getTextureSpec(spec, -dot, 1.0, 0.0, 0.0, 0.1, time);
                     }
                     break;
                 case 1:
                     dot = viewDir.dot(mesh.norm[tri.n2]);
-                    if (roughnessCache[3 * face + 1] == -1.0) {
+                    if (colors.roughness[3 * face + 1] == -1.0) {
                         tri.getTextureSpec(spec, -dot, 0.0, 1.0, 0.0, 0.1, time);
                     }
                     break;
                 default:
                     dot = viewDir.dot(mesh.norm[tri.n3]);
-                    if (roughnessCache[3 * face + 2] == -1.0) {
+                    if (colors.roughness[3 * face + 2] == -1.0) {
                         tri.getTextureSpec(spec, -dot, 0.0, 0.0, 1.0, 0.1, time);
                     }
             }
             int cacheIndex = 9 * face + 3 * vertex;
-            if (roughnessCache[3 * face + vertex] == -1.0) {
-                diffuseCache[cacheIndex] = spec.diffuse.getRed();
-                diffuseCache[cacheIndex + 1] = spec.diffuse.getGreen();
-                diffuseCache[cacheIndex + 2] = spec.diffuse.getBlue();
-                emissiveCache[cacheIndex] = spec.emissive.getRed();
-                emissiveCache[cacheIndex + 1] = spec.emissive.getGreen();
-                emissiveCache[cacheIndex + 2] = spec.emissive.getBlue();
-                hilightCache[cacheIndex] = spec.hilight.getRed();
-                hilightCache[cacheIndex + 1] = spec.hilight.getGreen();
-                hilightCache[cacheIndex + 2] = spec.hilight.getBlue();
-                roughnessCache[3 * face + vertex] = spec.roughness;
+            if (colors.roughness[3 * face + vertex] == -1.0) {
+                colors.diffuse[cacheIndex] = spec.diffuse.getRed();
+                colors.diffuse[cacheIndex + 1] = spec.diffuse.getGreen();
+                colors.diffuse[cacheIndex + 2] = spec.diffuse.getBlue();
+                colors.emissive[cacheIndex] = spec.emissive.getRed();
+                colors.emissive[cacheIndex + 1] = spec.emissive.getGreen();
+                colors.emissive[cacheIndex + 2] = spec.emissive.getBlue();
+                colors.hilight[cacheIndex] = spec.hilight.getRed();
+                colors.hilight[cacheIndex + 1] = spec.hilight.getGreen();
+                colors.hilight[cacheIndex + 2] = spec.hilight.getBlue();
+                colors.roughness[3 * face + vertex] = spec.roughness;
             }
-            diffuse.setRGB(diffuseCache[cacheIndex], diffuseCache[cacheIndex + 1], diffuseCache[cacheIndex + 2]);
-            emissive.setRGB(emissiveCache[cacheIndex], emissiveCache[cacheIndex + 1], emissiveCache[cacheIndex + 2]);
-            hilight.setRGB(hilightCache[cacheIndex], hilightCache[cacheIndex + 1], hilightCache[cacheIndex + 2]);
-            roughness = roughnessCache[3 * face + vertex];
+            diffuse.setRGB(colors.diffuse[cacheIndex], colors.diffuse[cacheIndex + 1], colors.diffuse[cacheIndex + 2]);
+            emissive.setRGB(colors.emissive[cacheIndex], colors.emissive[cacheIndex + 1], colors.emissive[cacheIndex + 2]);
+            hilight.setRGB(colors.hilight[cacheIndex], colors.hilight[cacheIndex + 1], colors.hilight[cacheIndex + 2]);
+            roughness = colors.roughness[3 * face + vertex];
         } else {
-            if (diffuseCache == null) {
-                diffuseCache = new float[3 * mesh.vert.length];
-                emissiveCache = new float[3 * mesh.vert.length];
-                hilightCache = new float[3 * mesh.vert.length];
-                roughnessCache = new double[mesh.vert.length];
-                Arrays.fill(roughnessCache, -1.0);
+            if (colors.diffuse == null) {
+                colors.diffuse = new float[3 * mesh.vert.length];
+                colors.emissive = new float[3 * mesh.vert.length];
+                colors.hilight = new float[3 * mesh.vert.length];
+                colors.roughness = new double[mesh.vert.length];
+                Arrays.fill(colors.roughness, -1.0);
+                if (bakeResolution > 0) {
+                    colors.baked = TextureBaker.getBakedTexture(mesh, time, bakeResolution);
+                }
             }
             RenderingTriangle tri = mesh.triangle[face];
             int vert;
@@ -168,40 +218,40 @@ public class TexturedVertexShader implements VertexShader {
                 case 0:
                     vert = tri.v1;
                     dot = viewDir.dot(mesh.norm[tri.n1]);
-                    if (roughnessCache[vert] == -1.0) {
-                        tri.getTextureSpec(spec, -dot, 1.0, 0.0, 0.0, 0.1, time);
+                    if (colors.roughness[vert] == -1.0) {
+                        findTextureSpec(tri, -dot, 1.0, 0.0, 0.0);
                     }
                     break;
                 case 1:
                     vert = tri.v2;
                     dot = viewDir.dot(mesh.norm[tri.n2]);
-                    if (roughnessCache[vert] == -1.0) {
-                        tri.getTextureSpec(spec, -dot, 0.0, 1.0, 0.0, 0.1, time);
+                    if (colors.roughness[vert] == -1.0) {
+                        findTextureSpec(tri, -dot, 0.0, 1.0, 0.0);
                     }
                     break;
                 default:
                     vert = tri.v3;
                     dot = viewDir.dot(mesh.norm[tri.n3]);
-                    if (roughnessCache[vert] == -1.0) {
-                        tri.getTextureSpec(spec, -dot, 0.0, 0.0, 1.0, 0.1, time);
+                    if (colors.roughness[vert] == -1.0) {
+                        findTextureSpec(tri, -dot, 0.0, 0.0, 1.0);
                     }
             }
-            if (roughnessCache[vert] == -1.0) {
-                diffuseCache[3 * vert] = spec.diffuse.getRed();
-                diffuseCache[3 * vert + 1] = spec.diffuse.getGreen();
-                diffuseCache[3 * vert + 2] = spec.diffuse.getBlue();
-                emissiveCache[3 * vert] = spec.emissive.getRed();
-                emissiveCache[3 * vert + 1] = spec.emissive.getGreen();
-                emissiveCache[3 * vert + 2] = spec.emissive.getBlue();
-                hilightCache[3 * vert] = spec.hilight.getRed();
-                hilightCache[3 * vert + 1] = spec.hilight.getGreen();
-                hilightCache[3 * vert + 2] = spec.hilight.getBlue();
-                roughnessCache[vert] = spec.roughness;
+            if (colors.roughness[vert] == -1.0) {
+                colors.diffuse[3 * vert] = spec.diffuse.getRed();
+                colors.diffuse[3 * vert + 1] = spec.diffuse.getGreen();
+                colors.diffuse[3 * vert + 2] = spec.diffuse.getBlue();
+                colors.emissive[3 * vert] = spec.emissive.getRed();
+                colors.emissive[3 * vert + 1] = spec.emissive.getGreen();
+                colors.emissive[3 * vert + 2] = spec.emissive.getBlue();
+                colors.hilight[3 * vert] = spec.hilight.getRed();
+                colors.hilight[3 * vert + 1] = spec.hilight.getGreen();
+                colors.hilight[3 * vert + 2] = spec.hilight.getBlue();
+                colors.roughness[vert] = spec.roughness;
             }
-            diffuse.setRGB(diffuseCache[3 * vert], diffuseCache[3 * vert + 1], diffuseCache[3 * vert + 2]);
-            emissive.setRGB(emissiveCache[3 * vert], emissiveCache[3 * vert + 1], emissiveCache[3 * vert + 2]);
-            hilight.setRGB(hilightCache[3 * vert], hilightCache[3 * vert + 1], hilightCache[3 * vert + 2]);
-            roughness = roughnessCache[vert];
+            diffuse.setRGB(colors.diffuse[3 * vert], colors.diffuse[3 * vert + 1], colors.diffuse[3 * vert + 2]);
+            emissive.setRGB(colors.emissive[3 * vert], colors.emissive[3 * vert + 1], colors.emissive[3 * vert + 2]);
+            hilight.setRGB(colors.hilight[3 * vert], colors.hilight[3 * vert + 1], colors.hilight[3 * vert + 2]);
+            roughness = colors.roughness[vert];
         }
 
         // Select the color.
@@ -216,6 +266,18 @@ public class TexturedVertexShader implements VertexShader {
         color.clip();
     }
 
+    /**
+     * Find the surface properties at a point on a triangle, using the baked texture if there is one.
+     */
+    private void findTextureSpec(RenderingTriangle tri, double angle, double u, double v, double w) {
+        if (colors.baked != null) {
+            Vec2 coords = tri.getTextureCoordinates(u, v, w);
+            colors.baked.getTextureSpec(spec, coords.x, coords.y);
+        } else {
+            tri.getTextureSpec(spec, angle, u, v, w, 0.1, time);
+        }
+    }
+
     /**
      * Get whether a particular face should be rendered with a single uniform color.
      *
@@ -252,4 +314,14 @@ public class TexturedVertexShader implements VertexShader {
     public static void clearCachedShaders(RenderingMesh mesh) {
         cachedShaderMap.remove(mesh);
     }
+
+    /**
+     * The surface properties found at each vertex of a mesh. They are only accessed while holding this object's lock.
+     */
+    private static class Colors {
+
+        float[] diffuse, emissive, hilight;
+        double[] roughness;
+        TextureBaker.BakedTexture baked;
+    }
 }
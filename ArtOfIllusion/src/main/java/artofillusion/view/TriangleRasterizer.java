@@ -0,0 +1,787 @@
+/* Copyright (C) 1999-2009 by Peter Eastman
+   Changes copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.view;
+
+import artofillusion.math.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A TriangleRasterizer fills triangles into an image and its depth buffer. This is used by
+ * {@link SoftwareCanvasDrawer}. A batch of triangles can be filled in parallel by dividing the
+ * image into horizontal bands, each of which is filled by a single thread. Within a band the
+ * triangles are filled in the order they were added, so the result is identical to filling
+ * every triangle in turn.
+ */
+final class TriangleRasterizer {
+
+    static final int MODE_COPY = 0;
+    static final int MODE_ADD = 1;
+    static final int MODE_SUBTRACT = 2;
+    static final int MODE_SMOOTH = 3;
+
+    /**
+     * The minimum height of the horizontal bands into which the image is divided.
+     */
+    private static final int MIN_BAND_HEIGHT = 16;
+
+    private final int[] pixel;
+    private final int[] zbuffer;
+    private final int width;
+
+    /**
+     * Create a TriangleRasterizer.
+     *
+     * @param pixel the image to fill, with one ARGB value per pixel
+     * @param zbuffer the depth of each pixel
+     * @param width the width of the image
+     */
+    TriangleRasterizer(int[] pixel, int[] zbuffer, int width) {
+        this.pixel = pixel;
+        this.zbuffer = zbuffer;
+        this.width = width;
+    }
+
+    /**
+     * Fill the rows of a batch of triangles which lie between top (inclusive) and bottom
+     * (exclusive). The rows are divided into bands which are filled in parallel.
+     *
+     * @return a future which completes once every band has been filled
+     */
+    CompletableFuture<Void> fill(TriangleBatch b, int top, int bottom, Executor executor) {
+        int height = bottom - top;
+        if (b.size == 0 || height <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int bands = Math.max(1, Math.min(2 * Runtime.getRuntime().availableProcessors(), height / MIN_BAND_HEIGHT));
+        int bandHeight = (height + bands - 1) / bands;
+        CompletableFuture<?>[] band = new CompletableFuture<?>[bands];
+        for (int i = 0; i < bands; i++) {
+            int ymin = top + i * bandHeight, ymax = Math.min(bottom, ymin + bandHeight);
+            band[i] = CompletableFuture.runAsync(() -> fill(b, ymin, ymax), executor);
+        }
+        return CompletableFuture.allOf(band);
+    }
+
+    /**
+     * Fill the parts of a batch of triangles which lie in a band of rows, on the calling thread.
+     */
+    void fill(TriangleBatch b, int ymin, int ymax) {
+        double[] coord = b.coord;
+        for (int i = 0, c = 0; i < b.size; i++, c += TriangleBatch.COORDS) {
+            if (b.maxy[i] < ymin || b.miny[i] >= ymax) {
+                continue;
+            }
+            int offset = i * TriangleBatch.COLORS;
+            if (b.mode[i] == MODE_SMOOTH) {
+                renderSmoothTriangle(coord[c], coord[c + 1], coord[c + 2], coord[c + 3], coord[c + 4], coord[c + 5], coord[c + 6], coord[c + 7], coord[c + 8],
+                        width, ymin, ymax, coord[c + 9], b.color, offset);
+            } else {
+                renderFlatTriangle(coord[c], coord[c + 1], coord[c + 2], coord[c + 3], coord[c + 4], coord[c + 5], coord[c + 6], coord[c + 7], coord[c + 8],
+                        width, ymin, ymax, coord[c + 9], b.mode[i], b.color[offset], b.color[offset + 1], b.color[offset + 2], b.color[offset + 3]);
+            }
+        }
+    }
+
+    /**
+     * Render the rows of a solid colored triangle which lie between ymin (inclusive) and ymax (exclusive).
+     * In MODE_COPY the triangle is drawn in the color col. Otherwise, red, green, and blue (between
+     * 0 and 255) are added to or subtracted from the existing pixels.
+     */
+    private void renderFlatTriangle(double px1, double py1, double zf1, double px2, double py2, double zf2, double px3, double py3, double zf3, int width, int ymin, int ymax, double clip, int mode, int col, int red, int green, int blue) {
+        int x1, y1, z1, x2, y2, z2, x3, y3, z3;
+        int dx1, dx2, dy1, dy2, dz1, dz2, mx1, mx2, mz1, mz2;
+        int xstart, xend, yend, zstart, zend, y, z, dz, left, right, i, index;
+        int clipDist = (int) (clip * 65535.0), r, g, b;
+
+        if (py1 <= py2 && py1 <= py3) {
+            x1 = ((int) px1) << 16;
+            y1 = ((int) py1);
+            z1 = (int) (zf1 * 65535.0);
+            if (py2 < py3) {
+                x2 = ((int) px2) << 16;
+                y2 = ((int) py2);
+                z2 = (int) (zf2 * 65535.0);
+                x3 = ((int) px3) << 16;
+                y3 = ((int) py3);
+                z3 = (int) (zf3 * 65535.0);
+            } else {
+                x2 = ((int) px3) << 16;
+                y2 = ((int) py3);
+                z2 = (int) (zf3 * 65535.0);
+                x3 = ((int) px2) << 16;
+                y3 = ((int) py2);
+                z3 = (int) (zf2 * 65535.0);
+            }
+        } else if (py2 <= py1 && py2 <= py3) {
+            x1 = ((int) px2) << 16;
+            y1 = ((int) py2);
+            z1 = (int) (zf2 * 65535.0);
+            if (py1 < py3) {
+                x2 = ((int) px1) << 16;
+                y2 = ((int) py1);
+                z2 = (int) (zf1 * 65535.0);
+                x3 = ((int) px3) << 16;
+                y3 = ((int) py3);
+                z3 = (int) (zf3 * 65535.0);
+            } else {
+                x2 = ((int) px3) << 16;
+                y2 = ((int) py3);
+                z2 = (int) (zf3 * 65535.0);
+                x3 = ((int) px1) << 16;
+                y3 = ((int) py1);
+                z3 = (int) (zf1 * 65535.0);
+            }
+        } else {
+            x1 = ((int) px3) << 16;
+            y1 = ((int) py3);
+            z1 = (int) (zf3 * 65535.0);
+            if (py1 < py2) {
+                x2 = ((int) px1) << 16;
+                y2 = ((int) py1);
+                z2 = (int) (zf1 * 65535.0);
+                x3 = ((int) px2) << 16;
+                y3 = ((int) py2);
+                z3 = (int) (zf2 * 65535.0);
+            } else {
+                x2 = ((int) px2) << 16;
+                y2 = ((int) py2);
+                z2 = (int) (zf2 * 65535.0);
+                x3 = ((int) px1) << 16;
+                y3 = ((int) py1);
+                z3 = (int) (zf1 * 65535.0);
+            }
+        }
+        dx1 = x3 - x1;
+        dy1 = y3 - y1;
+        dz1 = z3 - z1;
+        if (dy1 == 0) {
+            return;
+        }
+        dx2 = x2 - x1;
+        dy2 = y2 - y1;
+        dz2 = z2 - z1;
+        mx1 = dx1 / dy1;
+        mz1 = dz1 / dy1;
+        xstart = xend = x1;
+        zstart = zend = z1;
+        y = y1;
+        if (dy2 != 0) {
+            mx2 = dx2 / dy2;
+            mz2 = dz2 / dy2;
+            if (y2 < ymin) {
+                xstart += mx1 * dy2;
+                xend += mx2 * dy2;
+                zstart += mz1 * dy2;
+                zend += mz2 * dy2;
+                y = y2;
+            } else if (y < ymin) {
+                xstart += mx1 * (ymin - y);
+                xend += mx2 * (ymin - y);
+                zstart += mz1 * (ymin - y);
+                zend += mz2 * (ymin - y);
+                y = ymin;
+            }
+            yend = (y2 < ymax ? y2 : ymax);
+            index = y * width;
+            while (y < yend) {
+                if (xstart < xend) {
+                    left = xstart >> 16;
+                    right = xend >> 16;
+                    z = zstart;
+                    dz = zend - zstart;
+                } else {
+                    left = xend >> 16;
+                    right = xstart >> 16;
+                    z = zend;
+                    dz = zstart - zend;
+                }
+                if (left != right) {
+                    dz /= (right - left);
+                    if (left < 0) {
+                        z -= left * dz;
+                        left = 0;
+                    }
+                    if (right > width) {
+                        right = width;
+                    }
+                    if (mode == MODE_COPY) {
+                        for (i = left; i < right; i++) {
+                            if (z < zbuffer[index + i] && z > clipDist) {
+                                pixel[index + i] = col;
+                                zbuffer[index + i] = z;
+                            }
+                            z += dz;
+                        }
+                    } else if (mode == MODE_ADD) {
+                        for (i = left; i < right; i++) {
+                            if (z > clipDist) {
+                                r = ((pixel[index + i] & 0xFF0000) >> 16) + red;
+                                g = ((pixel[index + i] & 0xFF00) >> 8) + green;
+                                b = (pixel[index + i] & 0xFF) + blue;
+                                if (r > 255) {
+                                    r = 255;
+                                }
+                                if (g > 255) {
+                                    g = 255;
+                                }
+                                if (b > 255) {
+                                    b = 255;
+                                }
+                                pixel[index + i] = 0xFF000000 + (r << 16) + (g << 8) + b;
+                            }
+                            z += dz;
+                        }
+                    } else {
+                        for (i = left; i < right; i++) {
+                            if (z > clipDist) {
+                                r = ((pixel[index + i] & 0xFF0000) >> 16) - red;
+                                g = ((pixel[index + i] & 0xFF00) >> 8) - green;
+                                b = (pixel[index + i] & 0xFF) - blue;
+                                if (r < 0) {
+                                    r = 0;
+                                }
+                                if (g < 0) {
+                                    g = 0;
+                                }
+                                if (b < 0) {
+                                    b = 0;
+                                }
+                                pixel[index + i] = 0xFF000000 + (r << 16) + (g << 8) + b;
+                            }
+                            z += dz;
+                        }
+                    }
+                }
+                xstart += mx1;
+                zstart += mz1;
+                xend += mx2;
+                zend += mz2;
+                index += width;
+                y++;
+            }
+        }
+        dx2 = x3 - x2;
+        dy2 = y3 - y2;
+        dz2 = z3 - z2;
+        if (dy2 != 0) {
+            mx2 = dx2 / dy2;
+            mz2 = dz2 / dy2;
+            xend = x2;
+            zend = z2;
+            if (y < ymin) {
+                xstart += mx1 * (ymin - y);
+                xend += mx2 * (ymin - y);
+                zstart += mz1 * (ymin - y);
+                zend += mz2 * (ymin - y);
+                y = ymin;
+            }
+            yend = (y3 < ymax ? y3 : ymax);
+            index = y * width;
+            while (y < yend) {
+                if (xstart < xend) {
+                    left = xstart >> 16;
+                    right = xend >> 16;
+                    z = zstart;
+                    dz = zend - zstart;
+                } else {
+                    left = xend >> 16;
+                    right = xstart >> 16;
+                    z = zend;
+                    dz = zstart - zend;
+                }
+                if (left != right) {
+                    dz /= (right - left);
+                    if (left < 0) {
+                        z -= left * dz;
+                        left = 0;
+                    }
+                    if (right > width) {
+                        right = width;
+                    }
+                    if (mode == MODE_COPY) {
+                        for (i = left; i < right; i++) {
+                            if (z < zbuffer[index + i] && z > clipDist) {
+                                pixel[index + i] = col;
+                                zbuffer[index + i] = z;
+                            }
+                            z += dz;
+                        }
+                    } else if (mode == MODE_ADD) {
+                        for (i = left; i < right; i++) {
+                            if (z > clipDist) {
+                                r = ((pixel[index + i] & 0xFF0000) >> 16) + red;
+                                g = ((pixel[index + i] & 0xFF00) >> 8) + green;
+                                b = (pixel[index + i] & 0xFF) + blue;
+                                if (r > 255) {
+                                    r = 255;
+                                }
+                                if (g > 255) {
+                                    g = 255;
+                                }
+                                if (b > 255) {
+                                    b = 255;
+                                }
+                                pixel[index + i] = 0xFF000000 + (r << 16) + (g << 8) + b;
+                            }
+                            z += dz;
+                        }
+                    } else {
+                        for (i = left; i < right; i++) {
+                            if (z > clipDist) {
+                                r = ((pixel[index + i] & 0xFF0000) >> 16) - red;
+                                g = ((pixel[index + i] & 0xFF00) >> 8) - green;
+                                b = (pixel[index + i] & 0xFF) - blue;
+                                if (r < 0) {
+                                    r = 0;
+                                }
+                                if (g < 0) {
+                                    g = 0;
+                                }
+                                if (b < 0) {
+                                    b = 0;
+                                }
+                                pixel[index + i] = 0xFF000000 + (r << 16) + (g << 8) + b;
+                            }
+                            z += dz;
+                        }
+                    }
+                }
+                xstart += mx1;
+                zstart += mz1;
+                xend += mx2;
+                zend += mz2;
+                index += width;
+                y++;
+            }
+        }
+    }
+
+    /**
+     * Render the rows of a triangle with smooth (interpolated) shading which lie between ymin (inclusive)
+     * and ymax (exclusive). The vertex colors are taken from nine consecutive elements of color, starting
+     * at offset, with each component scaled to be between 0 and 65535.
+     */
+    private void renderSmoothTriangle(double px1, double py1, double zf1, double px2, double py2, double zf2, double px3, double py3, double zf3, int width, int ymin, int ymax, double clip, int[] color, int offset) {
+        int x1, y1, z1, x2, y2, z2, x3, y3, z3;
+        int dx1, dx2, dy1, dy2, dz1, dz2, mx1, mx2, mz1, mz2;
+        int xstart, xend, yend, zstart, zend, y, z, dz, left, right, i, index;
+        int red1, green1, blue1, red2, green2, blue2, red3, green3, blue3;
+        int dred1, dred2, dgreen1, dgreen2, dblue1, dblue2, mred1, mred2, mgreen1, mgreen2, mblue1, mblue2;
+        int redstart, redend, greenstart, greenend, bluestart, blueend, red, green, blue, dred, dgreen, dblue;
+        int clipDist = (int) (clip * 65535.0);
+
+        if (py1 <= py2 && py1 <= py3) {
+            x1 = ((int) px1) << 16;
+            y1 = ((int) py1);
+            z1 = (int) (zf1 * 65535.0);
+            red1 = color[offset];
+            green1 = color[offset + 1];
+            blue1 = color[offset + 2];
+            if (py2 < py3) {
+                x2 = ((int) px2) << 16;
+                y2 = ((int) py2);
+                z2 = (int) (zf2 * 65535.0);
+                red2 = color[offset + 3];
+                green2 = color[offset + 4];
+                blue2 = color[offset + 5];
+                x3 = ((int) px3) << 16;
+                y3 = ((int) py3);
+                z3 = (int) (zf3 * 65535.0);
+                red3 = color[offset + 6];
+                green3 = color[offset + 7];
+                blue3 = color[offset + 8];
+            } else {
+                x2 = ((int) px3) << 16;
+                y2 = ((int) py3);
+                z2 = (int) (zf3 * 65535.0);
+                red2 = color[offset + 6];
+                green2 = color[offset + 7];
+                blue2 = color[offset + 8];
+                x3 = ((int) px2) << 16;
+                y3 = ((int) py2);
+                z3 = (int) (zf2 * 65535.0);
+                red3 = color[offset + 3];
+                green3 = color[offset + 4];
+                blue3 = color[offset + 5];
+            }
+        } else if (py2 <= py1 && py2 <= py3) {
+            x1 = ((int) px2) << 16;
+            y1 = ((int) py2);
+            z1 = (int) (zf2 * 65535.0);
+            red1 = color[offset + 3];
+            green1 = color[offset + 4];
+            blue1 = color[offset + 5];
+            if (py1 < py3) {
+                x2 = ((int) px1) << 16;
+                y2 = ((int) py1);
+                z2 = (int) (zf1 * 65535.0);
+                red2 = color[offset];
+                green2 = color[offset + 1];
+                blue2 = color[offset + 2];
+                x3 = ((int) px3) << 16;
+                y3 = ((int) py3);
+                z3 = (int) (zf3 * 65535.0);
+                red3 = color[offset + 6];
+                green3 = color[offset + 7];
+                blue3 = color[offset + 8];
+            } else {
+                x2 = ((int) px3) << 16;
+                y2 = ((int) py3);
+                z2 = (int) (zf3 * 65535.0);
+                red2 = color[offset + 6];
+                green2 = color[offset + 7];
+                blue2 = color[offset + 8];
+                x3 = ((int) px1) << 16;
+                y3 = ((int) py1);
+                z3 = (int) (zf1 * 65535.0);
+                red3 = color[offset];
+                green3 = color[offset + 1];
+                blue3 = color[offset + 2];
+            }
+        } else {
+            x1 = ((int) px3) << 16;
+            y1 = ((int) py3);
+            z1 = (int) (zf3 * 65535.0);
+            red1 = color[offset + 6];
+            green1 = color[offset + 7];
+            blue1 = color[offset + 8];
+            if (py1 < py2) {
+                x2 = ((int) px1) << 16;
+                y2 = ((int) py1);
+                z2 = (int) (zf1 * 65535.0);
+                red2 = color[offset];
+                green2 = color[offset + 1];
+                blue2 = color[offset + 2];
+                x3 = ((int) px2) << 16;
+                y3 = ((int) py2);
+                z3 = (int) (zf2 * 65535.0);
+                red3 = color[offset + 3];
+                green3 = color[offset + 4];
+                blue3 = color[offset + 5];
+            } else {
+                x2 = ((int) px2) << 16;
+                y2 = ((int) py2);
+                z2 = (int) (zf2 * 65535.0);
+                red2 = color[offset + 3];
+                green2 = color[offset + 4];
+                blue2 = color[offset + 5];
+                x3 = ((int) px1) << 16;
+                y3 = ((int) py1);
+                z3 = (int) (zf1 * 65535.0);
+                red3 = color[offset];
+                green3 = color[offset + 1];
+                blue3 = color[offset + 2];
+            }
+        }
+        dx1 = x3 - x1;
+        dy1 = y3 - y1;
+        dz1 = z3 - z1;
+        if (dy1 == 0) {
+            return;
+        }
+        dred1 = red3 - red1;
+        dgreen1 = green3 - green1;
+        dblue1 = blue3 - blue1;
+        dx2 = x2 - x1;
+        dy2 = y2 - y1;
+        dz2 = z2 - z1;
+        dred2 = red2 - red1;
+        dgreen2 = green2 - green1;
+        dblue2 = blue2 - blue1;
+        mx1 = dx1 / dy1;
+        mz1 = dz1 / dy1;
+        mred1 = dred1 / dy1;
+        mgreen1 = dgreen1 / dy1;
+        mblue1 = dblue1 / dy1;
+        xstart = xend = x1;
+        zstart = zend = z1;
+        redstart = redend = red1;
+        greenstart = greenend = green1;
+        bluestart = blueend = blue1;
+        y = y1;
+        if (dy2 != 0) {
+            mx2 = dx2 / dy2;
+            mz2 = dz2 / dy2;
+            mred2 = dred2 / dy2;
+            mgreen2 = dgreen2 / dy2;
+            mblue2 = dblue2 / dy2;
+            if (y2 < ymin) {
+                xstart += mx1 * dy2;
+                xend += mx2 * dy2;
+                zstart += mz1 * dy2;
+                zend += mz2 * dy2;
+                redstart += mred1 * dy2;
+                redend += mred2 * dy2;
+                greenstart += mgreen1 * dy2;
+                greenend += mgreen2 * dy2;
+                bluestart += mblue1 * dy2;
+                blueend += mblue2 * dy2;
+                y = y2;
+            } else if (y < ymin) {
+                xstart += mx1 * (ymin - y);
+                xend += mx2 * (ymin - y);
+                zstart += mz1 * (ymin - y);
+                zend += mz2 * (ymin - y);
+                redstart += mred1 * (ymin - y);
+                redend += mred2 * (ymin - y);
+                greenstart += mgreen1 * (ymin - y);
+                greenend += mgreen2 * (ymin - y);
+                bluestart += mblue1 * (ymin - y);
+                blueend += mblue2 * (ymin - y);
+                y = ymin;
+            }
+            yend = (y2 < ymax ? y2 : ymax);
+            index = y * width;
+            while (y < yend) {
+                if (xstart < xend) {
+                    left = xstart >> 16;
+                    right = xend >> 16;
+                    z = zstart;
+                    dz = zend - zstart;
+                    red = redstart;
+                    dred = redend - redstart;
+                    green = greenstart;
+                    dgreen = greenend - greenstart;
+                    blue = bluestart;
+                    dblue = blueend - bluestart;
+                } else {
+                    left = xend >> 16;
+                    right = xstart >> 16;
+                    z = zend;
+                    dz = zstart - zend;
+                    red = redend;
+                    dred = redstart - redend;
+                    green = greenend;
+                    dgreen = greenstart - greenend;
+                    blue = blueend;
+                    dblue = bluestart - blueend;
+                }
+                if (left != right) {
+                    dz /= (right - left);
+                    dred /= (right - left);
+                    dgreen /= (right - left);
+                    dblue /= (right - left);
+                    if (left < 0) {
+                        z -= left * dz;
+                        red -= left * dred;
+                        green -= left * dgreen;
+                        blue -= left * dblue;
+                        left = 0;
+                    }
+                    if (right > width) {
+                        right = width;
+                    }
+                    for (i = left; i < right; i++) {
+                        if (z < zbuffer[index + i] && z > clipDist) {
+                            pixel[index + i] = 0xFF000000 + ((red & 0xFF00) << 8) + (green & 0xFF00) + (blue >> 8);
+                            zbuffer[index + i] = z;
+                        }
+                        z += dz;
+                        red += dred;
+                        green += dgreen;
+                        blue += dblue;
+                    }
+                }
+                xstart += mx1;
+                zstart += mz1;
+                redstart += mred1;
+                greenstart += mgreen1;
+                bluestart += mblue1;
+                xend += mx2;
+                zend += mz2;
+                redend += mred2;
+                greenend += mgreen2;
+                blueend += mblue2;
+                index += width;
+                y++;
+            }
+        }
+        dx2 = x3 - x2;
+        dy2 = y3 - y2;
+        dz2 = z3 - z2;
+        dred2 = red3 - red2;
+        dgreen2 = green3 - green2;
+        dblue2 = blue3 - blue2;
+        if (dy2 != 0) {
+            mx2 = dx2 / dy2;
+            mz2 = dz2 / dy2;
+            mred2 = dred2 / dy2;
+            mgreen2 = dgreen2 / dy2;
+            mblue2 = dblue2 / dy2;
+            xend = x2;
+            zend = z2;
+            redend = red2;
+            greenend = green2;
+            blueend = blue2;
+            if (y < ymin) {
+                xstart += mx1 * (ymin - y);
+                xend += mx2 * (ymin - y);
+                zstart += mz1 * (ymin - y);
+                zend += mz2 * (ymin - y);
+                redstart += mred1 * (ymin - y);
+                redend += mred2 * (ymin - y);
+                greenstart += mgreen1 * (ymin - y);
+                greenend += mgreen2 * (ymin - y);
+                bluestart += mblue1 * (ymin - y);
+                blueend += mblue2 * (ymin - y);
+                y = ymin;
+            }
+            yend = (y3 < ymax ? y3 : ymax);
+            index = y * width;
+            while (y < yend) {
+                if (xstart < xend) {
+                    left = xstart >> 16;
+                    right = xend >> 16;
+                    z = zstart;
+                    dz = zend - zstart;
+                    red = redstart;
+                    dred = redend - redstart;
+                    green = greenstart;
+                    dgreen = greenend - greenstart;
+                    blue = bluestart;
+                    dblue = blueend - bluestart;
+                } else {
+                    left = xend >> 16;
+                    right = xstart >> 16;
+                    z = zend;
+                    dz = zstart - zend;
+                    red = redend;
+                    dred = redstart - redend;
+                    green = greenend;
+                    dgreen = greenstart - greenend;
+                    blue = blueend;
+                    dblue = bluestart - blueend;
+                }
+                if (left != right) {
+                    dz /= (right - left);
+                    dred /= (right - left);
+                    dgreen /= (right - left);
+                    dblue /= (right - left);
+                    if (left < 0) {
+                        z -= left * dz;
+                        red -= left * dred;
+                        green -= left * dgreen;
+                        blue -= left * dblue;
+                        left = 0;
+                    }
+                    if (right > width) {
+                        right = width;
+                    }
+                    for (i = left; i < right; i++) {
+                        if (z < zbuffer[index + i] && z > clipDist) {
+                            pixel[index + i] = 0xFF000000 + ((red & 0xFF00) << 8) + (green & 0xFF00) + (blue >> 8);
+                            zbuffer[index + i] = z;
+                        }
+                        z += dz;
+                        red += dred;
+                        green += dgreen;
+                        blue += dblue;
+                    }
+                }
+                xstart += mx1;
+                zstart += mz1;
+                redstart += mred1;
+                greenstart += mgreen1;
+                bluestart += mblue1;
+                xend += mx2;
+                zend += mz2;
+                redend += mred2;
+                greenend += mgreen2;
+                blueend += mblue2;
+                index += width;
+                y++;
+            }
+        }
+    }
+
+    /**
+     * A TriangleBatch holds triangles which have been transformed to screen coordinates and shaded,
+     * but not yet drawn. Everything is copied into primitive arrays, since the Vec2 objects passed
+     * to it are reused for the next mesh.
+     */
+    static final class TriangleBatch {
+
+        static final int COORDS = 10;
+        static final int COLORS = 9;
+
+        int size;
+        double[] coord = new double[COORDS * 256];
+        int[] color = new int[COLORS * 256];
+        int[] mode = new int[256], miny = new int[256], maxy = new int[256];
+
+        /**
+         * Remove all triangles, so the batch can be reused.
+         */
+        void clear() {
+            size = 0;
+        }
+
+        /**
+         * Add a solid colored triangle.
+         */
+        void addFlat(Vec2 p1, double z1, Vec2 p2, double z2, Vec2 p3, double z3, double clip, int drawMode, RGBColor c) {
+            int offset = add(p1, z1, p2, z2, p3, z3, clip, drawMode);
+            if (drawMode == MODE_COPY) {
+                color[offset] = c.getARGB();
+            } else {
+                color[offset + 1] = (int) (c.getRed() * 255.0f);
+                color[offset + 2] = (int) (c.getGreen() * 255.0f);
+                color[offset + 3] = (int) (c.getBlue() * 255.0f);
+            }
+        }
+
+        /**
+         * Add a smooth shaded triangle.
+         */
+        void addSmooth(Vec2 p1, double z1, Vec2 p2, double z2, Vec2 p3, double z3, double clip, RGBColor c1, RGBColor c2, RGBColor c3) {
+            int offset = add(p1, z1, p2, z2, p3, z3, clip, MODE_SMOOTH);
+            RGBColor[] c = {c1, c2, c3};
+            for (int i = 0; i < 3; i++) {
+                color[offset + 3 * i] = (int) (c[i].getRed() * 65535.0f);
+                color[offset + 3 * i + 1] = (int) (c[i].getGreen() * 65535.0f);
+                color[offset + 3 * i + 2] = (int) (c[i].getBlue() * 65535.0f);
+            }
+        }
+
+        /**
+         * Record the position of a new triangle, and return the offset of its colors in the color array.
+         */
+        private int add(Vec2 p1, double z1, Vec2 p2, double z2, Vec2 p3, double z3, double clip, int drawMode) {
+            if (size == mode.length) {
+                int capacity = 2 * size;
+                coord = Arrays.copyOf(coord, COORDS * capacity);
+                color = Arrays.copyOf(color, COLORS * capacity);
+                mode = Arrays.copyOf(mode, capacity);
+                miny = Arrays.copyOf(miny, capacity);
+                maxy = Arrays.copyOf(maxy, capacity);
+            }
+            int c = COORDS * size;
+            coord[c] = p1.x;
+            coord[c + 1] = p1.y;
+            coord[c + 2] = z1;
+            coord[c + 3] = p2.x;
+            coord[c + 4] = p2.y;
+            coord[c + 5] = z2;
+            coord[c + 6] = p3.x;
+            coord[c + 7] = p3.y;
+            coord[c + 8] = z3;
+            coord[c + 9] = clip;
+            mode[size] = drawMode;
+
+            // The rasterizers truncate y coordinates toward zero, so allow one extra row on each side.
+            miny[size] = (int) Math.floor(Math.min(p1.y, Math.min(p2.y, p3.y))) - 1;
+            maxy[size] = (int) Math.ceil(Math.max(p1.y, Math.max(p2.y, p3.y))) + 1;
+            return COLORS * size++;
+        }
+    }
+}
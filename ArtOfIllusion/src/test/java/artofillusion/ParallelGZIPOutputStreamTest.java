@@ -0,0 +1,89 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ParallelGZIPOutputStreamTest {
+
+    /**
+     * Create data which is partly random and partly repetitive, so it compresses but not trivially.
+     */
+    private static byte[] createData(int length) {
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i % 1000 < 500 ? random.nextInt(16) : i);
+        }
+        return data;
+    }
+
+    private static byte[] compress(byte[] data, int level) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new ParallelGZIPOutputStream(bytes, level)) {
+            // Mix single byte and array writes, with arrays spanning block boundaries.
+
+            int pos = 0;
+            while (pos < data.length) {
+                if (pos % 7 == 0) {
+                    out.write(data[pos++]);
+                } else {
+                    int n = Math.min(data.length - pos, 50000);
+                    out.write(data, pos, n);
+                    pos += n;
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        byte[] data = createData(10 * ParallelGZIPOutputStream.BLOCK_SIZE + 123);
+        Assertions.assertArrayEquals(data, decompress(compress(data, Deflater.DEFAULT_COMPRESSION)));
+    }
+
+    @Test
+    void testFastCompression() throws IOException {
+        byte[] data = createData(3 * ParallelGZIPOutputStream.BLOCK_SIZE);
+        byte[] fast = compress(data, Deflater.BEST_SPEED);
+        Assertions.assertArrayEquals(data, decompress(fast));
+        Assertions.assertTrue(fast.length < data.length);
+    }
+
+    @Test
+    void testEmptyStream() throws IOException {
+        byte[] compressed = compress(new byte[0], Deflater.DEFAULT_COMPRESSION);
+        Assertions.assertEquals(0, decompress(compressed).length);
+    }
+
+    @Test
+    void testWriteAfterClose() throws IOException {
+        OutputStream out = new ParallelGZIPOutputStream(new ByteArrayOutputStream());
+        out.close();
+        Assertions.assertThrows(IOException.class, () -> out.write(1));
+    }
+
+    @Test
+    void testInvalidLevel() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ParallelGZIPOutputStream(new ByteArrayOutputStream(), 10));
+    }
+}
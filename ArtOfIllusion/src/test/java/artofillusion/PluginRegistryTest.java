@@ -0,0 +1,115 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.zip.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PluginRegistryTest {
+
+    @TempDir
+    Path folder;
+
+    public interface LazyCategory {
+    }
+
+    public interface IndexedCategory {
+    }
+
+    public static class LazyPlugin implements LazyCategory {
+        static int created;
+
+        public LazyPlugin() {
+            created++;
+        }
+    }
+
+    public static class IndexedPluginA implements IndexedCategory {
+    }
+
+    public static class IndexedPluginB implements IndexedCategory {
+    }
+
+    /**
+     * Write a plugin jar which contains a single plugin. The index is stored uncompressed, so jars
+     * listing class names of the same length have the same size.
+     */
+    private static void writeJar(Path jar, Class<?> plugin) throws IOException {
+        byte[] xml = ("<extension name='" + plugin.getSimpleName().substring(0, 4) + "'><plugin class='" + plugin.getName() + "'/></extension>").getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(xml);
+        ZipEntry entry = new ZipEntry("extensions.xml");
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(xml.length);
+        entry.setCrc(crc.getValue());
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(entry);
+            out.write(xml);
+            out.closeEntry();
+        }
+    }
+
+    @Test
+    void testPluginsAreCreatedWhenRequested() throws IOException {
+        Path plugins = Files.createDirectory(folder.resolve("Plugins"));
+        writeJar(plugins.resolve("lazy.jar"), LazyPlugin.class);
+        PluginRegistry.addCategory(LazyCategory.class);
+        List<String> results = PluginRegistry.scanPlugins(plugins, folder.resolve("plugins.index"));
+        Assertions.assertTrue(results.isEmpty());
+        Assertions.assertTrue(Files.exists(folder.resolve("plugins.index")));
+        Assertions.assertEquals(0, LazyPlugin.created);
+        List<LazyCategory> found = PluginRegistry.getPlugins(LazyCategory.class);
+        Assertions.assertEquals(1, found.size());
+        Assertions.assertInstanceOf(LazyPlugin.class, found.get(0));
+        Assertions.assertSame(found.get(0), PluginRegistry.getPlugins(LazyCategory.class).get(0));
+        Assertions.assertSame(found.get(0), PluginRegistry.getPluginObject(LazyPlugin.class.getName()));
+        Assertions.assertEquals(1, LazyPlugin.created);
+    }
+
+    @Test
+    void testUnchangedJarIsReadFromIndex() throws IOException {
+        Path plugins = Files.createDirectory(folder.resolve("Plugins"));
+        Path jar = plugins.resolve("indexed.jar");
+        Path index = folder.resolve("plugins.index");
+        FileTime time = FileTime.fromMillis(1_700_000_000_000L);
+        PluginRegistry.addCategory(IndexedCategory.class);
+        writeJar(jar, IndexedPluginA.class);
+        Files.setLastModifiedTime(jar, time);
+        PluginRegistry.scanPlugins(plugins, index);
+
+        // Replace the jar with a different one of the same size and modification time. It should
+        // still be taken from the index, unless the index is not used or the time changes.
+
+        long size = Files.size(jar);
+        writeJar(jar, IndexedPluginB.class);
+        Files.setLastModifiedTime(jar, time);
+        Assertions.assertEquals(size, Files.size(jar));
+        PluginRegistry.scanPlugins(plugins, index);
+        List<IndexedCategory> found = PluginRegistry.getPlugins(IndexedCategory.class);
+        Assertions.assertInstanceOf(IndexedPluginA.class, found.get(found.size() - 1));
+        PluginRegistry.scanPlugins(plugins, null);
+        found = PluginRegistry.getPlugins(IndexedCategory.class);
+        Assertions.assertInstanceOf(IndexedPluginB.class, found.get(found.size() - 1));
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(time.toMillis() + 2000));
+        PluginRegistry.scanPlugins(plugins, index);
+        found = PluginRegistry.getPlugins(IndexedCategory.class);
+        Assertions.assertInstanceOf(IndexedPluginB.class, found.get(found.size() - 1));
+        Assertions.assertEquals(4, found.size());
+    }
+}
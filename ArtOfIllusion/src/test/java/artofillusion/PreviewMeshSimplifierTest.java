@@ -0,0 +1,116 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.texture.*;
+import java.util.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PreviewMeshSimplifierTest {
+
+    /**
+     * Create a square grid of vertices in the xy plane, with a small bump in z.
+     */
+    private static Vec3[] createGrid(int size) {
+        Vec3[] vert = new Vec3[size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                vert[i * size + j] = new Vec3(i, j, Math.sin(i * 0.1) * Math.cos(j * 0.1));
+            }
+        }
+        return vert;
+    }
+
+    private static RenderingMesh createMesh(int size) {
+        Vec3[] vert = createGrid(size);
+        Vec3[] norm = new Vec3[]{Vec3.vz()};
+        List<RenderingTriangle> tri = new ArrayList<>();
+        UniformMapping mapping = new UniformMapping(null, new UniformTexture());
+        for (int i = 0; i < size - 1; i++) {
+            for (int j = 0; j < size - 1; j++) {
+                int v = i * size + j;
+                tri.add(mapping.mapTriangle(v, v + size, v + size + 1, 0, 0, 0, vert));
+                tri.add(mapping.mapTriangle(v, v + size + 1, v + 1, 0, 0, 0, vert));
+            }
+        }
+        return new RenderingMesh(vert, norm, tri.toArray(RenderingTriangle[]::new), mapping, null);
+    }
+
+    private static WireframeMesh createWireframe(int size) {
+        Vec3[] vert = createGrid(size);
+        List<Integer> from = new ArrayList<>(), to = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int v = i * size + j;
+                if (i < size - 1) {
+                    from.add(v);
+                    to.add(v + size);
+                }
+                if (j < size - 1) {
+                    from.add(v);
+                    to.add(v + 1);
+                }
+            }
+        }
+        return new WireframeMesh(vert, from.stream().mapToInt(Integer::intValue).toArray(), to.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    @Test
+    void testSmallMeshIsNotSimplified() {
+        RenderingMesh mesh = createMesh(5);
+        Assertions.assertSame(mesh, PreviewMeshSimplifier.simplify(mesh, 1));
+        WireframeMesh wire = createWireframe(5);
+        Assertions.assertSame(wire, PreviewMeshSimplifier.simplify(wire, 1));
+    }
+
+    @Test
+    void testSimplifyRenderingMesh() {
+        RenderingMesh mesh = createMesh(200);
+        Set<Vec3> original = Collections.newSetFromMap(new IdentityHashMap<>());
+        original.addAll(Arrays.asList(mesh.vert));
+        int previous = mesh.triangle.length;
+        for (int level = 1; level <= PreviewMeshSimplifier.LEVELS; level++) {
+            RenderingMesh simplified = PreviewMeshSimplifier.simplify(mesh, level);
+            Assertions.assertTrue(simplified.triangle.length < previous, "Level " + level + " should have fewer triangles");
+            previous = simplified.triangle.length;
+            Assertions.assertSame(mesh.mapping, simplified.mapping);
+            for (Vec3 v : simplified.vert) {
+                Assertions.assertTrue(original.contains(v), "Simplified vertices should be taken from the original mesh");
+            }
+            for (RenderingTriangle tri : simplified.triangle) {
+                Assertions.assertTrue(tri.v1 != tri.v2 && tri.v2 != tri.v3 && tri.v3 != tri.v1);
+                Assertions.assertSame(simplified, tri.theMesh);
+            }
+        }
+    }
+
+    @Test
+    void testSimplifyWireframeMesh() {
+        WireframeMesh wire = createWireframe(100);
+        WireframeMesh simplified = PreviewMeshSimplifier.simplify(wire, 2);
+        Assertions.assertTrue(simplified.from().length < wire.from().length);
+        Set<Long> edges = new HashSet<>();
+        for (int i = 0; i < simplified.from().length; i++) {
+            int v1 = simplified.from()[i], v2 = simplified.to()[i];
+            Assertions.assertNotEquals(v1, v2);
+            Assertions.assertTrue(edges.add(Math.min(v1, v2) * (long) simplified.vert().length + Math.max(v1, v2)), "Edges should not be duplicated");
+        }
+    }
+
+    @Test
+    void testCellSize() {
+        BoundingBox bounds = new BoundingBox(0.0, 6.4, 0.0, 1.0, 0.0, 2.0);
+        Assertions.assertEquals(0.1, PreviewMeshSimplifier.getCellSize(bounds, 1), 1e-12);
+        Assertions.assertEquals(0.8, PreviewMeshSimplifier.getCellSize(bounds, 4), 1e-12);
+    }
+}
@@ -0,0 +1,103 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.lang.reflect.Field;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.mockito.Mockito;
+
+class SceneBVHTest {
+
+    private static final ApplicationPreferences preferences = Mockito.mock(ApplicationPreferences.class);
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        Mockito.when(preferences.getInteractiveSurfaceError()).thenReturn(0.01);
+        Field pf = ArtOfIllusion.class.getDeclaredField("preferences");
+        pf.setAccessible(true);
+        pf.set(null, preferences);
+        pf.setAccessible(false);
+    }
+
+    private static List<ObjectInfo> createObjects(int count, Random random) {
+        List<ObjectInfo> objects = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Vec3 pos = new Vec3(random.nextDouble() * 100.0, random.nextDouble() * 100.0, random.nextDouble() * 100.0);
+            objects.add(new ObjectInfo(new Cube(1.0, 2.0, 3.0), new CoordinateSystem(pos, Vec3.vz(), Vec3.vy()), "Cube " + i));
+        }
+        return objects;
+    }
+
+    private static int[] bruteForce(List<ObjectInfo> objects, BoundingBox region) {
+        return java.util.stream.IntStream.range(0, objects.size())
+                .filter(i -> objects.get(i).getBounds().transformAndOutset(objects.get(i).getCoords().fromLocal()).intersects(region))
+                .toArray();
+    }
+
+    @Test
+    void testEmptyScene() {
+        SceneBVH tree = new SceneBVH();
+        Assertions.assertEquals(0, tree.findObjects(List.of(), box -> true).length);
+    }
+
+    @Test
+    void testFindObjectsInRegion() {
+        Random random = new Random(1);
+        List<ObjectInfo> objects = createObjects(500, random);
+        SceneBVH tree = new SceneBVH();
+        for (int i = 0; i < 50; i++) {
+            Vec3 p1 = new Vec3(random.nextDouble() * 100.0, random.nextDouble() * 100.0, random.nextDouble() * 100.0);
+            BoundingBox region = new BoundingBox(p1, p1.plus(new Vec3(20.0, 20.0, 20.0)));
+            Assertions.assertArrayEquals(bruteForce(objects, region), tree.findObjects(objects, box -> box.intersects(region)));
+        }
+        Assertions.assertEquals(500, tree.findObjects(objects, box -> true).length);
+    }
+
+    @Test
+    void testMovedObjectIsFound() {
+        List<ObjectInfo> objects = createObjects(100, new Random(2));
+        SceneBVH tree = new SceneBVH();
+        BoundingBox region = new BoundingBox(-20.0, -10.0, -20.0, -10.0, -20.0, -10.0);
+        Assertions.assertEquals(0, tree.findObjects(objects, box -> box.intersects(region)).length);
+        objects.get(42).getCoords().setOrigin(new Vec3(-15.0, -15.0, -15.0));
+        Assertions.assertArrayEquals(new int[]{42}, tree.findObjects(objects, box -> box.intersects(region)));
+        objects.get(42).getCoords().setOrigin(new Vec3(50.0, 50.0, 50.0));
+        Assertions.assertEquals(0, tree.findObjects(objects, box -> box.intersects(region)).length);
+    }
+
+    @Test
+    void testReshapedObjectIsFound() {
+        List<ObjectInfo> objects = createObjects(100, new Random(4));
+        SceneBVH tree = new SceneBVH();
+        BoundingBox region = new BoundingBox(200.0, 210.0, 200.0, 210.0, 200.0, 210.0);
+        Assertions.assertEquals(0, tree.findObjects(objects, box -> box.intersects(region)).length);
+        ObjectInfo info = objects.get(17);
+        info.getCoords().setOrigin(new Vec3());
+        ((Cube) info.getObject()).setSize(410.0, 410.0, 410.0);
+        info.clearCachedMeshes();
+        Assertions.assertArrayEquals(new int[]{17}, tree.findObjects(objects, box -> box.intersects(region)));
+        Assertions.assertArrayEquals(new int[]{17}, tree.findObjects(objects, box -> box.intersects(region)));
+    }
+
+    @Test
+    void testAddedObjectIsFound() {
+        List<ObjectInfo> objects = createObjects(100, new Random(3));
+        SceneBVH tree = new SceneBVH();
+        BoundingBox region = new BoundingBox(200.0, 210.0, 200.0, 210.0, 200.0, 210.0);
+        Assertions.assertEquals(0, tree.findObjects(objects, box -> box.intersects(region)).length);
+        objects.add(0, new ObjectInfo(new Cube(1.0, 1.0, 1.0), new CoordinateSystem(new Vec3(205.0, 205.0, 205.0), Vec3.vz(), Vec3.vy()), "New"));
+        tree.invalidate();
+        Assertions.assertArrayEquals(new int[]{0}, tree.findObjects(objects, box -> box.intersects(region)));
+    }
+}
@@ -0,0 +1,113 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.zip.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SceneIndexTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * Create a scene with a parent and two children, where the second child shares its geometry
+     * with the parent.
+     */
+    private static Scene createScene() {
+        Scene scene = new Scene();
+        Cube cube = new Cube(1.0, 2.0, 3.0);
+        ObjectInfo parent = new ObjectInfo(cube, new CoordinateSystem(new Vec3(5, 0, 0), Vec3.vz(), Vec3.vy()), "Parent");
+        ObjectInfo first = new ObjectInfo(new Sphere(1.0, 1.0, 1.0), new CoordinateSystem(new Vec3(0, 5, 0), Vec3.vz(), Vec3.vy()), "First");
+        ObjectInfo second = new ObjectInfo(cube, new CoordinateSystem(new Vec3(0, 0, 5), Vec3.vz(), Vec3.vy()), "Second");
+        parent.addChild(first, 0);
+        parent.addChild(second, 1);
+        scene.addObject(parent, null);
+        scene.addObject(first, null);
+        scene.addObject(second, null);
+        return scene;
+    }
+
+    private File save(Scene scene) throws IOException {
+        File file = folder.resolve("scene.aoi").toFile();
+        scene.writeToFile(file, SafeFileOutputStream.OVERWRITE, Deflater.DEFAULT_COMPRESSION);
+        return file;
+    }
+
+    @Test
+    void testIndexedFileLoadsAsClassicScene() throws IOException {
+        Scene scene = createScene();
+        Scene loaded = new Scene(save(scene));
+        Assertions.assertEquals(3, loaded.getNumObjects());
+        Assertions.assertEquals(2, loaded.getObject("Parent").getChildren().length);
+        Assertions.assertSame(loaded.getObject("Parent").getObject(), loaded.getObject("Second").getObject());
+    }
+
+    @Test
+    void testReadEntries() throws IOException {
+        Scene scene = createScene();
+        SceneIndex index = SceneIndex.read(save(scene));
+        Assertions.assertNotNull(index);
+        Assertions.assertEquals(3, index.getEntries().size());
+        SceneIndex.Entry parent = index.getEntries().get(0);
+        Assertions.assertEquals("Parent", parent.name());
+        Assertions.assertEquals(scene.getObject("Parent").getId(), parent.id());
+        Assertions.assertEquals(Cube.class.getName(), parent.className());
+        Assertions.assertEquals(-1, parent.parent());
+        Assertions.assertArrayEquals(new int[]{1, 2}, parent.children());
+        Assertions.assertEquals(0, index.getEntries().get(1).parent());
+        Assertions.assertEquals(Sphere.class.getName(), index.getEntries().get(1).className());
+
+        // The bounds are in world coordinates.
+
+        BoundingBox bounds = parent.bounds();
+        Assertions.assertEquals(4.5, bounds.minx, 1e-10);
+        Assertions.assertEquals(5.5, bounds.maxx, 1e-10);
+        Assertions.assertEquals(1, index.findObject("First", -1));
+        Assertions.assertEquals(-1, index.findObject("Missing", 1));
+        Assertions.assertEquals(1, index.createOutline().size());
+    }
+
+    @Test
+    void testLoadObjectsOnDemand() throws IOException {
+        SceneIndex index = SceneIndex.read(save(createScene()));
+        ObjectInfo second = index.getObject(2);
+        Assertions.assertEquals("Second", second.getName());
+        Assertions.assertInstanceOf(Cube.class, second.getObject());
+        Assertions.assertEquals(5.0, second.getCoords().getOrigin().z, 1e-10);
+
+        // The parent shares its geometry with the second child, and is linked to the children
+        // which have been loaded.
+
+        ObjectInfo parent = index.getObject(0);
+        Assertions.assertSame(parent.getObject(), second.getObject());
+        Assertions.assertArrayEquals(new ObjectInfo[]{second}, parent.getChildren());
+        ObjectInfo first = index.getObject(1);
+        Assertions.assertInstanceOf(Sphere.class, first.getObject());
+        Assertions.assertArrayEquals(new ObjectInfo[]{first, second}, parent.getChildren());
+        Assertions.assertSame(first, index.getObject(1));
+    }
+
+    @Test
+    void testClassicFileHasNoIndex() throws IOException {
+        File file = folder.resolve("classic.aoi").toFile();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+            createScene().writeToStream(out);
+        }
+        Assertions.assertNull(SceneIndex.read(file));
+    }
+}
@@ -0,0 +1,248 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SceneJournalTest {
+
+    @TempDir
+    Path folder;
+
+    private static Scene createScene() {
+        Scene scene = new Scene();
+        Cube cube = new Cube(1.0, 2.0, 3.0);
+        ObjectInfo parent = new ObjectInfo(cube, new CoordinateSystem(new Vec3(5, 0, 0), Vec3.vz(), Vec3.vy()), "Parent");
+        ObjectInfo child = new ObjectInfo(new Sphere(1.0, 1.0, 1.0), new CoordinateSystem(new Vec3(0, 5, 0), Vec3.vz(), Vec3.vy()), "Child");
+        ObjectInfo copy = new ObjectInfo(cube, new CoordinateSystem(new Vec3(0, 0, 5), Vec3.vz(), Vec3.vy()), "Copy");
+        parent.addChild(child, 0);
+        scene.addObject(parent, null);
+        scene.addObject(child, null);
+        scene.addObject(copy, null);
+        return scene;
+    }
+
+    private File save(Scene scene) throws IOException {
+        File file = folder.resolve("scene.aoi").toFile();
+        scene.writeToFile(file, SafeFileOutputStream.OVERWRITE, Deflater.DEFAULT_COMPRESSION);
+        return file;
+    }
+
+    /**
+     * Move one object, change the geometry shared by two others, and add a new one.
+     */
+    private static void modify(Scene scene, SceneJournal journal) {
+        ObjectInfo child = scene.getObject("Child");
+        child.getCoords().setOrigin(new Vec3(0, 7, 0));
+        journal.objectChanged(child);
+        Cube cube = (Cube) scene.getObject("Parent").getObject();
+        cube.setSize(4.0, 4.0, 4.0);
+        scene.objectModified(cube);
+        ObjectInfo added = new ObjectInfo(new Sphere(2.0, 2.0, 2.0), new CoordinateSystem(), "Added");
+        scene.addObject(added, null);
+        scene.getObject("Parent").addChild(added, 1);
+    }
+
+    private static void checkModified(Scene scene) {
+        Assertions.assertEquals(4, scene.getNumObjects());
+        Assertions.assertEquals(7.0, scene.getObject("Child").getCoords().getOrigin().y, 1e-10);
+        ObjectInfo parent = scene.getObject("Parent");
+        Assertions.assertEquals(4.0, ((Cube) parent.getObject()).getBounds().maxx * 2, 1e-10);
+        Assertions.assertSame(parent.getObject(), scene.getObject("Copy").getObject());
+        Assertions.assertArrayEquals(new ObjectInfo[]{scene.getObject("Child"), scene.getObject("Added")}, parent.getChildren());
+        Assertions.assertSame(parent, scene.getObject("Added").getParent());
+        Assertions.assertNull(scene.getObject("Copy").getParent());
+    }
+
+    @Test
+    void testRecoverChanges() throws IOException {
+        Scene scene = createScene();
+        File file = save(scene);
+        SceneJournal journal = SceneJournal.attach(scene, file);
+        modify(scene, journal);
+        journal.flush().join();
+        Scene recovered = SceneJournal.recover(file);
+        Assertions.assertNotNull(recovered);
+        checkModified(recovered);
+        Assertions.assertTrue(recovered.getJournal().isRecovered());
+        recovered.getJournal().close();
+        journal.close();
+    }
+
+    @Test
+    void testOnlyChangesAreWritten() throws IOException {
+        Scene scene = createScene();
+        File file = save(scene);
+        SceneJournal journal = SceneJournal.attach(scene, file);
+        ObjectInfo child = scene.getObject("Child");
+        child.getCoords().setOrigin(new Vec3(0, 7, 0));
+        journal.objectChanged(child);
+        journal.flush().join();
+        long length = SceneJournal.getJournalFile(file).length();
+
+        // Nothing has changed, so flushing again does not write anything.
+
+        journal.flush().join();
+        Assertions.assertEquals(length, SceneJournal.getJournalFile(file).length());
+        Scene recovered = SceneJournal.recover(file);
+        Assertions.assertEquals(7.0, recovered.getObject("Child").getCoords().getOrigin().y, 1e-10);
+        Assertions.assertSame(recovered.getObject("Parent").getObject(), recovered.getObject("Copy").getObject());
+        recovered.getJournal().close();
+        journal.close();
+    }
+
+    @Test
+    void testIncompleteFlushIsIgnored() throws IOException {
+        Scene scene = createScene();
+        File file = save(scene);
+        SceneJournal journal = SceneJournal.attach(scene, file);
+        modify(scene, journal);
+        journal.flush().join();
+        File journalFile = SceneJournal.getJournalFile(file);
+        long length = journalFile.length();
+        scene.getObject("Child").getCoords().setOrigin(new Vec3(0, 9, 0));
+        journal.objectChanged(scene.getObject("Child"));
+        journal.flush().join();
+
+        // Cut off the end of the second flush, as if the program exited while writing it.
+
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(length + (raf.length() - length) / 2);
+        }
+        Scene recovered = SceneJournal.recover(file);
+        checkModified(recovered);
+        recovered.getJournal().close();
+        journal.close();
+    }
+
+    @Test
+    void testFileWithoutIndex() throws IOException {
+        Scene scene = createScene();
+        File file = folder.resolve("classic.aoi").toFile();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+            scene.writeToStream(out);
+        }
+        SceneJournal journal = SceneJournal.attach(scene, file);
+        modify(scene, journal);
+        journal.flush().join();
+        Scene recovered = SceneJournal.recover(file);
+        checkModified(recovered);
+        recovered.getJournal().close();
+        journal.close();
+    }
+
+    @Test
+    void testSavingDeletesJournal() throws IOException {
+        Scene scene = createScene();
+        File file = save(scene);
+        SceneJournal journal = SceneJournal.attach(scene, file);
+        modify(scene, journal);
+        journal.flush().join();
+        Assertions.assertTrue(SceneJournal.getJournalFile(file).isFile());
+        save(scene);
+        journal.reset(file);
+        Assertions.assertFalse(SceneJournal.getJournalFile(file).exists());
+        Assertions.assertNull(SceneJournal.recover(file));
+        journal.close();
+    }
+
+    @Test
+    void testJournalForChangedFileIsIgnored() throws IOException {
+        Scene scene = createScene();
+        File file = save(scene);
+        SceneJournal journal = SceneJournal.attach(scene, file);
+        modify(scene, journal);
+        journal.flush().join();
+        save(createScene());
+        Assertions.assertTrue(file.setLastModified(file.lastModified() + 2000));
+        Assertions.assertNull(SceneJournal.recover(file));
+        journal.close();
+    }
+
+    @Test
+    void testChangesWithoutUndoRecordAreWritten() throws IOException {
+        Scene scene = createScene();
+        File file = save(scene);
+        SceneJournal journal = SceneJournal.attach(scene, file);
+
+        // Only mark the scene as modified, as a window does for edits with no undo record.
+
+        scene.getObject("Child").getCoords().setOrigin(new Vec3(0, 7, 0));
+        Cube cube = (Cube) scene.getObject("Parent").getObject();
+        cube.setSize(4.0, 4.0, 4.0);
+        scene.getObject("Parent").clearCachedMeshes();
+        journal.sceneModified();
+        journal.flush().join();
+        Scene recovered = SceneJournal.recover(file);
+        Assertions.assertEquals(7.0, recovered.getObject("Child").getCoords().getOrigin().y, 1e-10);
+        Assertions.assertEquals(4.0, ((Cube) recovered.getObject("Parent").getObject()).getBounds().maxx * 2, 1e-10);
+        Assertions.assertSame(recovered.getObject("Parent").getObject(), recovered.getObject("Copy").getObject());
+        recovered.getJournal().close();
+        journal.close();
+    }
+
+    @Test
+    void testChangesAfterFlushAreNotWritten() throws IOException {
+        Scene scene = createScene();
+        File file = save(scene);
+        SceneJournal journal = SceneJournal.attach(scene, file);
+        modify(scene, journal);
+        CompletableFuture<Void> written = journal.flush();
+
+        // The flush copied the objects, so changing them before it has been written does not matter.
+
+        scene.getObject("Child").getCoords().setOrigin(new Vec3(0, 9, 0));
+        written.join();
+        Scene recovered = SceneJournal.recover(file);
+        checkModified(recovered);
+        recovered.getJournal().close();
+        journal.close();
+    }
+
+    @Test
+    void testJournalIsCompacted() throws IOException {
+        long minCompactLength = SceneJournal.minCompactLength;
+        SceneJournal.minCompactLength = 1;
+        try {
+            Scene scene = createScene();
+            File file = save(scene);
+            SceneJournal journal = SceneJournal.attach(scene, file);
+            modify(scene, journal);
+            journal.flush().join();
+            File journalFile = SceneJournal.getJournalFile(file);
+            long length = journalFile.length();
+            ObjectInfo child = scene.getObject("Child");
+            for (int i = 0; i < 50; i++) {
+                child.getCoords().setOrigin(new Vec3(0, i, 0));
+                journal.objectChanged(child);
+                journal.flush().join();
+                Assertions.assertTrue(journalFile.length() < 3 * length);
+            }
+            child.getCoords().setOrigin(new Vec3(0, 7, 0));
+            journal.objectChanged(child);
+            journal.flush().join();
+            Scene recovered = SceneJournal.recover(file);
+            checkModified(recovered);
+            recovered.getJournal().close();
+            journal.close();
+        } finally {
+            SceneJournal.minCompactLength = minCompactLength;
+        }
+    }
+}
@@ -10,10 +10,16 @@
 
 package artofillusion;
 
+import artofillusion.animation.PositionTrack;
 import artofillusion.api.ImplementationVersion;
 import artofillusion.material.UniformMaterial;
+import artofillusion.math.CoordinateSystem;
 import artofillusion.math.RGBColor;
+import artofillusion.math.Vec3;
+import artofillusion.object.Cube;
 import artofillusion.object.Object3D;
+import artofillusion.object.ObjectInfo;
+import artofillusion.object.Sphere;
 import artofillusion.test.util.StreamUtil;
 import artofillusion.texture.Texture;
 import artofillusion.texture.TextureMapping;
@@ -21,6 +27,8 @@ import artofillusion.texture.TextureSpec;
 import artofillusion.texture.UniformMapping;
 import artofillusion.texture.UniformTexture;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -332,6 +340,34 @@ class SceneLoadTest {
         });
     }
 
+    @Test
+    @DisplayName("Test Scene Round Trip With Shared Objects")
+    void testSceneRoundTripWithSharedObjects() throws IOException {
+        Scene scene = new Scene();
+        Sphere sphere = new Sphere(1.0, 2.0, 3.0);
+        for (int i = 0; i < 20; i++) {
+            Object3D geometry = (i % 3 == 0 ? sphere : new Cube(1.0, i, 2.0));
+            ObjectInfo info = new ObjectInfo(geometry, new CoordinateSystem(new Vec3(i, 0, 0), 0, i, 0), "Object " + i);
+            info.addTrack(new PositionTrack(info), 0);
+            scene.addObject(info, null);
+        }
+        byte[] saved = save(scene);
+        Scene loaded = new Scene(new DataInputStream(new ByteArrayInputStream(saved)), true);
+        Assertions.assertTrue(loaded.getErrors().isEmpty());
+        Assertions.assertEquals(scene.getNumObjects(), loaded.getNumObjects());
+        Assertions.assertSame(loaded.getObject("Object 3").getObject(), loaded.getObject("Object 0").getObject());
+        Assertions.assertNotSame(loaded.getObject("Object 1").getObject(), loaded.getObject("Object 2").getObject());
+        Assertions.assertArrayEquals(saved, save(loaded));
+    }
+
+    private static byte[] save(Scene scene) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            scene.writeToStream(out);
+        }
+        return bytes.toByteArray();
+    }
+
     private static void colorToBuffer(RGBColor color, ByteBuffer buffer) {
         buffer.putFloat(color.getRed());
         buffer.putFloat(color.getGreen());
@@ -0,0 +1,89 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import java.awt.*;
+import java.util.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ScreenGridTest {
+
+    private static final int WIDTH = 400, HEIGHT = 300;
+
+    /**
+     * Create random elements, some of which extend past the edges of the screen.
+     */
+    private static int[] createBounds(int count, int maxSize, Random random) {
+        int[] bounds = new int[4 * count];
+        for (int i = 0; i < count; i++) {
+            int x = random.nextInt(WIDTH + 100) - 50, y = random.nextInt(HEIGHT + 100) - 50;
+            bounds[4 * i] = x;
+            bounds[4 * i + 1] = y;
+            bounds[4 * i + 2] = x + random.nextInt(maxSize + 1);
+            bounds[4 * i + 3] = y + random.nextInt(maxSize + 1);
+        }
+        return bounds;
+    }
+
+    private static boolean intersects(int[] bounds, int i, Rectangle r) {
+        return bounds[4 * i] <= r.x + r.width && bounds[4 * i + 2] >= r.x && bounds[4 * i + 1] <= r.y + r.height && bounds[4 * i + 3] >= r.y;
+    }
+
+    private static void checkQuery(ScreenGrid grid, int[] bounds, Rectangle r) {
+        int[] found = grid.findElements(r);
+        for (int i = 1; i < found.length; i++) {
+            Assertions.assertTrue(found[i] > found[i - 1], "Elements should be sorted and unique");
+        }
+        for (int i = 0; i < bounds.length / 4; i++) {
+            if (intersects(bounds, i, r)) {
+                Assertions.assertTrue(Arrays.binarySearch(found, i) >= 0, "Element " + i + " should be found in " + r);
+            }
+        }
+    }
+
+    @Test
+    void testFindPoints() {
+        Random random = new Random(1);
+        int[] bounds = createBounds(5000, 0, random);
+        ScreenGrid grid = new ScreenGrid(WIDTH, HEIGHT, bounds);
+        for (int i = 0; i < 200; i++) {
+            checkQuery(grid, bounds, new Rectangle(random.nextInt(WIDTH) - 2, random.nextInt(HEIGHT) - 2, 4, 4));
+        }
+        int[] found = grid.findElements(new Rectangle(100, 100, 4, 4));
+        Assertions.assertTrue(found.length < 500, "A small query should not return most of the elements");
+    }
+
+    @Test
+    void testFindLargeElements() {
+        Random random = new Random(2);
+        int[] bounds = createBounds(1000, 300, random);
+        ScreenGrid grid = new ScreenGrid(WIDTH, HEIGHT, bounds);
+        for (int i = 0; i < 200; i++) {
+            checkQuery(grid, bounds, new Rectangle(random.nextInt(WIDTH), random.nextInt(HEIGHT), random.nextInt(50), random.nextInt(50)));
+        }
+    }
+
+    @Test
+    void testRegionOutsideScreen() {
+        int[] bounds = {-20, -20, -10, -10, 500, 500, 510, 510, 10, 10, 10, 10};
+        ScreenGrid grid = new ScreenGrid(WIDTH, HEIGHT, bounds);
+        Assertions.assertArrayEquals(new int[]{0}, grid.findElements(new Rectangle(-30, -30, 5, 5)));
+        checkQuery(grid, bounds, new Rectangle(-100, -100, 1000, 1000));
+    }
+
+    @Test
+    void testEmptyElementsAreIgnored() {
+        int[] bounds = {10, 10, 5, 20, 10, 10, 10, 10};
+        ScreenGrid grid = new ScreenGrid(WIDTH, HEIGHT, bounds);
+        Assertions.assertArrayEquals(new int[]{1}, grid.findElements(new Rectangle(0, 0, WIDTH, HEIGHT)));
+    }
+}
@@ -0,0 +1,54 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class StartupReportTest {
+
+    @Test
+    void testPhasesAreListedInOrder() throws InterruptedException {
+        StartupReport report = new StartupReport();
+        CountDownLatch started = new CountDownLatch(1);
+        CompletableFuture<Void> background = report.runAsync("Background", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        report.run("Foreground", () -> {
+        });
+        background.join();
+        report.mark("Done");
+        String text = report.getReport();
+        int backgroundLine = text.indexOf("Background"), foregroundLine = text.indexOf("Foreground"), doneLine = text.indexOf("Done");
+        Assertions.assertTrue(backgroundLine > 0);
+        Assertions.assertTrue(foregroundLine > backgroundLine);
+        Assertions.assertTrue(doneLine > foregroundLine);
+        Assertions.assertTrue(text.contains(Thread.currentThread().getName()));
+        Assertions.assertTrue(text.contains("Total"));
+    }
+
+    @Test
+    void testFailedPhaseIsRecorded() {
+        StartupReport report = new StartupReport();
+        Assertions.assertThrows(IllegalStateException.class, () -> report.run("Failing", () -> {
+            throw new IllegalStateException();
+        }));
+        Assertions.assertTrue(report.getReport().contains("Failing"));
+    }
+}
@@ -0,0 +1,107 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.material.*;
+import artofillusion.math.*;
+import artofillusion.texture.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ThumbnailServiceTest {
+
+    private static final int SIZE = 32;
+
+    @TempDir
+    Path folder;
+
+    private static float brightness(BufferedImage image, int x, int y) {
+        RGBColor color = new RGBColor();
+        color.setARGB(image.getRGB(x, y));
+        return color.getBrightness();
+    }
+
+    @Test
+    void testTextureThumbnail() {
+        UniformTexture texture = new UniformTexture();
+        texture.diffuseColor.setRGB(1.0f, 0.0f, 0.0f);
+        BufferedImage image = ThumbnailService.renderTexture(texture, SIZE);
+        Assertions.assertEquals(SIZE, image.getWidth());
+        Assertions.assertEquals(SIZE, image.getHeight());
+
+        // The sphere is red, and the corners show the gray background.
+
+        RGBColor center = new RGBColor();
+        center.setARGB(image.getRGB(SIZE / 2, SIZE / 2));
+        Assertions.assertTrue(center.getRed() > 0.5f);
+        Assertions.assertEquals(0.0f, center.getGreen(), 0.01f);
+        RGBColor corner = new RGBColor();
+        corner.setARGB(image.getRGB(0, 0));
+        Assertions.assertEquals(corner.getRed(), corner.getGreen(), 0.01f);
+    }
+
+    @Test
+    void testInvisibleTextureShowsBackground() {
+        BufferedImage texture = ThumbnailService.renderTexture(UniformTexture.invisibleTexture(), SIZE);
+        BufferedImage material = ThumbnailService.renderMaterial(new UniformMaterial(), SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            Assertions.assertEquals(texture.getRGB(i, 0), material.getRGB(i, 0));
+        }
+
+        // The material absorbs some of the light passing through it.
+
+        Assertions.assertTrue(brightness(material, SIZE / 2, SIZE / 2) < brightness(texture, SIZE / 2, SIZE / 2));
+    }
+
+    private Path createFile(String name, int size, long age) throws IOException {
+        Path file = Files.write(folder.resolve(name), new byte[size]);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - age));
+        return file;
+    }
+
+    @Test
+    void testPruneDeletesLeastRecentlyUsed() throws IOException {
+        Path[] files = new Path[8];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = createFile(i + ".png", 1000, (i + 1) * 60000L);
+        }
+
+        // Nothing is deleted while the thumbnails fit.
+
+        ThumbnailService.prune(folder, 8000);
+        for (Path file : files) {
+            Assertions.assertTrue(Files.exists(file));
+        }
+
+        // Otherwise the oldest are deleted until they take three quarters of the maximum.
+
+        ThumbnailService.prune(folder, 7000);
+        for (int i = 0; i < files.length; i++) {
+            Assertions.assertEquals(i < 5, Files.exists(files[i]));
+        }
+    }
+
+    @Test
+    void testPruneDeletesOldTemporaryFiles() throws IOException {
+        Path old = createFile("old.tmp", 10, 2 * 24 * 3600000L);
+        Path recent = createFile("recent.tmp", 10, 0);
+        Path thumbnail = createFile("thumbnail.png", 10, 2 * 24 * 3600000L);
+        ThumbnailService.prune(folder, 1000);
+        Assertions.assertFalse(Files.exists(old));
+        Assertions.assertTrue(Files.exists(recent));
+        Assertions.assertTrue(Files.exists(thumbnail));
+    }
+}
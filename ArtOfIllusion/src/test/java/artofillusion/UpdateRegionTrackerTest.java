@@ -0,0 +1,159 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.awt.Rectangle;
+import java.lang.reflect.Field;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import org.mockito.Mockito;
+
+class UpdateRegionTrackerTest {
+
+    private static final ApplicationPreferences preferences = Mockito.mock(ApplicationPreferences.class);
+
+    private static final String VIEW = "view";
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        Mockito.when(preferences.getInteractiveSurfaceError()).thenReturn(0.01);
+        Field pf = ArtOfIllusion.class.getDeclaredField("preferences");
+        pf.setAccessible(true);
+        pf.set(null, preferences);
+        pf.setAccessible(false);
+    }
+
+    /**
+     * A parallel projection looking down the z axis, with 10 pixels per unit and the origin at (100, 100).
+     * Boxes which reach far behind the camera cannot be projected.
+     */
+    private static Rectangle project(BoundingBox box) {
+        if (box.minz < -50.0) {
+            return null;
+        }
+        int x = (int) Math.floor(100.0 + 10.0 * box.minx), y = (int) Math.floor(100.0 + 10.0 * box.miny);
+        return new Rectangle(x, y, (int) Math.ceil(100.0 + 10.0 * box.maxx) - x, (int) Math.ceil(100.0 + 10.0 * box.maxy) - y);
+    }
+
+    private static ObjectInfo createCube(double x) {
+        return new ObjectInfo(new Cube(1.0, 1.0, 1.0), new CoordinateSystem(new Vec3(x, 0.0, 0.0), Vec3.vz(), Vec3.vy()), "Cube");
+    }
+
+    private static Rectangle findUpdateRegion(UpdateRegionTracker tracker, List<ObjectInfo> objects) {
+        return tracker.findUpdateRegion(VIEW, objects, ObjectInfo::isVisible, UpdateRegionTrackerTest::project);
+    }
+
+    @Test
+    void testFirstFrameRedrawsEverything() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        Assertions.assertNull(findUpdateRegion(tracker, List.of(createCube(0.0))));
+    }
+
+    @Test
+    void testNothingChanged() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        List<ObjectInfo> objects = List.of(createCube(0.0), createCube(5.0));
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+        Assertions.assertTrue(findUpdateRegion(tracker, objects).isEmpty());
+    }
+
+    @Test
+    void testViewChangeRedrawsEverything() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        List<ObjectInfo> objects = List.of(createCube(0.0));
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+        Assertions.assertNull(tracker.findUpdateRegion("other view", objects, ObjectInfo::isVisible, UpdateRegionTrackerTest::project));
+    }
+
+    @Test
+    void testMovedObjectRepaintsOldAndNewPosition() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        ObjectInfo moved = createCube(0.0);
+        List<ObjectInfo> objects = List.of(moved, createCube(-5.0));
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+        moved.getCoords().setOrigin(new Vec3(3.0, 0.0, 0.0));
+        Rectangle expected = new Rectangle(95, 95, 40, 10);
+        Assertions.assertEquals(expected, findUpdateRegion(tracker, objects));
+
+        // Asking again gives the same answer until the view is drawn.
+
+        Assertions.assertEquals(expected, findUpdateRegion(tracker, objects));
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+        Assertions.assertTrue(findUpdateRegion(tracker, objects).isEmpty());
+    }
+
+    @Test
+    void testReshapedObjectRepaintsOldAndNewShape() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        ObjectInfo reshaped = createCube(0.0);
+        List<ObjectInfo> objects = List.of(reshaped);
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+        ((Cube) reshaped.getObject()).setSize(3.0, 1.0, 1.0);
+        reshaped.clearCachedMeshes();
+        Assertions.assertEquals(new Rectangle(85, 95, 30, 10), findUpdateRegion(tracker, objects));
+    }
+
+    @Test
+    void testDeletedObjectRepaintsItsArea() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        ObjectInfo kept = createCube(0.0);
+        ObjectInfo deleted = createCube(5.0);
+        tracker.drawn(VIEW, List.of(kept, deleted), ObjectInfo::isVisible);
+        List<ObjectInfo> objects = List.of(kept);
+        Assertions.assertEquals(new Rectangle(145, 95, 10, 10), findUpdateRegion(tracker, objects));
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+        Assertions.assertTrue(findUpdateRegion(tracker, objects).isEmpty());
+    }
+
+    @Test
+    void testAddedObjectRepaintsItsArea() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        ObjectInfo existing = createCube(0.0);
+        tracker.drawn(VIEW, List.of(existing), ObjectInfo::isVisible);
+        List<ObjectInfo> objects = List.of(existing, createCube(-5.0));
+        Assertions.assertEquals(new Rectangle(45, 95, 10, 10), findUpdateRegion(tracker, objects));
+    }
+
+    @Test
+    void testReplacedObjectRepaintsBothAreas() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        tracker.drawn(VIEW, List.of(createCube(0.0)), ObjectInfo::isVisible);
+        Assertions.assertEquals(new Rectangle(95, 95, 30, 10), findUpdateRegion(tracker, List.of(createCube(2.0))));
+    }
+
+    @Test
+    void testHiddenObjectRepaintsItsArea() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        ObjectInfo hidden = createCube(0.0);
+        List<ObjectInfo> objects = List.of(hidden, createCube(5.0));
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+        hidden.setVisible(false);
+        Assertions.assertEquals(new Rectangle(95, 95, 10, 10), findUpdateRegion(tracker, objects));
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+
+        // Moving a hidden object does not need anything to be redrawn.
+
+        hidden.getCoords().setOrigin(new Vec3(1.0, 0.0, 0.0));
+        Assertions.assertTrue(findUpdateRegion(tracker, objects).isEmpty());
+    }
+
+    @Test
+    void testUnknownAreaRedrawsEverything() {
+        UpdateRegionTracker tracker = new UpdateRegionTracker();
+        ObjectInfo moved = createCube(0.0);
+        List<ObjectInfo> objects = List.of(moved);
+        tracker.drawn(VIEW, objects, ObjectInfo::isVisible);
+        moved.getCoords().setOrigin(new Vec3(0.0, 0.0, -100.0));
+        Assertions.assertNull(findUpdateRegion(tracker, objects));
+    }
+}
@@ -0,0 +1,111 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.animation;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PreviewFrameCacheTest {
+
+    private static BufferedImage createImage(int width, int height, int seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                image.setRGB(i, j, 0xFF000000 | (i * seed) << 16 | (j * 7) << 8 | (i + j + seed) & 0xFF);
+            }
+        }
+        return image;
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        Assertions.assertEquals(expected.getWidth(), actual.getWidth());
+        Assertions.assertEquals(expected.getHeight(), actual.getHeight());
+        for (int i = 0; i < expected.getWidth(); i++) {
+            for (int j = 0; j < expected.getHeight(); j++) {
+                Assertions.assertEquals(expected.getRGB(i, j), actual.getRGB(i, j));
+            }
+        }
+    }
+
+    @Test
+    void testStoreAndRetrieveFrame() {
+        PreviewFrameCache cache = new PreviewFrameCache(null, new PreviewFrameCache.Settings(1, 2, 32, 24, 15, 0.0), 10);
+        BufferedImage image = createImage(32, 24, 3);
+        Assertions.assertNull(cache.get(4));
+        cache.put(4, image, cache.getGeneration());
+        Assertions.assertTrue(cache.contains(4));
+        assertSameImage(image, cache.get(4));
+    }
+
+    @Test
+    void testRingBufferReplacesOldFrames() {
+        int size = 1024;
+        int capacity = (int) (PreviewFrameCache.MAX_CACHE_PIXELS / (size * size));
+        PreviewFrameCache cache = new PreviewFrameCache(null, new PreviewFrameCache.Settings(1, 2, size, size, 15, 0.0), 2 * capacity);
+        Assertions.assertEquals(capacity, cache.getCapacity());
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        cache.put(1, image, cache.getGeneration());
+        cache.put(2, image, cache.getGeneration());
+        cache.put(capacity + 1, image, cache.getGeneration());
+        Assertions.assertFalse(cache.contains(1));
+        Assertions.assertTrue(cache.contains(2));
+        Assertions.assertTrue(cache.contains(capacity + 1));
+    }
+
+    @Test
+    void testInvalidate() {
+        PreviewFrameCache cache = new PreviewFrameCache(null, new PreviewFrameCache.Settings(1, 2, 16, 16, 15, 0.0), 10);
+        BufferedImage image = createImage(16, 16, 5);
+        cache.put(0, image, cache.getGeneration());
+        int generation = cache.getGeneration();
+        cache.invalidate();
+        Assertions.assertFalse(cache.contains(0));
+
+        // A frame which was rendered before the cache was invalidated is discarded.
+
+        cache.put(1, image, generation);
+        Assertions.assertFalse(cache.contains(1));
+        cache.put(1, image, cache.getGeneration());
+        Assertions.assertTrue(cache.contains(1));
+    }
+
+    @Test
+    void testChangedSceneInvalidatesCache() {
+        Scene scene = new Scene();
+        scene.addObject(new Cube(1.0, 1.0, 1.0), new CoordinateSystem(), "Cube", (UndoRecord) null);
+        PreviewFrameCache.Settings settings = new PreviewFrameCache.Settings(1, 2, 16, 16, 15, 0.0);
+        PreviewFrameCache cache = PreviewFrameCache.getCache(scene, settings, 10);
+        BufferedImage image = createImage(16, 16, 5);
+        cache.put(0, image, cache.getGeneration());
+        cache.recordSceneState();
+
+        // Opening the preview again reuses the frames if nothing has changed.
+
+        Assertions.assertSame(cache, PreviewFrameCache.getCache(scene, settings, 10));
+        Assertions.assertTrue(cache.contains(0));
+
+        // Moving an object is detected even if the scene was not marked as modified.
+
+        scene.getObject(0).getCoords().setOrigin(new Vec3(1.0, 0.0, 0.0));
+        Assertions.assertSame(cache, PreviewFrameCache.getCache(scene, settings, 10));
+        Assertions.assertFalse(cache.contains(0));
+
+        // Marking the scene as modified discards the frames immediately.
+
+        cache.put(0, image, cache.getGeneration());
+        PreviewFrameCache.sceneModified(scene);
+        Assertions.assertFalse(cache.contains(0));
+    }
+}
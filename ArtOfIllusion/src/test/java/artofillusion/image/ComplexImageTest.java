@@ -0,0 +1,113 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.image;
+
+import artofillusion.math.HalfFloat;
+import java.awt.image.BufferedImage;
+import java.awt.image.PixelGrabber;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ComplexImageTest {
+
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    /**
+     * Create an image with high dynamic range colors, and depth and object values.
+     */
+    private static ComplexImage createImage() {
+        ComplexImage image = new ComplexImage(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB));
+        Random random = new Random(5);
+        for (int component : new int[]{ComplexImage.RED, ComplexImage.GREEN, ComplexImage.BLUE, ComplexImage.ALPHA, ComplexImage.DEPTH, ComplexImage.OBJECT}) {
+            float[] values = new float[WIDTH * HEIGHT];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (component == ComplexImage.ALPHA ? random.nextFloat() : (float) Math.exp(random.nextGaussian() * 2.0));
+            }
+            if (component == ComplexImage.OBJECT) {
+                values[0] = Float.intBitsToFloat(0x12345678);
+            } else if (component == ComplexImage.RED) {
+                values[0] = 1e6f;
+            }
+            image.setComponentValues(component, values);
+        }
+        return image;
+    }
+
+    @Test
+    void testHalfPrecision() {
+        ComplexImage full = createImage();
+        ComplexImage half = createImage();
+        half.setHalfPrecision(true);
+        Assertions.assertTrue(half.isHalfPrecision());
+        Assertions.assertTrue(half.hasFloatData(ComplexImage.RED));
+        Assertions.assertFalse(half.hasFloatData(ComplexImage.NOISE));
+        for (int x = 0; x < WIDTH; x++) {
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int component : new int[]{ComplexImage.RED, ComplexImage.GREEN, ComplexImage.BLUE, ComplexImage.ALPHA}) {
+                    float expected = Math.min(full.getPixelComponent(x, y, component), HalfFloat.MAX_VALUE);
+                    Assertions.assertEquals(expected, half.getPixelComponent(x, y, component), expected * 0x1p-11f);
+                }
+
+                // Depth and object values are kept exactly.
+
+                Assertions.assertEquals(full.getPixelComponent(x, y, ComplexImage.DEPTH), half.getPixelComponent(x, y, ComplexImage.DEPTH));
+                Assertions.assertEquals(full.getPixelComponent(x, y, ComplexImage.OBJECT), half.getPixelComponent(x, y, ComplexImage.OBJECT));
+            }
+        }
+    }
+
+    private static int[] getPixels(ComplexImage image) throws InterruptedException {
+        PixelGrabber pg = new PixelGrabber(image.getImage(), 0, 0, -1, -1, true);
+        pg.grabPixels();
+        return (int[]) pg.getPixels();
+    }
+
+    @Test
+    void testNoVisibleDifference() throws InterruptedException {
+        ComplexImage full = createImage();
+        ComplexImage half = createImage();
+        half.setHalfPrecision(true);
+        full.rebuildImage();
+        half.rebuildImage();
+        int[] expected = getPixels(full);
+        int[] actual = getPixels(half);
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                Assertions.assertTrue(Math.abs(((expected[i] >> shift) & 0xFF) - ((actual[i] >> shift) & 0xFF)) <= 1, "Pixel " + i);
+            }
+        }
+    }
+
+    @Test
+    void testDuplicateAndNewValues() {
+        ComplexImage image = createImage();
+        image.setHalfPrecision(true);
+        ComplexImage copy = image.duplicate();
+        Assertions.assertTrue(copy.isHalfPrecision());
+        Assertions.assertEquals(image.getPixelComponent(3, 4, ComplexImage.GREEN), copy.getPixelComponent(3, 4, ComplexImage.GREEN));
+
+        // Values set later are converted too, so filters produce compact images.
+
+        float[] values = new float[WIDTH * HEIGHT];
+        values[5] = 0.1f;
+        copy.setComponentValues(ComplexImage.GREEN, values);
+        Assertions.assertEquals(0.1f, copy.getPixelComponent(5, 0, ComplexImage.GREEN), 0.1f * 0x1p-11f);
+        Assertions.assertNotEquals(0.0f, image.getPixelComponent(5, 0, ComplexImage.GREEN));
+
+        // Switching back to full precision keeps the values.
+
+        float value = copy.getPixelComponent(5, 0, ComplexImage.GREEN);
+        copy.setHalfPrecision(false);
+        Assertions.assertEquals(value, copy.getPixelComponent(5, 0, ComplexImage.GREEN));
+    }
+}
@@ -0,0 +1,124 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.image;
+
+import artofillusion.Scene;
+import artofillusion.math.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Random;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MIPMappedImageTest {
+
+    private static BufferedImage createImage(int w, int h) {
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(7);
+        for (int i = 0; i < w; i++) {
+            for (int j = 0; j < h; j++) {
+                image.setRGB(i, j, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static byte[] write(ImageMap image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            image.writeToStream(out, new Scene());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static MIPMappedImage read(byte[] data) throws IOException {
+        return new MIPMappedImage(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    void testLoadedImageMatchesOriginal() throws Exception {
+        MIPMappedImage original = new MIPMappedImage(createImage(150, 90));
+        MIPMappedImage loaded = read(write(original));
+        Assertions.assertEquals(150, loaded.getWidth());
+        Assertions.assertEquals(90, loaded.getHeight());
+
+        // Sample every level of the mipmaps, in an order which builds them out of sequence.
+
+        RGBColor expected = new RGBColor(), actual = new RGBColor();
+        Vec2 expectedGrad = new Vec2(), actualGrad = new Vec2();
+        for (double size : new double[]{0.5, 0.001, 0.1, 0.02, 0.3}) {
+            for (double x = 0.05; x < 1.0; x += 0.1) {
+                original.getColor(expected, true, false, x, 1.0 - x, size, size);
+                loaded.getColor(actual, true, false, x, 1.0 - x, size, size);
+                Assertions.assertEquals(expected, actual);
+                Assertions.assertEquals(original.getComponent(1, false, true, x, x, size, size), loaded.getComponent(1, false, true, x, x, size, size));
+                original.getGradient(expectedGrad, 2, false, false, x, 0.5, size, size);
+                loaded.getGradient(actualGrad, 2, false, false, x, 0.5, size, size);
+                Assertions.assertEquals(expectedGrad.x, actualGrad.x, 0.0);
+                Assertions.assertEquals(expectedGrad.y, actualGrad.y, 0.0);
+            }
+        }
+        Assertions.assertEquals(3, loaded.getComponentCount());
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(original.getAverageComponent(i), loaded.getAverageComponent(i));
+        }
+    }
+
+    @Test
+    void testPrefetch() throws Exception {
+        MIPMappedImage original = new MIPMappedImage(createImage(40, 70));
+        MIPMappedImage loaded = read(write(original));
+        loaded.prefetch();
+        Assertions.assertEquals(original.getAverageComponent(0), loaded.getAverageComponent(0));
+        Assertions.assertEquals("RGB", loaded.getType());
+    }
+
+    @Test
+    void testSavingKeepsCompressedData() throws Exception {
+        byte[] data = write(new MIPMappedImage(createImage(64, 64)));
+        MIPMappedImage loaded = read(data);
+
+        // The image is written back without being decoded and compressed again, whether or
+        // not it has been decoded.
+
+        Assertions.assertArrayEquals(data, write(loaded));
+        loaded.getAverageComponent(0);
+        Assertions.assertArrayEquals(data, write(loaded));
+    }
+
+    @Test
+    void testDamagedImageIsBlack() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(createImage(32, 16), "png", png);
+        byte[] damaged = Arrays.copyOf(png.toByteArray(), 60);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(2);
+            out.writeInt(damaged.length);
+            out.write(damaged);
+            for (int i = 0; i < 7; i++) {
+                if (i == 2 || i == 5) {
+                    out.writeLong(Long.MIN_VALUE);
+                } else {
+                    out.writeUTF("");
+                }
+            }
+        }
+        MIPMappedImage loaded = read(bytes.toByteArray());
+        Assertions.assertEquals(32, loaded.getWidth());
+        Assertions.assertEquals(16, loaded.getHeight());
+        RGBColor color = new RGBColor(1.0f, 1.0f, 1.0f);
+        loaded.getColor(color, false, false, 0.5, 0.5, 0.0, 0.0);
+        Assertions.assertEquals(new RGBColor(), color);
+    }
+}
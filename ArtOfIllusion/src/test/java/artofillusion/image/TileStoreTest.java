@@ -0,0 +1,168 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.image;
+
+import artofillusion.Scene;
+import artofillusion.math.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.util.Random;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TileStoreTest {
+
+    private final int defaultMinPixels = TileStore.minPixels;
+
+    @AfterEach
+    void restoreMinPixels() {
+        TileStore.minPixels = defaultMinPixels;
+    }
+
+    private static byte[][] createMap(int components, int size, long seed) {
+        Random random = new Random(seed);
+        byte[][] map = new byte[components][size];
+        for (byte[] component : map) {
+            random.nextBytes(component);
+        }
+        return map;
+    }
+
+    private static byte[] write(ImageMap image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            image.writeToStream(out, new Scene());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Check that two images give the same results wherever they are sampled.
+     */
+    private static void checkSameImage(ImageMap expected, ImageMap actual) {
+        RGBColor expectedColor = new RGBColor(), actualColor = new RGBColor();
+        Vec2 expectedGrad = new Vec2(), actualGrad = new Vec2();
+        for (double size : new double[]{0.0, 0.002, 0.01, 0.05, 0.2, 1.0}) {
+            for (double x = 0.01; x < 1.0; x += 0.047) {
+                double y = (x * 7.0) % 1.0;
+                expected.getColor(expectedColor, true, false, x, y, size, size);
+                actual.getColor(actualColor, true, false, x, y, size, size);
+                Assertions.assertEquals(expectedColor, actualColor);
+                Assertions.assertEquals(expected.getComponent(1, false, true, x, y, size, size), actual.getComponent(1, false, true, x, y, size, size));
+                expected.getGradient(expectedGrad, 0, true, true, x, y, size, size);
+                actual.getGradient(actualGrad, 0, true, true, x, y, size, size);
+                Assertions.assertEquals(expectedGrad.x, actualGrad.x, 0.0);
+                Assertions.assertEquals(expectedGrad.y, actualGrad.y, 0.0);
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertEquals(expected.getAverageComponent(i), actual.getAverageComponent(i));
+        }
+    }
+
+    @Test
+    void testReadTiles() throws IOException {
+        int[] width = {150, 75};
+        int[] height = {70, 35};
+        byte[][] map0 = createMap(3, 150 * 70, 1);
+        byte[][] map1 = createMap(3, 75 * 35, 2);
+        TileStore store = new TileStore(3, width, height);
+        store.putLevel(0, map0);
+        store.putLevel(1, map1);
+        Assertions.assertArrayEquals(map0, store.readLevel(0));
+        Assertions.assertArrayEquals(map1, store.readLevel(1));
+
+        // Pixels which are in different tiles are copied into a separate array.
+
+        int[] ind = new int[4];
+        int[][] corners = {{10, 20, 11, 21}, {63, 5, 64, 6}, {149, 63, 0, 64}, {70, 69, 71, 0}};
+        for (int[] c : corners) {
+            byte[][] pixels = store.getPixels(0, c[0], c[1], c[2], c[3], ind);
+            Assertions.assertEquals(map0[2][c[0] + c[1] * 150], pixels[2][ind[0]]);
+            Assertions.assertEquals(map0[2][c[0] + c[3] * 150], pixels[2][ind[1]]);
+            Assertions.assertEquals(map0[2][c[2] + c[1] * 150], pixels[2][ind[2]]);
+            Assertions.assertEquals(map0[2][c[2] + c[3] * 150], pixels[2][ind[3]]);
+        }
+    }
+
+    @Test
+    void testReleaseRemovesTiles() throws IOException {
+        int[] width = {200};
+        int[] height = {200};
+        byte[][] map = createMap(2, 200 * 200, 5);
+        TileStore store = new TileStore(2, width, height);
+        store.putLevel(0, map);
+        Assertions.assertArrayEquals(map, store.readLevel(0));
+        long loaded = TileStore.getResidentSize();
+        store.release();
+
+        // Other stores may be collected at any time, so their tiles can only make the size smaller.
+
+        Assertions.assertTrue(TileStore.getResidentSize() <= loaded - 16 * 2 * TileStore.TILE_SIZE * TileStore.TILE_SIZE);
+
+        // The store can still be used after its tiles are released.
+
+        Assertions.assertArrayEquals(map, store.readLevel(0));
+    }
+
+    @Test
+    void testUnusedStoreIsCollected() throws Exception {
+        int[] width = {100};
+        int[] height = {100};
+        byte[][] map = createMap(1, 100 * 100, 6);
+        TileStore store = new TileStore(1, width, height);
+        store.putLevel(0, map);
+        Assertions.assertArrayEquals(map, store.readLevel(0));
+        long released = TileStore.getResidentSize() - 4 * TileStore.TILE_SIZE * TileStore.TILE_SIZE;
+        WeakReference<TileStore> ref = new WeakReference<>(store);
+        store = null;
+        for (int i = 0; i < 100 && (ref.get() != null || TileStore.getResidentSize() > released); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertNull(ref.get());
+        Assertions.assertTrue(TileStore.getResidentSize() <= released);
+    }
+
+    @Test
+    void testTiledImage() throws Exception {
+        BufferedImage source = new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(3);
+        for (int i = 0; i < 300; i++) {
+            for (int j = 0; j < 200; j++) {
+                source.setRGB(i, j, random.nextInt());
+            }
+        }
+        MIPMappedImage heap = new MIPMappedImage(source);
+        byte[] data = write(heap);
+        TileStore.minPixels = 100 * 100;
+        MIPMappedImage tiled = new MIPMappedImage(source);
+        MIPMappedImage loaded = new MIPMappedImage(new DataInputStream(new ByteArrayInputStream(data)));
+        checkSameImage(heap, tiled);
+        checkSameImage(heap, loaded);
+        Assertions.assertEquals(4, loaded.getComponentCount());
+        Assertions.assertArrayEquals(data, write(tiled));
+    }
+
+    @Test
+    void testTiledHDRImage() throws IOException {
+        int w = 257, h = 130;
+        byte[][] map = createMap(4, w * h, 4);
+        HDRImage heap = new HDRImage(map[0].clone(), map[1].clone(), map[2].clone(), map[3].clone(), w, h);
+        TileStore.minPixels = 100 * 100;
+        HDRImage tiled = new HDRImage(map[0], map[1], map[2], map[3], w, h);
+        checkSameImage(heap, tiled);
+        Assertions.assertArrayEquals(heap.getBytes(), tiled.getBytes());
+        Assertions.assertArrayEquals(write(heap), write(tiled));
+    }
+}
@@ -0,0 +1,59 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.math;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class HalfFloatTest {
+
+    @Test
+    void testEveryValueRoundTrips() {
+        for (int i = 0; i < 65536; i++) {
+            float f = HalfFloat.toFloat((short) i);
+            if (Float.isNaN(f)) {
+                Assertions.assertTrue(Float.isNaN(HalfFloat.toFloat(HalfFloat.fromFloat(f))));
+            } else {
+                Assertions.assertEquals((short) i, HalfFloat.fromFloat(f), "Value " + f);
+            }
+        }
+    }
+
+    @Test
+    void testKnownValues() {
+        Assertions.assertEquals((short) 0x3C00, HalfFloat.fromFloat(1.0f));
+        Assertions.assertEquals((short) 0xC000, HalfFloat.fromFloat(-2.0f));
+        Assertions.assertEquals((short) 0x7BFF, HalfFloat.fromFloat(65504.0f));
+        Assertions.assertEquals((short) 0x0001, HalfFloat.fromFloat(0x1p-24f));
+        Assertions.assertEquals((short) 0x8000, HalfFloat.fromFloat(-0.0f));
+        Assertions.assertEquals(0.333251953125f, HalfFloat.toFloat(HalfFloat.fromFloat(1.0f / 3.0f)));
+    }
+
+    @Test
+    void testRounding() {
+        // Halfway between two values rounds to the one which is even.
+
+        Assertions.assertEquals((short) 0x3C00, HalfFloat.fromFloat(1.0f + 0x1p-11f));
+        Assertions.assertEquals((short) 0x3C02, HalfFloat.fromFloat(1.0f + 3 * 0x1p-11f));
+        Assertions.assertEquals((short) 0x3C01, HalfFloat.fromFloat(1.0f + 0x1p-11f + 0x1p-20f));
+        Assertions.assertEquals((short) 0x0000, HalfFloat.fromFloat(0x1p-25f));
+        Assertions.assertEquals((short) 0x0001, HalfFloat.fromFloat(0x1p-25f + 0x1p-35f));
+    }
+
+    @Test
+    void testOutOfRange() {
+        Assertions.assertEquals(Float.POSITIVE_INFINITY, HalfFloat.toFloat(HalfFloat.fromFloat(65520.0f)));
+        Assertions.assertEquals(Float.NEGATIVE_INFINITY, HalfFloat.toFloat(HalfFloat.fromFloat(-1e10f)));
+        Assertions.assertEquals(Float.POSITIVE_INFINITY, HalfFloat.toFloat(HalfFloat.fromFloat(Float.POSITIVE_INFINITY)));
+        Assertions.assertTrue(Float.isNaN(HalfFloat.toFloat(HalfFloat.fromFloat(Float.NaN))));
+        Assertions.assertEquals(0.0f, HalfFloat.toFloat(HalfFloat.fromFloat(1e-10f)));
+    }
+}
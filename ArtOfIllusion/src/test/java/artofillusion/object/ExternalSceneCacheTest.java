@@ -0,0 +1,117 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.object;
+
+import artofillusion.Scene;
+import artofillusion.math.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExternalSceneCacheTest {
+
+    @TempDir
+    Path folder;
+
+    private static void writeScene(File file, int objects) throws IOException {
+        Scene scene = new Scene();
+        for (int i = 0; i < objects; i++) {
+            scene.addObject(new ObjectInfo(new Cube(1.0, 1.0, 1.0), new CoordinateSystem(new Vec3(i, 0, 0), Vec3.vz(), Vec3.vy()), "Cube " + i), null);
+        }
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+            scene.writeToStream(out);
+        }
+    }
+
+    @Test
+    void testSceneIsShared() throws IOException {
+        File file = folder.resolve("library.aoi").toFile();
+        writeScene(file, 2);
+        ExternalSceneCache.Reference first = ExternalSceneCache.acquire(file);
+        ExternalSceneCache.Reference second = ExternalSceneCache.acquire(new File(folder.toFile(), "./library.aoi"));
+        Scene scene = first.getContents().scene();
+        Assertions.assertNotNull(scene);
+        Assertions.assertEquals(2, scene.getNumObjects());
+        Assertions.assertSame(scene, second.getContents().scene());
+        first.release();
+        second.release();
+
+        // An unused scene stays cached.
+
+        ExternalSceneCache.Reference third = ExternalSceneCache.acquire(file);
+        Assertions.assertSame(scene, third.getContents().scene());
+        third.release();
+    }
+
+    @Test
+    void testChangedFileIsReloaded() throws IOException {
+        File file = folder.resolve("changing.aoi").toFile();
+        writeScene(file, 1);
+        ExternalSceneCache.Reference first = ExternalSceneCache.acquire(file);
+        long modified = file.lastModified();
+        writeScene(file, 3);
+        Assertions.assertTrue(file.setLastModified(modified + 2000));
+        ExternalSceneCache.Reference second = ExternalSceneCache.acquire(file);
+        Assertions.assertEquals(3, second.getContents().scene().getNumObjects());
+
+        // The old version stays available to objects which are still using it.
+
+        Assertions.assertEquals(1, first.getContents().scene().getNumObjects());
+        first.release();
+        second.release();
+    }
+
+    @Test
+    void testRetainedReference() throws IOException {
+        File file = folder.resolve("retained.aoi").toFile();
+        writeScene(file, 1);
+        ExternalSceneCache.Reference first = ExternalSceneCache.acquire(file);
+        ExternalSceneCache.Reference copy = first.retain();
+        first.release();
+        first.release();
+        Assertions.assertSame(first.getContents(), copy.getContents());
+        copy.release();
+    }
+
+    @Test
+    void testGeometryIsCopiedOnlyWhenChanged() throws IOException {
+        File file = folder.resolve("geometry.aoi").toFile();
+        writeScene(file, 1);
+        ExternalObject first = new ExternalObject(file, "Cube 0");
+        first.reloadObject();
+        ExternalObject second = new ExternalObject(file, "Cube 0");
+        second.reloadObject();
+        Assertions.assertNull(first.getLoadingError());
+        Object3D cached = first.getWrappedObject();
+        Assertions.assertSame(cached, second.getWrappedObject());
+        ExternalObject copy = first.duplicate();
+        Assertions.assertSame(cached, copy.getWrappedObject());
+
+        // Changing one object copies its geometry, and leaves the others and the cached scene alone.
+
+        first.setParameterValues(first.getParameterValues());
+        Assertions.assertNotSame(cached, first.getWrappedObject());
+        Assertions.assertSame(cached, second.getWrappedObject());
+        Assertions.assertSame(cached, copy.getWrappedObject());
+        ExternalObject third = new ExternalObject(file, "Cube 0");
+        third.reloadObject();
+        Assertions.assertSame(cached, third.getWrappedObject());
+    }
+
+    @Test
+    void testMissingFile() {
+        File file = folder.resolve("missing.aoi").toFile();
+        Assertions.assertThrows(IOException.class, () -> ExternalSceneCache.acquire(file));
+    }
+}
@@ -0,0 +1,121 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.object;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.texture.*;
+import java.lang.reflect.Field;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+import org.mockito.Mockito;
+
+class ObjectInfoPreviewTest {
+
+    private static final ApplicationPreferences preferences = Mockito.mock(ApplicationPreferences.class);
+
+    @BeforeAll
+    public static void setUpClass() throws Exception {
+        Mockito.when(preferences.getInteractiveSurfaceError()).thenReturn(0.01);
+        Field pf = ArtOfIllusion.class.getDeclaredField("preferences");
+        pf.setAccessible(true);
+        pf.set(null, preferences);
+        pf.setAccessible(false);
+    }
+
+    /**
+     * A cube whose preview mesh is slow to build. Copies of it are ordinary cubes.
+     */
+    private static class SlowCube extends Cube {
+
+        SlowCube() {
+            super(1.0, 1.0, 1.0);
+        }
+
+        @Override
+        public RenderingMesh getRenderingMesh(double tol, boolean interactive, ObjectInfo info) {
+            try {
+                Thread.sleep(30);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return super.getRenderingMesh(tol, interactive, info);
+        }
+    }
+
+    @Test
+    void testStaleThenFreshPreview() throws InterruptedException {
+        SlowCube cube = new SlowCube();
+        Texture tex = new UniformTexture();
+        cube.setTexture(tex, tex.getDefaultMapping(cube));
+        ObjectInfo info = new ObjectInfo(cube, new CoordinateSystem(new Vec3(), Vec3.vz(), Vec3.vy()), "Cube");
+        CountDownLatch ready = new CountDownLatch(1);
+
+        // The first mesh is built immediately, and found to be slow.
+
+        RenderingMesh first = info.getPreviewMesh(0, ready::countDown);
+        Assertions.assertNotNull(first);
+        Assertions.assertEquals(0.5, info.getPreviewBounds().maxx, 0.0);
+
+        // After the object changes, its bounds are exact, but the preview still shows the old mesh.
+
+        cube.setSize(4.0, 4.0, 4.0);
+        info.clearCachedMeshes();
+        Assertions.assertEquals(2.0, info.getBounds().maxx, 0.0);
+        Assertions.assertEquals(0.5, info.getPreviewBounds().maxx, 0.0);
+        Assertions.assertSame(first, info.getPreviewMesh(0, ready::countDown));
+        Assertions.assertNotNull(info.getPreviewMesh(1, ready::countDown));
+        Assertions.assertEquals(2.0, info.getBounds().maxx, 0.0);
+
+        // Once the new mesh has been built, it is shown with its own bounds.
+
+        Assertions.assertTrue(ready.await(10, TimeUnit.SECONDS));
+        RenderingMesh fresh = info.getPreviewMesh(0, ready::countDown);
+        Assertions.assertNotSame(first, fresh);
+        Assertions.assertEquals(2.0, Math.abs(fresh.vert[0].x), 0.0);
+        Assertions.assertEquals(2.0, info.getPreviewBounds().maxx, 0.0);
+        Assertions.assertEquals(2.0, info.getBounds().maxx, 0.0);
+    }
+
+    @Test
+    void testBackgroundMeshIsCached() throws InterruptedException {
+        SlowCube cube = new SlowCube();
+        Texture tex = new UniformTexture();
+        cube.setTexture(tex, tex.getDefaultMapping(cube));
+        ObjectInfo info = new ObjectInfo(cube, new CoordinateSystem(new Vec3(), Vec3.vz(), Vec3.vy()), "Cube");
+        CountDownLatch ready = new CountDownLatch(1);
+        info.getPreviewMesh(0, ready::countDown);
+        cube.setSize(2.0, 2.0, 2.0);
+        info.clearCachedMeshes();
+        info.getPreviewMesh(0, ready::countDown);
+        long version = info.getVersion();
+        Assertions.assertTrue(ready.await(10, TimeUnit.SECONDS));
+
+        // The mesh is up to date, so it is cached rather than built again, and the object's
+        // version changes so views know its appearance has changed.
+
+        RenderingMesh mesh = info.getPreviewMesh(0, ready::countDown);
+        Assertions.assertEquals(1.0, Math.abs(mesh.vert[0].x), 0.0);
+        Assertions.assertSame(mesh, info.getPreviewMesh(0, null));
+        Assertions.assertNotEquals(version, info.getVersion());
+    }
+
+    @Test
+    void testBoundsAreExactWithoutPreview() {
+        Cube cube = new Cube(1.0, 1.0, 1.0);
+        ObjectInfo info = new ObjectInfo(cube, new CoordinateSystem(new Vec3(), Vec3.vz(), Vec3.vy()), "Cube");
+        Assertions.assertEquals(0.5, info.getBounds().maxx, 0.0);
+        cube.setSize(6.0, 6.0, 6.0);
+        info.clearCachedMeshes();
+        Assertions.assertEquals(3.0, info.getBounds().maxx, 0.0);
+        Assertions.assertEquals(3.0, info.getPreviewBounds().maxx, 0.0);
+    }
+}
@@ -0,0 +1,69 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.view;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import artofillusion.texture.*;
+import java.awt.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TextureBakerTest {
+
+    private static RenderingMesh createMesh(Texture texture) {
+        Cube cube = new Cube(1.0, 2.0, 3.0);
+        cube.setTexture(texture, texture.getDefaultMapping(cube));
+        return cube.getRenderingMesh(0.1, true, new ObjectInfo(cube, new CoordinateSystem(), "Cube"));
+    }
+
+    @Test
+    void testChooseResolution() {
+        Assertions.assertEquals(TextureBaker.MIN_RESOLUTION, TextureBaker.chooseResolution(new Rectangle(0, 0, 10, 10)));
+        Assertions.assertEquals(256, TextureBaker.chooseResolution(new Rectangle(0, 0, 500, 300)));
+        Assertions.assertEquals(TextureBaker.MAX_RESOLUTION, TextureBaker.chooseResolution(new Rectangle(0, 0, 5000, 3000)));
+    }
+
+    @Test
+    void testUniformTextureIsNotBaked() {
+        Assertions.assertNull(TextureBaker.getBakedTexture(createMesh(new UniformTexture()), 0.0, 64));
+    }
+
+    @Test
+    void testBakedTextureMatchesTexture() throws InterruptedException {
+        ProceduralTexture2D texture = new ProceduralTexture2D();
+        RenderingMesh mesh = createMesh(texture);
+        TextureBaker.BakedTexture baked = null;
+        for (int i = 0; i < 1000 && baked == null; i++) {
+            baked = TextureBaker.getBakedTexture(mesh, 0.0, 64);
+            if (baked == null) {
+                Thread.sleep(10);
+            }
+        }
+        Assertions.assertNotNull(baked);
+        TextureSpec expected = new TextureSpec(), actual = new TextureSpec();
+        for (RenderingTriangle tri : mesh.triangle) {
+            Vec2 coords = tri.getTextureCoordinates(0.2, 0.3, 0.5);
+            texture.getTextureSpec(expected, coords.x, coords.y, 0.0, 0.0, 1.0, 0.0, new double[0]);
+            baked.getTextureSpec(actual, coords.x, coords.y);
+            Assertions.assertEquals(expected.diffuse.getRed(), actual.diffuse.getRed(), 0.01);
+            Assertions.assertEquals(expected.diffuse.getBlue(), actual.diffuse.getBlue(), 0.01);
+            Assertions.assertEquals(expected.emissive.getGreen(), actual.emissive.getGreen(), 0.01);
+            Assertions.assertEquals(expected.roughness, actual.roughness, 0.01);
+        }
+
+        // Editing the texture discards the baked version.
+
+        TextureBaker.invalidate(texture);
+        Assertions.assertNull(TextureBaker.getBakedTexture(mesh, 0.0, 64));
+    }
+}
@@ -0,0 +1,106 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.view;
+
+import artofillusion.math.*;
+import artofillusion.view.TriangleRasterizer.TriangleBatch;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class TriangleRasterizerTest {
+
+    private static final int WIDTH = 173;
+    private static final int HEIGHT = 131;
+
+    /**
+     * Create a batch of overlapping triangles of every kind, some of which extend outside the image.
+     */
+    private static TriangleBatch createBatch(Random random, int count) {
+        TriangleBatch batch = new TriangleBatch();
+        for (int i = 0; i < count; i++) {
+            Vec2 p1 = randomPoint(random), p2 = randomPoint(random), p3 = randomPoint(random);
+            double z1 = random.nextDouble() * 10.0, z2 = random.nextDouble() * 10.0, z3 = random.nextDouble() * 10.0;
+            int mode = random.nextInt(4);
+            if (mode == TriangleRasterizer.MODE_SMOOTH) {
+                batch.addSmooth(p1, z1, p2, z2, p3, z3, 0.5, randomColor(random), randomColor(random), randomColor(random));
+            } else {
+                batch.addFlat(p1, z1, p2, z2, p3, z3, 0.5, mode, randomColor(random));
+            }
+        }
+        return batch;
+    }
+
+    private static Vec2 randomPoint(Random random) {
+        return new Vec2(random.nextDouble() * (WIDTH + 40) - 20, random.nextDouble() * (HEIGHT + 40) - 20);
+    }
+
+    private static RGBColor randomColor(Random random) {
+        return new RGBColor(random.nextFloat(), random.nextFloat(), random.nextFloat());
+    }
+
+    private static int[] createImage() {
+        int[] pixel = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixel, 0xFF808080);
+        return pixel;
+    }
+
+    private static int[] createDepth() {
+        int[] zbuffer = new int[WIDTH * HEIGHT];
+        Arrays.fill(zbuffer, Integer.MAX_VALUE);
+        return zbuffer;
+    }
+
+    @Test
+    void testBandsMatchSerialFill() {
+        Random random = new Random(7);
+        TriangleBatch batch = createBatch(random, 500);
+        int[] serialPixel = createImage(), serialZ = createDepth();
+        new TriangleRasterizer(serialPixel, serialZ, WIDTH).fill(batch, 0, HEIGHT);
+        int[] bandPixel = createImage(), bandZ = createDepth();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            new TriangleRasterizer(bandPixel, bandZ, WIDTH).fill(batch, 0, HEIGHT, executor).join();
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertArrayEquals(serialPixel, bandPixel);
+        Assertions.assertArrayEquals(serialZ, bandZ);
+        Assertions.assertNotEquals(0xFF808080, serialPixel[WIDTH * (HEIGHT / 2) + WIDTH / 2]);
+    }
+
+    @Test
+    void testFillIsLimitedToRows() {
+        Random random = new Random(11);
+        TriangleBatch batch = createBatch(random, 200);
+        int[] fullPixel = createImage(), fullZ = createDepth();
+        new TriangleRasterizer(fullPixel, fullZ, WIDTH).fill(batch, 0, HEIGHT);
+        int[] partPixel = createImage(), partZ = createDepth();
+        new TriangleRasterizer(partPixel, partZ, WIDTH).fill(batch, 40, 90, Runnable::run).join();
+        int[] blank = createImage();
+        for (int y = 0; y < HEIGHT; y++) {
+            int[] expected = (y >= 40 && y < 90 ? fullPixel : blank);
+            Assertions.assertArrayEquals(Arrays.copyOfRange(expected, y * WIDTH, (y + 1) * WIDTH), Arrays.copyOfRange(partPixel, y * WIDTH, (y + 1) * WIDTH));
+        }
+    }
+
+    @Test
+    void testClearedBatchIsEmpty() {
+        TriangleBatch batch = createBatch(new Random(3), 10);
+        batch.clear();
+        int[] pixel = createImage();
+        new TriangleRasterizer(pixel, createDepth(), WIDTH).fill(batch, 0, HEIGHT, Runnable::run).join();
+        Assertions.assertArrayEquals(createImage(), pixel);
+    }
+}
@@ -0,0 +1,62 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.view;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import artofillusion.texture.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class VertexShaderTest {
+
+    @Test
+    void testSelectionIsCopied() {
+        RGBColor red = new RGBColor(1.0f, 0.0f, 0.0f), blue = new RGBColor(0.0f, 0.0f, 1.0f);
+        boolean[] selected = {true, false};
+        VertexShader shader = new SelectionVertexShader(red, new ConstantVertexShader(blue), new int[]{0, 1}, selected);
+        selected[0] = false;
+        selected[1] = true;
+        RGBColor color = new RGBColor();
+        shader.getColor(0, 0, color);
+        Assertions.assertEquals(red, color);
+        shader.getColor(1, 0, color);
+        Assertions.assertEquals(blue, color);
+    }
+
+    @Test
+    void testOptimizedShadersKeepTheirViewDirection() {
+        Cube cube = new Cube(1.0, 2.0, 3.0);
+        Texture texture = new ProceduralTexture2D();
+        cube.setTexture(texture, texture.getDefaultMapping(cube));
+        RenderingMesh mesh = cube.getRenderingMesh(0.1, true, new ObjectInfo(cube, new CoordinateSystem(), "Cube"));
+        Vec3 viewDir = Vec3.vz();
+        VertexShader first = new TexturedVertexShader(mesh, cube, 0.0, viewDir).optimize();
+        RGBColor[] expected = new RGBColor[mesh.triangle.length];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = new RGBColor();
+            first.getColor(i, 0, expected[i]);
+        }
+
+        // Neither changing the vector nor optimizing a shader for another direction affects the first shader.
+
+        viewDir.set(1.0, 0.0, 0.0);
+        VertexShader second = new TexturedVertexShader(mesh, cube, 0.0, viewDir).optimize();
+        Assertions.assertNotSame(first, second);
+        RGBColor color = new RGBColor();
+        for (int i = 0; i < expected.length; i++) {
+            second.getColor(i, 0, color);
+            first.getColor(i, 0, color);
+            Assertions.assertEquals(expected[i], color);
+        }
+    }
+}
@@ -113,7 +113,8 @@ public class MeshPreviewer extends CustomWidget implements RenderListener {
         Texture tex = theScene.getDefaultTexture();
         tri.setTexture(tex, tex.getDefaultMapping(tri));
         info = obj;
-        objectCoords = info.coords = new CoordinateSystem();
+        objectCoords = new CoordinateSystem();
+        info.setCoords(objectCoords);
         theScene.addObject(info, null);
         setPreferredSize(new Dimension(width, height));
         addEventLink(MousePressedEvent.class, this, "mousePressed");
@@ -462,7 +463,7 @@ public class MeshPreviewer extends CustomWidget implements RenderListener {
             pos = m.times(pos);
             c = new CoordinateSystem(pos, 0, 0, 0);
             info = theScene.getObject(spheresIndex + i);
-            info.coords = c;
+            info.setCoords(c);
         }
     }
 
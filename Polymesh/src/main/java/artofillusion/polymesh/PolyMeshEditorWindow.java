@@ -3095,6 +3095,7 @@ public class PolyMeshEditorWindow extends MeshEditorWindow implements EditingWin
         setObject(obj);
         hideVert = new boolean[mesh.getVertices().length];
         for (var viewerCanvas : theView) {
+            ((PolyMeshViewer) viewerCanvas).screenPositionsChanged();
             if (getSelectionMode() == MeshEditController.POINT_MODE && selected.length != obj.getVertices().length) {
                 ((PolyMeshViewer) viewerCanvas).visible = new boolean[obj.getVertices().length];
             }
@@ -3917,7 +3918,7 @@ public class PolyMeshEditorWindow extends MeshEditorWindow implements EditingWin
         PolyMesh theMesh = (PolyMesh) objInfo.getGeometry();
         PolyMesh mesh =  ((PolyMesh) objInfo.getGeometry()).duplicate();
         ObjectInfo info = objInfo.duplicate();
-        info.coords = new CoordinateSystem();
+        info.setCoords(new CoordinateSystem());
         int[] vertTable;
         vertTable = mesh.openSeams();
         int vertCount = mesh.getVertices().length;
@@ -3963,7 +3964,7 @@ public class PolyMeshEditorWindow extends MeshEditorWindow implements EditingWin
     private void doEditMapping() {
         PolyMesh theMesh = (PolyMesh) objInfo.object;
         ObjectInfo info = objInfo.duplicate();
-        info.coords = new CoordinateSystem();
+        info.setCoords(new CoordinateSystem());
         UVMappingData data = theMesh.getMappingData();
         if (data == null) {
             return;
@@ -4061,7 +4062,7 @@ public class PolyMeshEditorWindow extends MeshEditorWindow implements EditingWin
             }
             boolean b = ((Boolean) closed.get(i));
             Curve c = new Curve(v, s, mesh.getSmoothingMethod(), b);
-            ((LayoutWindow) parentWindow).addObject(c, objInfo.coords, ("PMCurve " + i), null);
+            ((LayoutWindow) parentWindow).addObject(c, objInfo.getCoords(), ("PMCurve " + i), null);
         }
         ((LayoutWindow) parentWindow).repaint();
     }
@@ -36,6 +36,7 @@ import artofillusion.view.FlatVertexShader;
 import artofillusion.view.ParameterVertexShader;
 import artofillusion.view.SelectionVertexShader;
 import artofillusion.view.SmoothVertexShader;
+import artofillusion.view.TextureBaker;
 import artofillusion.view.TexturedVertexShader;
 import artofillusion.view.VertexShader;
 import buoy.event.KeyPressedEvent;
@@ -48,6 +49,7 @@ import lombok.Getter;
 import java.awt.Color;
 import java.awt.Point;
 import java.awt.Polygon;
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -168,9 +170,49 @@ public class PolyMeshViewer extends MeshViewer {
                 visible[i] = (!hideVert[i] && screenZ[i] > clipDist);
             }
         }
+        screenPositionsChanged();
         super.updateImage();
     }
 
+    @Override
+    protected int[] findElementBounds(int mode) {
+        PolyMesh mesh = (PolyMesh) getController().getObject().getObject();
+        boolean mirror = (mesh.getMirrorState() != PolyMesh.NO_MIRROR);
+        PolyMesh viewMesh = (mirror ? mesh.getMirroredMesh() : mesh);
+        Wedge[] ed = viewMesh.getEdges();
+        Wface[] fc = viewMesh.getFaces();
+        int vertices = (mirror ? mesh.getInvMirroredVertices().length : viewMesh.getVertices().length);
+        if (screenVert == null || screenVert.length != vertices) {
+            // The mesh has changed since the screen positions were calculated.
+            return null;
+        }
+        int[] bounds;
+        if (mode == MeshEditController.POINT_MODE) {
+            bounds = new int[4 * screenVert.length];
+            for (int i = 0; i < screenVert.length; i++) {
+                setElementBounds(bounds, i, screenVert[i]);
+            }
+        } else if (mode == MeshEditController.EDGE_MODE) {
+            int count = (mirror ? mesh.invMirroredEdges.length : ed.length / 2);
+            bounds = new int[4 * count];
+            for (int i = 0; i < count; i++) {
+                setElementBounds(bounds, i, screenVert[ed[i].vertex], screenVert[ed[ed[i].hedge].vertex]);
+            }
+        } else {
+            int count = (mirror ? mesh.invMirroredFaces.length : mesh.getFaces().length);
+            bounds = new int[4 * count];
+            for (int i = 0; i < count; i++) {
+                int[] vf = viewMesh.getFaceVertices(fc[i]);
+                Point[] p = new Point[vf.length];
+                for (int j = 0; j < vf.length; j++) {
+                    p[j] = screenVert[vf[j]];
+                }
+                setElementBounds(bounds, i, p);
+            }
+        }
+        return bounds;
+    }
+
     @Override
     protected void drawObject() {
         // Now draw the object.
@@ -257,7 +299,7 @@ public class PolyMeshViewer extends MeshViewer {
             } else if (renderMode == RENDER_SMOOTH) {
                 shader = new SmoothVertexShader(mesh, surfaceRGBColor, viewDir);
             } else {
-                shader = new TexturedVertexShader(mesh, objInfo.getObject(), 0.0, viewDir).optimize();
+                shader = new TexturedVertexShader(mesh, objInfo.getObject(), 0.0, viewDir, TextureBaker.chooseResolution(getBounds())).optimize();
             }
             if (faceIndex != null && controller.getSelectionMode() == PolyMeshEditorWindow.FACE_MODE) {
                 shader = new SelectionVertexShader(new RGBColor(1.0, 0.4, 1.0), shader, faceIndex, controller.getSelection());
@@ -845,8 +887,13 @@ public class PolyMeshViewer extends MeshViewer {
         if (selectBounds != null) {
             boolean newSel = !e.isControlDown();
             int ref;
+
+            // The index of the view mesh can only be used directly when it is not mirrored.
+            int count = (controller.getSelectionMode() == MeshEditController.FACE_MODE ? trueFaces.length : selected.length);
+            int[] candidates = (mirror ? null : findElements(controller.getSelectionMode(), selectBounds.getBounds(), count));
             if (controller.getSelectionMode() == MeshEditController.POINT_MODE) {
-                for (i = 0; i < selected.length; i++) {
+                for (int k = 0; k < (candidates == null ? selected.length : candidates.length); k++) {
+                    i = (candidates == null ? k : candidates[k]);
                     if (mirror) {
                         ref = vertTable[i];
                     } else {
@@ -858,7 +905,8 @@ public class PolyMeshViewer extends MeshViewer {
                 }
             } else if (controller.getSelectionMode() == MeshEditController.EDGE_MODE) {
                 if (tolerant) {
-                    for (i = 0; i < selected.length; i++) {
+                    for (int k = 0; k < (candidates == null ? selected.length : candidates.length); k++) {
+                        i = (candidates == null ? k : candidates[k]);
                         if (mirror) {
                             ref = edgeTable[i];
                         } else {
@@ -873,7 +921,8 @@ public class PolyMeshViewer extends MeshViewer {
                         }
                     }
                 } else {
-                    for (i = 0; i < selected.length; i++) {
+                    for (int k = 0; k < (candidates == null ? selected.length : candidates.length); k++) {
+                        i = (candidates == null ? k : candidates[k]);
                         if (mirror) {
                             ref = edgeTable[i];
                         } else {
@@ -889,7 +938,8 @@ public class PolyMeshViewer extends MeshViewer {
                 }
             } else {
                 if (tolerant) {
-                    for (i = 0; i < trueFaces.length; i++) {
+                    for (int k = 0; k < (candidates == null ? trueFaces.length : candidates.length); k++) {
+                        i = (candidates == null ? k : candidates[k]);
                         if (hideFace == null || !hideFace[i]) {
                             if (mirror) {
                                 ref = faceTable[i];
@@ -910,7 +960,8 @@ public class PolyMeshViewer extends MeshViewer {
                         }
                     }
                 } else {
-                    for (i = 0; i < trueFaces.length; i++) {
+                    for (int k = 0; k < (candidates == null ? trueFaces.length : candidates.length); k++) {
+                        i = (candidates == null ? k : candidates[k]);
                         if (hideFace == null || !hideFace[i]) {
                             if (mirror) {
                                 ref = faceTable[i];
@@ -1052,8 +1103,11 @@ public class PolyMeshViewer extends MeshViewer {
         double maxDistance = Double.MAX_VALUE;
         boolean[] selected = controller.getSelection();
         boolean[] hideFace = (controller instanceof PolyMeshEditorWindow ? ((PolyMeshEditorWindow) controller).hideFace : new boolean[trueFaces.length]);
+        int margin = handleSize / 2 + loose;
+        Rectangle clickRegion = new Rectangle(pos.x - margin, pos.y - margin, 2 * margin, 2 * margin);
         if (controller.getSelectionMode() == MeshEditController.POINT_MODE) {
-            for (i = 0; i < screenVert.length; i++) {
+            for (int element : findElements(MeshEditController.POINT_MODE, clickRegion, screenVert.length)) {
+                i = element;
                 if (mirror) {
                     ref = invVertTable[i];
                 } else {
@@ -1098,7 +1152,9 @@ public class PolyMeshViewer extends MeshViewer {
             }
             int vv1;
             int vv2;
-            for (i = 0; i < loop; i++) {
+            int[] candidates = (projectedEdge == null ? findElements(MeshEditController.EDGE_MODE, clickRegion, loop) : null);
+            for (int k = 0; k < (candidates == null ? loop : candidates.length); k++) {
+                i = (candidates == null ? k : candidates[k]);
                 int orig;
                 vv1 = vv2 = 0;
                 if (projectedEdge == null) {
@@ -1211,13 +1267,8 @@ public class PolyMeshViewer extends MeshViewer {
         } else {
             int vv;
             Polygon polygon;
-            int loop;
-            if (mirror) {
-                loop = invFaceTable.length;
-            } else {
-                loop = trueFaces.length;
-            }
-            for (i = 0; i < loop; i++) {
+            for (int element : findElements(MeshEditController.FACE_MODE, new Rectangle(pos), mirror ? invFaceTable.length : trueFaces.length)) {
+                i = element;
                 if (mirror) {
                     ref = invFaceTable[i];
                 } else {
@@ -0,0 +1,304 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raster;
+
+import artofillusion.math.*;
+import java.util.*;
+
+/**
+ * A FragmentBuffer stores the fragments (pieces of rasterized polygons covering a single pixel) for
+ * every pixel of an image. Each fragment defines a color by which anything behind it should be
+ * multiplied, and a color which should be added to anything behind it. The fragments for a pixel
+ * form a list sorted by depth, which ends with the first opaque fragment or the background.
+ * <p>
+ * Rather than allocating an object for every fragment, the fragments are packed into primitive
+ * arrays. The image is divided into square tiles, and the fragments for each tile are stored in a
+ * separate {@link Slab}, with fragments identified by their index within the slab. A thread which
+ * adds fragments to a tile must not share it with any other thread at the same time. The slabs are
+ * kept when the buffer is cleared, so rendering the next image allocates no memory at all unless
+ * it needs more fragments than the previous one.
+ */
+public class FragmentBuffer {
+
+    /**
+     * The index which represents the background. It is an opaque fragment at infinite depth.
+     */
+    public static final int BACKGROUND = -1;
+
+    private static final byte OPAQUE = 1;
+    private static final byte ENTERING = 2;
+
+    private final int width, height, tileSize, tilesX;
+    private final int[] first;
+    private final float[] opaqueDepth;
+    private final Slab[] slabs;
+
+    /**
+     * Create a FragmentBuffer.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param tileSize the width and height of the tiles which each have their own slab
+     */
+    public FragmentBuffer(int width, int height, int tileSize) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        first = new int[width * height];
+        opaqueDepth = new float[width * height];
+        slabs = new Slab[tilesX * tilesY];
+        for (int i = 0; i < slabs.length; i++) {
+            slabs[i] = new Slab();
+        }
+        clear();
+    }
+
+    /**
+     * Get whether this buffer can be reused for an image of the specified size.
+     */
+    public boolean isCompatible(int width, int height, int tileSize) {
+        return (this.width == width && this.height == height && this.tileSize == tileSize);
+    }
+
+    /**
+     * Remove all fragments, leaving only the background at every pixel.
+     */
+    public void clear() {
+        Arrays.fill(first, BACKGROUND);
+        Arrays.fill(opaqueDepth, Float.MAX_VALUE);
+        for (Slab slab : slabs) {
+            slab.clear();
+        }
+    }
+
+    /**
+     * Get the slab which holds the fragments for a pixel.
+     *
+     * @param index the index of the pixel (y*width+x)
+     */
+    public Slab getSlab(int index) {
+        int x = index % width, y = index / width;
+        return slabs[(y / tileSize) * tilesX + x / tileSize];
+    }
+
+    /**
+     * Get the frontmost fragment at a pixel. This is an index into the pixel's slab, or
+     * {@link #BACKGROUND} if the pixel is empty.
+     *
+     * @param index the index of the pixel (y*width+x)
+     */
+    public int getFirst(int index) {
+        return first[index];
+    }
+
+    /**
+     * Get the depth of the frontmost opaque fragment at a pixel. Anything beyond this depth has no
+     * effect on the final color.
+     *
+     * @param index the index of the pixel (y*width+x)
+     */
+    public float getOpaqueDepth(int index) {
+        return opaqueDepth[index];
+    }
+
+    /**
+     * Get the depth of the frontmost fragment at a pixel.
+     *
+     * @param index the index of the pixel (y*width+x)
+     */
+    public float getDepth(int index) {
+        return getSlab(index).getDepth(first[index]);
+    }
+
+    /**
+     * Get the additive color of the frontmost fragment at a pixel. This may be called while other
+     * threads are adding fragments, in which case the result may be out of date.
+     *
+     * @param index the index of the pixel (y*width+x)
+     * @param color the color is stored in this
+     */
+    public void getAdditiveColor(int index, RGBColor color) {
+        int f = first[index];
+        int[] add = getSlab(index).addColor;
+        color.setERGB(f >= 0 && f < add.length ? add[f] : 0);
+    }
+
+    /**
+     * Add a fragment at a pixel, inserting it into the list at the correct point.
+     *
+     * @param index the index of the pixel (y*width+x)
+     * @param addColor the additive color, in ERGB format
+     * @param multColor the multiplicative color, in ERGB format. If this is 0, the fragment is opaque.
+     * @param depth the depth of the fragment
+     * @param material the material of the object being entered or exited. This may be null.
+     * @param isEntering true if the material is being entered, false if it is being exited
+     */
+    public void addFragment(int index, int addColor, int multColor, float depth, ObjectMaterialInfo material, boolean isEntering) {
+        if (depth > opaqueDepth[index]) {
+            return; // It is hidden, so it would be discarded anyway.
+        }
+        Slab slab = getSlab(index);
+        boolean opaque = (multColor == 0);
+        if (opaque) {
+            material = null;
+        }
+        int f = slab.allocate(addColor, multColor, depth, material, opaque ? OPAQUE : material != null && isEntering ? ENTERING : 0);
+        int current = first[index];
+        if (depth < slab.getDepth(current)) {
+            first[index] = slab.insertNext(f, current);
+        } else {
+            first[index] = slab.insertNext(current, f);
+        }
+        if (opaque && depth < opaqueDepth[index]) {
+            opaqueDepth[index] = depth;
+        }
+    }
+
+    /**
+     * A Slab holds the fragments for one tile of the image.
+     */
+    public static class Slab {
+
+        private float[] depth;
+        private int[] addColor, multColor, material, next;
+        private byte[] flags;
+        private int size;
+        private final List<ObjectMaterialInfo> materials = new ArrayList<>();
+
+        Slab() {
+            depth = new float[0];
+            addColor = new int[0];
+            multColor = new int[0];
+            material = new int[0];
+            next = new int[0];
+            flags = new byte[0];
+        }
+
+        /**
+         * Remove all fragments. The arrays are kept so they can be reused.
+         */
+        void clear() {
+            size = 0;
+            materials.clear();
+        }
+
+        /**
+         * Create a new fragment whose next fragment is the background, and return its index.
+         */
+        int allocate(int add, int mult, float z, ObjectMaterialInfo mat, int flag) {
+            if (size == depth.length) {
+                int capacity = Math.max(1024, 2 * size);
+                depth = Arrays.copyOf(depth, capacity);
+                addColor = Arrays.copyOf(addColor, capacity);
+                multColor = Arrays.copyOf(multColor, capacity);
+                material = Arrays.copyOf(material, capacity);
+                next = Arrays.copyOf(next, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+            }
+            int m = -1;
+            if (mat != null) {
+                m = materials.lastIndexOf(mat);
+                if (m == -1) {
+                    m = materials.size();
+                    materials.add(mat);
+                }
+            }
+            depth[size] = z;
+            addColor[size] = add;
+            multColor[size] = mult;
+            material[size] = m;
+            next[size] = BACKGROUND;
+            flags[size] = (byte) flag;
+            return size++;
+        }
+
+        /**
+         * Insert fragment b behind fragment a. If there is already another fragment behind a, b is
+         * inserted into the list at the correct point.
+         *
+         * @return the fragment which should take the place of a
+         */
+        int insertNext(int a, int b) {
+            if (a == BACKGROUND || (flags[a] & OPAQUE) != 0) {
+                return a;
+            }
+            if (material[a] != -1 && b != BACKGROUND && depth[b] == depth[a] && material[b] == material[a]
+                    && (flags[a] & ENTERING) == 0 && (flags[b] & ENTERING) != 0) {
+                return insertNext(b, a); // Enter the material before exiting it
+            }
+            int n = next[a];
+            next[a] = (getDepth(b) < getDepth(n) ? insertNext(b, n) : insertNext(n, b));
+            return a;
+        }
+
+        /**
+         * Get the depth of a fragment.
+         */
+        public float getDepth(int f) {
+            return (f == BACKGROUND ? Float.MAX_VALUE : depth[f]);
+        }
+
+        /**
+         * Get whether a fragment is completely opaque, such that anything behind it has no effect
+         * on the final color of the pixel.
+         */
+        public boolean isOpaque(int f) {
+            return (f == BACKGROUND || (flags[f] & OPAQUE) != 0);
+        }
+
+        /**
+         * Get the additive color of a fragment.
+         *
+         * @param f the fragment
+         * @param color the color is stored in this
+         */
+        public void getAdditiveColor(int f, RGBColor color) {
+            color.setERGB(f == BACKGROUND ? 0 : addColor[f]);
+        }
+
+        /**
+         * Get the multiplicative color of a fragment.
+         *
+         * @param f the fragment
+         * @param color the color is stored in this
+         */
+        public void getMultiplicativeColor(int f, RGBColor color) {
+            if (isOpaque(f)) {
+                color.setRGB(0.0f, 0.0f, 0.0f);
+            } else {
+                color.setERGB(multColor[f]);
+            }
+        }
+
+        /**
+         * Get the material for the object a fragment is part of. This may return null.
+         */
+        public ObjectMaterialInfo getMaterialMapping(int f) {
+            return (f == BACKGROUND || material[f] == -1 ? null : materials.get(material[f]));
+        }
+
+        /**
+         * Get whether the object is being entered or exited in a fragment.
+         */
+        public boolean isEntering(int f) {
+            return (f != BACKGROUND && (flags[f] & ENTERING) != 0);
+        }
+
+        /**
+         * Get the next fragment behind a fragment.
+         */
+        public int getNextFragment(int f) {
+            return (isOpaque(f) ? BACKGROUND : next[f]);
+        }
+    }
+}
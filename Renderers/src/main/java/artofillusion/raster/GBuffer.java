@@ -0,0 +1,69 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raster;
+
+import java.util.*;
+
+/**
+ * A GBuffer records the closest opaque surface at every pixel of one tile, without shading it.
+ * For each pixel it stores the depth, which triangle is visible, and the interpolated barycentric
+ * coordinates and normal at that point. Once every triangle has been drawn into it, each pixel
+ * can be shaded exactly once, no matter how many triangles overlapped it.
+ */
+public class GBuffer {
+
+    /**
+     * The mesh index stored for pixels which are not covered by any triangle.
+     */
+    public static final int EMPTY = -1;
+
+    public final int size;
+    public final float[] depth, z;
+    public final int[] mesh, triangle;
+    public final double[] u, v, normal;
+    public int xmin, ymin, xmax, ymax;
+
+    /**
+     * Create a GBuffer.
+     *
+     * @param size the maximum width and height of a tile
+     */
+    public GBuffer(int size) {
+        this.size = size;
+        int n = size * size;
+        depth = new float[n];
+        z = new float[n];
+        mesh = new int[n];
+        triangle = new int[n];
+        u = new double[n];
+        v = new double[n];
+        normal = new double[3 * n];
+    }
+
+    /**
+     * Clear the buffer and prepare it to record a new tile.
+     */
+    public void reset(int xmin, int ymin, int xmax, int ymax) {
+        this.xmin = xmin;
+        this.ymin = ymin;
+        this.xmax = xmax;
+        this.ymax = ymax;
+        Arrays.fill(mesh, EMPTY);
+        Arrays.fill(depth, Float.MAX_VALUE);
+    }
+
+    /**
+     * Get the index within the arrays of a pixel in the image.
+     */
+    public int getIndex(int x, int y) {
+        return (y - ymin) * size + (x - xmin);
+    }
+}
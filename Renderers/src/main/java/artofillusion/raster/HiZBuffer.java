@@ -0,0 +1,186 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raster;
+
+import java.util.*;
+
+/**
+ * A HiZBuffer is a hierarchical Z pyramid built from the opaque depths in a {@link FragmentBuffer}.
+ * Each cell at level 0 holds the greatest opaque depth of any pixel in a square block of the image,
+ * and each cell at a higher level holds the greatest depth of the four cells below it. This allows
+ * a whole region of the screen to be tested with only a few comparisons: anything in the region
+ * which is farther away than every cell that covers it cannot possibly be visible.
+ * <p>
+ * The opaque depth of a pixel only ever decreases while an image is being rendered. A cell which
+ * has not yet been updated therefore holds a value which is too large, so the test is conservative
+ * even when other threads are adding fragments at the same time.
+ */
+public class HiZBuffer {
+
+    /**
+     * The width and height of the block of pixels covered by each cell at level 0.
+     */
+    public static final int BLOCK_SIZE = 8;
+
+    private final int width, height;
+    private final int[] levelWidth, levelHeight;
+    private final float[][] maxDepth;
+
+    /**
+     * Create a HiZBuffer in which every cell is empty.
+     *
+     * @param width the width of the image
+     * @param height the height of the image
+     */
+    public HiZBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int levels = 1;
+        int w = (width + BLOCK_SIZE - 1) / BLOCK_SIZE, h = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        while (w > 1 || h > 1) {
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+            levels++;
+        }
+        levelWidth = new int[levels];
+        levelHeight = new int[levels];
+        maxDepth = new float[levels][];
+        w = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        h = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (int i = 0; i < levels; i++) {
+            levelWidth[i] = w;
+            levelHeight[i] = h;
+            maxDepth[i] = new float[w * h];
+            Arrays.fill(maxDepth[i], Float.MAX_VALUE);
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+        }
+    }
+
+    /**
+     * Get whether this buffer can be reused for an image of the specified size.
+     */
+    public boolean isCompatible(int width, int height) {
+        return (this.width == width && this.height == height);
+    }
+
+    /**
+     * Mark every cell as empty.
+     */
+    public void clear() {
+        for (float[] level : maxDepth) {
+            Arrays.fill(level, Float.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Recalculate the cells which cover a region of the image.
+     *
+     * @param fragments the buffer to get the opaque depths from
+     * @param xmin the left edge of the region (inclusive)
+     * @param ymin the top edge of the region (inclusive)
+     * @param xmax the right edge of the region (exclusive)
+     * @param ymax the bottom edge of the region (exclusive)
+     */
+    public void update(FragmentBuffer fragments, int xmin, int ymin, int xmax, int ymax) {
+        xmin = Math.max(xmin, 0);
+        ymin = Math.max(ymin, 0);
+        xmax = Math.min(xmax, width);
+        ymax = Math.min(ymax, height);
+        if (xmin >= xmax || ymin >= ymax) {
+            return;
+        }
+        int cx1 = xmin / BLOCK_SIZE, cy1 = ymin / BLOCK_SIZE, cx2 = (xmax - 1) / BLOCK_SIZE, cy2 = (ymax - 1) / BLOCK_SIZE;
+        float[] level0 = maxDepth[0];
+        for (int cy = cy1; cy <= cy2; cy++) {
+            int yend = Math.min((cy + 1) * BLOCK_SIZE, height);
+            for (int cx = cx1; cx <= cx2; cx++) {
+                int xend = Math.min((cx + 1) * BLOCK_SIZE, width);
+                float max = 0.0f;
+                for (int y = cy * BLOCK_SIZE; y < yend && max < Float.MAX_VALUE; y++) {
+                    int base = y * width;
+                    for (int x = cx * BLOCK_SIZE; x < xend; x++) {
+                        float z = fragments.getOpaqueDepth(base + x);
+                        if (z > max) {
+                            max = z;
+                        }
+                    }
+                }
+                level0[cy * levelWidth[0] + cx] = max;
+            }
+        }
+        for (int i = 1; i < maxDepth.length; i++) {
+            cx1 /= 2;
+            cy1 /= 2;
+            cx2 /= 2;
+            cy2 /= 2;
+            float[] below = maxDepth[i - 1], level = maxDepth[i];
+            int bw = levelWidth[i - 1], bh = levelHeight[i - 1];
+            for (int cy = cy1; cy <= cy2; cy++) {
+                for (int cx = cx1; cx <= cx2; cx++) {
+                    int x = 2 * cx, y = 2 * cy;
+                    float max = below[y * bw + x];
+                    if (x + 1 < bw) {
+                        max = Math.max(max, below[y * bw + x + 1]);
+                    }
+                    if (y + 1 < bh) {
+                        max = Math.max(max, below[(y + 1) * bw + x]);
+                        if (x + 1 < bw) {
+                            max = Math.max(max, below[(y + 1) * bw + x + 1]);
+                        }
+                    }
+                    level[cy * levelWidth[i] + cx] = max;
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine whether a region of the image is completely hidden at a given depth.
+     *
+     * @param xmin the left edge of the region (inclusive)
+     * @param ymin the top edge of the region (inclusive)
+     * @param xmax the right edge of the region (exclusive)
+     * @param ymax the bottom edge of the region (exclusive)
+     * @param depth the smallest depth of anything that may be drawn in the region
+     * @return true if every pixel in the region already has an opaque fragment closer than depth
+     */
+    public boolean isOccluded(int xmin, int ymin, int xmax, int ymax, float depth) {
+        xmin = Math.max(xmin, 0);
+        ymin = Math.max(ymin, 0);
+        xmax = Math.min(xmax, width);
+        ymax = Math.min(ymax, height);
+        if (xmin >= xmax || ymin >= ymax) {
+            return false;
+        }
+
+        // Find the finest level at which the region is covered by at most 4x4 cells.
+        int cx1 = xmin / BLOCK_SIZE, cy1 = ymin / BLOCK_SIZE, cx2 = (xmax - 1) / BLOCK_SIZE, cy2 = (ymax - 1) / BLOCK_SIZE;
+        int level = 0;
+        while (level < maxDepth.length - 1 && (cx2 - cx1 > 3 || cy2 - cy1 > 3)) {
+            cx1 /= 2;
+            cy1 /= 2;
+            cx2 /= 2;
+            cy2 /= 2;
+            level++;
+        }
+        float[] cells = maxDepth[level];
+        int w = levelWidth[level];
+        for (int cy = cy1; cy <= cy2; cy++) {
+            for (int cx = cx1; cx <= cx2; cx++) {
+                if (!(depth > cells[cy * w + cx])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
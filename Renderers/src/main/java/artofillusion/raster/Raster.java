@@ -1,5 +1,5 @@
 /* Copyright (C) 2001-2014 by Peter Eastman
-   Changes copyright (C) 2017-2023 by Maksim Khramov
+   Changes copyright (C) 2017-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -29,6 +29,7 @@ import java.awt.Toolkit;
 
 import java.awt.image.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Raster is a Renderer which generates images with a scanline algorithm.
@@ -37,8 +38,8 @@ public class Raster implements Renderer, Runnable {
 
     private ObjectInfo[] light;
     private BTabbedPane configPanel;
-    private BCheckBox transparentBox, adaptiveBox, hideBackfaceBox, hdrBox;
-    private BComboBox shadeChoice, aliasChoice, sampleChoice;
+    private BCheckBox transparentBox, adaptiveBox, hideBackfaceBox, hdrBox, tiledBox, deferredBox, shadowBox;
+    private BComboBox shadeChoice, aliasChoice, sampleChoice, directionalSizeChoice, spotSizeChoice, pointSizeChoice;
     private ValueField errorField, smoothField;
     private int[] imagePixel;
     private int width;
@@ -47,7 +48,9 @@ public class Raster implements Renderer, Runnable {
     private int imageWidth;
     private int imageHeight;
     private int shadingMode = PHONG, samplesPerPixel = 1, subsample = 1;
-    private Fragment[] fragment;
+    private FragmentBuffer fragments;
+    private HiZBuffer hiZ;
+    private ShadowMap[] shadowMap;
     private long updateTime;
     private MemoryImageSource imageSource;
     private Scene theScene;
@@ -63,6 +66,8 @@ public class Raster implements Renderer, Runnable {
     private double[] envParamValue;
     private double time, smoothing = 1.0, smoothScale, focalDist, surfaceError = 0.02, fogDist;
     private boolean fog, transparentBackground = false, adaptive = true, hideBackfaces = true, generateHDR = false, positionNeeded, depthNeeded, needCopyToUI = true;
+    private boolean tiledRasterization = true, deferredShading = true, shadows = false;
+    private int directionalShadowSize = 1024, spotShadowSize = 1024, pointShadowSize = 512;
     private boolean isPreview;
 
     public static final int GOURAUD = 0;
@@ -72,7 +77,22 @@ public class Raster implements Renderer, Runnable {
     public static final double TOL = 1e-12;
     public static final float INTENSITY_CUTOFF = 0.005f;
 
-    public static final Fragment BACKGROUND_FRAGMENT = new OpaqueFragment(0, Float.MAX_VALUE);
+    /**
+     * The width and height (in subpixels) of the tiles used by tiled rasterization.
+     */
+    public static final int TILE_SIZE = 64;
+
+    /**
+     * The number of triangles tiled rasterization keeps in memory before it draws the objects
+     * prepared so far. This is only changed by tests.
+     */
+    static long MAX_WAVE_TRIANGLES = 1 << 22;
+
+    /**
+     * The sizes which may be selected for shadow maps.
+     */
+    public static final int[] SHADOW_MAP_SIZES = {256, 512, 1024, 2048, 4096};
+
     private static final int WHITE_ERGB = new RGBColor(1.0f, 1.0f, 1.0f).getERGB();
 
     public Raster() {
@@ -185,17 +205,41 @@ public class Raster implements Renderer, Runnable {
             });
 
             // Advanced options panel.
-            FormContainer advancedPanel = new FormContainer(new double[]{0.0, 1.0}, new double[4]);
+            FormContainer advancedPanel = new FormContainer(new double[]{0.0, 1.0}, new double[6]);
             advancedPanel.add(Translate.label("texSmoothing"), 0, 0, leftLayout);
             advancedPanel.add(smoothField = new ValueField(smoothing, ValueField.NONNEGATIVE), 1, 0, rightLayout);
             advancedPanel.add(adaptiveBox = new BCheckBox(Translate.text("reduceAccuracyForDistant"), adaptive), 0, 1, 2, 1, rightLayout);
             advancedPanel.add(hideBackfaceBox = new BCheckBox(Translate.text("eliminateBackfaces"), hideBackfaces), 0, 2, 2, 1, rightLayout);
             advancedPanel.add(hdrBox = new BCheckBox(Translate.text("generateHDR"), generateHDR), 0, 3, 2, 1, rightLayout);
+            advancedPanel.add(tiledBox = new BCheckBox(Translate.text("tiledRasterization"), tiledRasterization), 0, 4, 2, 1, rightLayout);
+            advancedPanel.add(deferredBox = new BCheckBox(Translate.text("deferredShading"), deferredShading), 0, 5, 2, 1, rightLayout);
+            tiledBox.addEventLink(ValueChangedEvent.class, new Object() {
+                void processEvent() {
+                    deferredBox.setEnabled(tiledBox.getState());
+                }
+            });
+
+            // Shadow options panel.
+            FormContainer shadowPanel = new FormContainer(new double[]{0.0, 1.0}, new double[4]);
+            String[] sizes = Arrays.stream(SHADOW_MAP_SIZES).mapToObj(size -> size + "x" + size).toArray(String[]::new);
+            shadowPanel.add(shadowBox = new BCheckBox(Translate.text("shadowMaps"), shadows), 0, 0, 2, 1, rightLayout);
+            shadowPanel.add(Translate.label("directionalShadowSize"), 0, 1, leftLayout);
+            shadowPanel.add(Translate.label("spotShadowSize"), 0, 2, leftLayout);
+            shadowPanel.add(Translate.label("pointShadowSize"), 0, 3, leftLayout);
+            shadowPanel.add(directionalSizeChoice = new BComboBox(sizes), 1, 1, rightLayout);
+            shadowPanel.add(spotSizeChoice = new BComboBox(sizes), 1, 2, rightLayout);
+            shadowPanel.add(pointSizeChoice = new BComboBox(sizes), 1, 3, rightLayout);
+            shadowBox.addEventLink(ValueChangedEvent.class, new Object() {
+                void processEvent() {
+                    updateShadowComponents();
+                }
+            });
 
             // Create the tabbed pane.
             configPanel = new BTabbedPane();
             configPanel.add(generalPanel, Translate.text("general"));
             configPanel.add(advancedPanel, Translate.text("advanced"));
+            configPanel.add(shadowPanel, Translate.text("shadows"));
         }
         if (needCopyToUI) {
             copyConfigurationToUI();
@@ -215,6 +259,14 @@ public class Raster implements Renderer, Runnable {
         adaptiveBox.setState(adaptive);
         hideBackfaceBox.setState(hideBackfaces);
         hdrBox.setState(generateHDR);
+        tiledBox.setState(tiledRasterization);
+        deferredBox.setState(deferredShading);
+        deferredBox.setEnabled(tiledRasterization);
+        shadowBox.setState(shadows);
+        directionalSizeChoice.setSelectedIndex(findShadowMapSize(directionalShadowSize));
+        spotSizeChoice.setSelectedIndex(findShadowMapSize(spotShadowSize));
+        pointSizeChoice.setSelectedIndex(findShadowMapSize(pointShadowSize));
+        updateShadowComponents();
         errorField.setValue(surfaceError);
         shadeChoice.setSelectedIndex(shadingMode);
         transparentBox.setState(transparentBackground);
@@ -230,12 +282,40 @@ public class Raster implements Renderer, Runnable {
         sampleChoice.setEnabled(aliasChoice.getSelectedIndex() > 0);
     }
 
+    /**
+     * Enable or disable the shadow map size controls based on whether shadows are enabled.
+     */
+    private void updateShadowComponents() {
+        directionalSizeChoice.setEnabled(shadowBox.getState());
+        spotSizeChoice.setEnabled(shadowBox.getState());
+        pointSizeChoice.setEnabled(shadowBox.getState());
+    }
+
+    /**
+     * Find the index in SHADOW_MAP_SIZES of the closest size to a given one.
+     */
+    private static int findShadowMapSize(int size) {
+        int best = 0;
+        for (int i = 1; i < SHADOW_MAP_SIZES.length; i++) {
+            if (Math.abs(SHADOW_MAP_SIZES[i] - size) < Math.abs(SHADOW_MAP_SIZES[best] - size)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
     @Override
     public boolean recordConfiguration() {
         smoothing = smoothField.getValue();
         adaptive = adaptiveBox.getState();
         hideBackfaces = hideBackfaceBox.getState();
         generateHDR = hdrBox.getState();
+        tiledRasterization = tiledBox.getState();
+        deferredShading = deferredBox.getState();
+        shadows = shadowBox.getState();
+        directionalShadowSize = SHADOW_MAP_SIZES[directionalSizeChoice.getSelectedIndex()];
+        spotShadowSize = SHADOW_MAP_SIZES[spotSizeChoice.getSelectedIndex()];
+        pointShadowSize = SHADOW_MAP_SIZES[pointSizeChoice.getSelectedIndex()];
         surfaceError = errorField.getValue();
         shadingMode = shadeChoice.getSelectedIndex();
         transparentBackground = transparentBox.getState();
@@ -258,6 +338,12 @@ public class Raster implements Renderer, Runnable {
         map.put("reduceAccuracyForDistant", adaptive);
         map.put("hideBackfaces", hideBackfaces);
         map.put("highDynamicRange", generateHDR);
+        map.put("tiledRasterization", tiledRasterization);
+        map.put("deferredShading", deferredShading);
+        map.put("shadowMaps", shadows);
+        map.put("directionalShadowSize", directionalShadowSize);
+        map.put("spotShadowSize", spotShadowSize);
+        map.put("pointShadowSize", pointShadowSize);
         map.put("maxSurfaceError", surfaceError);
         map.put("shadingMethod", shadingMode);
         map.put("transparentBackground", transparentBackground);
@@ -283,6 +369,18 @@ public class Raster implements Renderer, Runnable {
             hideBackfaces = (Boolean) value;
         } else if ("highDynamicRange".equals(property)) {
             generateHDR = (Boolean) value;
+        } else if ("tiledRasterization".equals(property)) {
+            tiledRasterization = (Boolean) value;
+        } else if ("deferredShading".equals(property)) {
+            deferredShading = (Boolean) value;
+        } else if ("shadowMaps".equals(property)) {
+            shadows = (Boolean) value;
+        } else if ("directionalShadowSize".equals(property)) {
+            directionalShadowSize = ((Number) value).intValue();
+        } else if ("spotShadowSize".equals(property)) {
+            spotShadowSize = ((Number) value).intValue();
+        } else if ("pointShadowSize".equals(property)) {
+            pointShadowSize = ((Number) value).intValue();
         } else if ("maxSurfaceError".equals(property)) {
             surfaceError = ((Number) value).doubleValue();
         } else if ("shadingMethod".equals(property)) {
@@ -339,13 +437,30 @@ public class Raster implements Renderer, Runnable {
         if (renderThread != thisThread) {
             return;
         }
-        fragment = new Fragment[width * height];
-        Arrays.fill(fragment, BACKGROUND_FRAGMENT);
-        lock = new RowLock[height];
-        for (int i = 0; i < lock.length; i++) {
-            lock[i] = new RowLock();
+        if (fragments == null || !fragments.isCompatible(width, height, TILE_SIZE)) {
+            fragments = new FragmentBuffer(width, height, TILE_SIZE);
+        } else {
+            fragments.clear();
+        }
+        if (hiZ == null || !hiZ.isCompatible(width, height)) {
+            hiZ = new HiZBuffer(width, height);
+        } else {
+            hiZ.clear();
+        }
+        if (tiledRasterization) {
+            // Every tile is owned by a single thread, so no locking is needed.
+
+            lock = null;
+        } else {
+            // Fragments are allocated from a separate slab for each tile, so lock whole rows of tiles.
+
+            lock = new RowLock[(height + TILE_SIZE - 1) / TILE_SIZE];
+            for (int i = 0; i < lock.length; i++) {
+                lock[i] = new RowLock();
+            }
         }
         updateTime = System.currentTimeMillis();
+        theScene.prefetchImages();
 
         // Record information about the scene.
         light = theScene.getObjects().stream().filter(info -> info.isVisible() && info.getObject() instanceof Light).toArray(ObjectInfo[]::new);
@@ -354,6 +469,10 @@ public class Raster implements Renderer, Runnable {
             if(li.getObject() instanceof DirectionalLight) continue;
             positionNeeded = true;
         }
+        createShadowMaps(thisThread);
+        if (thisThread != renderThread) {
+            return;
+        }
         ambColor = theScene.getAmbientColor();
         envColor = theScene.getEnvironmentColor();
         envMapping = theScene.getEnvironmentMapping();
@@ -382,16 +501,31 @@ public class Raster implements Renderer, Runnable {
 
         // Render the objects.
         final ObjectInfo[] sortedObjects = sortObjects();
+        if (tiledRasterization) {
+            renderTiles(sortedObjects, orig, viewdir, thisThread);
+            finish(createFinalImage(center, orig, hvec, vvec));
+            return;
+        }
         ThreadManager threads = new ThreadManager(sortedObjects.length, new ThreadManager.Task() {
             @Override
             public void execute(int index) {
                 RasterContext context = threadRasterContext.get();
                 ObjectInfo obj = sortedObjects[index];
                 context.camera.setObjectTransform(obj.getCoords().fromLocal());
-                renderObject(obj, orig, viewdir, obj.getCoords().toLocal(), context, thisThread);
+                context.setBounds(0, 0, width, height);
+                renderObject(obj, orig, viewdir, obj.getCoords().toLocal(), context, thisThread, null);
                 if (thisThread != renderThread) {
                     return;
                 }
+
+                // Record the new opaque depths, so later objects hidden behind this one can be skipped.
+                context.camera.setObjectTransform(obj.getCoords().fromLocal());
+                int[] rect = new int[4];
+                if (findScreenRect(obj, context.camera, rect) < 0.0f) {
+                    hiZ.update(fragments, 0, 0, width, height);
+                } else {
+                    hiZ.update(fragments, rect[0], rect[1], rect[2], rect[3]);
+                }
                 if (System.currentTimeMillis() - updateTime > 5000) {
                     updateImage();
                 }
@@ -407,6 +541,124 @@ public class Raster implements Renderer, Runnable {
         finish(createFinalImage(center, orig, hvec, vvec));
     }
 
+    /**
+     * Create a shadow map for every light which casts shadows. If shadows are disabled, the array
+     * is filled with nulls. The objects are tessellated in parallel, and then the faces of all the
+     * maps are drawn in parallel.
+     */
+    private void createShadowMaps(Thread mainThread) {
+        shadowMap = new ShadowMap[light.length];
+        if (!shadows) {
+            return;
+        }
+        List<ObjectInfo> shadowLights = new ArrayList<>();
+        for (ObjectInfo info : light) {
+            Light lt = (Light) info.getObject();
+            if (lt.getType() == Light.TYPE_NORMAL && (lt instanceof DirectionalLight || lt instanceof SpotLight || lt instanceof PointLight)) {
+                shadowLights.add(info);
+            }
+        }
+        if (shadowLights.isEmpty()) {
+            return;
+        }
+
+        // Find the meshes which cast shadows.
+        final List<ObjectInfo> objects = theScene.getObjects();
+        final List<List<ShadowMap.Caster>> objectCasters = new ArrayList<>();
+        for (int i = 0; i < objects.size(); i++) {
+            objectCasters.add(new ArrayList<>());
+        }
+        ThreadManager threads = new ThreadManager(objects.size(), new ThreadManager.Task() {
+            @Override
+            public void execute(int index) {
+                if (mainThread == renderThread) {
+                    ObjectInfo obj = objects.get(index);
+                    findShadowCasters(obj, obj.getCoords().fromLocal(), objectCasters.get(index));
+                }
+            }
+
+            @Override
+            public void cleanup() {
+            }
+        });
+        threads.run();
+        List<ShadowMap.Caster> casters = new ArrayList<>();
+        objectCasters.forEach(casters::addAll);
+
+        // Draw the shadow maps.
+        final List<ShadowMap> maps = new ArrayList<>();
+        final List<Integer> faces = new ArrayList<>();
+        for (int i = 0; i < light.length; i++) {
+            if (!shadowLights.contains(light[i])) {
+                continue;
+            }
+            Light lt = (Light) light[i].getObject();
+            int size = (lt instanceof DirectionalLight ? directionalShadowSize : lt instanceof SpotLight ? spotShadowSize : pointShadowSize);
+            shadowMap[i] = new ShadowMap(lt, light[i].getCoords(), size, casters);
+            for (int j = 0; j < shadowMap[i].getFaceCount(); j++) {
+                maps.add(shadowMap[i]);
+                faces.add(j);
+            }
+        }
+        threads.setNumIndices(maps.size());
+        threads.setTask(new ThreadManager.Task() {
+            @Override
+            public void execute(int index) {
+                if (mainThread == renderThread) {
+                    maps.get(index).renderFace(faces.get(index));
+                }
+            }
+
+            @Override
+            public void cleanup() {
+            }
+        });
+        threads.run();
+        threads.finish();
+
+        // Shadow lookups need the position of every point, even for directional lights.
+        positionNeeded = true;
+    }
+
+    /**
+     * Add the meshes for an object which casts shadows to a list.
+     */
+    private void findShadowCasters(ObjectInfo obj, Mat4 fromLocal, List<ShadowMap.Caster> casters) {
+        if (!obj.isVisible()) {
+            return;
+        }
+        Object3D theObject = obj.getObject();
+        while (theObject instanceof ObjectWrapper) {
+            theObject = ((ObjectWrapper) theObject).getWrappedObject();
+        }
+        if (theObject instanceof Light) {
+            return;
+        }
+        if (theObject instanceof ObjectCollection) {
+            Enumeration<ObjectInfo> objects = ((ObjectCollection) theObject).getObjects(obj, false, theScene);
+            while (objects.hasMoreElements()) {
+                ObjectInfo elem = objects.nextElement();
+                CoordinateSystem coords = elem.getCoords().duplicate();
+                coords.transformCoordinates(fromLocal);
+                findShadowCasters(elem, coords.fromLocal(), casters);
+            }
+            return;
+        }
+
+        // Transparent objects let light through, and so do objects whose material does not cast shadows.
+        Texture tex = theObject.getTexture();
+        if (tex == null || tex.hasComponent(Texture.TRANSPARENT_COLOR_COMPONENT)) {
+            return;
+        }
+        if (theObject.getMaterialMapping() != null && !theObject.getMaterialMapping().castsShadows()) {
+            return;
+        }
+        RenderingMesh mesh = (isPreview ? obj.getPreviewMesh() : obj.getRenderingMesh(surfaceError));
+        if (mesh != null) {
+            casters.add(new ShadowMap.Caster(mesh, fromLocal));
+        }
+    }
+
     /**
      * Sort the objects in the scene into the most efficient order for rendering.
      */
@@ -460,6 +712,196 @@ public class Raster implements Renderer, Runnable {
         return result;
     }
 
+    /**
+     * Render the objects with tiled rasterization. This happens in three stages. First every object is
+     * tessellated and its vertices are transformed to screen coordinates, with each object handled by a single
+     * thread. The triangles are then sorted into bins based on which tiles of the image they overlap. Finally,
+     * each tile is rasterized and shaded by a single thread, so threads never compete for the same pixels.
+     * <p>
+     * With deferred shading, opaque Phong shaded meshes are first drawn into a G-buffer for the tile, and only
+     * the surface that ends up visible at each pixel is shaded. Everything else is then drawn on top as usual.
+     * <p>
+     * Because nothing is drawn until every object in a batch has been tessellated, the objects are rendered in
+     * several waves, starting with the closest ones. After each wave the Hi-Z buffer is updated, so objects in
+     * later waves which are hidden behind earlier ones can be skipped without being tessellated. A wave also
+     * ends early once its meshes hold more than {@link #MAX_WAVE_TRIANGLES} triangles, so the memory they take
+     * does not grow with the size of the scene. The objects which were not prepared start the next wave.
+     */
+    private void renderTiles(ObjectInfo[] sortedObjects, Vec3 orig, Vec3 viewdir, Thread mainThread) {
+        ThreadManager threads = new ThreadManager();
+        List<ObjectInfo> remaining = new ArrayList<>(Arrays.asList(sortedObjects));
+        int waveSize = 8;
+        while (!remaining.isEmpty()) {
+            List<ObjectInfo> next = remaining.subList(0, Math.min(remaining.size(), waveSize));
+            ObjectInfo[] wave = next.toArray(ObjectInfo[]::new);
+            next.clear();
+            List<ObjectInfo> skipped = renderTileWave(threads, wave, orig, viewdir, mainThread);
+            if (mainThread != renderThread) {
+                break;
+            }
+            hiZ.update(fragments, 0, 0, width, height);
+            remaining.addAll(0, skipped);
+            waveSize = (skipped.isEmpty() ? 4 * waveSize : wave.length - skipped.size());
+        }
+        threads.finish();
+    }
+
+    /**
+     * Render one wave of objects with tiled rasterization.
+     *
+     * @return the objects which were not rendered because the wave already held too many triangles
+     */
+    private List<ObjectInfo> renderTileWave(ThreadManager threads, final ObjectInfo[] sortedObjects, final Vec3 orig, final Vec3 viewdir, final Thread mainThread) {
+        // Tessellate and transform the objects.
+
+        final List<List<PreparedMesh>> preparedMeshes = new ArrayList<>();
+        for (int i = 0; i < sortedObjects.length; i++) {
+            preparedMeshes.add(new ArrayList<>());
+        }
+        final AtomicLong retained = new AtomicLong();
+        final boolean[] skipped = new boolean[sortedObjects.length];
+        threads.setNumIndices(sortedObjects.length);
+        threads.setTask(new ThreadManager.Task() {
+            @Override
+            public void execute(int index) {
+                // Once the wave holds enough triangles, leave the rest for the next one. Something
+                // has always been prepared by then, so every wave renders at least one object.
+
+                if (retained.get() > MAX_WAVE_TRIANGLES) {
+                    skipped[index] = true;
+                    return;
+                }
+                RasterContext context = threadRasterContext.get();
+                ObjectInfo obj = sortedObjects[index];
+                context.camera.setObjectTransform(obj.getCoords().fromLocal());
+                List<PreparedMesh> prepared = preparedMeshes.get(index);
+                renderObject(obj, orig, viewdir, obj.getCoords().toLocal(), context, mainThread, prepared);
+                retained.addAndGet(prepared.stream().mapToLong(PreparedMesh::getTriangleCount).sum());
+            }
+
+            @Override
+            public void cleanup() {
+                threadRasterContext.get().cleanup();
+            }
+        });
+        threads.run();
+        List<ObjectInfo> notRendered = new ArrayList<>();
+        for (int i = 0; i < sortedObjects.length; i++) {
+            if (skipped[i]) {
+                notRendered.add(sortedObjects[i]);
+            }
+        }
+        if (mainThread != renderThread) {
+            return notRendered;
+        }
+
+        // Sort the triangles into bins.
+        final List<PreparedMesh> meshes = new ArrayList<>();
+        for (List<PreparedMesh> list : preparedMeshes) {
+            meshes.addAll(list);
+        }
+        preparedMeshes.clear();
+        final int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        final int tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        final TileBin[] bins = new TileBin[tilesX * tilesY];
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = new TileBin();
+        }
+        float clip = (float) theCamera.getClipDistance();
+        int[] bounds = new int[4];
+        for (int m = 0; m < meshes.size(); m++) {
+            PreparedMesh mesh = meshes.get(m);
+            int count = mesh.getTriangleCount();
+            for (int i = 0; i < count; i++) {
+                if (!mesh.getScreenBounds(i, clip, bounds)) {
+                    continue;
+                }
+                int minx = Math.max(bounds[0], 0), miny = Math.max(bounds[1], 0);
+                int maxx = Math.min(bounds[2], width - 1), maxy = Math.min(bounds[3], height - 1);
+                if (minx > maxx || miny > maxy) {
+                    continue;
+                }
+                for (int ty = miny / TILE_SIZE; ty <= maxy / TILE_SIZE; ty++) {
+                    for (int tx = minx / TILE_SIZE; tx <= maxx / TILE_SIZE; tx++) {
+                        bins[ty * tilesX + tx].add(m, i);
+                    }
+                }
+            }
+        }
+
+        // Rasterize the tiles.
+        threads.setNumIndices(bins.length);
+        threads.setTask(new ThreadManager.Task() {
+            @Override
+            public void execute(int index) {
+                TileBin bin = bins[index];
+                if (bin.size == 0) {
+                    return;
+                }
+                RasterContext context = threadRasterContext.get();
+                int x = (index % tilesX) * TILE_SIZE, y = (index / tilesX) * TILE_SIZE;
+                context.setBounds(x, y, Math.min(x + TILE_SIZE, width), Math.min(y + TILE_SIZE, height));
+                if (deferredShading) {
+                    // Draw the opaque surfaces into the G-buffer, then shade the visible ones.
+
+                    if (context.gbuffer == null) {
+                        context.gbuffer = new GBuffer(TILE_SIZE);
+                    }
+                    context.gbuffer.reset(context.xmin, context.ymin, context.xmax, context.ymax);
+                    boolean anyDeferred = false;
+                    for (int start = 0, end; start < bin.size; start = end) {
+                        int m = bin.mesh[start];
+                        end = start + 1;
+                        while (end < bin.size && bin.mesh[end] == m) {
+                            end++;
+                        }
+                        PreparedMesh mesh = meshes.get(m);
+                        if (mesh.deferred) {
+                            context.camera.setObjectTransform(mesh.fromLocal);
+                            renderMeshDeferred(mesh, m, bin.triangle, start, end, context);
+                            anyDeferred = true;
+                        }
+                    }
+                    if (mainThread != renderThread) {
+                        return;
+                    }
+                    if (anyDeferred) {
+                        shadeGBuffer(meshes, context);
+                    }
+                }
+                int start = 0;
+                while (start < bin.size) {
+                    // Render a consecutive run of triangles from the same mesh.
+
+                    int m = bin.mesh[start], end = start + 1;
+                    while (end < bin.size && bin.mesh[end] == m) {
+                        end++;
+                    }
+                    PreparedMesh mesh = meshes.get(m);
+                    if (!mesh.deferred) {
+                        context.camera.setObjectTransform(mesh.fromLocal);
+                        renderPreparedMesh(mesh, bin.triangle, start, end, context);
+                    }
+                    if (mainThread != renderThread) {
+                        return;
+                    }
+                    start = end;
+                }
+                bins[index] = null;
+                if (System.currentTimeMillis() - updateTime > 5000) {
+                    updateImage();
+                }
+            }
+
+            @Override
+            public void cleanup() {
+                threadRasterContext.get().cleanup();
+            }
+        });
+        threads.run();
+        return notRendered;
+    }
+
     /**
      * Update the image being displayed.
      */
@@ -470,7 +912,7 @@ public class Raster implements Renderer, Runnable {
         RGBColor frontColor = new RGBColor();
         for (int i1 = 0, i2 = 0; i1 < imageHeight; i1++, i2 += samplesPerPixel) {
             for (int j1 = 0, j2 = 0; j1 < imageWidth; j1++, j2 += samplesPerPixel) {
-                fragment[i2 * width + j2].getAdditiveColor(frontColor);
+                fragments.getAdditiveColor(i2 * width + j2, frontColor);
                 imagePixel[i1 * imageWidth + j1] = frontColor.getARGB();
             }
         }
@@ -525,31 +967,32 @@ public class Raster implements Renderer, Runnable {
 
                             subpixelColor.setRGB(0.0f, 0.0f, 0.0f);
                             subpixelMult.setRGB(1.0f, 1.0f, 1.0f);
-                            Fragment f = fragment[base + m];
+                            FragmentBuffer.Slab slab = fragments.getSlab(base + m);
+                            int f = fragments.getFirst(base + m);
                             float lastDepth = 0;
                             while (true) {
                                 // Factor in materials.
 
-                                ObjectMaterialInfo fragmentMaterial = f.getMaterialMapping();
+                                ObjectMaterialInfo fragmentMaterial = slab.getMaterialMapping(f);
                                 ObjectMaterialInfo currentMaterial = null;
                                 if (materialStack.size() > 0) {
                                     currentMaterial = materialStack.get(materialStack.size() - 1);
                                 }
-                                adjustColorsForMaterial(currentMaterial, j2 + m, i2 + k, lastDepth, f.getDepth(), addColor, context.multColor, context);
+                                adjustColorsForMaterial(currentMaterial, j2 + m, i2 + k, lastDepth, slab.getDepth(f), addColor, context.multColor, context);
                                 addColor.multiply(subpixelMult);
                                 subpixelColor.add(addColor);
                                 subpixelMult.multiply(multColor);
                                 if (fragmentMaterial != null) {
-                                    if (f.isEntering()) {
+                                    if (slab.isEntering(f)) {
                                         materialStack.add(fragmentMaterial);
                                     } else {
                                         materialStack.remove(fragmentMaterial);
                                     }
                                 }
-                                lastDepth = f.getDepth();
+                                lastDepth = slab.getDepth(f);
 
                                 // If we've reached the end, factor in the background.
-                                if (f == BACKGROUND_FRAGMENT) {
+                                if (f == FragmentBuffer.BACKGROUND) {
                                     if (transparentBackground) {
                                         // Just make it invisible.
 
@@ -573,21 +1016,21 @@ public class Raster implements Renderer, Runnable {
                                         }
                                     }
                                 } else {
-                                    f.getAdditiveColor(addColor);
+                                    slab.getAdditiveColor(f, addColor);
                                 }
 
                                 // Factor in the fragment color.
                                 addColor.multiply(subpixelMult);
                                 subpixelColor.add(addColor);
-                                if (f.isOpaque()) {
-                                    if (f != BACKGROUND_FRAGMENT || !transparentBackground) {
+                                if (slab.isOpaque(f)) {
+                                    if (f != FragmentBuffer.BACKGROUND || !transparentBackground) {
                                         subpixelMult.setRGB(0.0f, 0.0f, 0.0f);
                                     }
                                     break;
                                 }
-                                f.getMultiplicativeColor(multColor);
+                                slab.getMultiplicativeColor(f, multColor);
                                 subpixelMult.multiply(multColor);
-                                f = f.getNextFragment();
+                                f = slab.getNextFragment(f);
                             }
                             totalColor.add(subpixelColor);
                             totalTransparency.add(subpixelMult);
@@ -635,7 +1078,7 @@ public class Raster implements Renderer, Runnable {
                     for (int k = 0; k < samplesPerPixel; k++) {
                         int base = width * (i2 + k) + j2;
                         for (int m = 0; m < samplesPerPixel; m++) {
-                            float z = fragment[base + m].getDepth();
+                            float z = fragments.getDepth(base + m);
                             if (z < minDepth) {
                                 minDepth = z;
                             }
@@ -730,13 +1173,13 @@ public class Raster implements Renderer, Runnable {
      */
     private void finish(ComplexImage finalImage) {
         light = null;
+        shadowMap = null;
         theScene = null;
         theCamera = null;
         envMapping = null;
         img = null;
         imageSource = null;
         imagePixel = null;
-        fragment = null;
         RenderListener rl = listener;
         listener = null;
         renderThread = null;
@@ -785,9 +1228,11 @@ public class Raster implements Renderer, Runnable {
 
     /**
      * Render a single object into the scene. viewdir is the direction from
-     * which the object is being viewed in world coordinates.
+     * which the object is being viewed in world coordinates. If prepared is not null,
+     * the object is not drawn. Instead its meshes are transformed to screen coordinates
+     * and added to the list, so they can be drawn later by {@link #renderPreparedMesh}.
      */
-    private void renderObject(ObjectInfo obj, Vec3 orig, Vec3 viewdir, Mat4 toLocal, RasterContext context, Thread mainThread) {
+    private void renderObject(ObjectInfo obj, Vec3 orig, Vec3 viewdir, Mat4 toLocal, RasterContext context, Thread mainThread, List<PreparedMesh> prepared) {
         RenderingMesh mesh;
         Object3D theObject;
         double tol;
@@ -806,6 +1251,9 @@ public class Raster implements Renderer, Runnable {
         while (theObject instanceof ObjectWrapper) {
             theObject = ((ObjectWrapper) theObject).getWrappedObject();
         }
+        if (isOccluded(obj, theObject, context)) {
+            return;
+        }
         if (theObject instanceof ObjectCollection) {
             Enumeration<ObjectInfo> objects = ((ObjectCollection) theObject).getObjects(obj, false, theScene);
             Mat4 fromLocal = context.camera.getObjectToWorld();
@@ -814,7 +1262,7 @@ public class Raster implements Renderer, Runnable {
                 CoordinateSystem coords = elem.getCoords().duplicate();
                 coords.transformCoordinates(fromLocal);
                 context.camera.setObjectTransform(coords.fromLocal());
-                renderObject(elem, orig, viewdir, coords.toLocal(), context, mainThread);
+                renderObject(elem, orig, viewdir, coords.toLocal(), context, mainThread, prepared);
             }
             return;
         }
@@ -836,31 +1284,138 @@ public class Raster implements Renderer, Runnable {
         if (mainThread != renderThread) {
             return;
         }
-        viewdir = toLocal.timesDirection(viewdir);
-        if (context.lightPosition == null) {
-            context.lightPosition = new Vec3[light.length];
-            context.lightDirection = new Vec3[light.length];
-        }
+        PreparedMesh pm = new PreparedMesh();
+        pm.mesh = mesh;
+        pm.fromLocal = context.camera.getObjectToWorld();
+        pm.viewdir = toLocal.timesDirection(viewdir);
+        pm.lightPosition = new Vec3[light.length];
+        pm.lightDirection = new Vec3[light.length];
         for (i = light.length - 1; i >= 0; i--) {
-            context.lightPosition[i] = toLocal.times(light[i].getCoords().getOrigin());
+            pm.lightPosition[i] = toLocal.times(light[i].getCoords().getOrigin());
             if (!(light[i].getObject() instanceof PointLight)) {
-                context.lightDirection[i] = toLocal.timesDirection(light[i].getCoords().getZDirection());
+                pm.lightDirection[i] = toLocal.timesDirection(light[i].getCoords().getZDirection());
             }
         }
-        boolean bumpMap = theObject.getTexture().hasComponent(Texture.BUMP_COMPONENT);
-        boolean cullBackfaces = (hideBackfaces && theObject.isClosed() && !theObject.getTexture().hasComponent(Texture.TRANSPARENT_COLOR_COMPONENT));
-        ObjectMaterialInfo material = null;
+        context.lightPosition = pm.lightPosition;
+        context.lightDirection = pm.lightDirection;
+        context.fromLocal = pm.fromLocal;
+        pm.bumpMap = theObject.getTexture().hasComponent(Texture.BUMP_COMPONENT);
+        pm.cullBackfaces = (hideBackfaces && theObject.isClosed() && !theObject.getTexture().hasComponent(Texture.TRANSPARENT_COLOR_COMPONENT));
         if (theObject.getMaterialMapping() != null) {
-            material = new ObjectMaterialInfo(theObject.getMaterialMapping(), toLocal);
+            pm.material = new ObjectMaterialInfo(theObject.getMaterialMapping(), toLocal);
         }
         if (theObject.getTexture().hasComponent(Texture.DISPLACEMENT_COMPONENT)) {
-            renderMeshDisplaced(mesh, viewdir, tol, cullBackfaces, bumpMap, material, context);
-        } else if (shadingMode == GOURAUD) {
-            renderMeshGouraud(mesh, viewdir, cullBackfaces, material, context);
-        } else if (shadingMode == HYBRID && !bumpMap) {
-            renderMeshHybrid(mesh, viewdir, cullBackfaces, material, context);
+            if (prepared == null) {
+                renderMeshDisplaced(mesh, pm.viewdir, tol, pm.cullBackfaces, pm.bumpMap, pm.material, null, context);
+                return;
+            }
+            pm.microTri = new ArrayList<>();
+            pm.microVert = new ArrayList<>();
+            renderMeshDisplaced(mesh, pm.viewdir, tol, pm.cullBackfaces, pm.bumpMap, pm.material, pm, context);
+        } else {
+            if (shadingMode == GOURAUD) {
+                pm.shading = GOURAUD;
+            } else if (shadingMode == HYBRID && !pm.bumpMap) {
+                pm.shading = HYBRID;
+            } else {
+                pm.shading = PHONG;
+            }
+            Vec3[] vert = mesh.vert;
+            Mat4 toView = context.camera.getObjectToView(), toScreen = context.camera.getObjectToScreen();
+            pm.pos = new Vec2[vert.length];
+            pm.z = new float[vert.length];
+            for (i = vert.length - 1; i >= 0; i--) {
+                pm.pos[i] = toScreen.timesXY(vert[i]);
+                pm.z[i] = (float) toView.timesZ(vert[i]);
+            }
+            if (prepared == null) {
+                renderPreparedMesh(pm, null, 0, mesh.triangle.length, context);
+                return;
+            }
+
+            // Opaque Phong shaded meshes can be drawn into a G-buffer and shaded once per pixel.
+            pm.deferred = (deferredShading && pm.shading == PHONG && pm.material == null
+                    && !theObject.getTexture().hasComponent(Texture.TRANSPARENT_COLOR_COMPONENT));
+        }
+        prepared.add(pm);
+    }
+
+    /**
+     * Determine whether an object is hidden behind opaque surfaces which have already been drawn.
+     * The camera's object transform must already be set for the object.
+     */
+    private boolean isOccluded(ObjectInfo obj, Object3D theObject, RasterContext context) {
+        Texture tex = theObject.getTexture();
+        if (tex != null && tex.hasComponent(Texture.DISPLACEMENT_COMPONENT)) {
+            return false; // The displaced surface may extend outside the bounding box.
+        }
+        int[] rect = new int[4];
+        float depth = findScreenRect(obj, context.camera, rect);
+        return (depth >= 0.0f && hiZ.isOccluded(rect[0], rect[1], rect[2], rect[3], depth));
+    }
+
+    /**
+     * Find the region of the screen covered by an object's bounding box. The camera's object
+     * transform must already be set for the object.
+     *
+     * @param obj the object
+     * @param camera the camera to project the bounding box with
+     * @param rect on exit, this contains (xmin, ymin, xmax, ymax) of the region
+     * @return a lower bound on the depth of any point in the bounding box, or -1 if it crosses the
+     * clipping plane so its projection cannot be determined
+     */
+    private float findScreenRect(ObjectInfo obj, Camera camera, int[] rect) {
+        Mat4 toView = camera.getObjectToView(), toScreen = camera.getObjectToScreen();
+        double clip = camera.getClipDistance(), minDepth = Double.MAX_VALUE;
+        double minx = Double.MAX_VALUE, miny = Double.MAX_VALUE, maxx = -Double.MAX_VALUE, maxy = -Double.MAX_VALUE;
+        for (Vec3 corner : obj.getBounds().getCorners()) {
+            double z = toView.timesZ(corner);
+            if (z <= clip) {
+                return -1.0f;
+            }
+            minDepth = Math.min(minDepth, z);
+            Vec2 p = toScreen.timesXY(corner);
+            minx = Math.min(minx, p.x);
+            miny = Math.min(miny, p.y);
+            maxx = Math.max(maxx, p.x);
+            maxy = Math.max(maxy, p.y);
+        }
+        rect[0] = (int) Math.floor(minx) - 1;
+        rect[1] = (int) Math.floor(miny) - 1;
+        rect[2] = (int) Math.ceil(maxx) + 2;
+        rect[3] = (int) Math.ceil(maxy) + 2;
+
+        // Move it slightly closer, so surfaces lying right on top of an occluder are never culled because of roundoff.
+        return (float) (minDepth * (1.0 - 1e-4));
+    }
+
+    /**
+     * Render a set of triangles from a mesh which has been prepared by {@link #renderObject}.
+     * The camera's object transform must already be set for the mesh.
+     *
+     * @param pm the mesh to render
+     * @param triangles the indices of the triangles to render. If this is null, the triangles
+     * with indices from start to end are rendered.
+     * @param start the first element of triangles to render
+     * @param end one more than the last element of triangles to render
+     * @param context the RasterContext for the current thread
+     */
+    private void renderPreparedMesh(PreparedMesh pm, int[] triangles, int start, int end, RasterContext context) {
+        context.lightPosition = pm.lightPosition;
+        context.lightDirection = pm.lightDirection;
+        context.fromLocal = pm.fromLocal;
+        if (pm.microTri != null) {
+            for (int k = end - 1; k >= start; k--) {
+                int i = (triangles == null ? k : triangles[k]);
+                renderDisplacedMicroTriangle(pm.microTri.get(i), pm.microVert.get(3 * i), pm.microVert.get(3 * i + 1), pm.microVert.get(3 * i + 2),
+                        pm.viewdir, pm.bumpMap, pm.material, context);
+            }
+        } else if (pm.shading == GOURAUD) {
+            renderMeshGouraud(pm, triangles, start, end, context);
+        } else if (pm.shading == HYBRID) {
+            renderMeshHybrid(pm, triangles, start, end, context);
         } else {
-            renderMeshPhong(mesh, viewdir, cullBackfaces, bumpMap, material, context);
+            renderMeshPhong(pm, triangles, start, end, context);
         }
     }
 
@@ -870,6 +1425,8 @@ public class Raster implements Renderer, Runnable {
      */
     private void calcLight(Vec3 pos, Vec3 norm, Vec3 viewdir, Vec3 faceNorm, double roughness, RGBColor diffuse, RGBColor specular, RGBColor highlight, RasterContext context) {
         Vec3 reflectDir = context.tempVec[0], lightDir = context.tempVec[1];
+        Vec3 worldPos = context.tempVec[4], worldNorm = context.tempVec[5];
+        boolean worldPosFound = false;
         double viewDot = viewdir.dot(norm), faceDot = viewdir.dot(faceNorm);
         RGBColor outputColor = context.tempColor[0];
 
@@ -935,6 +1492,21 @@ public class Raster implements Renderer, Runnable {
             if ((lightDot >= 0.0 && viewDot <= 0.0) || (lightDot <= 0.0 && viewDot >= 0.0)) {
                 continue;
             }
+            if (shadowMap[i] != null) {
+                if (!worldPosFound) {
+                    worldPos.set(pos);
+                    context.fromLocal.transform(worldPos);
+                    worldNorm.set(norm);
+                    context.fromLocal.transformDirection(worldNorm);
+                    worldNorm.normalize();
+                    worldPosFound = true;
+                }
+                float lit = shadowMap[i].getLitFraction(worldPos, worldNorm, reflectDir);
+                if (lit == 0.0f) {
+                    continue;
+                }
+                outputColor.scale(lit);
+            }
             if (diffuse != null) {
                 float dot = (float) (lightDot < 0.0 ? -lightDot : lightDot);
                 diffuse.add(outputColor.getRed() * dot, outputColor.getGreen() * dot, outputColor.getBlue() * dot);
@@ -951,31 +1523,30 @@ public class Raster implements Renderer, Runnable {
     }
 
     /**
-     * Create a Fragment object.
+     * Record a fragment into the current row of a RasterContext.
      *
+     * @param x the position of the fragment along the row
      * @param addColor the additive color in ERGB format
      * @param multColor the multiplicative color in ERGB format
      * @param depth the depth of the fragment
      * @param material a description of the material for the object being rendered
      * @param isBackface true if this triangle faces away from the camera
+     * @param context the RasterContext to record the fragment into
      */
-    private Fragment createFragment(int addColor, int multColor, float depth, ObjectMaterialInfo material, boolean isBackface) {
+    private void recordFragment(int x, int addColor, int multColor, float depth, ObjectMaterialInfo material, boolean isBackface, RasterContext context) {
         if (multColor == 0) {
             // It is fully opaque.
 
-            return new OpaqueFragment(addColor, depth);
+            context.setFragment(x, addColor, 0, depth, null, false);
         } else if (addColor == 0 && multColor == WHITE_ERGB && material == null) {
-            return null; // This is a fully transparent fragment, so we can just discard it.
+            context.clearFragment(x); // This is a fully transparent fragment, so we can just discard it.
         } else {
-            if (material == null) {
-                return new TransparentFragment(addColor, multColor, depth, BACKGROUND_FRAGMENT);
-            }
-            return new MaterialFragment(addColor, multColor, depth, BACKGROUND_FRAGMENT, material, !isBackface);
+            context.setFragment(x, addColor, multColor, depth, material, !isBackface);
         }
     }
 
     /**
-     * Record a row of Fragment objects into the buffer.
+     * Record a row of fragments into the buffer.
      *
      * @param row the index of the row
      * @param xstart the starting position along the row
@@ -983,22 +1554,27 @@ public class Raster implements Renderer, Runnable {
      * @param context the RasterContext from which to copy the Fragments
      */
     private void recordRow(int row, int xstart, int xend, RasterContext context) {
-        Fragment[] source = context.fragment;
-        int indexBase = row * width;
+        if (lock == null) {
+            // With tiled rasterization, each tile is owned by a single thread.
 
-        synchronized (lock[row]) {
-            for (int x = xstart; x < xend; x++) {
-                Fragment f = source[x];
-                if (f == null) {
-                    continue;
-                }
-                int index = indexBase + x;
-                Fragment current = fragment[index];
-                if (f.getDepth() < current.getDepth()) {
-                    fragment[index] = f.insertNextFragment(current);
-                } else {
-                    fragment[index] = current.insertNextFragment(f);
-                }
+            mergeRow(row, xstart, xend, context);
+            return;
+        }
+        synchronized (lock[row / TILE_SIZE]) {
+            mergeRow(row, xstart, xend, context);
+        }
+    }
+
+    /**
+     * Merge a row of fragments into the buffer. The caller is responsible for
+     * making sure no other thread is modifying the same tiles.
+     */
+    private void mergeRow(int row, int xstart, int xend, RasterContext context) {
+        int indexBase = row * width;
+        for (int x = xstart; x < xend; x++) {
+            if (context.hasFragment[x]) {
+                fragments.addFragment(indexBase + x, context.fragmentAddColor[x], context.fragmentMultColor[x],
+                        context.fragmentDepth[x], context.fragmentMaterial[x], context.fragmentEntering[x]);
             }
         }
     }
@@ -1144,16 +1720,20 @@ public class Raster implements Renderer, Runnable {
     /**
      * Render a triangle mesh with Gouraud shading.
      */
-    private void renderMeshGouraud(RenderingMesh mesh, Vec3 viewdir, boolean cullBackfaces, ObjectMaterialInfo material, RasterContext context) {
+    private void renderMeshGouraud(PreparedMesh pm, int[] triangles, int start, int end, RasterContext context) {
+        RenderingMesh mesh = pm.mesh;
+        Vec3 viewdir = pm.viewdir;
+        boolean cullBackfaces = pm.cullBackfaces;
+        ObjectMaterialInfo material = pm.material;
         Vec3[] vert = mesh.vert, norm = mesh.norm;
-        Vec2[] pos = new Vec2[vert.length];
-        float[] z = new float[vert.length];
+        Vec2[] pos = pm.pos;
+        float[] z = pm.z;
         float clip = (float) context.camera.getClipDistance();
         float[] clipz = new float[4];
         double[] clipu = new double[4], clipv = new double[4];
-        double distToScreen = context.camera.getDistToScreen(), tol = smoothScale;
+        double distToScreen = context.camera.getDistToScreen(), tol;
         RGBColor[] diffuse = new RGBColor[4], specular = new RGBColor[4], highlight = new RGBColor[4];
-        Mat4 toView = context.camera.getObjectToView(), toScreen = context.camera.getObjectToScreen();
+        Mat4 toScreen = context.camera.getObjectToScreen();
         RenderingTriangle tri;
         int i, v1, v2, v3, n1, n2, n3;
         boolean backface;
@@ -1163,11 +1743,8 @@ public class Raster implements Renderer, Runnable {
             specular[i] = new RGBColor();
             highlight[i] = new RGBColor();
         }
-        for (i = vert.length - 1; i >= 0; i--) {
-            pos[i] = toScreen.timesXY(vert[i]);
-            z[i] = (float) toView.timesZ(vert[i]);
-        }
-        for (i = mesh.triangle.length - 1; i >= 0; i--) {
+        for (int k = end - 1; k >= start; k--) {
+            i = (triangles == null ? k : triangles[k]);
             tri = mesh.triangle[i];
             v1 = tri.v1;
             v2 = tri.v2;
@@ -1186,6 +1763,7 @@ public class Raster implements Renderer, Runnable {
                 for (int j = clipPos.length - 1; j >= 0; j--) {
                     clipPos2D[j] = toScreen.timesXY(clipPos[j]);
                     double u = clipu[j], v = clipv[j], w = 1.0 - u - v;
+                    tol = (clipz[j] > distToScreen ? smoothScale * clipz[j] : smoothScale);
                     tri.getTextureSpec(context.surfSpec, viewdot, u, v, 1.0 - u - v, tol, time);
                     context.tempVec[2].set(norm[n1].x * u + norm[n2].x * v + norm[n3].x * w, norm[n1].y * u + norm[n2].y * v + norm[n3].y * w, norm[n1].z * u + norm[n2].z * v + norm[n3].z * w);
                     context.tempVec[2].normalize();
@@ -1206,21 +1784,15 @@ public class Raster implements Renderer, Runnable {
                 if (cullBackfaces && backface) {
                     continue;
                 }
-                if (z[v1] > distToScreen) {
-                    tol = smoothScale * z[v1];
-                }
+                tol = (z[v1] > distToScreen ? smoothScale * z[v1] : smoothScale);
                 tri.getTextureSpec(context.surfSpec, viewdot, 1.0, 0.0, 0.0, tol, time);
                 calcLight(vert[v1], norm[n1], viewdir, mesh.faceNorm[i], context.surfSpec.roughness, diffuse[0], specular[0], highlight[0], context);
                 specular[0].add(highlight[0]);
-                if (z[v2] > distToScreen) {
-                    tol = smoothScale * z[v2];
-                }
+                tol = (z[v2] > distToScreen ? smoothScale * z[v2] : smoothScale);
                 tri.getTextureSpec(context.surfSpec, viewdot, 0.0, 1.0, 0.0, tol, time);
                 calcLight(vert[v2], norm[n2], viewdir, mesh.faceNorm[i], context.surfSpec.roughness, diffuse[1], specular[1], highlight[1], context);
                 specular[1].add(highlight[1]);
-                if (z[v3] > distToScreen) {
-                    tol = smoothScale * z[v3];
-                }
+                tol = (z[v3] > distToScreen ? smoothScale * z[v3] : smoothScale);
                 tri.getTextureSpec(context.surfSpec, viewdot, 0.0, 0.0, 1.0, tol, time);
                 calcLight(vert[v3], norm[n3], viewdir, mesh.faceNorm[i], context.surfSpec.roughness, diffuse[2], specular[2], highlight[2], context);
                 specular[2].add(highlight[2]);
@@ -1257,6 +1829,7 @@ public class Raster implements Renderer, Runnable {
         float denom;
         int left, right, i, index, yend, y, lastAddColor = 0, lastMultColor = 0;
         boolean doSubsample = (subsample > 1), repeat;
+        int xmin = context.xmin, xmax = context.xmax, ymin = context.ymin, ymax = context.ymax;
         TextureSpec surfSpec = context.surfSpec;
 
         // Order the three vertices by y coordinate.
@@ -1456,7 +2029,7 @@ public class Raster implements Renderer, Runnable {
             mspecred2 = dspecred2 * denom;
             mspecgreen2 = dspecgreen2 * denom;
             mspecblue2 = dspecblue2 * denom;
-            if (y2 < 0) {
+            if (y2 < ymin) {
                 xstart += mx1 * dy2;
                 xend += mx2 * dy2;
                 zstart += mz1 * dy2;
@@ -1478,32 +2051,32 @@ public class Raster implements Renderer, Runnable {
                 specbluestart += mspecblue1 * dy2;
                 specblueend += mspecblue2 * dy2;
                 y = FastMath.round(y2);
-            } else if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                ustart -= mu1 * y;
-                uend -= mu2 * y;
-                vstart -= mv1 * y;
-                vend -= mv2 * y;
-                difredstart -= mdifred1 * y;
-                difredend -= mdifred2 * y;
-                difgreenstart -= mdifgreen1 * y;
-                difgreenend -= mdifgreen2 * y;
-                difbluestart -= mdifblue1 * y;
-                difblueend -= mdifblue2 * y;
-                specredstart -= mspecred1 * y;
-                specredend -= mspecred2 * y;
-                specgreenstart -= mspecgreen1 * y;
-                specgreenend -= mspecgreen2 * y;
-                specbluestart -= mspecblue1 * y;
-                specblueend -= mspecblue2 * y;
-                y = 0;
+            } else if (y < ymin) {
+                xstart -= mx1 * (y - ymin);
+                xend -= mx2 * (y - ymin);
+                zstart -= mz1 * (y - ymin);
+                zend -= mz2 * (y - ymin);
+                ustart -= mu1 * (y - ymin);
+                uend -= mu2 * (y - ymin);
+                vstart -= mv1 * (y - ymin);
+                vend -= mv2 * (y - ymin);
+                difredstart -= mdifred1 * (y - ymin);
+                difredend -= mdifred2 * (y - ymin);
+                difgreenstart -= mdifgreen1 * (y - ymin);
+                difgreenend -= mdifgreen2 * (y - ymin);
+                difbluestart -= mdifblue1 * (y - ymin);
+                difblueend -= mdifblue2 * (y - ymin);
+                specredstart -= mspecred1 * (y - ymin);
+                specredend -= mspecred2 * (y - ymin);
+                specgreenstart -= mspecgreen1 * (y - ymin);
+                specgreenend -= mspecgreen2 * (y - ymin);
+                specbluestart -= mspecblue1 * (y - ymin);
+                specblueend -= mspecblue2 * (y - ymin);
+                y = ymin;
             }
             yend = FastMath.round(y2);
-            if (yend > height) {
-                yend = height;
+            if (yend > ymax) {
+                yend = ymax;
             }
             index = y * width;
 
@@ -1569,25 +2142,25 @@ public class Raster implements Renderer, Runnable {
                     dspecred *= denom;
                     dspecgreen *= denom;
                     dspecblue *= denom;
-                    if (left < 0) {
-                        z -= dz * left;
-                        u -= du * left;
-                        v -= dv * left;
-                        difred -= ddifred * left;
-                        difgreen -= ddifgreen * left;
-                        difblue -= ddifblue * left;
-                        specred -= dspecred * left;
-                        specgreen -= dspecgreen * left;
-                        specblue -= dspecblue * left;
-                        left = 0;
+                    if (left < xmin) {
+                        z -= dz * (left - xmin);
+                        u -= du * (left - xmin);
+                        v -= dv * (left - xmin);
+                        difred -= ddifred * (left - xmin);
+                        difgreen -= ddifgreen * (left - xmin);
+                        difblue -= ddifblue * (left - xmin);
+                        specred -= dspecred * (left - xmin);
+                        specgreen -= dspecgreen * (left - xmin);
+                        specblue -= dspecblue * (left - xmin);
+                        left = xmin;
                     }
-                    if (right > width) {
-                        right = width;
+                    if (right > xmax) {
+                        right = xmax;
                     }
                     repeat = false;
                     for (i = left; i < right; i++) {
                         zl = 1.0f / z;
-                        if (zl < fragment[index + i].getOpaqueDepth() && zl > clip) {
+                        if (zl < fragments.getOpaqueDepth(index + i) && zl > clip) {
                             if (!repeat || (i % subsample == 0)) {
                                 ul = u * zl;
                                 vl = v * zl;
@@ -1599,10 +2172,10 @@ public class Raster implements Renderer, Runnable {
                                 lastAddColor = context.tempColor[0].getERGB();
                                 lastMultColor = surfSpec.transparent.getERGB();
                             }
-                            context.fragment[i] = createFragment(lastAddColor, lastMultColor, zl, material, isBackface);
+                            recordFragment(i, lastAddColor, lastMultColor, zl, material, isBackface, context);
                             repeat = doSubsample;
                         } else {
-                            context.fragment[i] = null;
+                            context.clearFragment(i);
                             repeat = false;
                         }
                         z += dz;
@@ -1676,30 +2249,30 @@ public class Raster implements Renderer, Runnable {
             specredend = spec2.getRed();
             specgreenend = spec2.getGreen();
             specblueend = spec2.getBlue();
-            if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                ustart -= mu1 * y;
-                uend -= mu2 * y;
-                vstart -= mv1 * y;
-                vend -= mv2 * y;
-                difredstart -= mdifred1 * y;
-                difredend -= mdifred2 * y;
-                difgreenstart -= mdifgreen1 * y;
-                difgreenend -= mdifgreen2 * y;
-                difbluestart -= mdifblue1 * y;
-                difblueend -= mdifblue2 * y;
-                specredstart -= mspecred1 * y;
-                specredend -= mspecred2 * y;
-                specgreenstart -= mspecgreen1 * y;
-                specgreenend -= mspecgreen2 * y;
-                specbluestart -= mspecblue1 * y;
-                specblueend -= mspecblue2 * y;
-                y = 0;
-            }
-            yend = FastMath.round(y3 < height ? y3 : height);
+            if (y < ymin) {
+                xstart -= mx1 * (y - ymin);
+                xend -= mx2 * (y - ymin);
+                zstart -= mz1 * (y - ymin);
+                zend -= mz2 * (y - ymin);
+                ustart -= mu1 * (y - ymin);
+                uend -= mu2 * (y - ymin);
+                vstart -= mv1 * (y - ymin);
+                vend -= mv2 * (y - ymin);
+                difredstart -= mdifred1 * (y - ymin);
+                difredend -= mdifred2 * (y - ymin);
+                difgreenstart -= mdifgreen1 * (y - ymin);
+                difgreenend -= mdifgreen2 * (y - ymin);
+                difbluestart -= mdifblue1 * (y - ymin);
+                difblueend -= mdifblue2 * (y - ymin);
+                specredstart -= mspecred1 * (y - ymin);
+                specredend -= mspecred2 * (y - ymin);
+                specgreenstart -= mspecgreen1 * (y - ymin);
+                specgreenend -= mspecgreen2 * (y - ymin);
+                specbluestart -= mspecblue1 * (y - ymin);
+                specblueend -= mspecblue2 * (y - ymin);
+                y = ymin;
+            }
+            yend = FastMath.round(y3 < ymax ? y3 : ymax);
             index = y * width;
 
             // Rasterize the bottom half of the triangle,
@@ -1764,25 +2337,25 @@ public class Raster implements Renderer, Runnable {
                     dspecred *= denom;
                     dspecgreen *= denom;
                     dspecblue *= denom;
-                    if (left < 0) {
-                        z -= dz * left;
-                        u -= du * left;
-                        v -= dv * left;
-                        difred -= ddifred * left;
-                        difgreen -= ddifgreen * left;
-                        difblue -= ddifblue * left;
-                        specred -= dspecred * left;
-                        specgreen -= dspecgreen * left;
-                        specblue -= dspecblue * left;
-                        left = 0;
+                    if (left < xmin) {
+                        z -= dz * (left - xmin);
+                        u -= du * (left - xmin);
+                        v -= dv * (left - xmin);
+                        difred -= ddifred * (left - xmin);
+                        difgreen -= ddifgreen * (left - xmin);
+                        difblue -= ddifblue * (left - xmin);
+                        specred -= dspecred * (left - xmin);
+                        specgreen -= dspecgreen * (left - xmin);
+                        specblue -= dspecblue * (left - xmin);
+                        left = xmin;
                     }
-                    if (right > width) {
-                        right = width;
+                    if (right > xmax) {
+                        right = xmax;
                     }
                     repeat = false;
                     for (i = left; i < right; i++) {
                         zl = 1.0f / z;
-                        if (zl < fragment[index + i].getOpaqueDepth() && zl > clip) {
+                        if (zl < fragments.getOpaqueDepth(index + i) && zl > clip) {
                             if (!repeat || (i % subsample == 0)) {
                                 ul = u * zl;
                                 vl = v * zl;
@@ -1794,10 +2367,10 @@ public class Raster implements Renderer, Runnable {
                                 lastAddColor = context.tempColor[0].getERGB();
                                 lastMultColor = surfSpec.transparent.getERGB();
                             }
-                            context.fragment[i] = createFragment(lastAddColor, lastMultColor, zl, material, isBackface);
+                            recordFragment(i, lastAddColor, lastMultColor, zl, material, isBackface, context);
                             repeat = doSubsample;
                         } else {
-                            context.fragment[i] = null;
+                            context.clearFragment(i);
                             repeat = false;
                         }
                         z += dz;
@@ -1841,16 +2414,20 @@ public class Raster implements Renderer, Runnable {
     /**
      * Render a triangle mesh with hybrid Gouraud/Phong shading.
      */
-    private void renderMeshHybrid(RenderingMesh mesh, Vec3 viewdir, boolean cullBackfaces, ObjectMaterialInfo material, RasterContext context) {
+    private void renderMeshHybrid(PreparedMesh pm, int[] triangles, int start, int end, RasterContext context) {
+        RenderingMesh mesh = pm.mesh;
+        Vec3 viewdir = pm.viewdir;
+        boolean cullBackfaces = pm.cullBackfaces;
+        ObjectMaterialInfo material = pm.material;
         Vec3[] vert = mesh.vert, norm = mesh.norm, clipNorm = new Vec3[4];
-        Vec2[] pos = new Vec2[vert.length];
-        float[] z = new float[vert.length];
+        Vec2[] pos = pm.pos;
+        float[] z = pm.z;
         float clip = (float) context.camera.getClipDistance();
         float[] clipz = new float[4];
         double[] clipu = new double[4], clipv = new double[4];
-        double distToScreen = context.camera.getDistToScreen(), tol = smoothScale;
+        double distToScreen = context.camera.getDistToScreen(), tol;
         RGBColor[] diffuse = new RGBColor[4];
-        Mat4 toView = context.camera.getObjectToView(), toScreen = context.camera.getObjectToScreen();
+        Mat4 toScreen = context.camera.getObjectToScreen();
         RenderingTriangle tri;
         int i, v1, v2, v3, n1, n2, n3;
         boolean backface;
@@ -1859,11 +2436,8 @@ public class Raster implements Renderer, Runnable {
             diffuse[i] = new RGBColor();
             clipNorm[i] = new Vec3();
         }
-        for (i = vert.length - 1; i >= 0; i--) {
-            pos[i] = toScreen.timesXY(vert[i]);
-            z[i] = (float) toView.timesZ(vert[i]);
-        }
-        for (i = mesh.triangle.length - 1; i >= 0; i--) {
+        for (int k = end - 1; k >= start; k--) {
+            i = (triangles == null ? k : triangles[k]);
             tri = mesh.triangle[i];
             v1 = tri.v1;
             v2 = tri.v2;
@@ -1882,10 +2456,11 @@ public class Raster implements Renderer, Runnable {
                 for (int j = clipPos.length - 1; j >= 0; j--) {
                     clipPos2D[j] = toScreen.timesXY(clipPos[j]);
                     double u = clipu[j], v = clipv[j], w = 1.0 - u - v;
+                    tol = (clipz[j] > distToScreen ? smoothScale * clipz[j] : smoothScale);
                     tri.getTextureSpec(context.surfSpec, viewdot, u, v, 1.0 - u - v, tol, time);
                     clipNorm[j].set(norm[n1].x * u + norm[n2].x * v + norm[n3].x * w, norm[n1].y * u + norm[n2].y * v + norm[n3].y * w, norm[n1].z * u + norm[n2].z * v + norm[n3].z * w);
                     clipNorm[j].normalize();
-                    calcLight(clipPos[j], context.tempVec[2], viewdir, mesh.faceNorm[i], context.surfSpec.roughness, diffuse[j], null, null, context);
+                    calcLight(clipPos[j], clipNorm[j], viewdir, mesh.faceNorm[i], context.surfSpec.roughness, diffuse[j], null, null, context);
                 }
                 renderTriangleHybrid(clipPos2D[0], clipz[0], clipPos[0], clipNorm[0], clipu[0], clipv[0], diffuse[0],
                         clipPos2D[1], clipz[1], clipPos[1], clipNorm[1], clipu[1], clipv[1], diffuse[1],
@@ -1901,19 +2476,13 @@ public class Raster implements Renderer, Runnable {
                 if (cullBackfaces && backface) {
                     continue;
                 }
-                if (z[v1] > distToScreen) {
-                    tol = smoothScale * z[v1];
-                }
+                tol = (z[v1] > distToScreen ? smoothScale * z[v1] : smoothScale);
                 tri.getTextureSpec(context.surfSpec, viewdot, 1.0, 0.0, 0.0, tol, time);
                 calcLight(vert[v1], norm[n1], viewdir, mesh.faceNorm[i], context.surfSpec.roughness, diffuse[0], null, null, context);
-                if (z[v2] > distToScreen) {
-                    tol = smoothScale * z[v2];
-                }
+                tol = (z[v2] > distToScreen ? smoothScale * z[v2] : smoothScale);
                 tri.getTextureSpec(context.surfSpec, viewdot, 0.0, 1.0, 0.0, tol, time);
                 calcLight(vert[v2], norm[n2], viewdir, mesh.faceNorm[i], context.surfSpec.roughness, diffuse[1], null, null, context);
-                if (z[v3] > distToScreen) {
-                    tol = smoothScale * z[v3];
-                }
+                tol = (z[v3] > distToScreen ? smoothScale * z[v3] : smoothScale);
                 tri.getTextureSpec(context.surfSpec, viewdot, 0.0, 0.0, 1.0, tol, time);
                 calcLight(vert[v3], norm[n3], viewdir, mesh.faceNorm[i], context.surfSpec.roughness, diffuse[2], null, null, context);
                 renderTriangleHybrid(pos[v1], z[v1], vert[v1], norm[n1], 1.0, 0.0, diffuse[0],
@@ -1950,6 +2519,7 @@ public class Raster implements Renderer, Runnable {
         float denom;
         int left, right, i, index, yend, y, lastAddColor = 0, lastMultColor = 0;
         boolean doSubsample = (subsample > 1), repeat;
+        int xmin = context.xmin, xmax = context.xmax, ymin = context.ymin, ymax = context.ymax;
         TextureSpec surfSpec = context.surfSpec;
 
         // Order the three vertices by y coordinate.
@@ -2149,7 +2719,7 @@ public class Raster implements Renderer, Runnable {
             mnormx2 = dnormx2 * denom;
             mnormy2 = dnormy2 * denom;
             mnormz2 = dnormz2 * denom;
-            if (y2 < 0) {
+            if (y2 < ymin) {
                 xstart += mx1 * dy2;
                 xend += mx2 * dy2;
                 zstart += mz1 * dy2;
@@ -2171,32 +2741,32 @@ public class Raster implements Renderer, Runnable {
                 normzstart += mnormz1 * dy2;
                 normzend += mnormz2 * dy2;
                 y = FastMath.round(y2);
-            } else if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                ustart -= mu1 * y;
-                uend -= mu2 * y;
-                vstart -= mv1 * y;
-                vend -= mv2 * y;
-                difredstart -= mdifred1 * y;
-                difredend -= mdifred2 * y;
-                difgreenstart -= mdifgreen1 * y;
-                difgreenend -= mdifgreen2 * y;
-                difbluestart -= mdifblue1 * y;
-                difblueend -= mdifblue2 * y;
-                normxstart -= mnormx1 * y;
-                normxend -= mnormx2 * y;
-                normystart -= mnormy1 * y;
-                normyend -= mnormy2 * y;
-                normzstart -= mnormz1 * y;
-                normzend -= mnormz2 * y;
-                y = 0;
+            } else if (y < ymin) {
+                xstart -= mx1 * (y - ymin);
+                xend -= mx2 * (y - ymin);
+                zstart -= mz1 * (y - ymin);
+                zend -= mz2 * (y - ymin);
+                ustart -= mu1 * (y - ymin);
+                uend -= mu2 * (y - ymin);
+                vstart -= mv1 * (y - ymin);
+                vend -= mv2 * (y - ymin);
+                difredstart -= mdifred1 * (y - ymin);
+                difredend -= mdifred2 * (y - ymin);
+                difgreenstart -= mdifgreen1 * (y - ymin);
+                difgreenend -= mdifgreen2 * (y - ymin);
+                difbluestart -= mdifblue1 * (y - ymin);
+                difblueend -= mdifblue2 * (y - ymin);
+                normxstart -= mnormx1 * (y - ymin);
+                normxend -= mnormx2 * (y - ymin);
+                normystart -= mnormy1 * (y - ymin);
+                normyend -= mnormy2 * (y - ymin);
+                normzstart -= mnormz1 * (y - ymin);
+                normzend -= mnormz2 * (y - ymin);
+                y = ymin;
             }
             yend = FastMath.round(y2);
-            if (yend > height) {
-                yend = height;
+            if (yend > ymax) {
+                yend = ymax;
             }
             index = y * width;
 
@@ -2262,25 +2832,25 @@ public class Raster implements Renderer, Runnable {
                     dnormx *= denom;
                     dnormy *= denom;
                     dnormz *= denom;
-                    if (left < 0) {
-                        z -= dz * left;
-                        u -= du * left;
-                        v -= dv * left;
-                        difred -= ddifred * left;
-                        difgreen -= ddifgreen * left;
-                        difblue -= ddifblue * left;
-                        normx -= dnormx * left;
-                        normy -= dnormy * left;
-                        normz -= dnormz * left;
-                        left = 0;
+                    if (left < xmin) {
+                        z -= dz * (left - xmin);
+                        u -= du * (left - xmin);
+                        v -= dv * (left - xmin);
+                        difred -= ddifred * (left - xmin);
+                        difgreen -= ddifgreen * (left - xmin);
+                        difblue -= ddifblue * (left - xmin);
+                        normx -= dnormx * (left - xmin);
+                        normy -= dnormy * (left - xmin);
+                        normz -= dnormz * (left - xmin);
+                        left = xmin;
                     }
-                    if (right > width) {
-                        right = width;
+                    if (right > xmax) {
+                        right = xmax;
                     }
                     repeat = false;
                     for (i = left; i < right; i++) {
                         zl = 1.0f / z;
-                        if (zl < fragment[index + i].getOpaqueDepth() && zl > clip) {
+                        if (zl < fragments.getOpaqueDepth(index + i) && zl > clip) {
                             if (!repeat || (i % subsample == 0)) {
                                 ul = u * zl;
                                 vl = v * zl;
@@ -2305,10 +2875,10 @@ public class Raster implements Renderer, Runnable {
                                 lastAddColor = context.tempColor[0].getERGB();
                                 lastMultColor = surfSpec.transparent.getERGB();
                             }
-                            context.fragment[i] = createFragment(lastAddColor, lastMultColor, zl, material, isBackface);
+                            recordFragment(i, lastAddColor, lastMultColor, zl, material, isBackface, context);
                             repeat = doSubsample;
                         } else {
-                            context.fragment[i] = null;
+                            context.clearFragment(i);
                             repeat = false;
                         }
                         z += dz;
@@ -2382,30 +2952,30 @@ public class Raster implements Renderer, Runnable {
             normxend = norm2.x;
             normyend = norm2.y;
             normzend = norm2.z;
-            if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                ustart -= mu1 * y;
-                uend -= mu2 * y;
-                vstart -= mv1 * y;
-                vend -= mv2 * y;
-                difredstart -= mdifred1 * y;
-                difredend -= mdifred2 * y;
-                difgreenstart -= mdifgreen1 * y;
-                difgreenend -= mdifgreen2 * y;
-                difbluestart -= mdifblue1 * y;
-                difblueend -= mdifblue2 * y;
-                normxstart -= mnormx1 * y;
-                normxend -= mnormx2 * y;
-                normystart -= mnormy1 * y;
-                normyend -= mnormy2 * y;
-                normzstart -= mnormz1 * y;
-                normzend -= mnormz2 * y;
-                y = 0;
-            }
-            yend = FastMath.round(y3 < height ? y3 : height);
+            if (y < ymin) {
+                xstart -= mx1 * (y - ymin);
+                xend -= mx2 * (y - ymin);
+                zstart -= mz1 * (y - ymin);
+                zend -= mz2 * (y - ymin);
+                ustart -= mu1 * (y - ymin);
+                uend -= mu2 * (y - ymin);
+                vstart -= mv1 * (y - ymin);
+                vend -= mv2 * (y - ymin);
+                difredstart -= mdifred1 * (y - ymin);
+                difredend -= mdifred2 * (y - ymin);
+                difgreenstart -= mdifgreen1 * (y - ymin);
+                difgreenend -= mdifgreen2 * (y - ymin);
+                difbluestart -= mdifblue1 * (y - ymin);
+                difblueend -= mdifblue2 * (y - ymin);
+                normxstart -= mnormx1 * (y - ymin);
+                normxend -= mnormx2 * (y - ymin);
+                normystart -= mnormy1 * (y - ymin);
+                normyend -= mnormy2 * (y - ymin);
+                normzstart -= mnormz1 * (y - ymin);
+                normzend -= mnormz2 * (y - ymin);
+                y = ymin;
+            }
+            yend = FastMath.round(y3 < ymax ? y3 : ymax);
             index = y * width;
 
             // Rasterize the bottom half of the triangle,
@@ -2470,25 +3040,25 @@ public class Raster implements Renderer, Runnable {
                     dnormx *= denom;
                     dnormy *= denom;
                     dnormz *= denom;
-                    if (left < 0) {
-                        z -= dz * left;
-                        u -= du * left;
-                        v -= dv * left;
-                        difred -= ddifred * left;
-                        difgreen -= ddifgreen * left;
-                        difblue -= ddifblue * left;
-                        normx -= dnormx * left;
-                        normy -= dnormy * left;
-                        normz -= dnormz * left;
-                        left = 0;
+                    if (left < xmin) {
+                        z -= dz * (left - xmin);
+                        u -= du * (left - xmin);
+                        v -= dv * (left - xmin);
+                        difred -= ddifred * (left - xmin);
+                        difgreen -= ddifgreen * (left - xmin);
+                        difblue -= ddifblue * (left - xmin);
+                        normx -= dnormx * (left - xmin);
+                        normy -= dnormy * (left - xmin);
+                        normz -= dnormz * (left - xmin);
+                        left = xmin;
                     }
-                    if (right > width) {
-                        right = width;
+                    if (right > xmax) {
+                        right = xmax;
                     }
                     repeat = false;
                     for (i = left; i < right; i++) {
                         zl = 1.0f / z;
-                        if (zl < fragment[index + i].getOpaqueDepth() && zl > clip) {
+                        if (zl < fragments.getOpaqueDepth(index + i) && zl > clip) {
                             if (!repeat || (i % subsample == 0)) {
                                 ul = u * zl;
                                 vl = v * zl;
@@ -2513,10 +3083,10 @@ public class Raster implements Renderer, Runnable {
                                 lastAddColor = context.tempColor[0].getERGB();
                                 lastMultColor = surfSpec.transparent.getERGB();
                             }
-                            context.fragment[i] = createFragment(lastAddColor, lastMultColor, zl, material, isBackface);
+                            recordFragment(i, lastAddColor, lastMultColor, zl, material, isBackface, context);
                             repeat = doSubsample;
                         } else {
-                            context.fragment[i] = null;
+                            context.clearFragment(i);
                             repeat = false;
                         }
                         z += dz;
@@ -2560,14 +3130,18 @@ public class Raster implements Renderer, Runnable {
     /**
      * Render a triangle mesh with Phong shading.
      */
-    private void renderMeshPhong(RenderingMesh mesh, Vec3 viewdir, boolean cullBackfaces, boolean bumpMap, ObjectMaterialInfo material, RasterContext context) {
+    private void renderMeshPhong(PreparedMesh pm, int[] triangles, int start, int end, RasterContext context) {
+        RenderingMesh mesh = pm.mesh;
+        Vec3 viewdir = pm.viewdir;
+        boolean cullBackfaces = pm.cullBackfaces, bumpMap = pm.bumpMap;
+        ObjectMaterialInfo material = pm.material;
         Vec3[] vert = mesh.vert, norm = mesh.norm, clipNorm = new Vec3[4];
-        Vec2[] pos = new Vec2[vert.length];
-        float[] z = new float[vert.length];
+        Vec2[] pos = pm.pos;
+        float[] z = pm.z;
         float clip = (float) context.camera.getClipDistance();
         float[] clipz = new float[4];
         double[] clipu = new double[4], clipv = new double[4];
-        Mat4 toView = context.camera.getObjectToView(), toScreen = context.camera.getObjectToScreen();
+        Mat4 toScreen = context.camera.getObjectToScreen();
         RenderingTriangle tri;
         int i, v1, v2, v3, n1, n2, n3;
         boolean backface;
@@ -2575,11 +3149,8 @@ public class Raster implements Renderer, Runnable {
         for (i = 0; i < 4; i++) {
             clipNorm[i] = new Vec3();
         }
-        for (i = vert.length - 1; i >= 0; i--) {
-            pos[i] = toScreen.timesXY(vert[i]);
-            z[i] = (float) toView.timesZ(vert[i]);
-        }
-        for (i = mesh.triangle.length - 1; i >= 0; i--) {
+        for (int k = end - 1; k >= start; k--) {
+            i = (triangles == null ? k : triangles[k]);
             tri = mesh.triangle[i];
             v1 = tri.v1;
             v2 = tri.v2;
@@ -2644,6 +3215,7 @@ public class Raster implements Renderer, Runnable {
         float denom;
         int left, right, i, index, yend, y, lastAddColor = 0, lastMultColor = 0;
         boolean doSubsample = (subsample > 1), repeat;
+        int xmin = context.xmin, xmax = context.xmax, ymin = context.ymin, ymax = context.ymax;
         TextureSpec surfSpec = context.surfSpec;
 
         // Order the three vertices by y coordinate.
@@ -2813,7 +3385,7 @@ public class Raster implements Renderer, Runnable {
             mnormx2 = dnormx2 * denom;
             mnormy2 = dnormy2 * denom;
             mnormz2 = dnormz2 * denom;
-            if (y2 < 0) {
+            if (y2 < ymin) {
                 xstart += mx1 * dy2;
                 xend += mx2 * dy2;
                 zstart += mz1 * dy2;
@@ -2829,26 +3401,26 @@ public class Raster implements Renderer, Runnable {
                 normzstart += mnormz1 * dy2;
                 normzend += mnormz2 * dy2;
                 y = FastMath.round(y2);
-            } else if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                ustart -= mu1 * y;
-                uend -= mu2 * y;
-                vstart -= mv1 * y;
-                vend -= mv2 * y;
-                normxstart -= mnormx1 * y;
-                normxend -= mnormx2 * y;
-                normystart -= mnormy1 * y;
-                normyend -= mnormy2 * y;
-                normzstart -= mnormz1 * y;
-                normzend -= mnormz2 * y;
-                y = 0;
+            } else if (y < ymin) {
+                xstart -= mx1 * (y - ymin);
+                xend -= mx2 * (y - ymin);
+                zstart -= mz1 * (y - ymin);
+                zend -= mz2 * (y - ymin);
+                ustart -= mu1 * (y - ymin);
+                uend -= mu2 * (y - ymin);
+                vstart -= mv1 * (y - ymin);
+                vend -= mv2 * (y - ymin);
+                normxstart -= mnormx1 * (y - ymin);
+                normxend -= mnormx2 * (y - ymin);
+                normystart -= mnormy1 * (y - ymin);
+                normyend -= mnormy2 * (y - ymin);
+                normzstart -= mnormz1 * (y - ymin);
+                normzend -= mnormz2 * (y - ymin);
+                y = ymin;
             }
             yend = FastMath.round(y2);
-            if (yend > height) {
-                yend = height;
+            if (yend > ymax) {
+                yend = ymax;
             }
             index = y * width;
 
@@ -2899,22 +3471,22 @@ public class Raster implements Renderer, Runnable {
                     dnormx *= denom;
                     dnormy *= denom;
                     dnormz *= denom;
-                    if (left < 0) {
-                        z -= dz * left;
-                        u -= du * left;
-                        v -= dv * left;
-                        normx -= dnormx * left;
-                        normy -= dnormy * left;
-                        normz -= dnormz * left;
-                        left = 0;
+                    if (left < xmin) {
+                        z -= dz * (left - xmin);
+                        u -= du * (left - xmin);
+                        v -= dv * (left - xmin);
+                        normx -= dnormx * (left - xmin);
+                        normy -= dnormy * (left - xmin);
+                        normz -= dnormz * (left - xmin);
+                        left = xmin;
                     }
-                    if (right > width) {
-                        right = width;
+                    if (right > xmax) {
+                        right = xmax;
                     }
                     repeat = false;
                     for (i = left; i < right; i++) {
                         zl = 1.0f / z;
-                        if (zl < fragment[index + i].getOpaqueDepth() && zl > clip) {
+                        if (zl < fragments.getOpaqueDepth(index + i) && zl > clip) {
                             if (!repeat || (i % subsample == 0)) {
                                 ul = u * zl;
                                 vl = v * zl;
@@ -2945,10 +3517,10 @@ public class Raster implements Renderer, Runnable {
                                 lastAddColor = context.tempColor[0].getERGB();
                                 lastMultColor = surfSpec.transparent.getERGB();
                             }
-                            context.fragment[i] = createFragment(lastAddColor, lastMultColor, zl, material, isBackface);
+                            recordFragment(i, lastAddColor, lastMultColor, zl, material, isBackface, context);
                             repeat = doSubsample;
                         } else {
-                            context.fragment[i] = null;
+                            context.clearFragment(i);
                             repeat = false;
                         }
                         z += dz;
@@ -3004,24 +3576,24 @@ public class Raster implements Renderer, Runnable {
             normxend = norm2.x;
             normyend = norm2.y;
             normzend = norm2.z;
-            if (y < 0) {
-                xstart -= mx1 * y;
-                xend -= mx2 * y;
-                zstart -= mz1 * y;
-                zend -= mz2 * y;
-                ustart -= mu1 * y;
-                uend -= mu2 * y;
-                vstart -= mv1 * y;
-                vend -= mv2 * y;
-                normxstart -= mnormx1 * y;
-                normxend -= mnormx2 * y;
-                normystart -= mnormy1 * y;
-                normyend -= mnormy2 * y;
-                normzstart -= mnormz1 * y;
-                normzend -= mnormz2 * y;
-                y = 0;
-            }
-            yend = FastMath.round(y3 < height ? y3 : height);
+            if (y < ymin) {
+                xstart -= mx1 * (y - ymin);
+                xend -= mx2 * (y - ymin);
+                zstart -= mz1 * (y - ymin);
+                zend -= mz2 * (y - ymin);
+                ustart -= mu1 * (y - ymin);
+                uend -= mu2 * (y - ymin);
+                vstart -= mv1 * (y - ymin);
+                vend -= mv2 * (y - ymin);
+                normxstart -= mnormx1 * (y - ymin);
+                normxend -= mnormx2 * (y - ymin);
+                normystart -= mnormy1 * (y - ymin);
+                normyend -= mnormy2 * (y - ymin);
+                normzstart -= mnormz1 * (y - ymin);
+                normzend -= mnormz2 * (y - ymin);
+                y = ymin;
+            }
+            yend = FastMath.round(y3 < ymax ? y3 : ymax);
             index = y * width;
 
             // Rasterize the bottom half of the triangle,
@@ -3071,22 +3643,22 @@ public class Raster implements Renderer, Runnable {
                     dnormx *= denom;
                     dnormy *= denom;
                     dnormz *= denom;
-                    if (left < 0) {
-                        z -= dz * left;
-                        u -= du * left;
-                        v -= dv * left;
-                        normx -= dnormx * left;
-                        normy -= dnormy * left;
-                        normz -= dnormz * left;
-                        left = 0;
+                    if (left < xmin) {
+                        z -= dz * (left - xmin);
+                        u -= du * (left - xmin);
+                        v -= dv * (left - xmin);
+                        normx -= dnormx * (left - xmin);
+                        normy -= dnormy * (left - xmin);
+                        normz -= dnormz * (left - xmin);
+                        left = xmin;
                     }
-                    if (right > width) {
-                        right = width;
+                    if (right > xmax) {
+                        right = xmax;
                     }
                     repeat = false;
                     for (i = left; i < right; i++) {
                         zl = 1.0f / z;
-                        if (zl < fragment[index + i].getOpaqueDepth() && zl > clip) {
+                        if (zl < fragments.getOpaqueDepth(index + i) && zl > clip) {
                             if (!repeat || (i % subsample == 0)) {
                                 ul = u * zl;
                                 vl = v * zl;
@@ -3117,10 +3689,10 @@ public class Raster implements Renderer, Runnable {
                                 lastAddColor = context.tempColor[0].getERGB();
                                 lastMultColor = surfSpec.transparent.getERGB();
                             }
-                            context.fragment[i] = createFragment(lastAddColor, lastMultColor, zl, material, isBackface);
+                            recordFragment(i, lastAddColor, lastMultColor, zl, material, isBackface, context);
                             repeat = doSubsample;
                         } else {
-                            context.fragment[i] = null;
+                            context.clearFragment(i);
                             repeat = false;
                         }
                         z += dz;
@@ -3152,11 +3724,423 @@ public class Raster implements Renderer, Runnable {
         }
     }
 
+    /**
+     * Draw a set of triangles from a mesh into the G-buffer of the current tile. This does the same clipping
+     * as {@link #renderMeshPhong}, but no shading.
+     */
+    private void renderMeshDeferred(PreparedMesh pm, int meshIndex, int[] triangles, int start, int end, RasterContext context) {
+        RenderingMesh mesh = pm.mesh;
+        Vec3[] vert = mesh.vert, norm = mesh.norm, clipNorm = new Vec3[4];
+        Vec2[] pos = pm.pos;
+        float[] z = pm.z;
+        float clip = (float) context.camera.getClipDistance();
+        float[] clipz = new float[4];
+        double[] clipu = new double[4], clipv = new double[4];
+        Mat4 toScreen = context.camera.getObjectToScreen();
+        RenderingTriangle tri;
+        int i, v1, v2, v3, n1, n2, n3;
+
+        for (i = 0; i < 4; i++) {
+            clipNorm[i] = new Vec3();
+        }
+        for (int k = end - 1; k >= start; k--) {
+            i = triangles[k];
+            tri = mesh.triangle[i];
+            v1 = tri.v1;
+            v2 = tri.v2;
+            v3 = tri.v3;
+            n1 = tri.n1;
+            n2 = tri.n2;
+            n3 = tri.n3;
+            if (z[v1] < clip && z[v2] < clip && z[v3] < clip) {
+                continue;
+            }
+            if (z[v1] < clip || z[v2] < clip || z[v3] < clip) {
+                Vec3[] clipPos = clipTriangle(vert[v1], vert[v2], vert[v3], z[v1], z[v2], z[v3], clipz, clipu, clipv, context);
+                Vec2[] clipPos2D = new Vec2[clipPos.length];
+                for (int j = clipPos.length - 1; j >= 0; j--) {
+                    clipPos2D[j] = toScreen.timesXY(clipPos[j]);
+                    double u = clipu[j], v = clipv[j], w = 1.0 - u - v;
+                    clipNorm[j].set(norm[n1].x * u + norm[n2].x * v + norm[n3].x * w, norm[n1].y * u + norm[n2].y * v + norm[n3].y * w, norm[n1].z * u + norm[n2].z * v + norm[n3].z * w);
+                    clipNorm[j].normalize();
+                }
+                renderTriangleDeferred(clipPos2D[0], clipz[0], clipNorm[0], clipu[0], clipv[0],
+                        clipPos2D[1], clipz[1], clipNorm[1], clipu[1], clipv[1],
+                        clipPos2D[2], clipz[2], clipNorm[2], clipu[2], clipv[2],
+                        meshIndex, i, clip, context);
+                if (clipPos.length == 4) {
+                    renderTriangleDeferred(clipPos2D[1], clipz[1], clipNorm[1], clipu[1], clipv[1],
+                            clipPos2D[2], clipz[2], clipNorm[2], clipu[2], clipv[2],
+                            clipPos2D[3], clipz[3], clipNorm[3], clipu[3], clipv[3],
+                            meshIndex, i, clip, context);
+                }
+            } else {
+                if (pm.cullBackfaces && (pos[v2].x - pos[v1].x) * (pos[v3].y - pos[v1].y) - (pos[v2].y - pos[v1].y) * (pos[v3].x - pos[v1].x) > 0.0) {
+                    continue;
+                }
+                renderTriangleDeferred(pos[v1], z[v1], norm[n1], 1.0, 0.0,
+                        pos[v2], z[v2], norm[n2], 0.0, 1.0,
+                        pos[v3], z[v3], norm[n3], 0.0, 0.0,
+                        meshIndex, i, clip, context);
+            }
+        }
+    }
+
+    /**
+     * Draw a triangle into the G-buffer. Pixels are covered exactly as by {@link #renderTrianglePhong},
+     * but rather than being shaded, each pixel records which triangle is closest along with the
+     * interpolated barycentric coordinates and normal.
+     */
+    private void renderTriangleDeferred(Vec2 pos1, float zf1, Vec3 normf1, double uf1, double vf1,
+            Vec2 pos2, float zf2, Vec3 normf2, double uf2, double vf2,
+            Vec2 pos3, float zf3, Vec3 normf3, double uf3, double vf3,
+            int meshIndex, int triIndex, double clip, RasterContext context) {
+        Vec2[] pos = {pos1, pos2, pos3};
+        float[] zf = {zf1, zf2, zf3};
+        Vec3[] normf = {normf1, normf2, normf3};
+        double[] uf = {uf1, uf2, uf3}, vf = {vf1, vf2, vf3};
+        int ymin = context.ymin, ymax = context.ymax;
+        int a, b, c, y, yend;
+
+        // Order the three vertices by y coordinate.
+        if (pos1.y <= pos2.y && pos1.y <= pos3.y) {
+            a = 0;
+            b = 1;
+            c = 2;
+        } else if (pos2.y <= pos1.y && pos2.y <= pos3.y) {
+            a = 1;
+            b = 0;
+            c = 2;
+        } else {
+            a = 2;
+            b = 0;
+            c = 1;
+        }
+        if (!(pos[b].y < pos[c].y)) {
+            int temp = b;
+            b = c;
+            c = temp;
+        }
+
+        // Round the coordinates to the nearest pixel to avoid errors during rasterization.
+        double x1 = FastMath.round(pos[a].x), y1 = FastMath.round(pos[a].y);
+        double x2 = FastMath.round(pos[b].x), y2 = FastMath.round(pos[b].y);
+        double x3 = FastMath.round(pos[c].x), y3 = FastMath.round(pos[c].y);
+        Vec3 norm1 = normf[a], norm2 = normf[b], norm3 = normf[c];
+
+        // Calculate intermediate variables.
+        float z1 = 1.0f / zf[a], z2 = 1.0f / zf[b], z3 = 1.0f / zf[c];
+        double u1 = uf[a] * z1, v1 = vf[a] * z1;
+        double u2 = uf[b] * z2, v2 = vf[b] * z2;
+        double u3 = uf[c] * z3, v3 = vf[c] * z3;
+        double dy1 = y3 - y1, dy2 = y2 - y1;
+        if (dy1 == 0) {
+            return;
+        }
+        float denom = (float) (1.0 / dy1);
+        double mx1 = (x3 - x1) * denom, mu1 = (u3 - u1) * denom, mv1 = (v3 - v1) * denom;
+        float mz1 = (z3 - z1) * denom;
+        double mnormx1 = (norm3.x - norm1.x) * denom, mnormy1 = (norm3.y - norm1.y) * denom, mnormz1 = (norm3.z - norm1.z) * denom;
+        double mx2, mu2, mv2, mnormx2, mnormy2, mnormz2;
+        float mz2;
+        double xstart = x1, xend = x1, ustart = u1, uend = u1, vstart = v1, vend = v1;
+        float zstart = z1, zend = z1;
+        double normxstart = norm1.x, normxend = norm1.x, normystart = norm1.y, normyend = norm1.y, normzstart = norm1.z, normzend = norm1.z;
+        y = FastMath.round(y1);
+        if (dy2 > 0.0) {
+            denom = (float) (1.0 / dy2);
+            mx2 = (x2 - x1) * denom;
+            mz2 = (z2 - z1) * denom;
+            mu2 = (u2 - u1) * denom;
+            mv2 = (v2 - v1) * denom;
+            mnormx2 = (norm2.x - norm1.x) * denom;
+            mnormy2 = (norm2.y - norm1.y) * denom;
+            mnormz2 = (norm2.z - norm1.z) * denom;
+            if (y2 < ymin) {
+                xstart += mx1 * dy2;
+                xend += mx2 * dy2;
+                zstart += mz1 * dy2;
+                zend += mz2 * dy2;
+                ustart += mu1 * dy2;
+                uend += mu2 * dy2;
+                vstart += mv1 * dy2;
+                vend += mv2 * dy2;
+                normxstart += mnormx1 * dy2;
+                normxend += mnormx2 * dy2;
+                normystart += mnormy1 * dy2;
+                normyend += mnormy2 * dy2;
+                normzstart += mnormz1 * dy2;
+                normzend += mnormz2 * dy2;
+                y = FastMath.round(y2);
+            } else if (y < ymin) {
+                xstart -= mx1 * (y - ymin);
+                xend -= mx2 * (y - ymin);
+                zstart -= mz1 * (y - ymin);
+                zend -= mz2 * (y - ymin);
+                ustart -= mu1 * (y - ymin);
+                uend -= mu2 * (y - ymin);
+                vstart -= mv1 * (y - ymin);
+                vend -= mv2 * (y - ymin);
+                normxstart -= mnormx1 * (y - ymin);
+                normxend -= mnormx2 * (y - ymin);
+                normystart -= mnormy1 * (y - ymin);
+                normyend -= mnormy2 * (y - ymin);
+                normzstart -= mnormz1 * (y - ymin);
+                normzend -= mnormz2 * (y - ymin);
+                y = ymin;
+            }
+            yend = FastMath.round(y2);
+            if (yend > ymax) {
+                yend = ymax;
+            }
+
+            // Rasterize the top half of the triangle,
+            while (y < yend) {
+                recordDeferredRow(y, xstart, xend, zstart, zend, ustart, uend, vstart, vend,
+                        normxstart, normxend, normystart, normyend, normzstart, normzend, meshIndex, triIndex, clip, context);
+                xstart += mx1;
+                zstart += mz1;
+                ustart += mu1;
+                vstart += mv1;
+                normxstart += mnormx1;
+                normystart += mnormy1;
+                normzstart += mnormz1;
+                xend += mx2;
+                zend += mz2;
+                uend += mu2;
+                vend += mv2;
+                normxend += mnormx2;
+                normyend += mnormy2;
+                normzend += mnormz2;
+                y++;
+            }
+        }
+
+        // Calculate intermediate variables for the bottom half of the triangle.
+        dy2 = y3 - y2;
+        if (dy2 > 0.0) {
+            denom = (float) (1.0 / dy2);
+            mx2 = (x3 - x2) * denom;
+            mz2 = (z3 - z2) * denom;
+            mu2 = (u3 - u2) * denom;
+            mv2 = (v3 - v2) * denom;
+            mnormx2 = (norm3.x - norm2.x) * denom;
+            mnormy2 = (norm3.y - norm2.y) * denom;
+            mnormz2 = (norm3.z - norm2.z) * denom;
+            xend = x2;
+            zend = z2;
+            uend = u2;
+            vend = v2;
+            normxend = norm2.x;
+            normyend = norm2.y;
+            normzend = norm2.z;
+            if (y < ymin) {
+                xstart -= mx1 * (y - ymin);
+                xend -= mx2 * (y - ymin);
+                zstart -= mz1 * (y - ymin);
+                zend -= mz2 * (y - ymin);
+                ustart -= mu1 * (y - ymin);
+                uend -= mu2 * (y - ymin);
+                vstart -= mv1 * (y - ymin);
+                vend -= mv2 * (y - ymin);
+                normxstart -= mnormx1 * (y - ymin);
+                normxend -= mnormx2 * (y - ymin);
+                normystart -= mnormy1 * (y - ymin);
+                normyend -= mnormy2 * (y - ymin);
+                normzstart -= mnormz1 * (y - ymin);
+                normzend -= mnormz2 * (y - ymin);
+                y = ymin;
+            }
+            yend = FastMath.round(y3 < ymax ? y3 : ymax);
+
+            // Rasterize the bottom half of the triangle,
+            while (y < yend) {
+                recordDeferredRow(y, xstart, xend, zstart, zend, ustart, uend, vstart, vend,
+                        normxstart, normxend, normystart, normyend, normzstart, normzend, meshIndex, triIndex, clip, context);
+                xstart += mx1;
+                zstart += mz1;
+                ustart += mu1;
+                vstart += mv1;
+                normxstart += mnormx1;
+                normystart += mnormy1;
+                normzstart += mnormz1;
+                xend += mx2;
+                zend += mz2;
+                uend += mu2;
+                vend += mv2;
+                normxend += mnormx2;
+                normyend += mnormy2;
+                normzend += mnormz2;
+                y++;
+            }
+        }
+    }
+
+    /**
+     * Record one row of a triangle into the G-buffer.
+     */
+    private void recordDeferredRow(int y, double xstart, double xend, float zstart, float zend, double ustart, double uend,
+            double vstart, double vend, double normxstart, double normxend, double normystart, double normyend,
+            double normzstart, double normzend, int meshIndex, int triIndex, double clip, RasterContext context) {
+        GBuffer g = context.gbuffer;
+        int xmin = context.xmin, xmax = context.xmax, left, right;
+        float z, dz, zl, denom;
+        double u, du, v, dv, normx, dnormx, normy, dnormy, normz, dnormz;
+
+        if (xstart < xend) {
+            left = FastMath.round(xstart);
+            right = FastMath.round(xend);
+            z = zstart;
+            dz = zend - zstart;
+            u = ustart;
+            du = uend - ustart;
+            v = vstart;
+            dv = vend - vstart;
+            normx = normxstart;
+            dnormx = normxend - normxstart;
+            normy = normystart;
+            dnormy = normyend - normystart;
+            normz = normzstart;
+            dnormz = normzend - normzstart;
+        } else {
+            left = FastMath.round(xend);
+            right = FastMath.round(xstart);
+            z = zend;
+            dz = zstart - zend;
+            u = uend;
+            du = ustart - uend;
+            v = vend;
+            dv = vstart - vend;
+            normx = normxend;
+            dnormx = normxstart - normxend;
+            normy = normyend;
+            dnormy = normystart - normyend;
+            normz = normzend;
+            dnormz = normzstart - normzend;
+        }
+        if (left == right) {
+            return;
+        }
+        if (xend == xstart) {
+            denom = 1.0f;
+        } else if (xend > xstart) {
+            denom = (float) (1.0 / (xend - xstart));
+        } else {
+            denom = (float) (1.0 / (xstart - xend));
+        }
+        dz *= denom;
+        du *= denom;
+        dv *= denom;
+        dnormx *= denom;
+        dnormy *= denom;
+        dnormz *= denom;
+        if (left < xmin) {
+            z -= dz * (left - xmin);
+            u -= du * (left - xmin);
+            v -= dv * (left - xmin);
+            normx -= dnormx * (left - xmin);
+            normy -= dnormy * (left - xmin);
+            normz -= dnormz * (left - xmin);
+            left = xmin;
+        }
+        if (right > xmax) {
+            right = xmax;
+        }
+        int index = g.getIndex(left, y), base = y * width;
+        for (int i = left; i < right; i++, index++) {
+            zl = 1.0f / z;
+            if (zl < g.depth[index] && zl > clip && zl < fragments.getOpaqueDepth(base + i)) {
+                g.depth[index] = zl;
+                g.z[index] = z;
+                g.mesh[index] = meshIndex;
+                g.triangle[index] = triIndex;
+                g.u[index] = u * zl;
+                g.v[index] = v * zl;
+                g.normal[3 * index] = normx;
+                g.normal[3 * index + 1] = normy;
+                g.normal[3 * index + 2] = normz;
+            }
+            z += dz;
+            u += du;
+            v += dv;
+            normx += dnormx;
+            normy += dnormy;
+            normz += dnormz;
+        }
+    }
+
+    /**
+     * Shade every pixel of the current tile which is covered by the G-buffer, and record the
+     * resulting fragments into the image.
+     */
+    private void shadeGBuffer(List<PreparedMesh> meshes, RasterContext context) {
+        GBuffer g = context.gbuffer;
+        RGBColor diffuse = context.tempColor[1], specular = context.tempColor[2], highlight = context.tempColor[3];
+        Vec3 normal = context.tempVec[3];
+        TextureSpec surfSpec = context.surfSpec;
+        boolean doSubsample = (subsample > 1);
+
+        for (int y = g.ymin; y < g.ymax; y++) {
+            int index = g.getIndex(g.xmin, y), lastMesh = GBuffer.EMPTY, lastTriangle = -1, lastAddColor = 0, lastMultColor = 0;
+            for (int x = g.xmin; x < g.xmax; x++, index++) {
+                int m = g.mesh[index], t = g.triangle[index];
+                if (m == GBuffer.EMPTY) {
+                    context.clearFragment(x);
+                    lastMesh = GBuffer.EMPTY;
+                    continue;
+                }
+                if (!doSubsample || x % subsample == 0 || m != lastMesh || t != lastTriangle) {
+                    // Evaluate the texture and lighting for this pixel.
+
+                    PreparedMesh pm = meshes.get(m);
+                    RenderingTriangle tri = pm.mesh.triangle[t];
+                    Vec3[] vert = pm.mesh.vert;
+                    Vec3 viewdir = pm.viewdir, faceNorm = pm.mesh.faceNorm[t];
+                    double ul = g.u[index], vl = g.v[index], wl = 1.0 - ul - vl;
+                    context.lightPosition = pm.lightPosition;
+                    context.lightDirection = pm.lightDirection;
+                    context.fromLocal = pm.fromLocal;
+                    if (positionNeeded) {
+                        Vec3 vert1 = vert[tri.v1], vert2 = vert[tri.v2], vert3 = vert[tri.v3];
+                        context.tempVec[2].set(ul * vert1.x + vl * vert2.x + wl * vert3.x, ul * vert1.y + vl * vert2.y + wl * vert3.y, ul * vert1.z + vl * vert2.z + wl * vert3.z);
+                    }
+                    normal.set(g.normal[3 * index], g.normal[3 * index + 1], g.normal[3 * index + 2]);
+                    normal.normalize();
+                    tri.getTextureSpec(surfSpec, viewdir.dot(normal), ul, vl, wl, smoothScale * g.z[index], time);
+                    if (pm.bumpMap) {
+                        normal.scale(surfSpec.bumpGrad.dot(normal) + 1.0);
+                        normal.subtract(surfSpec.bumpGrad);
+                        normal.normalize();
+                    }
+                    if (surfSpec.hilight.getRed() == 0.0f && surfSpec.hilight.getGreen() == 0.0f && surfSpec.hilight.getBlue() == 0.0f
+                            && surfSpec.specular.getRed() == 0.0f && surfSpec.specular.getGreen() == 0.0f && surfSpec.specular.getBlue() == 0.0f) {
+                        calcLight(context.tempVec[2], normal, viewdir, faceNorm, surfSpec.roughness, diffuse, null, null, context);
+                        context.tempColor[0].setRGB(surfSpec.diffuse.getRed() * diffuse.getRed() + surfSpec.emissive.getRed(),
+                                surfSpec.diffuse.getGreen() * diffuse.getGreen() + surfSpec.emissive.getGreen(),
+                                surfSpec.diffuse.getBlue() * diffuse.getBlue() + surfSpec.emissive.getBlue());
+                    } else {
+                        calcLight(context.tempVec[2], normal, viewdir, faceNorm, surfSpec.roughness, diffuse, specular, highlight, context);
+                        context.tempColor[0].setRGB(surfSpec.diffuse.getRed() * diffuse.getRed() + surfSpec.hilight.getRed() * highlight.getRed() + surfSpec.specular.getRed() * specular.getRed() + surfSpec.emissive.getRed(),
+                                surfSpec.diffuse.getGreen() * diffuse.getGreen() + surfSpec.hilight.getGreen() * highlight.getGreen() + surfSpec.specular.getGreen() * specular.getGreen() + surfSpec.emissive.getGreen(),
+                                surfSpec.diffuse.getBlue() * diffuse.getBlue() + surfSpec.hilight.getBlue() * highlight.getBlue() + surfSpec.specular.getBlue() * specular.getBlue() + surfSpec.emissive.getBlue());
+                    }
+                    lastAddColor = context.tempColor[0].getERGB();
+                    lastMultColor = surfSpec.transparent.getERGB();
+                    lastMesh = m;
+                    lastTriangle = t;
+                }
+                recordFragment(x, lastAddColor, lastMultColor, g.depth[index], null, false, context);
+            }
+            recordRow(y, g.xmin, g.xmax, context);
+        }
+    }
+
     /**
      * Render a displacement mapped triangle mesh by recursively subdividing the triangles
-     * until they are sufficiently small.
+     * until they are sufficiently small. If target is not null, the final triangles are
+     * added to it instead of being drawn.
      */
-    private void renderMeshDisplaced(RenderingMesh mesh, Vec3 viewdir, double tol, boolean cullBackfaces, boolean bumpMap, ObjectMaterialInfo material, RasterContext context) {
+    private void renderMeshDisplaced(RenderingMesh mesh, Vec3 viewdir, double tol, boolean cullBackfaces, boolean bumpMap, ObjectMaterialInfo material, PreparedMesh target, RasterContext context) {
         Vec3[] vert = mesh.vert, norm = mesh.norm;
         Mat4 toView = context.camera.getObjectToView(), toScreen = context.camera.getObjectToScreen();
         int v1, v2, v3, n1, n2, n3;
@@ -3185,7 +4169,7 @@ public class Raster implements Renderer, Runnable {
             DisplacedVertex dv1 = new DisplacedVertex(tri, vert[v1], norm[n1], 1.0, 0.0, toView, toScreen, context);
             DisplacedVertex dv2 = new DisplacedVertex(tri, vert[v2], norm[n2], 0.0, 1.0, toView, toScreen, context);
             DisplacedVertex dv3 = new DisplacedVertex(tri, vert[v3], norm[n3], 0.0, 0.0, toView, toScreen, context);
-            renderDisplacedTriangle(tri, dv1, dist1, dv2, dist2, dv3, dist3, viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+            renderDisplacedTriangle(tri, dv1, dist1, dv2, dist2, dv3, dist3, viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
         }
     }
 
@@ -3195,7 +4179,7 @@ public class Raster implements Renderer, Runnable {
     private void renderDisplacedTriangle(RenderingTriangle tri, DisplacedVertex dv1,
             double dist1, DisplacedVertex dv2, double dist2, DisplacedVertex dv3, double dist3,
             Vec3 viewdir, Vec3 ugrad, Vec3 vgrad, double tol, boolean cullBackfaces, boolean bumpMap,
-            ObjectMaterialInfo material, RasterContext context) {
+            ObjectMaterialInfo material, PreparedMesh target, RasterContext context) {
         Mat4 toView = context.camera.getObjectToView(), toScreen = context.camera.getObjectToScreen();
         DisplacedVertex midv1 = null, midv2 = null, midv3 = null;
         double halfdist1 = 0, halfdist2 = 0, halfdist3 = 0;
@@ -3231,21 +4215,21 @@ public class Raster implements Renderer, Runnable {
             if (split1) {
                 double d = dv3.vert.distance(midv1.vert);
                 renderDisplacedTriangle(tri, dv1, halfdist1, midv1, d, dv3, dist3,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, midv1, halfdist1, dv2, dist2, dv3, d,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             } else if (split2) {
                 double d = dv1.vert.distance(midv2.vert);
                 renderDisplacedTriangle(tri, dv2, halfdist2, midv2, d, dv1, dist1,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, midv2, halfdist2, dv3, dist3, dv1, d,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             } else {
                 double d = dv1.vert.distance(midv3.vert);
                 renderDisplacedTriangle(tri, dv3, halfdist3, midv3, d, dv2, dist2,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, midv3, halfdist3, dv1, dist1, dv2, d,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             }
             return;
         }
@@ -3255,27 +4239,27 @@ public class Raster implements Renderer, Runnable {
             if (!split1) {
                 double d1 = midv2.vert.distance(dv1.vert), d2 = midv2.vert.distance(midv3.vert);
                 renderDisplacedTriangle(tri, dv1, dist1, dv2, halfdist2, midv2, d1,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, dv1, d1, midv2, d2, midv3, halfdist3,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, dv3, halfdist3, midv3, d2, midv2, halfdist2,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             } else if (!split2) {
                 double d1 = midv3.vert.distance(dv2.vert), d2 = midv3.vert.distance(midv1.vert);
                 renderDisplacedTriangle(tri, dv2, dist2, dv3, halfdist3, midv3, d1,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, dv2, d1, midv3, d2, midv1, halfdist1,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, dv1, halfdist1, midv1, d2, midv3, halfdist3,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             } else {
                 double d1 = midv1.vert.distance(dv3.vert), d2 = midv1.vert.distance(midv2.vert);
                 renderDisplacedTriangle(tri, dv3, dist3, dv1, halfdist1, midv1, d1,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, dv3, d1, midv1, d2, midv2, halfdist2,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
                 renderDisplacedTriangle(tri, dv2, halfdist2, midv2, d2, midv1, halfdist1,
-                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                        viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             }
             return;
         }
@@ -3284,13 +4268,13 @@ public class Raster implements Renderer, Runnable {
 
             double d1 = midv1.vert.distance(midv2.vert), d2 = midv2.vert.distance(midv3.vert), d3 = midv3.vert.distance(midv1.vert);
             renderDisplacedTriangle(tri, dv1, halfdist1, midv1, d3, midv3, halfdist3,
-                    viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                    viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             renderDisplacedTriangle(tri, dv2, halfdist2, midv2, d1, midv1, halfdist1,
-                    viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                    viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             renderDisplacedTriangle(tri, dv3, halfdist3, midv3, d2, midv2, halfdist2,
-                    viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                    viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             renderDisplacedTriangle(tri, midv1, d1, midv2, d2, midv3, d3,
-                    viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, context);
+                    viewdir, ugrad, vgrad, tol, cullBackfaces, bumpMap, material, target, context);
             return;
         }
 
@@ -3315,6 +4299,25 @@ public class Raster implements Renderer, Runnable {
         if (dv3.dispnorm == null) {
             dv3.prepareToRender(tri, viewdir, ugrad, vgrad, shading, context);
         }
+        if (target != null) {
+            target.microTri.add(tri);
+            target.microVert.add(dv1);
+            target.microVert.add(dv2);
+            target.microVert.add(dv3);
+            return;
+        }
+        renderDisplacedMicroTriangle(tri, dv1, dv2, dv3, viewdir, bumpMap, material, context);
+    }
+
+    /**
+     * Render one of the final triangles produced by subdividing a displacement mapped triangle.
+     * The vertices must already have been prepared for rendering.
+     */
+    private void renderDisplacedMicroTriangle(RenderingTriangle tri, DisplacedVertex dv1, DisplacedVertex dv2, DisplacedVertex dv3,
+            Vec3 viewdir, boolean bumpMap, ObjectMaterialInfo material, RasterContext context) {
+        float clip = (float) context.camera.getClipDistance();
+        int shading = (bumpMap ? PHONG : shadingMode);
+        boolean backface = ((dv2.pos.x - dv1.pos.x) * (dv3.pos.y - dv1.pos.y) - (dv2.pos.y - dv1.pos.y) * (dv3.pos.x - dv1.pos.x) > 0.0);
         Vec3 closestNorm;
         if (dv1.z < dv2.z && dv1.z < dv3.z) {
             closestNorm = dv1.dispnorm;
@@ -3407,6 +4410,93 @@ public class Raster implements Renderer, Runnable {
         }
     }
 
+    /**
+     * A PreparedMesh holds a rendering mesh which has been transformed to screen coordinates, along
+     * with everything else needed to draw any subset of its triangles. For displacement mapped meshes,
+     * microTri and microVert hold the triangles produced by subdividing the mesh. If deferred is true,
+     * the mesh is drawn into the G-buffer rather than being shaded as it is rasterized.
+     */
+    private static class PreparedMesh {
+
+        RenderingMesh mesh;
+        Mat4 fromLocal;
+        Vec3 viewdir;
+        Vec3[] lightPosition, lightDirection;
+        boolean cullBackfaces, bumpMap, deferred;
+        ObjectMaterialInfo material;
+        int shading;
+        Vec2[] pos;
+        float[] z;
+        ArrayList<RenderingTriangle> microTri;
+        ArrayList<DisplacedVertex> microVert;
+
+        /**
+         * Get the number of triangles which can be drawn.
+         */
+        int getTriangleCount() {
+            return (microTri == null ? mesh.triangle.length : microTri.size());
+        }
+
+        /**
+         * Find the range of pixels which may be covered by a triangle. The result is stored into
+         * bounds as (xmin, ymin, xmax, ymax).
+         *
+         * @return false if the triangle cannot be visible, true otherwise
+         */
+        boolean getScreenBounds(int index, float clip, int[] bounds) {
+            Vec2 p1, p2, p3;
+            if (microTri != null) {
+                p1 = microVert.get(3 * index).pos;
+                p2 = microVert.get(3 * index + 1).pos;
+                p3 = microVert.get(3 * index + 2).pos;
+            } else {
+                RenderingTriangle tri = mesh.triangle[index];
+                if (z[tri.v1] < clip && z[tri.v2] < clip && z[tri.v3] < clip) {
+                    return false;
+                }
+                if (z[tri.v1] < clip || z[tri.v2] < clip || z[tri.v3] < clip) {
+                    // The triangle will be clipped, so its projected vertices say nothing about where it appears.
+
+                    bounds[0] = bounds[1] = Integer.MIN_VALUE;
+                    bounds[2] = bounds[3] = Integer.MAX_VALUE;
+                    return true;
+                }
+                p1 = pos[tri.v1];
+                p2 = pos[tri.v2];
+                p3 = pos[tri.v3];
+                if (cullBackfaces && (p2.x - p1.x) * (p3.y - p1.y) - (p2.y - p1.y) * (p3.x - p1.x) > 0.0) {
+                    return false;
+                }
+            }
+            bounds[0] = (int) Math.floor(Math.min(p1.x, Math.min(p2.x, p3.x))) - 1;
+            bounds[1] = (int) Math.floor(Math.min(p1.y, Math.min(p2.y, p3.y))) - 1;
+            bounds[2] = (int) Math.ceil(Math.max(p1.x, Math.max(p2.x, p3.x))) + 1;
+            bounds[3] = (int) Math.ceil(Math.max(p1.y, Math.max(p2.y, p3.y))) + 1;
+            return true;
+        }
+    }
+
+    /**
+     * A TileBin records which triangles overlap a single tile of the image. Each entry is a pair of
+     * indices: the mesh the triangle belongs to, and the index of the triangle within that mesh.
+     */
+    private static class TileBin {
+
+        int[] mesh = new int[16];
+        int[] triangle = new int[16];
+        int size;
+
+        void add(int m, int t) {
+            if (size == mesh.length) {
+                mesh = Arrays.copyOf(mesh, 2 * size);
+                triangle = Arrays.copyOf(triangle, 2 * size);
+            }
+            mesh[size] = m;
+            triangle[size] = t;
+            size++;
+        }
+    }
+
     /**
      * This class is used for the lock objects on individual rows.
      */
@@ -21,10 +21,16 @@ import artofillusion.texture.*;
 public class RasterContext {
 
     public Vec3[] tempVec, lightPosition, lightDirection;
+    public Mat4 fromLocal;
     public RGBColor[] tempColor;
     public TextureSpec surfSpec, surfSpec2;
     public Camera camera;
-    public final Fragment[] fragment;
+    public final float[] fragmentDepth;
+    public final int[] fragmentAddColor, fragmentMultColor;
+    public final ObjectMaterialInfo[] fragmentMaterial;
+    public final boolean[] fragmentEntering, hasFragment;
+    public int xmin, ymin, xmax, ymax;
+    public GBuffer gbuffer;
 
     public RasterContext(Camera camera, int width) {
         this.camera = (camera == null ? null : camera.duplicate());
@@ -34,11 +40,54 @@ public class RasterContext {
         for (int i = 0; i < tempColor.length; i++) {
             tempColor[i] = new RGBColor(0.0f, 0.0f, 0.0f);
         }
-        tempVec = new Vec3[4];
+        tempVec = new Vec3[6];
         for (int i = 0; i < tempVec.length; i++) {
             tempVec[i] = new Vec3();
         }
-        fragment = new Fragment[width];
+        fragmentDepth = new float[width];
+        fragmentAddColor = new int[width];
+        fragmentMultColor = new int[width];
+        fragmentMaterial = new ObjectMaterialInfo[width];
+        fragmentEntering = new boolean[width];
+        hasFragment = new boolean[width];
+    }
+
+    /**
+     * Set the fragment at a position along the current row.
+     *
+     * @param x the position along the row
+     * @param addColor the additive color, in ERGB format
+     * @param multColor the multiplicative color, in ERGB format. If this is 0, the fragment is opaque.
+     * @param depth the depth of the fragment
+     * @param material the material of the object being entered or exited. This may be null.
+     * @param isEntering true if the material is being entered, false if it is being exited
+     */
+    public void setFragment(int x, int addColor, int multColor, float depth, ObjectMaterialInfo material, boolean isEntering) {
+        fragmentDepth[x] = depth;
+        fragmentAddColor[x] = addColor;
+        fragmentMultColor[x] = multColor;
+        fragmentMaterial[x] = material;
+        fragmentEntering[x] = isEntering;
+        hasFragment[x] = true;
+    }
+
+    /**
+     * Mark that there is no fragment at a position along the current row.
+     */
+    public void clearFragment(int x) {
+        hasFragment[x] = false;
+        fragmentMaterial[x] = null;
+    }
+
+    /**
+     * Set the region of the image which triangles may be drawn into. Pixels outside it are
+     * left untouched, which allows each thread to own a separate tile of the image.
+     */
+    public void setBounds(int xmin, int ymin, int xmax, int ymax) {
+        this.xmin = xmin;
+        this.ymin = ymin;
+        this.xmax = xmax;
+        this.ymax = ymax;
     }
 
     /**
@@ -48,9 +97,11 @@ public class RasterContext {
         tempVec = null;
         lightPosition = null;
         lightDirection = null;
+        fromLocal = null;
         tempColor = null;
         surfSpec = null;
         surfSpec2 = null;
         camera = null;
+        gbuffer = null;
     }
 }
@@ -0,0 +1,423 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raster;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.util.*;
+
+/**
+ * A ShadowMap records, for one light, the distance from the light to the closest surface in every
+ * direction. A point is in shadow if something lies between it and the light, which can be determined
+ * with a single lookup.
+ * <p>
+ * Directional lights use a single orthographic map fitted to the objects which cast shadows. Spot
+ * lights use a single perspective map covering the cone of the light. Point lights use a cube map made
+ * of six perspective faces. Lookups use percentage closer filtering: the depth test is performed for
+ * the 4x4 texels around the point, and the results are averaged with bilinear weights, which gives
+ * shadows soft edges about three texels wide.
+ * <p>
+ * The faces are independent of each other, so they may be rendered in parallel by calling
+ * {@link #renderFace} from several threads.
+ */
+public class ShadowMap {
+
+    /**
+     * The number of texels around the edge of each cube map face which overlap the neighboring faces,
+     * so that filtering never needs to look at more than one face.
+     */
+    private static final int CUBE_MARGIN = 3;
+
+    private static final double EDGE_TOLERANCE = 1e-9;
+
+    private static final Mat4[] CUBE_ROTATION = {
+        new Mat4(0, 0, -1, 0, 0, 1, 0, 0, 1, 0, 0, 0, 0, 0, 0, 1),
+        new Mat4(0, 0, 1, 0, 0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 0, 1),
+        new Mat4(1, 0, 0, 0, 0, 0, -1, 0, 0, 1, 0, 0, 0, 0, 0, 1),
+        new Mat4(1, 0, 0, 0, 0, 0, 1, 0, 0, -1, 0, 0, 0, 0, 0, 1),
+        Mat4.identity(),
+        new Mat4(-1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1)
+    };
+
+    private final int size;
+    private final boolean perspective, cube;
+    private final Mat4 toLight;
+    private final Face[] face;
+    private final List<Caster> casters;
+    private double scale, xoffset, yoffset, near, texelSize;
+
+    /**
+     * Create a ShadowMap for a light. The map is not drawn until {@link #renderFace} has been called
+     * for every face.
+     *
+     * @param light the light which casts the shadows
+     * @param coords the coordinate system of the light
+     * @param size the width and height of each face of the map in texels
+     * @param casters the objects which cast shadows
+     */
+    public ShadowMap(Light light, CoordinateSystem coords, int size, List<Caster> casters) {
+        this.size = size;
+        this.casters = casters;
+        toLight = coords.toLocal();
+        perspective = !(light instanceof DirectionalLight);
+        cube = (light instanceof PointLight);
+        face = new Face[cube ? 6 : 1];
+        for (int i = 0; i < face.length; i++) {
+            face[i] = new Face(cube ? CUBE_ROTATION[i].times(toLight) : toLight);
+        }
+
+        // Fit the projection to the shadow casters.
+        double minx = Double.MAX_VALUE, miny = Double.MAX_VALUE, maxx = -Double.MAX_VALUE, maxy = -Double.MAX_VALUE, maxDist = 0.0;
+        for (Caster c : casters) {
+            for (Vec3 corner : c.bounds.getCorners()) {
+                Vec3 p = toLight.times(corner);
+                minx = Math.min(minx, p.x);
+                miny = Math.min(miny, p.y);
+                maxx = Math.max(maxx, p.x);
+                maxy = Math.max(maxy, p.y);
+                maxDist = Math.max(maxDist, Math.max(Math.abs(p.z), Math.max(Math.abs(p.x), Math.abs(p.y))));
+            }
+        }
+        if (perspective) {
+            double tanHalfAngle;
+            if (cube) {
+                tanHalfAngle = 0.5 * size / (0.5 * size - CUBE_MARGIN);
+            } else {
+                double halfAngle = Math.min(((SpotLight) light).getAngle() * 0.5, 85.0);
+                tanHalfAngle = Math.tan(halfAngle * Math.PI / 180.0) * (1.0 + 2.0 / size);
+            }
+            scale = 0.5 * size / tanHalfAngle;
+            xoffset = yoffset = 0.5 * size;
+            near = Math.max(maxDist * 1e-4, Raster.TOL);
+            texelSize = 1.0 / scale;
+        } else {
+            if (minx > maxx) {
+                minx = miny = -1.0;
+                maxx = maxy = 1.0;
+            }
+            double extent = Math.max(maxx - minx, maxy - miny) * (1.0 + 4.0 / size) + Raster.TOL;
+            scale = size / extent;
+            xoffset = 0.5 * size - 0.5 * (minx + maxx) * scale;
+            yoffset = 0.5 * size - 0.5 * (miny + maxy) * scale;
+            near = -Double.MAX_VALUE;
+            texelSize = 1.0 / scale;
+        }
+    }
+
+    /**
+     * Get the number of faces in this map. This is 6 for a point light, and 1 for any other light.
+     */
+    public int getFaceCount() {
+        return face.length;
+    }
+
+    /**
+     * Draw every shadow caster into one face of the map.
+     */
+    public void renderFace(int index) {
+        Face f = face[index];
+        float[] depth = new float[size * size];
+        Arrays.fill(depth, Float.MAX_VALUE);
+        double[] x = new double[0], y = new double[0], z = new double[0];
+        double[] px = new double[4], py = new double[4], pz = new double[4];
+        for (Caster c : casters) {
+            int n = c.vert.length;
+            if (x.length < n) {
+                x = new double[n];
+                y = new double[n];
+                z = new double[n];
+            }
+            for (int i = 0; i < n; i++) {
+                Vec3 v = c.vert[i];
+                Mat4 m = f.toFace;
+                x[i] = m.m11 * v.x + m.m12 * v.y + m.m13 * v.z + m.m14;
+                y[i] = m.m21 * v.x + m.m22 * v.y + m.m23 * v.z + m.m24;
+                z[i] = m.m31 * v.x + m.m32 * v.y + m.m33 * v.z + m.m34;
+            }
+            int[] tri = c.triangle;
+            for (int i = 0; i < tri.length; i += 3) {
+                int v1 = tri[i], v2 = tri[i + 1], v3 = tri[i + 2];
+                if (z[v1] <= near && z[v2] <= near && z[v3] <= near) {
+                    continue;
+                }
+                if (z[v1] > near && z[v2] > near && z[v3] > near) {
+                    px[0] = x[v1];
+                    py[0] = y[v1];
+                    pz[0] = z[v1];
+                    px[1] = x[v2];
+                    py[1] = y[v2];
+                    pz[1] = z[v2];
+                    px[2] = x[v3];
+                    py[2] = y[v3];
+                    pz[2] = z[v3];
+                    drawPolygon(px, py, pz, 3, depth);
+                } else {
+                    drawPolygon(px, py, pz, clipTriangle(x, y, z, v1, v2, v3, px, py, pz), depth);
+                }
+            }
+        }
+        f.depth = depth;
+    }
+
+    /**
+     * Clip a triangle against the near plane.
+     *
+     * @return the number of vertices in the clipped polygon, which is stored into px, py, and pz
+     */
+    private int clipTriangle(double[] x, double[] y, double[] z, int v1, int v2, int v3, double[] px, double[] py, double[] pz) {
+        int[] v = {v1, v2, v3};
+        int count = 0;
+        for (int i = 0; i < 3; i++) {
+            int a = v[i], b = v[(i + 1) % 3];
+            boolean aInside = (z[a] > near), bInside = (z[b] > near);
+            if (aInside) {
+                px[count] = x[a];
+                py[count] = y[a];
+                pz[count] = z[a];
+                count++;
+            }
+            if (aInside != bInside) {
+                double t = (near - z[a]) / (z[b] - z[a]);
+                px[count] = x[a] + t * (x[b] - x[a]);
+                py[count] = y[a] + t * (y[b] - y[a]);
+                pz[count] = near;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Draw a convex polygon (given in face coordinates) into a depth map.
+     */
+    private void drawPolygon(double[] px, double[] py, double[] pz, int count, float[] depth) {
+        double[] sx = new double[count], sy = new double[count], w = new double[count];
+        for (int i = 0; i < count; i++) {
+            if (perspective) {
+                w[i] = 1.0 / pz[i];
+                sx[i] = px[i] * w[i] * scale + xoffset;
+                sy[i] = py[i] * w[i] * scale + yoffset;
+            } else {
+                w[i] = pz[i];
+                sx[i] = px[i] * scale + xoffset;
+                sy[i] = py[i] * scale + yoffset;
+            }
+        }
+        for (int i = 2; i < count; i++) {
+            drawTriangle(sx[0], sy[0], w[0], sx[i - 1], sy[i - 1], w[i - 1], sx[i], sy[i], w[i], depth);
+        }
+    }
+
+    /**
+     * Draw a triangle given in texel coordinates into a depth map. For a perspective map, w is the
+     * reciprocal of the depth, since that varies linearly across the screen. Otherwise it is the depth.
+     */
+    private void drawTriangle(double x1, double y1, double w1, double x2, double y2, double w2, double x3, double y3, double w3, float[] depth) {
+        double area = (x2 - x1) * (y3 - y1) - (x3 - x1) * (y2 - y1);
+        if (area == 0.0 || Double.isNaN(area)) {
+            return;
+        }
+        int xmin = Math.max(0, (int) Math.ceil(Math.min(x1, Math.min(x2, x3)) - 0.5));
+        int xmax = Math.min(size - 1, (int) Math.floor(Math.max(x1, Math.max(x2, x3)) - 0.5));
+        int ymin = Math.max(0, (int) Math.ceil(Math.min(y1, Math.min(y2, y3)) - 0.5));
+        int ymax = Math.min(size - 1, (int) Math.floor(Math.max(y1, Math.max(y2, y3)) - 0.5));
+        double invArea = 1.0 / area;
+        for (int y = ymin; y <= ymax; y++) {
+            double cy = y + 0.5;
+            for (int x = xmin; x <= xmax; x++) {
+                double cx = x + 0.5;
+                double b1 = ((x2 - cx) * (y3 - cy) - (x3 - cx) * (y2 - cy)) * invArea;
+                double b2 = ((x3 - cx) * (y1 - cy) - (x1 - cx) * (y3 - cy)) * invArea;
+                double b3 = 1.0 - b1 - b2;
+                if (b1 < -EDGE_TOLERANCE || b2 < -EDGE_TOLERANCE || b3 < -EDGE_TOLERANCE) {
+                    continue; // Texels on shared edges may be drawn twice, but must never be missed.
+                }
+                double w = b1 * w1 + b2 * w2 + b3 * w3;
+                float d = (float) (perspective ? 1.0 / w : w);
+                int index = y * size + x;
+                if (d < depth[index]) {
+                    depth[index] = d;
+                }
+            }
+        }
+    }
+
+    /**
+     * Determine how much of the light reaches a point.
+     *
+     * @param pos the point, in world coordinates
+     * @param normal the surface normal at the point, in world coordinates. It must be normalized.
+     * @param temp a vector which is used for temporary storage
+     * @return a value between 0 (fully in shadow) and 1 (fully lit)
+     */
+    public float getLitFraction(Vec3 pos, Vec3 normal, Vec3 temp) {
+        // Pick the face to use.
+
+        Face f = face[0];
+        if (cube) {
+            temp.set(pos);
+            toLight.transform(temp);
+            double ax = Math.abs(temp.x), ay = Math.abs(temp.y), az = Math.abs(temp.z);
+            if (ax >= ay && ax >= az) {
+                f = face[temp.x > 0.0 ? 0 : 1];
+            } else if (ay >= az) {
+                f = face[temp.y > 0.0 ? 2 : 3];
+            } else {
+                f = face[temp.z > 0.0 ? 4 : 5];
+            }
+        }
+        if (f.depth == null) {
+            return 1.0f;
+        }
+
+        // Move the point off the surface by a distance proportional to the size of a texel, so the
+        // surface does not shadow itself.
+
+        Mat4 m = f.toFace;
+        double x = m.m11 * pos.x + m.m12 * pos.y + m.m13 * pos.z + m.m14;
+        double y = m.m21 * pos.x + m.m22 * pos.y + m.m23 * pos.z + m.m24;
+        double z = m.m31 * pos.x + m.m32 * pos.y + m.m33 * pos.z + m.m34;
+        double nx = m.m11 * normal.x + m.m12 * normal.y + m.m13 * normal.z;
+        double ny = m.m21 * normal.x + m.m22 * normal.y + m.m23 * normal.z;
+        double nz = m.m31 * normal.x + m.m32 * normal.y + m.m33 * normal.z;
+        double offset = 2.0 * texelSize * (perspective ? z : 1.0);
+        if (perspective ? (nx * x + ny * y + nz * z > 0.0) : (nz > 0.0)) {
+            offset = -offset; // Move toward the light.
+        }
+        x += nx * offset;
+        y += ny * offset;
+        z += nz * offset;
+        if (z <= near) {
+            return 1.0f;
+        }
+        double sx, sy;
+        if (perspective) {
+            sx = x / z * scale + xoffset;
+            sy = y / z * scale + yoffset;
+        } else {
+            sx = x * scale + xoffset;
+            sy = y * scale + yoffset;
+        }
+        return filter(f.depth, sx, sy, z * (1.0 - 1e-5) - texelSize * (perspective ? z : 1.0));
+    }
+
+    /**
+     * Perform percentage closer filtering around a position in the map.
+     */
+    private float filter(float[] depth, double sx, double sy, double z) {
+        double fx = sx - 0.5, fy = sy - 0.5;
+        if (fx < -2.0 || fy < -2.0 || fx > size + 1.0 || fy > size + 1.0 || Double.isNaN(fx) || Double.isNaN(fy)) {
+            return 1.0f;
+        }
+        int x0 = (int) Math.floor(fx), y0 = (int) Math.floor(fy);
+        double tx = fx - x0, ty = fy - y0;
+
+        // Averaging bilinear lookups at offsets of -1, 0, and 1 texels gives these weights for the
+        // four rows and columns of texels which are involved.
+        double wx0 = 1.0 - tx, wx3 = tx, wy0 = 1.0 - ty, wy3 = ty;
+        double lit = 0.0;
+        for (int j = 0; j < 4; j++) {
+            int y = y0 - 1 + j;
+            double wy = (j == 0 ? wy0 : j == 3 ? wy3 : 1.0);
+            if (wy == 0.0) {
+                continue;
+            }
+            double rowLit = 0.0;
+            for (int i = 0; i < 4; i++) {
+                int x = x0 - 1 + i;
+                double wx = (i == 0 ? wx0 : i == 3 ? wx3 : 1.0);
+                if (x < 0 || y < 0 || x >= size || y >= size || z <= depth[y * size + x]) {
+                    rowLit += wx;
+                }
+            }
+            lit += wy * rowLit;
+        }
+        return (float) (lit / 9.0);
+    }
+
+    /**
+     * One face of a shadow map.
+     */
+    private static class Face {
+
+        final Mat4 toFace;
+        volatile float[] depth;
+
+        Face(Mat4 toFace) {
+            this.toFace = toFace;
+        }
+    }
+
+    /**
+     * A Caster is a triangle mesh which casts shadows, with its vertices in world coordinates.
+     */
+    public static class Caster {
+
+        final Vec3[] vert;
+        final int[] triangle;
+        final BoundingBox bounds;
+
+        /**
+         * Create a Caster from a rendering mesh.
+         *
+         * @param mesh the mesh
+         * @param fromLocal the transformation from the mesh's local coordinates to world coordinates
+         */
+        public Caster(RenderingMesh mesh, Mat4 fromLocal) {
+            this(transform(mesh.vert, fromLocal), getIndices(mesh.triangle));
+        }
+
+        /**
+         * Create a Caster from a list of vertices in world coordinates.
+         *
+         * @param vert the vertices
+         * @param triangle the indices of the vertices of each triangle, three per triangle
+         */
+        public Caster(Vec3[] vert, int[] triangle) {
+            this.vert = vert;
+            this.triangle = triangle;
+            if (vert.length == 0) {
+                bounds = new BoundingBox(0, 0, 0, 0, 0, 0);
+                return;
+            }
+            double minx = Double.MAX_VALUE, miny = Double.MAX_VALUE, minz = Double.MAX_VALUE;
+            double maxx = -Double.MAX_VALUE, maxy = -Double.MAX_VALUE, maxz = -Double.MAX_VALUE;
+            for (Vec3 v : vert) {
+                minx = Math.min(minx, v.x);
+                miny = Math.min(miny, v.y);
+                minz = Math.min(minz, v.z);
+                maxx = Math.max(maxx, v.x);
+                maxy = Math.max(maxy, v.y);
+                maxz = Math.max(maxz, v.z);
+            }
+            bounds = new BoundingBox(minx, maxx, miny, maxy, minz, maxz);
+        }
+
+        private static Vec3[] transform(Vec3[] vert, Mat4 fromLocal) {
+            Vec3[] result = new Vec3[vert.length];
+            for (int i = 0; i < vert.length; i++) {
+                result[i] = fromLocal.times(vert[i]);
+            }
+            return result;
+        }
+
+        private static int[] getIndices(RenderingTriangle[] tri) {
+            int[] result = new int[3 * tri.length];
+            for (int i = 0; i < tri.length; i++) {
+                result[3 * i] = tri[i].v1;
+                result[3 * i + 1] = tri[i].v2;
+                result[3 * i + 2] = tri[i].v3;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raytracer;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * DisplacementCache holds micro-tessellations of displacement mapped triangles. The first time a ray
+ * reaches an {@link RTDisplacedTriangle}, its displacement is evaluated on a regular barycentric grid
+ * whose spacing matches the triangle's tolerance. Every later ray that marches through the triangle
+ * interpolates the grid instead of calling the (often procedural) displacement texture again.
+ * <p>
+ * The cache is shared by all rendering threads and is bounded by the total number of stored samples.
+ * Lookups do not lock: the grids are kept in a concurrent map, and each grid records when it was last
+ * used. When the bound is exceeded, the grids which were used least recently are discarded and rebuilt
+ * on demand. This is an approximation of least recently used order, since grids used at about the same
+ * time may be ordered either way. Triangles which would need more than {@link #MAX_DIVISIONS} divisions
+ * are sampled more coarsely than their tolerance asks for, and are counted by {@link #getCappedGrids()}.
+ */
+public class DisplacementCache {
+
+    /**
+     * The maximum number of subdivisions along each edge of a triangle. A grid with this many divisions
+     * holds 33153 samples.
+     */
+    public static final int MAX_DIVISIONS = 256;
+
+    /**
+     * The default maximum number of displacement samples held by the cache. This is an eighth of the
+     * heap, so that many grids with {@link #MAX_DIVISIONS} divisions fit (about 2000 for a 2 GB heap),
+     * but never less than 4M samples (16 MB of floats).
+     */
+    public static final long DEFAULT_CAPACITY = Math.max(1L << 22, Runtime.getRuntime().maxMemory() / 8 / Float.BYTES);
+
+    private volatile long capacity;
+    private final ConcurrentHashMap<RTDisplacedTriangle, Grid> grids;
+    private final ArrayDeque<Candidate> candidates = new ArrayDeque<>();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong capped = new AtomicLong();
+
+    /**
+     * A triangle whose grid may be evicted, and when the grid had last been used when it was chosen.
+     * The grid itself is not referenced, so that grids which have been replaced can be freed.
+     */
+    private record Candidate(RTDisplacedTriangle tri, long lastUsed) {
+    }
+
+    /**
+     * Create a DisplacementCache with the default capacity.
+     */
+    public DisplacementCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a DisplacementCache.
+     *
+     * @param capacity the maximum number of displacement samples to keep in memory
+     */
+    public DisplacementCache(long capacity) {
+        this.capacity = capacity;
+        grids = new ConcurrentHashMap<>(256);
+    }
+
+    /**
+     * Get the displacement grid for a triangle, building it if it is not already cached.
+     *
+     * @param tri the triangle to get the grid for
+     * @param time the time at which the displacement is evaluated
+     */
+    public Grid getGrid(RTDisplacedTriangle tri, double time) {
+        double tol = tri.getTolerance();
+        Grid grid = grids.get(tri);
+        if (grid != null && grid.tol == tol && grid.time == time) {
+            hits.incrementAndGet();
+
+            // Only the grid is written, and only when the clock has moved since it was last used,
+            // so threads hitting the same grids do not contend with each other.
+
+            long now = clock.get();
+            if (grid.lastUsed != now) {
+                grid.lastUsed = now;
+            }
+            return grid;
+        }
+        misses.incrementAndGet();
+
+        // Evaluate the displacement without blocking other threads.  If two threads build the same
+        // grid at once, both results are identical and whichever is stored last wins.
+        grid = new Grid(tri, tol, time);
+        if (grid.capped) {
+            capped.incrementAndGet();
+        }
+        grid.lastUsed = clock.getAndIncrement();
+        Grid old = grids.put(tri, grid);
+        size.addAndGet(grid.height.length - (old == null ? 0 : old.height.length));
+        if (size.get() > capacity) {
+            trim(grid);
+        }
+        return grid;
+    }
+
+    /**
+     * Discard the least recently used grids until the cache fits within its capacity. The grid which
+     * is about to be used is always kept.
+     * <p>
+     * Sorting every grid by when it was last used is expensive, so the order is remembered and reused
+     * by later calls. A grid which has been used since an earlier call sorted them is skipped, and once
+     * every remembered grid has been considered, the grids are sorted again.
+     */
+    private synchronized void trim(Grid keep) {
+        boolean sorted = false;
+        while (size.get() > capacity) {
+            if (candidates.isEmpty()) {
+                if (sorted) {
+                    return;
+                }
+                List<Candidate> order = new ArrayList<>(grids.size());
+                grids.forEach((tri, grid) -> order.add(new Candidate(tri, grid.lastUsed)));
+                order.sort(Comparator.comparingLong(Candidate::lastUsed));
+                candidates.addAll(order);
+                sorted = true;
+            }
+            Candidate c = candidates.poll();
+            Grid grid = grids.get(c.tri());
+            if (grid == null || grid == keep || (grid.lastUsed != c.lastUsed() && !sorted)) {
+                continue;
+            }
+            if (grids.remove(c.tri(), grid)) {
+                size.addAndGet(-grid.height.length);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get the maximum number of displacement samples to keep in memory.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set the maximum number of displacement samples to keep in memory. If the cache currently holds
+     * more than this, the least recently used grids are discarded.
+     */
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+        trim(null);
+    }
+
+    /**
+     * Remove all grids from the cache. The statistics are not reset.
+     */
+    public synchronized void clear() {
+        grids.forEach((tri, grid) -> {
+            if (grids.remove(tri, grid)) {
+                size.addAndGet(-grid.height.length);
+            }
+        });
+        candidates.clear();
+    }
+
+    /**
+     * Get the number of lookups that were satisfied by an existing grid.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups that required a grid to be built.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of grids that were discarded to stay within the capacity.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the number of grids that were built with {@link #MAX_DIVISIONS} divisions, because their
+     * triangles were too large to be sampled as finely as their tolerance asks for.
+     */
+    public long getCappedGrids() {
+        return capped.get();
+    }
+
+    /**
+     * Get the fraction of lookups that were satisfied by an existing grid.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return (total == 0 ? 0.0 : (double) h / total);
+    }
+
+    /**
+     * Get the number of displacement samples currently held by the cache.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DisplacementCache[hits=%d, misses=%d, evictions=%d, capped=%d, hitRate=%.3f, samples=%d/%d]",
+                getHits(), getMisses(), getEvictions(), getCappedGrids(), getHitRate(), getSize(), getCapacity());
+    }
+
+    /**
+     * A Grid stores the displacement of a triangle at the vertices of a regular triangular subdivision.
+     * Sample (i, j) lies at barycentric coordinates (i/n, j/n, 1-(i+j)/n), where n is the number of divisions.
+     */
+    public static class Grid {
+
+        final int divisions;
+        final float[] height;
+        final double tol, time;
+        final boolean capped;
+        volatile long lastUsed;
+
+        Grid(RTDisplacedTriangle tri, double tol, double time) {
+            this.tol = tol;
+            this.time = time;
+            int needed = tri.getGridDivisions(tol);
+            divisions = Math.min(needed, MAX_DIVISIONS);
+            capped = (needed > divisions);
+            height = new float[(divisions + 1) * (divisions + 2) / 2];
+            double d = 1.0 / divisions;
+            int index = 0;
+            for (int i = 0; i <= divisions; i++) {
+                for (int j = 0; j <= divisions - i; j++) {
+                    double u = i * d;
+                    double v = j * d;
+                    height[index++] = (float) tri.tri.getDisplacement(u, v, 1.0 - u - v, tol, time);
+                }
+            }
+        }
+
+        Grid(int divisions, float[] height) {
+            this.divisions = divisions;
+            this.height = height;
+            tol = 0.0;
+            time = 0.0;
+            capped = false;
+        }
+
+        /**
+         * Get the number of divisions along each edge of the triangle.
+         */
+        public int getDivisions() {
+            return divisions;
+        }
+
+        /**
+         * Get the interpolated displacement at a point on the triangle. Points outside the triangle are
+         * clamped to its boundary.
+         */
+        public double getDisplacement(double u, double v) {
+            int n = divisions;
+            double fu = (u < 0.0 ? 0.0 : u * n);
+            double fv = (v < 0.0 ? 0.0 : v * n);
+            if (fu + fv > n) {
+                double scale = n / (fu + fv);
+                fu *= scale;
+                fv *= scale;
+            }
+            int i = (int) fu;
+            int j = (int) fv;
+            if (i > n - 1) {
+                i = n - 1;
+            }
+            if (j > n - 1) {
+                j = n - 1;
+            }
+            if (i + j > n - 1) {
+                if (i > 0) {
+                    i--;
+                } else {
+                    j--;
+                }
+            }
+            double a = fu - i;
+            double b = fv - j;
+            int row0 = offset(i, n);
+            int row1 = offset(i + 1, n);
+            double h10 = height[row1 + j];
+            double h01 = height[row0 + j + 1];
+            if (a + b <= 1.0 || i + j + 2 > n) {
+                return height[row0 + j] * (1.0 - a - b) + h10 * a + h01 * b;
+            }
+            return height[row1 + j + 1] * (a + b - 1.0) + h10 * (1.0 - b) + h01 * (1.0 - a);
+        }
+
+        /**
+         * Get the index of the first sample in row i.
+         */
+        private static int offset(int i, int n) {
+            return i * (n + 1) - i * (i - 1) / 2;
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /* Copyright (C) 2000-2013 by Peter Eastman
-   Changes copyright (C) 2023 by Maksim Khramov
+   Changes copyright (C) 2023-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -153,6 +153,28 @@ public class RTDisplacedTriangle extends RTObject {
         this.tol = tol;
     }
 
+    /**
+     * Get the tolerance which is used for evaluating the surface.
+     */
+    public double getTolerance() {
+        return tol;
+    }
+
+    /**
+     * Get the number of subdivisions along each edge which are needed to sample the displacement
+     * with a spacing no larger than the specified tolerance. This may be more than
+     * {@link DisplacementCache#MAX_DIVISIONS}, which is the most a cached grid uses.
+     */
+    int getGridDivisions(double tol) {
+        Vec3[] vert = tri.theMesh.vert;
+        Vec3 vert1 = vert[tri.v1];
+        Vec3 vert2 = vert[tri.v2];
+        Vec3 vert3 = vert[tri.v3];
+        double d = Math.max(Math.max(vert1.distance2(vert2), vert1.distance2(vert3)), vert2.distance2(vert3));
+        double divisions = Math.ceil(Math.sqrt(d) / tol);
+        return (int) Math.max(1.0, Math.min(divisions, Integer.MAX_VALUE));
+    }
+
     /**
      * Part of the initialization is done lazily to save time and memory, since some triangles may never
      * be hit by any ray.
@@ -320,7 +342,8 @@ public class RTDisplacedTriangle extends RTObject {
         // The ray intersects the volume, so step along it and check for intersections.  Determine
         // how many steps to use.
         double time = r.rt.rt.getTime();
-        double disp = tri.getDisplacement(u, v, w, tol, time), height = disp * temp1.z / temp1.length();
+        DisplacementCache.Grid grid = r.rt.rt.getDisplacementCache().getGrid(this, time);
+        double disp = grid.getDisplacement(u, v), height = disp * temp1.z / temp1.length();
         double prevDelta = z - height;
         boolean above = (z > height);
         boolean wasOutsideU = (u < 0.0 || u > 1.0), wasOutsideV = (v < 0.0 || v > 1.0), wasOutsideW = (w < 0.0 || w > 1.0);
@@ -348,7 +371,7 @@ public class RTDisplacedTriangle extends RTObject {
                 v = dti.v;
                 w = dti.w;
             }
-            disp = tri.getDisplacement(u, v, w, tol, time);
+            disp = grid.getDisplacement(u, v);
             temp1.set(u * extra.n1x + v * extra.n2x + w * extra.n3x, u * extra.n1y + v * extra.n2y + w * extra.n3y, u * extra.n1z + v * extra.n2z + w * extra.n3z);
             height = disp * temp1.z / temp1.length();
 
@@ -810,7 +833,8 @@ public class RTDisplacedTriangle extends RTObject {
             Vec3 temp1 = ray.tempVec1;
             temp1.set(u * extra.n1x + v * extra.n2x + w * extra.n3x, u * extra.n1y + v * extra.n2y + w * extra.n3y, u * extra.n1z + v * extra.n2z + w * extra.n3z);
             double time = ray.rt.rt.getTime();
-            double disp = rtTri.tri.getDisplacement(u, v, w, rtTri.tol, time), height = disp * temp1.z / temp1.length();
+            DisplacementCache.Grid grid = ray.rt.rt.getDisplacementCache().getGrid(rtTri, time);
+            double disp = grid.getDisplacement(u, v), height = disp * temp1.z / temp1.length();
             double prevDelta = z - height, prevt = t;
             boolean above = (z > height);
             boolean wasOutsideU = (u < 0.0 || u > 1.0), wasOutsideV = (v < 0.0 || v > 1.0), wasOutsideW = (w < 0.0 || w > 1.0);
@@ -826,7 +850,7 @@ public class RTDisplacedTriangle extends RTObject {
                 y = orig.y + t * dir.y;
                 z = orig.z + t * dir.z;
                 rtTri.calcCoords(this, x, y, z);
-                disp = rtTri.tri.getDisplacement(u, v, w, rtTri.tol, time);
+                disp = grid.getDisplacement(u, v);
                 temp1.set(u * extra.n1x + v * extra.n2x + w * extra.n3x, u * extra.n1y + v * extra.n2y + w * extra.n3y, u * extra.n1z + v * extra.n2z + w * extra.n3z);
                 height = disp * temp1.z / temp1.length();
 
@@ -1,5 +1,5 @@
 /* Copyright (C) 1999-2013 by Peter Eastman
-   Changes copyright (C) 2018-2025 by Maksim Khramov
+   Changes copyright (C) 2018-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -16,6 +16,7 @@ import artofillusion.math.*;
 import artofillusion.object.*;
 import artofillusion.texture.*;
 import java.util.*;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * <p>
@@ -38,10 +39,15 @@ import java.util.*;
  * method that is more efficient, but requires more preparation by the caller before it is invoked.
  * </p>
  * <p>
+ * Displacement mapped triangles share a {@link DisplacementCache}, so the displacement of each triangle is evaluated
+ * once and then reused by every ray that passes through it. Call {@link #getDisplacementCache()} to query its statistics.
+ * </p>
+ * <p>
  * When you are all finished with the Raytracer, it is a good idea to call {@link #cleanup()} to set internal pointers
  * to null. This is not required, but may help the garbage collector to work more efficiently.
  * </p>
  */
+@Slf4j
 public class Raytracer {
 
     private RTObject[] sceneObject;
@@ -57,6 +63,8 @@ public class Raytracer {
     private List<RTObjectFactory> factories;
     private List<RTObject> objectList;
     private List<RTLight> lightList;
+    private final DisplacementCache displacementCache = new DisplacementCache();
+    private long reportedCappedGrids;
 
     public static final double TOL = 1e-12;
 
@@ -230,6 +238,13 @@ public class Raytracer {
         return threadContext.get();
     }
 
+    /**
+     * Get the cache of displacement values shared by all displaced triangles in the scene.
+     */
+    public DisplacementCache getDisplacementCache() {
+        return displacementCache;
+    }
+
     /**
      * Get the root node of the octree.
      */
@@ -529,6 +544,15 @@ public class Raytracer {
         scene = null;
         camera = null;
         factories = null;
+        if (displacementCache.getHits() + displacementCache.getMisses() > 0) {
+            log.debug("{}", displacementCache);
+        }
+        long capped = displacementCache.getCappedGrids() - reportedCappedGrids;
+        if (capped > 0) {
+            log.warn("{} displacement grids were sampled more coarsely than the surface accuracy asks for", capped);
+        }
+        reportedCappedGrids += capped;
+        displacementCache.clear();
     }
 
     /**
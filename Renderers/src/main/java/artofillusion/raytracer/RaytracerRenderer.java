@@ -1,6 +1,6 @@
 /* Copyright (C) 1999-2014 by Peter Eastman
    Modifications copyright © 2020-2024 by Petri Ihalainen
-   Changes copyright (C) 2023-2025 by Maksim Khramov
+   Changes copyright (C) 2023-2026 by Maksim Khramov
 
    This program is free software; you can redistribute it and/or modify it under the
    terms of the GNU General Public License as published by the Free Software
@@ -823,6 +823,7 @@ public class RaytracerRenderer implements Renderer, Runnable {
             objectImage = new float[width * height];
         }
         listener.statusChanged(Translate.text("Processing Scene"));
+        theScene.prefetchImages();
         buildScene();
         if (renderThread != thisThread) {
             return;
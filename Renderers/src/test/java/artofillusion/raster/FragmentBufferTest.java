@@ -0,0 +1,102 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raster;
+
+import artofillusion.material.*;
+import artofillusion.math.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class FragmentBufferTest {
+
+    private static final int TRANSPARENT = new RGBColor(0.5f, 0.5f, 0.5f).getERGB();
+
+    private static int[] getColors(FragmentBuffer buffer, int index) {
+        FragmentBuffer.Slab slab = buffer.getSlab(index);
+        int count = 0;
+        for (int f = buffer.getFirst(index); f != FragmentBuffer.BACKGROUND; f = slab.getNextFragment(f)) {
+            count++;
+        }
+        int[] colors = new int[count];
+        RGBColor color = new RGBColor();
+        int i = 0;
+        for (int f = buffer.getFirst(index); f != FragmentBuffer.BACKGROUND; f = slab.getNextFragment(f)) {
+            slab.getAdditiveColor(f, color);
+            colors[i++] = color.getERGB();
+        }
+        return colors;
+    }
+
+    private static int color(float value) {
+        return new RGBColor(value, value, value).getERGB();
+    }
+
+    @Test
+    void testEmptyPixel() {
+        FragmentBuffer buffer = new FragmentBuffer(10, 10, 4);
+        Assertions.assertEquals(FragmentBuffer.BACKGROUND, buffer.getFirst(55));
+        Assertions.assertEquals(Float.MAX_VALUE, buffer.getOpaqueDepth(55));
+        Assertions.assertEquals(Float.MAX_VALUE, buffer.getDepth(55));
+        Assertions.assertTrue(buffer.getSlab(55).isOpaque(FragmentBuffer.BACKGROUND));
+    }
+
+    @Test
+    void testFragmentsAreSortedByDepth() {
+        FragmentBuffer buffer = new FragmentBuffer(10, 10, 4);
+        buffer.addFragment(23, color(0.3f), TRANSPARENT, 3.0f, null, false);
+        buffer.addFragment(23, color(0.1f), TRANSPARENT, 1.0f, null, false);
+        buffer.addFragment(23, color(0.4f), 0, 4.0f, null, false);
+        buffer.addFragment(23, color(0.2f), TRANSPARENT, 2.0f, null, false);
+        Assertions.assertArrayEquals(new int[]{color(0.1f), color(0.2f), color(0.3f), color(0.4f)}, getColors(buffer, 23));
+        Assertions.assertEquals(1.0f, buffer.getDepth(23));
+        Assertions.assertEquals(4.0f, buffer.getOpaqueDepth(23));
+        Assertions.assertEquals(FragmentBuffer.BACKGROUND, buffer.getFirst(24));
+    }
+
+    @Test
+    void testOpaqueFragmentHidesEverythingBehindIt() {
+        FragmentBuffer buffer = new FragmentBuffer(10, 10, 4);
+        buffer.addFragment(0, color(0.3f), TRANSPARENT, 3.0f, null, false);
+        buffer.addFragment(0, color(0.2f), 0, 2.0f, null, false);
+        buffer.addFragment(0, color(0.4f), TRANSPARENT, 4.0f, null, false);
+        buffer.addFragment(0, color(0.5f), 0, 5.0f, null, false);
+        Assertions.assertArrayEquals(new int[]{color(0.2f)}, getColors(buffer, 0));
+        Assertions.assertEquals(2.0f, buffer.getOpaqueDepth(0));
+    }
+
+    @Test
+    void testMaterialIsEnteredBeforeItIsExited() {
+        FragmentBuffer buffer = new FragmentBuffer(10, 10, 4);
+        ObjectMaterialInfo material = new ObjectMaterialInfo(null, Mat4.identity());
+        buffer.addFragment(99, color(0.1f), TRANSPARENT, 1.0f, material, false);
+        buffer.addFragment(99, color(0.2f), TRANSPARENT, 1.0f, material, true);
+        FragmentBuffer.Slab slab = buffer.getSlab(99);
+        int first = buffer.getFirst(99);
+        int second = slab.getNextFragment(first);
+        Assertions.assertTrue(slab.isEntering(first));
+        Assertions.assertSame(material, slab.getMaterialMapping(first));
+        Assertions.assertFalse(slab.isEntering(second));
+        Assertions.assertSame(material, slab.getMaterialMapping(second));
+        Assertions.assertEquals(FragmentBuffer.BACKGROUND, slab.getNextFragment(second));
+    }
+
+    @Test
+    void testClear() {
+        FragmentBuffer buffer = new FragmentBuffer(10, 10, 4);
+        buffer.addFragment(12, color(0.1f), 0, 1.0f, null, false);
+        Assertions.assertTrue(buffer.isCompatible(10, 10, 4));
+        buffer.clear();
+        Assertions.assertEquals(FragmentBuffer.BACKGROUND, buffer.getFirst(12));
+        Assertions.assertEquals(Float.MAX_VALUE, buffer.getOpaqueDepth(12));
+        buffer.addFragment(12, color(0.2f), 0, 2.0f, null, false);
+        Assertions.assertArrayEquals(new int[]{color(0.2f)}, getColors(buffer, 12));
+    }
+}
@@ -0,0 +1,83 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raster;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class HiZBufferTest {
+
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+
+    private static void fill(FragmentBuffer fragments, int xmin, int ymin, int xmax, int ymax, float depth) {
+        for (int y = ymin; y < ymax; y++) {
+            for (int x = xmin; x < xmax; x++) {
+                fragments.addFragment(y * WIDTH + x, 0, 0, depth, null, false);
+            }
+        }
+    }
+
+    @Test
+    void testEmptyBufferOccludesNothing() {
+        HiZBuffer hiZ = new HiZBuffer(WIDTH, HEIGHT);
+        Assertions.assertFalse(hiZ.isOccluded(10, 10, 20, 20, 1000.0f));
+        Assertions.assertFalse(hiZ.isOccluded(0, 0, WIDTH, HEIGHT, 1000.0f));
+    }
+
+    @Test
+    void testFullyCoveredRegion() {
+        FragmentBuffer fragments = new FragmentBuffer(WIDTH, HEIGHT, 64);
+        HiZBuffer hiZ = new HiZBuffer(WIDTH, HEIGHT);
+        fill(fragments, 0, 0, WIDTH, HEIGHT, 5.0f);
+        hiZ.update(fragments, 0, 0, WIDTH, HEIGHT);
+        Assertions.assertTrue(hiZ.isOccluded(13, 7, 61, 45, 6.0f));
+        Assertions.assertTrue(hiZ.isOccluded(-10, -10, WIDTH + 10, HEIGHT + 10, 6.0f));
+        Assertions.assertFalse(hiZ.isOccluded(13, 7, 61, 45, 4.0f));
+        Assertions.assertFalse(hiZ.isOccluded(13, 7, 61, 45, 5.0f));
+    }
+
+    @Test
+    void testPartiallyCoveredRegion() {
+        FragmentBuffer fragments = new FragmentBuffer(WIDTH, HEIGHT, 64);
+        HiZBuffer hiZ = new HiZBuffer(WIDTH, HEIGHT);
+        fill(fragments, 0, 0, 48, HEIGHT, 5.0f);
+        hiZ.update(fragments, 0, 0, WIDTH, HEIGHT);
+        Assertions.assertTrue(hiZ.isOccluded(2, 2, 40, 40, 6.0f));
+        Assertions.assertFalse(hiZ.isOccluded(40, 2, 50, 40, 6.0f));
+    }
+
+    @Test
+    void testSingleUncoveredPixel() {
+        FragmentBuffer fragments = new FragmentBuffer(WIDTH, HEIGHT, 64);
+        HiZBuffer hiZ = new HiZBuffer(WIDTH, HEIGHT);
+        fill(fragments, 0, 0, WIDTH, 30, 5.0f);
+        fill(fragments, 0, 31, WIDTH, HEIGHT, 5.0f);
+        fill(fragments, 0, 30, 57, 31, 5.0f);
+        fill(fragments, 58, 30, WIDTH, 31, 5.0f);
+        hiZ.update(fragments, 0, 0, WIDTH, HEIGHT);
+        Assertions.assertFalse(hiZ.isOccluded(50, 20, 70, 40, 6.0f));
+        Assertions.assertTrue(hiZ.isOccluded(0, 0, 40, 29, 6.0f));
+    }
+
+    @Test
+    void testIncrementalUpdate() {
+        FragmentBuffer fragments = new FragmentBuffer(WIDTH, HEIGHT, 64);
+        HiZBuffer hiZ = new HiZBuffer(WIDTH, HEIGHT);
+        fill(fragments, 0, 0, WIDTH, HEIGHT, 10.0f);
+        hiZ.update(fragments, 0, 0, WIDTH, HEIGHT);
+        Assertions.assertFalse(hiZ.isOccluded(20, 20, 30, 30, 8.0f));
+        fill(fragments, 16, 16, 40, 40, 5.0f);
+        hiZ.update(fragments, 16, 16, 40, 40);
+        Assertions.assertTrue(hiZ.isOccluded(20, 20, 30, 30, 8.0f));
+        Assertions.assertFalse(hiZ.isOccluded(0, 0, 30, 30, 8.0f));
+    }
+}
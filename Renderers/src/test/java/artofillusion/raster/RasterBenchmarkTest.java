@@ -0,0 +1,158 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raster;
+
+import artofillusion.*;
+import artofillusion.image.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import artofillusion.texture.*;
+import java.util.*;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Check that the different rasterization modes produce the same image, and compare their speed on
+ * a scene with a large number of triangles. The comparisons of speed take a while, so they only run
+ * when the aoi.benchmark system property is set to true.
+ */
+@Slf4j
+class RasterBenchmarkTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private static Scene createScene(int spheres) {
+        Scene scene = new Scene();
+        Random random = new Random(1234);
+        Texture tex = new UniformTexture();
+        for (int i = 0; i < spheres; i++) {
+            Sphere sphere = new Sphere(0.5, 0.5, 0.5);
+            sphere.setTexture(tex, tex.getDefaultMapping(sphere));
+            Vec3 pos = new Vec3(random.nextDouble() * 10 - 5, random.nextDouble() * 8 - 4, random.nextDouble() * 10);
+            scene.addObject(sphere, new CoordinateSystem(pos, 0, 0, 0), "Sphere " + i, null);
+        }
+        DirectionalLight light = new DirectionalLight(new RGBColor(1.0f, 1.0f, 1.0f), 0.8f);
+        scene.addObject(light, new CoordinateSystem(new Vec3(), 30, 20, 0), "Light", null);
+        return scene;
+    }
+
+    private static ComplexImage render(Scene scene, boolean tiled, boolean deferred) {
+        return render(scene, WIDTH, HEIGHT, 0.002, tiled, deferred);
+    }
+
+    private static ComplexImage render(Scene scene, int width, int height, double surfaceError, boolean tiled, boolean deferred) {
+        Raster raster = new Raster();
+        raster.setConfiguration("maxSurfaceError", surfaceError);
+        raster.setConfiguration("shadingMethod", Raster.PHONG);
+        raster.setConfiguration("tiledRasterization", tiled);
+        raster.setConfiguration("deferredShading", deferred);
+        SceneCamera sceneCamera = new SceneCamera();
+        CoordinateSystem coords = new CoordinateSystem(new Vec3(0, 0, -12), Vec3.vz(), Vec3.vy());
+        return sceneCamera.renderScene(scene, width, height, raster, coords);
+    }
+
+    @Test
+    void testTiledMatchesUntiled() {
+        Scene scene = createScene(20);
+        ComplexImage untiled = render(scene, 160, 120, 0.01, false, false);
+        Assertions.assertTrue(countCoveredPixels(untiled) > 0);
+        assertImagesMatch(untiled, render(scene, 160, 120, 0.01, true, false));
+
+        // Splitting the objects into many small waves gives the same result.
+
+        long maxTriangles = Raster.MAX_WAVE_TRIANGLES;
+        try {
+            Raster.MAX_WAVE_TRIANGLES = 100;
+            assertImagesMatch(untiled, render(scene, 160, 120, 0.01, true, false));
+        } finally {
+            Raster.MAX_WAVE_TRIANGLES = maxTriangles;
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "aoi.benchmark", matches = "true")
+    void testTiledRasterization() {
+        Scene scene = createScene(200);
+
+        // Render once with each mode so that meshes are cached and the JIT has warmed up.
+        render(scene, false, false);
+        render(scene, true, false);
+        long start = System.nanoTime();
+        ComplexImage untiled = render(scene, false, false);
+        long untiledTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        ComplexImage tiled = render(scene, true, false);
+        long tiledTime = System.nanoTime() - start;
+        log.info("Untiled: {} ms, tiled: {} ms, speedup: {}", untiledTime / 1000000, tiledTime / 1000000, String.format("%.2f", (double) untiledTime / tiledTime));
+
+        Assertions.assertNotNull(untiled);
+        Assertions.assertNotNull(tiled);
+        assertImagesMatch(untiled, tiled);
+    }
+
+    @Test
+    void testDeferredMatchesForward() {
+        Scene scene = createScene(20);
+        ComplexImage forward = render(scene, 160, 120, 0.01, true, false);
+        Assertions.assertTrue(countCoveredPixels(forward) > 0);
+        assertImagesMatch(forward, render(scene, 160, 120, 0.01, true, true));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "aoi.benchmark", matches = "true")
+    void testDeferredShading() {
+        Scene scene = createScene(200);
+        render(scene, true, false);
+        render(scene, true, true);
+        long start = System.nanoTime();
+        ComplexImage forward = render(scene, true, false);
+        long forwardTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        ComplexImage deferred = render(scene, true, true);
+        long deferredTime = System.nanoTime() - start;
+        log.info("Forward: {} ms, deferred: {} ms, speedup: {}", forwardTime / 1000000, deferredTime / 1000000, String.format("%.2f", (double) forwardTime / deferredTime));
+
+        Assertions.assertNotNull(forward);
+        Assertions.assertNotNull(deferred);
+        assertImagesMatch(forward, deferred);
+    }
+
+    /**
+     * Count the pixels in which something other than the black background was drawn.
+     */
+    private static int countCoveredPixels(ComplexImage image) {
+        int count = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (image.getPixelComponent(x, y, ComplexImage.RED) > 0.0f) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void assertImagesMatch(ComplexImage expected, ComplexImage actual) {
+        Assertions.assertEquals(expected.getWidth(), actual.getWidth());
+        Assertions.assertEquals(expected.getHeight(), actual.getHeight());
+        int[] components = {ComplexImage.RED, ComplexImage.GREEN, ComplexImage.BLUE};
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                for (int component : components) {
+                    Assertions.assertEquals(expected.getPixelComponent(x, y, component), actual.getPixelComponent(x, y, component), 1e-4f, "Pixel " + x + ", " + y);
+                }
+            }
+        }
+    }
+}
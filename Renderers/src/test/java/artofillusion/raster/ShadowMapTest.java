@@ -0,0 +1,106 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raster;
+
+import artofillusion.math.*;
+import artofillusion.object.*;
+import java.util.*;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ShadowMapTest {
+
+    private static final Vec3 UP = new Vec3(0.0, 1.0, 0.0);
+
+    /**
+     * Create a square of side 2*halfSize, centered at a point and perpendicular to the y axis.
+     */
+    private static ShadowMap.Caster square(Vec3 center, double halfSize) {
+        Vec3[] vert = {
+            new Vec3(center.x - halfSize, center.y, center.z - halfSize),
+            new Vec3(center.x + halfSize, center.y, center.z - halfSize),
+            new Vec3(center.x + halfSize, center.y, center.z + halfSize),
+            new Vec3(center.x - halfSize, center.y, center.z + halfSize)
+        };
+        return new ShadowMap.Caster(vert, new int[]{0, 1, 2, 0, 2, 3});
+    }
+
+    private static ShadowMap render(Light light, CoordinateSystem coords, List<ShadowMap.Caster> casters) {
+        ShadowMap map = new ShadowMap(light, coords, 256, casters);
+        for (int i = 0; i < map.getFaceCount(); i++) {
+            map.renderFace(i);
+        }
+        return map;
+    }
+
+    private static float lit(ShadowMap map, double x, double y, double z) {
+        return map.getLitFraction(new Vec3(x, y, z), UP, new Vec3());
+    }
+
+    @Test
+    void testDirectionalLight() {
+        // A light shining straight down onto a small square above a large floor.
+
+        List<ShadowMap.Caster> casters = List.of(square(new Vec3(0.0, 1.0, 0.0), 0.5), square(new Vec3(), 5.0));
+        CoordinateSystem coords = new CoordinateSystem(new Vec3(0.0, 10.0, 0.0), new Vec3(0.0, -1.0, 0.0), new Vec3(0.0, 0.0, 1.0));
+        ShadowMap map = render(new DirectionalLight(new RGBColor(1.0f, 1.0f, 1.0f), 1.0f), coords, casters);
+        Assertions.assertEquals(1, map.getFaceCount());
+        Assertions.assertEquals(0.0f, lit(map, 0.0, 0.0, 0.0));
+        Assertions.assertEquals(0.0f, lit(map, 0.4, 0.0, -0.4));
+        Assertions.assertEquals(1.0f, lit(map, 2.0, 0.0, 0.0));
+        Assertions.assertEquals(1.0f, lit(map, 0.0, 1.0, 0.0), "A surface should not shadow itself");
+        Assertions.assertEquals(1.0f, lit(map, 0.0, 2.0, 0.0));
+
+        // Points near the edge of the shadow are partly lit.
+        float edge = lit(map, 0.5, 0.0, 0.0);
+        Assertions.assertTrue(edge > 0.0f && edge < 1.0f, "Edge value " + edge);
+    }
+
+    @Test
+    void testSpotLight() {
+        List<ShadowMap.Caster> casters = List.of(square(new Vec3(0.0, 1.0, 0.0), 0.5), square(new Vec3(), 5.0));
+        CoordinateSystem coords = new CoordinateSystem(new Vec3(0.0, 3.0, 0.0), new Vec3(0.0, -1.0, 0.0), new Vec3(0.0, 0.0, 1.0));
+        ShadowMap map = render(new SpotLight(new RGBColor(1.0f, 1.0f, 1.0f), 1.0f, 120.0, 0.0, 0.0), coords, casters);
+        Assertions.assertEquals(1, map.getFaceCount());
+
+        // The shadow is enlarged by the perspective projection: a square of half size 0.5 at
+        // height 1 casts a shadow of half size 0.75 onto the floor.
+        Assertions.assertEquals(0.0f, lit(map, 0.0, 0.0, 0.0));
+        Assertions.assertEquals(0.0f, lit(map, 0.65, 0.0, 0.0));
+        Assertions.assertEquals(1.0f, lit(map, 0.9, 0.0, 0.0));
+        Assertions.assertEquals(1.0f, lit(map, 0.0, 1.0, 0.0));
+    }
+
+    @Test
+    void testPointLight() {
+        // Surround the light with squares in every direction except +z.
+
+        Vec3 center = new Vec3(1.0, 2.0, 3.0);
+        List<ShadowMap.Caster> casters = new ArrayList<>();
+        casters.add(square(new Vec3(1.0, 1.0, 3.0), 0.2));
+        casters.add(square(new Vec3(1.0, 3.0, 3.0), 0.2));
+        CoordinateSystem coords = new CoordinateSystem(center, Vec3.vz(), Vec3.vy());
+        ShadowMap map = render(new PointLight(new RGBColor(1.0f, 1.0f, 1.0f), 1.0f, 0.0), coords, casters);
+        Assertions.assertEquals(6, map.getFaceCount());
+        Assertions.assertEquals(0.0f, lit(map, 1.0, -1.0, 3.0));
+        Assertions.assertEquals(0.0f, lit(map, 1.0, 5.0, 3.0));
+        Assertions.assertEquals(1.0f, lit(map, 1.0, 2.0, 10.0));
+        Assertions.assertEquals(1.0f, lit(map, -5.0, 2.0, 3.0));
+        Assertions.assertEquals(1.0f, lit(map, 1.0, 1.0, 3.0));
+    }
+
+    @Test
+    void testNoCasters() {
+        CoordinateSystem coords = new CoordinateSystem(new Vec3(), Vec3.vz(), Vec3.vy());
+        ShadowMap map = render(new DirectionalLight(new RGBColor(1.0f, 1.0f, 1.0f), 1.0f), coords, Collections.emptyList());
+        Assertions.assertEquals(1.0f, lit(map, 0.0, 0.0, 5.0));
+    }
+}
@@ -0,0 +1,236 @@
+/* Copyright (C) 2026 by Maksim Khramov
+
+   This program is free software; you can redistribute it and/or modify it under the
+   terms of the GNU General Public License as published by the Free Software
+   Foundation; either version 2 of the License, or (at your option) any later version.
+
+   This program is distributed in the hope that it will be useful, but WITHOUT ANY
+   WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+   PARTICULAR PURPOSE.  See the GNU General Public License for more details. */
+
+package artofillusion.raytracer;
+
+import artofillusion.*;
+import artofillusion.math.*;
+import artofillusion.object.*;
+import artofillusion.texture.*;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DisplacementCacheTest {
+
+    /**
+     * A triangle whose displacement rises linearly along one edge, and which counts how many times
+     * it has been evaluated.
+     */
+    private static class CountingTriangle extends UniformTriangle {
+
+        int evaluations;
+
+        CountingTriangle() {
+            super(0, 1, 2, 0, 1, 2);
+        }
+
+        @Override
+        public double getDisplacement(double u, double v, double w, double size, double t) {
+            evaluations++;
+            return 0.1 * u;
+        }
+    }
+
+    /**
+     * Create a displaced right triangle with unit legs. With a tolerance of 0.1, its grid has 15 divisions
+     * and 136 samples.
+     */
+    private static RTDisplacedTriangle createTriangle(double tol) {
+        Texture tex = new UniformTexture();
+        Vec3[] vert = {new Vec3(0.0, 0.0, 0.0), new Vec3(1.0, 0.0, 0.0), new Vec3(0.0, 1.0, 0.0)};
+        Vec3[] norm = {Vec3.vz(), Vec3.vz(), Vec3.vz()};
+        RenderingMesh mesh = new RenderingMesh(vert, norm, new RenderingTriangle[]{new CountingTriangle()}, tex.getDefaultMapping(new Cube(1.0, 1.0, 1.0)), null);
+        return new RTDisplacedTriangle(mesh, 0, Mat4.identity(), Mat4.identity(), tol, 0.0);
+    }
+
+    private static int getEvaluations(RTDisplacedTriangle tri) {
+        return ((CountingTriangle) tri.tri).evaluations;
+    }
+
+    private static DisplacementCache.Grid createLinearGrid(int n) {
+        float[] height = new float[(n + 1) * (n + 2) / 2];
+        int index = 0;
+        for (int i = 0; i <= n; i++) {
+            for (int j = 0; j <= n - i; j++) {
+                height[index++] = (float) linear((double) i / n, (double) j / n);
+            }
+        }
+        return new DisplacementCache.Grid(n, height);
+    }
+
+    private static double linear(double u, double v) {
+        return 0.5 + 2.0 * u - 3.0 * v;
+    }
+
+    @Test
+    void testInterpolationReproducesLinearDisplacement() {
+        DisplacementCache.Grid grid = createLinearGrid(7);
+        Random random = new Random(1);
+        for (int k = 0; k < 1000; k++) {
+            double u = random.nextDouble();
+            double v = random.nextDouble() * (1.0 - u);
+            Assertions.assertEquals(linear(u, v), grid.getDisplacement(u, v), 1e-5);
+        }
+    }
+
+    @Test
+    void testInterpolationAtVertices() {
+        DisplacementCache.Grid grid = createLinearGrid(5);
+        Assertions.assertEquals(linear(1.0, 0.0), grid.getDisplacement(1.0, 0.0), 1e-6);
+        Assertions.assertEquals(linear(0.0, 1.0), grid.getDisplacement(0.0, 1.0), 1e-6);
+        Assertions.assertEquals(linear(0.0, 0.0), grid.getDisplacement(0.0, 0.0), 1e-6);
+        Assertions.assertEquals(linear(0.6, 0.4), grid.getDisplacement(0.6, 0.4), 1e-6);
+    }
+
+    @Test
+    void testPointsOutsideTriangleAreClamped() {
+        DisplacementCache.Grid grid = createLinearGrid(4);
+        Assertions.assertEquals(linear(0.0, 0.5), grid.getDisplacement(-0.5, 0.5), 1e-6);
+        Assertions.assertEquals(linear(0.5, 0.5), grid.getDisplacement(1.0, 1.0), 1e-6);
+    }
+
+    @Test
+    void testSingleDivisionGrid() {
+        DisplacementCache.Grid grid = createLinearGrid(1);
+        Assertions.assertEquals(1, grid.getDivisions());
+        Assertions.assertEquals(linear(0.25, 0.25), grid.getDisplacement(0.25, 0.25), 1e-6);
+    }
+
+    @Test
+    void testNewCacheStatistics() {
+        DisplacementCache cache = new DisplacementCache(100);
+        Assertions.assertEquals(0, cache.getHits());
+        Assertions.assertEquals(0, cache.getMisses());
+        Assertions.assertEquals(0.0, cache.getHitRate());
+        Assertions.assertEquals(0, cache.getSize());
+        Assertions.assertEquals(0, cache.getCappedGrids());
+        Assertions.assertEquals(100, cache.getCapacity());
+    }
+
+    @Test
+    void testDefaultCapacityHoldsManyLargeGrids() {
+        Assertions.assertTrue(DisplacementCache.DEFAULT_CAPACITY >= 100L * 257 * 258 / 2);
+    }
+
+    @Test
+    void testHitAndMiss() {
+        DisplacementCache cache = new DisplacementCache(10000);
+        RTDisplacedTriangle tri = createTriangle(0.1);
+        int built = getEvaluations(tri);
+        DisplacementCache.Grid grid = cache.getGrid(tri, 0.0);
+        Assertions.assertEquals(15, grid.getDivisions());
+        Assertions.assertEquals(0.05, grid.getDisplacement(0.5, 0.25), 1e-6);
+        Assertions.assertEquals(built + 136, getEvaluations(tri));
+        Assertions.assertEquals(1, cache.getMisses());
+        Assertions.assertEquals(136, cache.getSize());
+
+        // A second lookup reuses the grid without evaluating the displacement again.
+
+        Assertions.assertSame(grid, cache.getGrid(tri, 0.0));
+        Assertions.assertEquals(built + 136, getEvaluations(tri));
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(0.5, cache.getHitRate());
+
+        // A different time needs a new grid, which replaces the old one.
+
+        Assertions.assertNotSame(grid, cache.getGrid(tri, 1.0));
+        Assertions.assertEquals(2, cache.getMisses());
+        Assertions.assertEquals(136, cache.getSize());
+        Assertions.assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void testLeastRecentlyUsedGridIsEvicted() {
+        DisplacementCache cache = new DisplacementCache(2 * 136);
+        RTDisplacedTriangle a = createTriangle(0.1), b = createTriangle(0.1), c = createTriangle(0.1);
+        DisplacementCache.Grid gridA = cache.getGrid(a, 0.0);
+        cache.getGrid(b, 0.0);
+        Assertions.assertSame(gridA, cache.getGrid(a, 0.0));
+        cache.getGrid(c, 0.0);
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertEquals(2 * 136, cache.getSize());
+
+        // b was used least recently, so it is the one which has to be built again.
+
+        Assertions.assertSame(gridA, cache.getGrid(a, 0.0));
+        int evaluations = getEvaluations(b);
+        cache.getGrid(b, 0.0);
+        Assertions.assertEquals(evaluations + 136, getEvaluations(b));
+        Assertions.assertEquals(2, cache.getEvictions());
+        Assertions.assertEquals(2 * 136, cache.getSize());
+    }
+
+    @Test
+    void testCapacityAccounting() {
+        DisplacementCache cache = new DisplacementCache(10000);
+        RTDisplacedTriangle small = createTriangle(0.1), large = createTriangle(0.05);
+        cache.getGrid(small, 0.0);
+        Assertions.assertEquals(29, cache.getGrid(large, 0.0).getDivisions());
+        Assertions.assertEquals(136 + 30 * 31 / 2, cache.getSize());
+
+        // Shrinking the cache discards the least recently used grid.
+
+        cache.setCapacity(500);
+        Assertions.assertEquals(500, cache.getCapacity());
+        Assertions.assertEquals(30 * 31 / 2, cache.getSize());
+        Assertions.assertEquals(1, cache.getEvictions());
+
+        // A grid which is larger than the whole cache is still returned, but nothing else is kept.
+
+        cache.setCapacity(100);
+        Assertions.assertEquals(0, cache.getSize());
+        Assertions.assertEquals(15, cache.getGrid(small, 0.0).getDivisions());
+        Assertions.assertEquals(136, cache.getSize());
+        cache.clear();
+        Assertions.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testConcurrentLookups() throws InterruptedException {
+        DisplacementCache cache = new DisplacementCache(5 * 136);
+        RTDisplacedTriangle[] tri = new RTDisplacedTriangle[20];
+        for (int i = 0; i < tri.length; i++) {
+            tri[i] = createTriangle(0.1);
+        }
+        AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            Random random = new Random(i);
+            threads[i] = new Thread(() -> {
+                for (int k = 0; k < 1000; k++) {
+                    DisplacementCache.Grid grid = cache.getGrid(tri[random.nextInt(tri.length)], 0.0);
+                    if (Math.abs(grid.getDisplacement(0.5, 0.25) - 0.05) > 1e-6) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(0, wrong.get());
+        Assertions.assertEquals(4000, cache.getHits() + cache.getMisses());
+        Assertions.assertTrue(cache.getSize() <= cache.getCapacity());
+        Assertions.assertEquals(0, cache.getSize() % 136);
+    }
+
+    @Test
+    void testLargeTrianglesAreCapped() {
+        DisplacementCache cache = new DisplacementCache(100000);
+        RTDisplacedTriangle tri = createTriangle(0.001);
+        Assertions.assertEquals(DisplacementCache.MAX_DIVISIONS, cache.getGrid(tri, 0.0).getDivisions());
+        Assertions.assertEquals(1, cache.getCappedGrids());
+        cache.getGrid(createTriangle(0.1), 0.0);
+        Assertions.assertEquals(1, cache.getCappedGrids());
+    }
+}
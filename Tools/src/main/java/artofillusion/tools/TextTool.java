@@ -157,10 +157,10 @@ public class TextTool implements ModellingTool {
                                     fullLetterOI = currentGlyphOI;
                                 } else {
                                     // More curves, see if they intersect or unite what we already have
-                                    ObjectInfo meshToTestForIntersection = new ObjectInfo(solidify((TriangleMesh) currentGlyphOI.getObject(), 0.2), currentGlyphOI.coords.duplicate(), glyphName);
+                                    ObjectInfo meshToTestForIntersection = new ObjectInfo(solidify((TriangleMesh) currentGlyphOI.getObject(), 0.2), currentGlyphOI.getCoords().duplicate(), glyphName);
                                     meshToTestForIntersection.setTexture(texture, texture.getDefaultMapping(meshToTestForIntersection.object)); // for getBounds() to work
                                     Vec3 coordsDiff = currentGlyphOI.getBounds().getCenter().minus(meshToTestForIntersection.getBounds().getCenter());
-                                    meshToTestForIntersection.coords.setOrigin(meshToTestForIntersection.coords.getOrigin().plus(coordsDiff));
+                                    meshToTestForIntersection.getCoords().setOrigin(meshToTestForIntersection.getCoords().getOrigin().plus(coordsDiff));
                                     CSGObject testCSG = new CSGObject(fullLetterOI, meshToTestForIntersection, CSGObject.INTERSECTION);
                                     TriangleMesh testCSGMesh = testCSG.convertToTriangleMesh(1);
                                     if (testCSGMesh.getEdges().length > 0) {
@@ -170,10 +170,10 @@ public class TextTool implements ModellingTool {
                                         boolean firstIsLarger = ((bounds1.maxx - bounds1.minx) * (bounds1.maxy - bounds1.miny) >= (bounds2.maxx - bounds2.minx) * (bounds2.maxy - bounds2.miny));
                                         ObjectInfo firstMesh = (firstIsLarger ? fullLetterOI : currentGlyphOI);
                                         ObjectInfo secondMesh = (firstIsLarger ? currentGlyphOI : fullLetterOI);
-                                        ObjectInfo meshToCut = new ObjectInfo(solidify((TriangleMesh) secondMesh.getObject(), 0.2), secondMesh.coords.duplicate(), glyphName);
+                                        ObjectInfo meshToCut = new ObjectInfo(solidify((TriangleMesh) secondMesh.getObject(), 0.2), secondMesh.getCoords().duplicate(), glyphName);
                                         meshToCut.setTexture(texture, texture.getDefaultMapping(meshToCut.object));  // for getBounds() to work
                                         coordsDiff = secondMesh.getBounds().getCenter().minus(meshToCut.getBounds().getCenter());
-                                        meshToCut.coords.setOrigin(meshToCut.coords.getOrigin().plus(coordsDiff));
+                                        meshToCut.getCoords().setOrigin(meshToCut.getCoords().getOrigin().plus(coordsDiff));
                                         CSGObject aCSG = new CSGObject(firstMesh, meshToCut, CSGObject.DIFFERENCE12);
                                         TriangleMesh aCSGMesh = aCSG.convertToTriangleMesh(1);
 
@@ -188,13 +188,13 @@ public class TextTool implements ModellingTool {
                                                 }
                                             }
                                         }
-                                        fullLetterOI = new ObjectInfo(aCSGMesh, fullLetterOI.coords.duplicate(), glyphName);
+                                        fullLetterOI = new ObjectInfo(aCSGMesh, fullLetterOI.getCoords().duplicate(), glyphName);
                                         fullLetterOI.setTexture(texture, texture.getDefaultMapping(fullLetterOI.object));
                                     } else {
                                         // Unites
                                         CSGObject aCSG = new CSGObject(fullLetterOI, currentGlyphOI, CSGObject.UNION);
                                         TriangleMesh aCSGMesh = aCSG.convertToTriangleMesh(1);
-                                        fullLetterOI = new ObjectInfo(aCSGMesh, fullLetterOI.coords.duplicate(), glyphName);
+                                        fullLetterOI = new ObjectInfo(aCSGMesh, fullLetterOI.getCoords().duplicate(), glyphName);
                                         fullLetterOI.setTexture(texture, texture.getDefaultMapping(fullLetterOI.object));
                                     }
                                     try {
@@ -248,10 +248,10 @@ public class TextTool implements ModellingTool {
                     if (type == TextType.Solid) {
                         // Extrude the shape.
                         TriangleMesh mesh = solidify((TriangleMesh) fullLetterOI.getObject(), thickness);
-                        ObjectInfo extrudedMeshOI = new ObjectInfo(mesh, fullLetterOI.coords.duplicate(), glyphName);
+                        ObjectInfo extrudedMeshOI = new ObjectInfo(mesh, fullLetterOI.getCoords().duplicate(), glyphName);
                         extrudedMeshOI.setTexture(texture, texture.getDefaultMapping(extrudedMeshOI.object));  // for getBounds() to work
                         Vec3 coordsDiff = fullLetterOI.getBounds().getCenter().minus(extrudedMeshOI.getBounds().getCenter());
-                        extrudedMeshOI.coords.setOrigin(extrudedMeshOI.coords.getOrigin().plus(coordsDiff));
+                        extrudedMeshOI.getCoords().setOrigin(extrudedMeshOI.getCoords().getOrigin().plus(coordsDiff));
                         fullLetterOI = extrudedMeshOI;
                         mesh.setSmoothingMethod(Mesh.APPROXIMATING);
                         fullLetterOI.object = mesh = TriangleMesh.optimizeMesh(mesh);